@@ -0,0 +1,27 @@
+package com.fitness.events;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+// Wire-level view of an activity; each service maps it to and from its own Activity document
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityEvent {
+    private String id;
+    private String userId;
+    // ActivityType name; services map unknown names to OTHER
+    private String type;
+    private Integer duration;
+    private Integer caloriesBurned;
+    private LocalDateTime startTime;
+    private Map<String, Object> additionalData;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,464 @@
+package com.fitness.events;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact binary encoding of {@link ActivityEvent}.
+ *
+ * <pre>
+ * event   := MAGIC VERSION field*
+ * field   := varint(fieldNumber &lt;&lt; 3 | wireType) value
+ * value   := varint                      (wire type 0)
+ *          | 8 bytes, big endian         (wire type 1)
+ *          | varint(length) bytes        (wire type 2)
+ * </pre>
+ *
+ * Fields are optional and unknown field numbers are skipped by wire type, so adding a field never
+ * needs a new version; VERSION only changes for incompatible layouts. Field numbers and type codes
+ * below are part of the format and must never be reused or reordered. Timestamps are UTC epoch
+ * millis, the precision Mongo stores them with. The first byte can't be '{', which lets consumers
+ * tell this format from the JSON one.
+ */
+public final class ActivityEventCodec {
+
+    public static final byte MAGIC = (byte) 0xA7;
+    public static final byte VERSION = 1;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_BYTES = 2;
+
+    private static final int FIELD_ID_OBJECT_ID = 1;
+    private static final int FIELD_ID_TEXT = 2;
+    private static final int FIELD_USER_UUID = 3;
+    private static final int FIELD_USER_TEXT = 4;
+    private static final int FIELD_TYPE_CODE = 5;
+    private static final int FIELD_TYPE_NAME = 6;
+    private static final int FIELD_DURATION = 7;
+    private static final int FIELD_CALORIES = 8;
+    private static final int FIELD_START_TIME = 9;
+    private static final int FIELD_CREATED_AT = 10;
+    private static final int FIELD_UPDATED_AT = 11;
+    // updatedAt as millis after createdAt; usually 0, so one byte
+    private static final int FIELD_UPDATED_AFTER_CREATED = 12;
+    private static final int FIELD_ADDITIONAL_DATA = 13;
+
+    // Index = type code. Append only.
+    private static final List<String> TYPE_CODES = List.of(
+            "RUNNING", "CYCLING", "SWIMMING", "WALKING", "YOGA", "STRENGTH_TRAINING",
+            "HIIT", "DANCE", "CARDIO", "SKIPPING", "OTHER");
+
+    // additionalData value tags
+    private static final int VALUE_NULL = 0;
+    private static final int VALUE_FALSE = 1;
+    private static final int VALUE_TRUE = 2;
+    private static final int VALUE_INTEGER = 3;
+    private static final int VALUE_DOUBLE = 4;
+    private static final int VALUE_STRING = 5;
+    private static final int VALUE_LIST = 6;
+    private static final int VALUE_MAP = 7;
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private ActivityEventCodec() {
+    }
+
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length >= 2 && data[0] == MAGIC;
+    }
+
+    public static byte[] encode(ActivityEvent event) {
+        Writer out = new Writer(128);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+
+        if (event.getId() != null) {
+            if (isObjectId(event.getId())) {
+                out.writeBytesField(FIELD_ID_OBJECT_ID, HEX.parseHex(event.getId()));
+            } else {
+                out.writeStringField(FIELD_ID_TEXT, event.getId());
+            }
+        }
+        if (event.getUserId() != null) {
+            UUID uuid = parseCanonicalUuid(event.getUserId());
+            if (uuid != null) {
+                out.writeKey(FIELD_USER_UUID, WIRE_BYTES);
+                out.writeVarint(16);
+                out.writeFixed64(uuid.getMostSignificantBits());
+                out.writeFixed64(uuid.getLeastSignificantBits());
+            } else {
+                out.writeStringField(FIELD_USER_TEXT, event.getUserId());
+            }
+        }
+        if (event.getType() != null) {
+            int code = TYPE_CODES.indexOf(event.getType());
+            if (code >= 0) {
+                out.writeVarintField(FIELD_TYPE_CODE, code);
+            } else {
+                out.writeStringField(FIELD_TYPE_NAME, event.getType());
+            }
+        }
+        if (event.getDuration() != null) {
+            out.writeVarintField(FIELD_DURATION, zigZag(event.getDuration()));
+        }
+        if (event.getCaloriesBurned() != null) {
+            out.writeVarintField(FIELD_CALORIES, zigZag(event.getCaloriesBurned()));
+        }
+        if (event.getStartTime() != null) {
+            out.writeVarintField(FIELD_START_TIME, zigZag(toMillis(event.getStartTime())));
+        }
+        if (event.getCreatedAt() != null) {
+            out.writeVarintField(FIELD_CREATED_AT, zigZag(toMillis(event.getCreatedAt())));
+        }
+        if (event.getUpdatedAt() != null) {
+            if (event.getCreatedAt() != null) {
+                out.writeVarintField(FIELD_UPDATED_AFTER_CREATED,
+                        zigZag(toMillis(event.getUpdatedAt()) - toMillis(event.getCreatedAt())));
+            } else {
+                out.writeVarintField(FIELD_UPDATED_AT, zigZag(toMillis(event.getUpdatedAt())));
+            }
+        }
+        if (event.getAdditionalData() != null) {
+            Writer nested = new Writer(64);
+            nested.writeValue(event.getAdditionalData());
+            out.writeBytesField(FIELD_ADDITIONAL_DATA, nested.toByteArray());
+        }
+        return out.toByteArray();
+    }
+
+    public static ActivityEvent decode(byte[] data) {
+        if (!isBinary(data)) {
+            throw new IllegalArgumentException("Not a binary activity event");
+        }
+        if (data[1] != VERSION) {
+            throw new IllegalArgumentException("Unsupported activity event version " + data[1]);
+        }
+
+        Reader in = new Reader(data, 2, data.length);
+        ActivityEvent event = new ActivityEvent();
+        Long createdAt = null;
+        Long updatedAfterCreated = null;
+        while (in.hasRemaining()) {
+            long key = in.readVarint();
+            int field = (int) (key >>> 3);
+            int wireType = (int) (key & 0x7);
+            switch (field) {
+                case FIELD_ID_OBJECT_ID -> event.setId(HEX.formatHex(in.readBytes()));
+                case FIELD_ID_TEXT -> event.setId(in.readString());
+                case FIELD_USER_UUID -> {
+                    Reader uuid = in.readNested();
+                    event.setUserId(new UUID(uuid.readFixed64(), uuid.readFixed64()).toString());
+                }
+                case FIELD_USER_TEXT -> event.setUserId(in.readString());
+                case FIELD_TYPE_CODE -> {
+                    int code = (int) in.readVarint();
+                    event.setType(code < TYPE_CODES.size() ? TYPE_CODES.get(code) : "OTHER");
+                }
+                case FIELD_TYPE_NAME -> event.setType(in.readString());
+                case FIELD_DURATION -> event.setDuration((int) unZigZag(in.readVarint()));
+                case FIELD_CALORIES -> event.setCaloriesBurned((int) unZigZag(in.readVarint()));
+                case FIELD_START_TIME -> event.setStartTime(fromMillis(unZigZag(in.readVarint())));
+                case FIELD_CREATED_AT -> {
+                    createdAt = unZigZag(in.readVarint());
+                    event.setCreatedAt(fromMillis(createdAt));
+                }
+                case FIELD_UPDATED_AT -> event.setUpdatedAt(fromMillis(unZigZag(in.readVarint())));
+                case FIELD_UPDATED_AFTER_CREATED -> updatedAfterCreated = unZigZag(in.readVarint());
+                case FIELD_ADDITIONAL_DATA -> {
+                    Object value = in.readNested().readValue();
+                    if (value instanceof Map<?, ?> map) {
+                        @SuppressWarnings("unchecked")
+                        Map<String, Object> additionalData = (Map<String, Object>) map;
+                        event.setAdditionalData(additionalData);
+                    }
+                }
+                default -> in.skip(wireType);
+            }
+        }
+        if (updatedAfterCreated != null && createdAt != null) {
+            event.setUpdatedAt(fromMillis(createdAt + updatedAfterCreated));
+        }
+        return event;
+    }
+
+    private static boolean isObjectId(String id) {
+        if (id.length() != 24) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Only the canonical lowercase form, so decoding gives back the exact same string
+    private static UUID parseCanonicalUuid(String value) {
+        if (value.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(value);
+            return uuid.toString().equals(value) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Writer {
+        private byte[] buf;
+        private int size;
+
+        private Writer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+
+        private void writeByte(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        private void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        private void writeFixed64(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void writeRaw(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void writeKey(int field, int wireType) {
+            writeVarint(((long) field << 3) | wireType);
+        }
+
+        private void writeVarintField(int field, long value) {
+            writeKey(field, WIRE_VARINT);
+            writeVarint(value);
+        }
+
+        private void writeBytesField(int field, byte[] bytes) {
+            writeKey(field, WIRE_BYTES);
+            writeVarint(bytes.length);
+            writeRaw(bytes);
+        }
+
+        private void writeStringField(int field, String value) {
+            writeBytesField(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            writeRaw(bytes);
+        }
+
+        private void writeValue(Object value) {
+            if (value == null) {
+                writeByte(VALUE_NULL);
+            } else if (value instanceof Boolean b) {
+                writeByte(b ? VALUE_TRUE : VALUE_FALSE);
+            } else if (value instanceof Integer || value instanceof Long
+                    || value instanceof Short || value instanceof Byte) {
+                writeByte(VALUE_INTEGER);
+                writeVarint(zigZag(((Number) value).longValue()));
+            } else if (value instanceof Double || value instanceof Float) {
+                writeByte(VALUE_DOUBLE);
+                writeFixed64(Double.doubleToLongBits(((Number) value).doubleValue()));
+            } else if (value instanceof Map<?, ?> map) {
+                writeByte(VALUE_MAP);
+                writeVarint(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeString(String.valueOf(entry.getKey()));
+                    writeValue(entry.getValue());
+                }
+            } else if (value instanceof Iterable<?> list) {
+                List<Object> items = new ArrayList<>();
+                list.forEach(items::add);
+                writeByte(VALUE_LIST);
+                writeVarint(items.size());
+                items.forEach(this::writeValue);
+            } else {
+                // BigDecimal, dates and anything else JSON would have rendered as text
+                writeByte(VALUE_STRING);
+                writeString(value.toString());
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buf;
+        private int pos;
+        private final int limit;
+
+        private Reader(byte[] buf, int pos, int limit) {
+            this.buf = buf;
+            this.pos = pos;
+            this.limit = limit;
+        }
+
+        private boolean hasRemaining() {
+            return pos < limit;
+        }
+
+        private int readByte() {
+            if (pos >= limit) {
+                throw new IllegalArgumentException("Truncated activity event");
+            }
+            return buf[pos++] & 0xFF;
+        }
+
+        private long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in activity event");
+        }
+
+        private long readFixed64() {
+            long result = 0;
+            for (int i = 0; i < 8; i++) {
+                result = (result << 8) | readByte();
+            }
+            return result;
+        }
+
+        private int readLength() {
+            long length = readVarint();
+            if (length < 0 || length > limit - pos) {
+                throw new IllegalArgumentException("Truncated activity event");
+            }
+            return (int) length;
+        }
+
+        private byte[] readBytes() {
+            int length = readLength();
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+
+        private String readString() {
+            int length = readLength();
+            String value = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+
+        private Reader readNested() {
+            int length = readLength();
+            Reader nested = new Reader(buf, pos, pos + length);
+            pos += length;
+            return nested;
+        }
+
+        private void skip(int wireType) {
+            switch (wireType) {
+                case WIRE_VARINT -> readVarint();
+                case WIRE_FIXED64 -> readFixed64();
+                case WIRE_BYTES -> {
+                    int length = readLength();
+                    pos += length;
+                }
+                default -> throw new IllegalArgumentException("Unknown wire type " + wireType);
+            }
+        }
+
+        private Object readValue() {
+            int tag = readByte();
+            switch (tag) {
+                case VALUE_NULL:
+                    return null;
+                case VALUE_FALSE:
+                    return Boolean.FALSE;
+                case VALUE_TRUE:
+                    return Boolean.TRUE;
+                case VALUE_INTEGER: {
+                    // Same Integer/Long split Jackson produces for JSON numbers
+                    long value = unZigZag(readVarint());
+                    if (value == (int) value) {
+                        return (int) value;
+                    }
+                    return value;
+                }
+                case VALUE_DOUBLE:
+                    return Double.longBitsToDouble(readFixed64());
+                case VALUE_STRING:
+                    return readString();
+                case VALUE_LIST: {
+                    int count = readLength();
+                    List<Object> list = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        list.add(readValue());
+                    }
+                    return list;
+                }
+                case VALUE_MAP: {
+                    int count = readLength();
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    for (int i = 0; i < count; i++) {
+                        map.put(readString(), readValue());
+                    }
+                    return map;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown value tag " + tag + " in activity event");
+            }
+        }
+    }
+}
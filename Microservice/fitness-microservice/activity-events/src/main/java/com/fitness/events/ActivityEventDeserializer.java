@@ -0,0 +1,53 @@
+package com.fitness.events;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Kafka deserializer that reads the binary activity format and hands anything else (JSON written
+ * before the switch, or by producers not yet upgraded) to a fallback deserializer.
+ */
+public class ActivityEventDeserializer<T> implements Deserializer<T> {
+
+    private final Function<ActivityEvent, T> mapper;
+    private final Deserializer<T> fallback;
+
+    protected ActivityEventDeserializer(Function<ActivityEvent, T> mapper, Deserializer<T> fallback) {
+        this.mapper = mapper;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        fallback.configure(configs, isKey);
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        return deserialize(topic, null, data);
+    }
+
+    @Override
+    public T deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (!ActivityEventCodec.isBinary(data)) {
+            return headers == null ? fallback.deserialize(topic, data) : fallback.deserialize(topic, headers, data);
+        }
+        try {
+            return mapper.apply(ActivityEventCodec.decode(data));
+        } catch (RuntimeException e) {
+            throw new SerializationException("Can't decode activity event from topic " + topic, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        fallback.close();
+    }
+}
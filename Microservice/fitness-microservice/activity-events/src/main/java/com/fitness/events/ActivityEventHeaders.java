@@ -0,0 +1,15 @@
+package com.fitness.events;
+
+// Kafka headers activity-service puts on activity events; shared so consumers don't depend on the producer
+public final class ActivityEventHeaders {
+
+    // Epoch millis when the event was handed to the producer; ai-service measures pipeline latency from it
+    public static final String SENT_AT_HEADER = "activity-sent-at";
+    // Epoch millis when the activity was written to the outbox, so the outbox wait counts towards latency too
+    public static final String ENQUEUED_AT_HEADER = "activity-enqueued-at";
+    // Present ("true") on imported historical activities; ai-service defers those instead of calling Gemini
+    public static final String BACKFILL_HEADER = "activity-backfill";
+
+    private ActivityEventHeaders() {
+    }
+}
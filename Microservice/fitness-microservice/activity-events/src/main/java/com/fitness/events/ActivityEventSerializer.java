@@ -0,0 +1,31 @@
+package com.fitness.events;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.util.function.Function;
+
+/**
+ * Kafka serializer for the binary activity format. Services subclass it with the mapping from
+ * their own Activity document, so Kafka can instantiate it from configuration.
+ */
+public class ActivityEventSerializer<T> implements Serializer<T> {
+
+    private final Function<T, ActivityEvent> mapper;
+
+    protected ActivityEventSerializer(Function<T, ActivityEvent> mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public byte[] serialize(String topic, T data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return ActivityEventCodec.encode(mapper.apply(data));
+        } catch (RuntimeException e) {
+            throw new SerializationException("Can't encode activity event for topic " + topic, e);
+        }
+    }
+}
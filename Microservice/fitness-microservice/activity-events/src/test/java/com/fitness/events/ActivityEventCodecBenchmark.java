@@ -0,0 +1,58 @@
+package com.fitness.events;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Bytes per event and encode/decode throughput of the binary format against the JSON payload the
+ * services used before. Not part of the regular build:
+ * <pre>mvn test -Dtest=ActivityEventCodecBenchmark -Dbenchmark=true</pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class ActivityEventCodecBenchmark {
+
+    private static final int WARMUP_ROUNDS = 200_000;
+    private static final int MEASURED_ROUNDS = 1_000_000;
+
+    // Same shape as Spring's JsonSerializer output: ISO dates, field names on every event
+    private final ObjectMapper json = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Test
+    void compareWithJson() throws Exception {
+        ActivityEvent event = ActivityEventCodecTest.sampleEvent();
+        byte[] binary = ActivityEventCodec.encode(event);
+        byte[] jsonBytes = json.writeValueAsBytes(event);
+
+        System.out.printf("bytes/event: binary=%d json=%d (%.0f%% of json)%n",
+                binary.length, jsonBytes.length, 100.0 * binary.length / jsonBytes.length);
+
+        run("binary encode", () -> ActivityEventCodec.encode(event));
+        run("json   encode", () -> json.writeValueAsBytes(event));
+        run("binary decode", () -> ActivityEventCodec.decode(binary));
+        run("json   decode", () -> json.readValue(jsonBytes, ActivityEvent.class));
+    }
+
+    private static void run(String name, Op op) throws Exception {
+        Object sink = null;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink = op.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            sink = op.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%s: %,.0f ops/s (%.0f ns/op)%s%n", name,
+                MEASURED_ROUNDS / (elapsed / 1e9), (double) elapsed / MEASURED_ROUNDS, sink == null ? "?" : "");
+    }
+
+    @FunctionalInterface
+    private interface Op {
+        Object run() throws Exception;
+    }
+}
@@ -0,0 +1,104 @@
+package com.fitness.events;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ActivityEventCodecTest {
+
+    static ActivityEvent sampleEvent() {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("lat", 52.5200066);
+        nested.put("lon", 13.404954);
+        Map<String, Object> additionalData = new LinkedHashMap<>();
+        additionalData.put("distanceKm", 10.5);
+        additionalData.put("avgHeartRate", 152);
+        additionalData.put("steps", 12_000_000_000L);
+        additionalData.put("indoor", false);
+        additionalData.put("note", "Tempo run – felt good");
+        additionalData.put("splits", List.of(301, 298, 305));
+        additionalData.put("start", nested);
+        additionalData.put("device", null);
+        return ActivityEvent.builder()
+                .id("66f1c2a9e4b0a1b2c3d4e5f6")
+                .userId("3f1e2d4c-5b6a-4789-9abc-def012345678")
+                .type("RUNNING")
+                .duration(45)
+                .caloriesBurned(520)
+                .startTime(LocalDateTime.of(2025, 9, 1, 6, 30, 0))
+                .additionalData(additionalData)
+                .createdAt(LocalDateTime.of(2025, 9, 1, 7, 20, 11, 123_000_000))
+                .updatedAt(LocalDateTime.of(2025, 9, 1, 7, 20, 11, 123_000_000))
+                .build();
+    }
+
+    @Test
+    void roundTripsAllFields() {
+        ActivityEvent event = sampleEvent();
+        byte[] encoded = ActivityEventCodec.encode(event);
+
+        assertTrue(ActivityEventCodec.isBinary(encoded));
+        assertEquals(event, ActivityEventCodec.decode(encoded));
+    }
+
+    @Test
+    void roundTripsNonCanonicalIdsAndUnknownTypes() {
+        ActivityEvent event = ActivityEvent.builder()
+                .id("not-an-object-id")
+                .userId("3F1E2D4C-5B6A-4789-9ABC-DEF012345678")
+                .type("ROWING")
+                .duration(-1)
+                .updatedAt(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999_000_000))
+                .build();
+
+        assertEquals(event, ActivityEventCodec.decode(ActivityEventCodec.encode(event)));
+    }
+
+    @Test
+    void emptyEventRoundTrips() {
+        ActivityEvent decoded = ActivityEventCodec.decode(ActivityEventCodec.encode(new ActivityEvent()));
+
+        assertEquals(new ActivityEvent(), decoded);
+        assertNull(decoded.getAdditionalData());
+    }
+
+    @Test
+    void skipsUnknownFields() {
+        byte[] encoded = ActivityEventCodec.encode(ActivityEvent.builder().duration(30).build());
+        // field 99 as varint, then field 98 as length-delimited, appended by a newer producer
+        byte[] extra = {(byte) 0x98, 0x06, 0x2A, (byte) 0x92, 0x06, 0x02, 0x01, 0x02};
+        byte[] extended = new byte[encoded.length + extra.length];
+        System.arraycopy(encoded, 0, extended, 0, encoded.length);
+        System.arraycopy(extra, 0, extended, encoded.length, extra.length);
+
+        assertEquals(30, ActivityEventCodec.decode(extended).getDuration());
+    }
+
+    @Test
+    void rejectsTruncatedAndUnsupportedPayloads() {
+        byte[] encoded = ActivityEventCodec.encode(sampleEvent());
+        byte[] truncated = java.util.Arrays.copyOf(encoded, encoded.length - 3);
+        assertThrows(IllegalArgumentException.class, () -> ActivityEventCodec.decode(truncated));
+
+        byte[] newerVersion = encoded.clone();
+        newerVersion[1] = 2;
+        assertThrows(IllegalArgumentException.class, () -> ActivityEventCodec.decode(newerVersion));
+    }
+
+    @Test
+    void jsonIsNotMistakenForBinary() {
+        assertFalse(ActivityEventCodec.isBinary("{\"id\":\"1\"}".getBytes()));
+        assertArrayEquals(new byte[]{ActivityEventCodec.MAGIC, ActivityEventCodec.VERSION},
+                java.util.Arrays.copyOf(ActivityEventCodec.encode(new ActivityEvent()), 2));
+    }
+}
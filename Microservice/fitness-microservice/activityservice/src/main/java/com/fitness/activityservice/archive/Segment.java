@@ -0,0 +1,254 @@
+package com.fitness.activityservice.archive;
+
+import com.fitness.activityservice.model.ActivityType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A read-only, memory-mapped archive segment written by {@link SegmentWriter}. Rows are grouped
+ * by user and ordered by startTime then id descending within a user, like the list API pages.
+ * <p>
+ * Layout (little-endian): a header with the row count, min/max startTime and section offsets; the
+ * user directory (name, first row, row count, sorted by name); the 12-byte ObjectIds; one type
+ * byte per row; frame-of-reference packed duration, calories and startTime (epoch millis) columns,
+ * each a base value, a byte width and width bytes per row; and the full BSON documents, deflated
+ * in blocks of {@link #ROWS_PER_BLOCK} rows. Column reads touch only the mapped pages they need;
+ * documents are only inflated for exports.
+ */
+public final class Segment {
+
+    static final long MAGIC = 0x3130474553544341L; // "ACTSEG01"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 100;
+    static final int ROWS_PER_BLOCK = 256;
+
+    private static final ActivityType[] TYPES = ActivityType.values();
+
+    private final Path path;
+    private final ByteBuffer data;
+    private final int rows;
+    private final long minStart;
+    private final long maxStart;
+    private final String[] users;
+    private final int[] userFirst;
+    private final int[] userRows;
+    private final int idsOffset;
+    private final int typesOffset;
+    private final Column duration;
+    private final Column calories;
+    private final Column start;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final int[] blockRawLengths;
+    private final int[] blockFirstRows;
+
+    private Segment(Path path, ByteBuffer data) {
+        this.path = path;
+        this.data = data;
+        if (data.capacity() < HEADER_SIZE || data.getLong(0) != MAGIC) {
+            throw new IllegalStateException(path + " is not an activity archive segment");
+        }
+        if (data.getInt(8) != VERSION) {
+            throw new IllegalStateException(path + " has unsupported version " + data.getInt(8));
+        }
+        rows = data.getInt(12);
+        minStart = data.getLong(16);
+        maxStart = data.getLong(24);
+        int userCount = data.getInt(32);
+        int usersOffset = section(36);
+        idsOffset = section(44);
+        typesOffset = section(52);
+        duration = new Column(section(60));
+        calories = new Column(section(68));
+        start = new Column(section(76));
+        int blocksOffset = section(84);
+
+        users = new String[userCount];
+        userFirst = new int[userCount];
+        userRows = new int[userCount];
+        int position = usersOffset;
+        for (int u = 0; u < userCount; u++) {
+            byte[] name = new byte[data.getInt(position)];
+            data.get(position + 4, name);
+            position += 4 + name.length;
+            users[u] = new String(name, StandardCharsets.UTF_8);
+            userFirst[u] = data.getInt(position);
+            userRows[u] = data.getInt(position + 4);
+            position += 8;
+        }
+
+        int blockCount = data.getInt(blocksOffset);
+        blockOffsets = new long[blockCount];
+        blockLengths = new int[blockCount];
+        blockRawLengths = new int[blockCount];
+        blockFirstRows = new int[blockCount];
+        for (int b = 0; b < blockCount; b++) {
+            int entry = blocksOffset + 4 + b * 20;
+            blockOffsets[b] = data.getLong(entry);
+            blockLengths[b] = data.getInt(entry + 8);
+            blockRawLengths[b] = data.getInt(entry + 12);
+            blockFirstRows[b] = data.getInt(entry + 16);
+        }
+    }
+
+    public static Segment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Segment(path, mapped.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public long minStart() {
+        return minStart;
+    }
+
+    public long maxStart() {
+        return maxStart;
+    }
+
+    public String[] users() {
+        return users.clone();
+    }
+
+    // {first row, row count} of the user's rows, or null if the user has none here
+    public int[] rangeOf(String userId) {
+        int u = Arrays.binarySearch(users, userId);
+        return u < 0 ? null : new int[]{userFirst[u], userRows[u]};
+    }
+
+    /**
+     * First row of the range that sorts after (startMillis, id) in the descending page order, i.e.
+     * with an older startTime, or the same one and a smaller id; the range end if there is none.
+     */
+    public int seek(int first, int count, long startMillis, String id) {
+        int low = first;
+        int high = first + count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long midStart = startMillis(mid);
+            boolean after = midStart < startMillis || (midStart == startMillis && id(mid).compareTo(id) < 0);
+            if (after) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    public String id(int row) {
+        char[] hex = new char[24];
+        int offset = idsOffset + row * 12;
+        for (int i = 0; i < 12; i++) {
+            int b = data.get(offset + i) & 0xff;
+            hex[i * 2] = Character.forDigit(b >>> 4, 16);
+            hex[i * 2 + 1] = Character.forDigit(b & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    public ActivityType type(int row) {
+        int ordinal = data.get(typesOffset + row) & 0xff;
+        return ordinal == 0 || ordinal > TYPES.length ? null : TYPES[ordinal - 1];
+    }
+
+    public Integer duration(int row) {
+        return duration.nullableInt(row);
+    }
+
+    public Integer calories(int row) {
+        return calories.nullableInt(row);
+    }
+
+    public long startMillis(int row) {
+        return start.get(row);
+    }
+
+    // The row's full BSON document
+    public byte[] document(int row) {
+        int b = Arrays.binarySearch(blockFirstRows, row);
+        if (b < 0) {
+            b = -b - 2;
+        }
+        byte[] block = inflate(b);
+        int position = 0;
+        for (int r = blockFirstRows[b]; r < row; r++) {
+            position += ByteBuffer.wrap(block, position, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        }
+        int length = ByteBuffer.wrap(block, position, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        return Arrays.copyOfRange(block, position, position + length);
+    }
+
+    private byte[] inflate(int block) {
+        byte[] compressed = new byte[blockLengths[block]];
+        data.get(Math.toIntExact(blockOffsets[block]), compressed);
+        byte[] raw = new byte[blockRawLengths[block]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int n = 0;
+            while (n < raw.length && !inflater.finished()) {
+                n += inflater.inflate(raw, n, raw.length - n);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(path + ": corrupt document block " + block, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private int section(int headerOffset) {
+        return Math.toIntExact(data.getLong(headerOffset));
+    }
+
+    private final class Column {
+        private final long base;
+        private final int width;
+        private final int valuesOffset;
+
+        Column(int offset) {
+            this.base = data.getLong(offset);
+            this.width = data.get(offset + 8);
+            this.valuesOffset = offset + 9;
+        }
+
+        long get(int row) {
+            return base + stored(row);
+        }
+
+        // Stored as value - base + 1, with 0 for null
+        Integer nullableInt(int row) {
+            long stored = stored(row);
+            return stored == 0 ? null : (int) (base + stored - 1);
+        }
+
+        private long stored(int row) {
+            long stored = 0;
+            int offset = valuesOffset + row * width;
+            for (int b = 0; b < width; b++) {
+                stored |= (data.get(offset + b) & 0xffL) << (8 * b);
+            }
+            return stored;
+        }
+    }
+}
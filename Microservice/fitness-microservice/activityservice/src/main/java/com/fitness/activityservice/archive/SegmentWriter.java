@@ -0,0 +1,248 @@
+package com.fitness.activityservice.archive;
+
+import com.fitness.activityservice.model.ActivityType;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Writes one {@link Segment} file. Rows must arrive ordered by userId ascending, then startTime and
+ * id descending (the order of user_start_idx), so each user's rows are one contiguous, already
+ * sorted range. Columns are kept in primitive arrays until {@link #finish()}; the full documents
+ * are compressed block by block to a side file as they arrive and copied in at the end.
+ */
+public final class SegmentWriter implements Closeable {
+
+    private final Path target;
+    private final Path temp;
+    private final Path docsTemp;
+    private final OutputStream docs;
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream(64 * 1024);
+    private final byte[] deflateBuffer = new byte[64 * 1024];
+
+    private final List<String> users = new ArrayList<>();
+    private final List<Integer> userFirst = new ArrayList<>();
+    private byte[] ids = new byte[12 * 1024];
+    private byte[] types = new byte[1024];
+    private long[] durations = new long[1024];
+    private long[] calories = new long[1024];
+    private long[] starts = new long[1024];
+    private int rows;
+
+    private final List<long[]> blocks = new ArrayList<>(); // {offset in docs, compressed length, raw length, first row}
+    private long docsLength;
+    private int blockFirstRow;
+    private boolean finished;
+
+    public SegmentWriter(Path target) throws IOException {
+        this.target = target;
+        this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+        this.docsTemp = target.resolveSibling(target.getFileName() + ".docs.tmp");
+        this.docs = new BufferedOutputStream(Files.newOutputStream(docsTemp), 64 * 1024);
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * @param objectId the 12 bytes of the activity's ObjectId
+     * @param document the whole activity as BSON, returned by {@link Segment#document(int)}
+     */
+    public void add(String userId, byte[] objectId, ActivityType type, Integer duration, Integer caloriesBurned,
+                    long startMillis, byte[] document) throws IOException {
+        if (objectId.length != 12) {
+            throw new IllegalArgumentException("ObjectId must be 12 bytes");
+        }
+        String lastUser = users.isEmpty() ? null : users.get(users.size() - 1);
+        if (lastUser == null || !lastUser.equals(userId)) {
+            if (lastUser != null && lastUser.compareTo(userId) > 0) {
+                throw new IllegalStateException("Rows must be ordered by userId");
+            }
+            users.add(userId);
+            userFirst.add(rows);
+        }
+        ensureCapacity(rows + 1);
+        System.arraycopy(objectId, 0, ids, rows * 12, 12);
+        types[rows] = (byte) (type == null ? 0 : type.ordinal() + 1);
+        durations[rows] = duration == null ? Long.MIN_VALUE : duration;
+        calories[rows] = caloriesBurned == null ? Long.MIN_VALUE : caloriesBurned;
+        starts[rows] = startMillis;
+        rows++;
+
+        block.write(document);
+        if (rows - blockFirstRow >= Segment.ROWS_PER_BLOCK) {
+            flushBlock();
+        }
+    }
+
+    // Writes and syncs the file, then moves it into place; returns the finished segment's row count
+    public int finish() throws IOException {
+        flushBlock();
+        docs.close();
+
+        long minStart = Long.MAX_VALUE;
+        long maxStart = Long.MIN_VALUE;
+        for (int i = 0; i < rows; i++) {
+            minStart = Math.min(minStart, starts[i]);
+            maxStart = Math.max(maxStart, starts[i]);
+        }
+
+        // Per user: name length, UTF-8 name, first row, row count
+        List<byte[]> names = new ArrayList<>(users.size());
+        int userBytes = 0;
+        for (String user : users) {
+            byte[] name = user.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            userBytes += 12 + name.length;
+        }
+        ByteBuffer userSection = ByteBuffer.allocate(userBytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int u = 0; u < users.size(); u++) {
+            int first = userFirst.get(u);
+            int next = u + 1 < users.size() ? userFirst.get(u + 1) : rows;
+            userSection.putInt(names.get(u).length).put(names.get(u)).putInt(first).putInt(next - first);
+        }
+        byte[] durationSection = packed(durations, true);
+        byte[] caloriesSection = packed(calories, true);
+        byte[] startSection = packed(starts, false);
+        ByteBuffer blockSection = ByteBuffer.allocate(4 + blocks.size() * 20).order(ByteOrder.LITTLE_ENDIAN);
+        blockSection.putInt(blocks.size());
+
+        long usersOffset = Segment.HEADER_SIZE;
+        long idsOffset = usersOffset + userSection.capacity();
+        long typesOffset = idsOffset + 12L * rows;
+        long durationOffset = typesOffset + rows;
+        long caloriesOffset = durationOffset + durationSection.length;
+        long startOffset = caloriesOffset + caloriesSection.length;
+        long blocksOffset = startOffset + startSection.length;
+        long docsOffset = blocksOffset + blockSection.capacity();
+        for (long[] b : blocks) {
+            blockSection.putLong(docsOffset + b[0]).putInt((int) b[1]).putInt((int) b[2]).putInt((int) b[3]);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(Segment.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(Segment.MAGIC).putInt(Segment.VERSION).putInt(rows)
+                .putLong(rows == 0 ? 0 : minStart).putLong(rows == 0 ? 0 : maxStart).putInt(users.size())
+                .putLong(usersOffset).putLong(idsOffset).putLong(typesOffset).putLong(durationOffset)
+                .putLong(caloriesOffset).putLong(startOffset).putLong(blocksOffset).putLong(docsOffset);
+
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            write(out, header.array());
+            write(out, userSection.array());
+            write(out, Arrays.copyOf(ids, 12 * rows));
+            write(out, Arrays.copyOf(types, rows));
+            write(out, durationSection);
+            write(out, caloriesSection);
+            write(out, startSection);
+            write(out, blockSection.array());
+            try (FileChannel in = FileChannel.open(docsTemp, StandardOpenOption.READ)) {
+                long copied = 0;
+                while (copied < docsLength) {
+                    copied += in.transferTo(copied, docsLength - copied, out);
+                }
+            }
+            out.force(true);
+        }
+        Files.deleteIfExists(docsTemp);
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        finished = true;
+        return rows;
+    }
+
+    // Drops partial output if finish() was not reached
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        if (!finished) {
+            docs.close();
+            Files.deleteIfExists(docsTemp);
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        if (rows == blockFirstRow) {
+            return;
+        }
+        byte[] raw = block.toByteArray();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        long compressed = 0;
+        while (!deflater.finished()) {
+            int n = deflater.deflate(deflateBuffer);
+            docs.write(deflateBuffer, 0, n);
+            compressed += n;
+        }
+        blocks.add(new long[]{docsLength, compressed, raw.length, blockFirstRow});
+        docsLength += compressed;
+        block.reset();
+        blockFirstRow = rows;
+    }
+
+    /**
+     * Frame-of-reference packing: base = column minimum, then each value as (value - base) in the
+     * fewest whole bytes that fit the range. Nullable columns store value - base + 1, with 0 for null.
+     */
+    private byte[] packed(long[] values, boolean nullable) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < rows; i++) {
+            if (values[i] != Long.MIN_VALUE || !nullable) {
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+            }
+        }
+        if (min == Long.MAX_VALUE) {
+            min = 0;
+            max = 0;
+        }
+        long range = max - min + (nullable ? 1 : 0);
+        int width = range == 0 ? 0 : (64 - Long.numberOfLeadingZeros(range) + 7) / 8;
+        ByteBuffer out = ByteBuffer.allocate(9 + rows * width).order(ByteOrder.LITTLE_ENDIAN);
+        out.putLong(min).put((byte) width);
+        for (int i = 0; i < rows; i++) {
+            long stored = nullable ? (values[i] == Long.MIN_VALUE ? 0 : values[i] - min + 1) : values[i] - min;
+            for (int b = 0; b < width; b++) {
+                out.put((byte) (stored >>> (8 * b)));
+            }
+        }
+        return out.array();
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= starts.length) {
+            return;
+        }
+        int capacity = Math.max(needed, starts.length * 2);
+        ids = Arrays.copyOf(ids, capacity * 12);
+        types = Arrays.copyOf(types, capacity);
+        durations = Arrays.copyOf(durations, capacity);
+        calories = Arrays.copyOf(calories, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+    }
+
+    private static void write(FileChannel out, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
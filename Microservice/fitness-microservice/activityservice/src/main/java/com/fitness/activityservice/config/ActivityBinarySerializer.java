@@ -0,0 +1,27 @@
+package com.fitness.activityservice.config;
+
+import com.fitness.activityservice.model.Activity;
+import com.fitness.events.ActivityEvent;
+import com.fitness.events.ActivityEventSerializer;
+
+// Producer value-serializer for the activity topic (see activity-service.yml)
+public class ActivityBinarySerializer extends ActivityEventSerializer<Activity> {
+
+    public ActivityBinarySerializer() {
+        super(ActivityBinarySerializer::toEvent);
+    }
+
+    static ActivityEvent toEvent(Activity activity) {
+        return ActivityEvent.builder()
+                .id(activity.getId())
+                .userId(activity.getUserId())
+                .type(activity.getType() == null ? null : activity.getType().name())
+                .duration(activity.getDuration())
+                .caloriesBurned(activity.getCaloriesBurned())
+                .startTime(activity.getStartTime())
+                .additionalData(activity.getAdditionalData())
+                .createdAt(activity.getCreatedAt())
+                .updatedAt(activity.getUpdatedAt())
+                .build();
+    }
+}
@@ -0,0 +1,21 @@
+package com.fitness.activityservice.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.listener.CommonErrorHandler;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.time.Duration;
+
+@Configuration
+public class KafkaIngestConfig {
+
+    // A batch that fails to store (e.g. Mongo unavailable) is retried from its first offset until it succeeds;
+    // records that can never be stored are handled by the listener, so giving up here would only lose data
+    @Bean
+    public CommonErrorHandler ingestErrorHandler(@Value("${activity.ingest.retry-interval:5s}") Duration retryInterval) {
+        return new DefaultErrorHandler(new FixedBackOff(retryInterval.toMillis(), FixedBackOff.UNLIMITED_ATTEMPTS));
+    }
+}
@@ -1,20 +1,61 @@
 package com.fitness.activityservice.controller;
 
+import com.fitness.activityservice.dto.ActivityPage;
 import com.fitness.activityservice.dto.ActivityRequest;
 import com.fitness.activityservice.dto.ActivityResponse;
+import com.fitness.activityservice.dto.ActivityStatsResponse;
+import com.fitness.activityservice.dto.BatchActivityResponse;
+import com.fitness.activityservice.dto.LeaderboardPage;
+import com.fitness.activityservice.dto.NearbyRoutesResponse;
+import com.fitness.activityservice.dto.PercentileResponse;
+import com.fitness.activityservice.dto.SampleBatchRequest;
+import com.fitness.activityservice.dto.SampleSeriesResponse;
+import com.fitness.activityservice.model.ActivitySampleStats;
+import com.fitness.activityservice.model.ImportJob;
+import com.fitness.activityservice.model.ActivityType;
+import com.fitness.activityservice.service.ActivityArchiveService;
+import com.fitness.activityservice.service.ActivityBatchService;
+import com.fitness.activityservice.service.ActivityExportService;
+import com.fitness.activityservice.service.ActivityImportService;
+import com.fitness.activityservice.service.ActivityLeaderboardService;
+import com.fitness.activityservice.service.ActivityPercentileService;
+import com.fitness.activityservice.service.ActivityQueryService;
+import com.fitness.activityservice.service.ActivityRollupService;
+import com.fitness.activityservice.service.ActivityRouteService;
+import com.fitness.activityservice.service.ActivitySampleService;
 import com.fitness.activityservice.service.ActivityService;
+import com.fitness.activityservice.service.ActivityTrackService;
+import com.fitness.activityservice.service.IdempotencyService;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,9 +69,43 @@ public class ActivityController {
     @Autowired
     private ActivityService activityService;
 
+    @Autowired
+    private ActivityBatchService activityBatchService;
+
+    @Autowired
+    private ActivityQueryService activityQueryService;
+
+    @Autowired
+    private ActivityRollupService activityRollupService;
+
+    @Autowired
+    private ActivityArchiveService activityArchiveService;
+
+    @Autowired
+    private ActivityExportService activityExportService;
+
+    @Autowired
+    private ActivitySampleService activitySampleService;
+
+    @Autowired
+    private ActivityTrackService activityTrackService;
+
+    @Autowired
+    private ActivityImportService activityImportService;
+
+    @Autowired
+    private ActivityPercentileService activityPercentileService;
+
+    @Autowired
+    private ActivityLeaderboardService activityLeaderboardService;
+
+    @Autowired
+    private ActivityRouteService activityRouteService;
+
 
     @PostMapping
-    public ResponseEntity<?> trackActivity(@Valid @RequestBody ActivityRequest request, BindingResult br) {
+    public ResponseEntity<?> trackActivity(@Valid @RequestBody ActivityRequest request, BindingResult br,
+                                           @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         if (br.hasErrors()) {
             Map<String, String> errors = new HashMap<>();
             List<FieldError> fieldErrors = br.getFieldErrors();
@@ -41,9 +116,191 @@ public class ActivityController {
 
         long start = System.currentTimeMillis();
         log.info("[HTTP POST] /api/activities userId={}, type={}, duration={}", request.getUserId(), request.getType(), request.getDuration());
-        ActivityResponse response = activityService.trackActivity(request);
+        ActivityResponse response = activityService.trackActivity(request, idempotencyKey);
         log.info("[HTTP 200] /api/activities completed in {} ms, activityId={}", (System.currentTimeMillis()-start), response.getId());
         return ResponseEntity.ok(response);
 
     }
+
+    // Body is read straight from the stream (a JSON array), not bound up front
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BatchActivityResponse> trackActivities(InputStream body) throws IOException {
+        long start = System.currentTimeMillis();
+        log.info("[HTTP POST] /api/activities/batch");
+        BatchActivityResponse response = activityBatchService.trackActivities(body);
+        log.info("[HTTP {}] /api/activities/batch completed in {} ms, total={}, created={}, failed={}",
+                response.getFailed() == 0 ? 200 : 207, (System.currentTimeMillis()-start),
+                response.getTotal(), response.getCreated(), response.getFailed());
+        // 207 Multi-Status when some items were not stored
+        return ResponseEntity.status(response.getFailed() == 0 ? HttpStatus.OK : HttpStatus.MULTI_STATUS).body(response);
+    }
+
+    // Newest first; pass the returned 'next' as ?after= for the following page
+    @GetMapping
+    public ResponseEntity<ActivityPage> getActivities(
+            @RequestParam String userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) ActivityType type,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after) {
+        long start = System.currentTimeMillis();
+        log.info("[HTTP GET] /api/activities userId={}, type={}, from={}, to={}, limit={}", userId, type, from, to, limit);
+        ActivityPage page = activityQueryService.listActivities(userId, from, to, type, limit, after);
+        log.info("[HTTP 200] /api/activities completed in {} ms, items={}", (System.currentTimeMillis()-start), page.getItems().size());
+        return ResponseEntity.ok(page);
+    }
+
+    // Served from the activity_rollups buckets only; period is DAY or WEEK (ISO weeks)
+    @GetMapping("/stats")
+    public ResponseEntity<ActivityStatsResponse> getStats(
+            @RequestParam String userId,
+            @RequestParam(defaultValue = "DAY") String period,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        log.info("[HTTP GET] /api/activities/stats userId={}, period={}, from={}, to={}", userId, period, from, to);
+        return ResponseEntity.ok(activityRollupService.getStats(userId, period, from, to));
+    }
+
+    // Regenerates rollups from raw activities: synchronously for one user, in the background for all
+    @PostMapping("/stats/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildStats(@RequestParam(required = false) String userId) {
+        log.info("[HTTP POST] /api/activities/stats/rebuild userId={}", userId);
+        if (userId != null) {
+            int buckets = activityRollupService.rebuildUser(userId);
+            return ResponseEntity.ok(Map.of("userId", userId, "buckets", buckets));
+        }
+        if (!activityRollupService.startRebuildAll()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("status", "ALREADY_RUNNING"));
+        }
+        return ResponseEntity.accepted().body(Map.of("status", "STARTED"));
+    }
+
+    // Moves activities older than activity.archive.older-than-months into archive segments, in the background
+    @PostMapping("/archive/run")
+    public ResponseEntity<Map<String, Object>> runArchive() {
+        log.info("[HTTP POST] /api/activities/archive/run");
+        if (!activityArchiveService.startRun()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("status", "ALREADY_RUNNING"));
+        }
+        return ResponseEntity.accepted().body(Map.of("status", "STARTED"));
+    }
+
+    // Weekly challenge ranking by total calories or duration, served from in-memory boards; pass nextOffset
+    // as ?offset= for the following page. userId adds that user's own standing
+    @GetMapping("/leaderboard")
+    public ResponseEntity<LeaderboardPage> getLeaderboard(
+            @RequestParam ActivityType type,
+            @RequestParam(defaultValue = "calories") String metric,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate week,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String userId) {
+        log.info("[HTTP GET] /api/activities/leaderboard type={}, metric={}, week={}, offset={}, limit={}",
+                type, metric, week, offset, limit);
+        return ResponseEntity.ok(activityLeaderboardService.getPage(type, metric, week, offset, limit, userId));
+    }
+
+    // Most popular routes (start/end geohash cells) starting within radius meters, for the map screen
+    @GetMapping("/routes/nearby")
+    public ResponseEntity<NearbyRoutesResponse> getNearbyRoutes(
+            @RequestParam double lat,
+            @RequestParam double lon,
+            @RequestParam(defaultValue = "2000") double radius,
+            @RequestParam(required = false) ActivityType type,
+            @RequestParam(defaultValue = "20") int limit) {
+        log.info("[HTTP GET] /api/activities/routes/nearby lat={}, lon={}, radius={}, type={}", lat, lon, radius, type);
+        return ResponseEntity.ok(activityRouteService.nearby(lat, lon, radius, type, limit));
+    }
+
+    // Rank of a value among all users' activities of the type in the week containing 'date' (default: this week).
+    // metric: duration (minutes), calories or intensity (kcal/min)
+    @GetMapping("/percentiles")
+    public ResponseEntity<PercentileResponse> getPercentile(
+            @RequestParam ActivityType type,
+            @RequestParam String metric,
+            @RequestParam double value,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        log.info("[HTTP GET] /api/activities/percentiles type={}, metric={}, value={}, date={}", type, metric, value, date);
+        return ResponseEntity.ok(activityPercentileService.rank(type, metric, value, date));
+    }
+
+    // Full history, oldest first, streamed from a Mongo cursor rather than built in memory
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportActivities(@RequestParam String userId,
+                                                                  @RequestParam(defaultValue = "ndjson") String format) {
+        if (!ActivityExportService.isSupported(format)) {
+            throw new IllegalArgumentException("format must be ndjson or csv");
+        }
+        log.info("[HTTP GET] /api/activities/export userId={}, format={}", userId, format);
+        StreamingResponseBody body = out -> activityExportService.export(userId, format, out);
+        return ResponseEntity.ok()
+                .contentType("csv".equals(format) ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                        : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("activities-" + userId + "." + format).build().toString())
+                .body(body);
+    }
+
+    // Heart-rate/GPS samples; stored outside the Activity, which only gets the updated summary.
+    // Idempotency-Key is required (400 without it) so a retried upload is not stored twice
+    @PostMapping("/{activityId}/samples")
+    public ResponseEntity<ActivitySampleStats> addSamples(@PathVariable String activityId,
+                                                          @Valid @RequestBody SampleBatchRequest request,
+                                                          @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        log.info("[HTTP POST] /api/activities/{}/samples count={}", activityId, request.getSamples().size());
+        return ResponseEntity.of(activitySampleService.addSamples(activityId, request.getSamples(), idempotencyKey));
+    }
+
+    // resolution is the bucket width in seconds; omitted means as fine as the point limit allows
+    @GetMapping("/{activityId}/samples")
+    public ResponseEntity<SampleSeriesResponse> getSamples(
+            @PathVariable String activityId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) Integer resolution) {
+        log.info("[HTTP GET] /api/activities/{}/samples from={}, to={}, resolution={}", activityId, from, to, resolution);
+        return ResponseEntity.of(activitySampleService.getSamples(activityId, from, to, resolution));
+    }
+
+    // Where this activity ranks among all users' activities of its type in its week, per metric
+    @GetMapping("/{activityId}/percentiles")
+    public ResponseEntity<PercentileResponse> getActivityPercentiles(@PathVariable String activityId) {
+        log.info("[HTTP GET] /api/activities/{}/percentiles", activityId);
+        return ResponseEntity.of(activityPercentileService.rankActivity(activityId));
+    }
+
+    // TrackCodec blob for map/chart views; level picks a pre-simplified version (0 = finest), none = full
+    @GetMapping("/{activityId}/track")
+    public ResponseEntity<byte[]> getTrack(@PathVariable String activityId,
+                                           @RequestParam(required = false) Integer level) {
+        log.info("[HTTP GET] /api/activities/{}/track level={}", activityId, level);
+        return activityTrackService.getTrack(activityId, level)
+                .map(track -> ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .header("X-Track-Points", String.valueOf(track.points()))
+                        .header("X-Track-Levels", String.valueOf(track.levelCount()))
+                        .body(track.data()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // GPX/TCX/CSV workout files, processed in the background; poll the returned job for progress.
+    // format applies to all files (default: each file's extension); times with an offset or Z
+    // are converted to timezone, bare local times are stored as they are
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ImportJob> importActivities(@RequestParam String userId,
+                                                      @RequestParam("files") List<MultipartFile> files,
+                                                      @RequestParam(required = false) String format,
+                                                      @RequestParam(defaultValue = "UTC") ZoneId timezone) throws IOException {
+        log.info("[HTTP POST] /api/activities/import userId={}, files={}, format={}", userId, files.size(), format);
+        ImportJob job = activityImportService.startImport(userId, files, format, timezone);
+        return ResponseEntity.accepted()
+                .header(HttpHeaders.LOCATION, "/api/activities/import/" + job.getId())
+                .body(job);
+    }
+
+    @GetMapping("/import/{jobId}")
+    public ResponseEntity<ImportJob> getImportJob(@PathVariable String jobId) {
+        return ResponseEntity.of(activityImportService.getJob(jobId));
+    }
 }
@@ -1,5 +1,6 @@
 package com.fitness.activityservice.dto;
 
+import com.fitness.activityservice.model.ActivitySampleStats;
 import com.fitness.activityservice.model.ActivityType;
 import lombok.Data;
 
@@ -19,6 +20,8 @@ public class ActivityResponse {
 
     private Map<String,Object> additionalData;
 
+    private ActivitySampleStats sampleStats;
+
 
     private LocalDateTime createdAt;
 
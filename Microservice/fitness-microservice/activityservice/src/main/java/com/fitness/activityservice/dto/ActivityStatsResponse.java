@@ -0,0 +1,37 @@
+package com.fitness.activityservice.dto;
+
+import com.fitness.activityservice.model.RollupTotals;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityStatsResponse {
+    private String userId;
+    // DAY | WEEK
+    private String period;
+    private LocalDate from;
+    private LocalDate to;
+    // Totals over all buckets in the range
+    private RollupTotals totals;
+    private Map<String, RollupTotals> byType;
+    // Only buckets that have activities, oldest first
+    private List<Bucket> buckets;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Bucket {
+        private LocalDate start;
+        private RollupTotals totals;
+        private Map<String, RollupTotals> byType;
+    }
+}
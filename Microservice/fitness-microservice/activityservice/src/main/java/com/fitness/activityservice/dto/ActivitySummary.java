@@ -0,0 +1,16 @@
+package com.fitness.activityservice.dto;
+
+import com.fitness.activityservice.model.ActivityType;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+// List-view row; every field is in the activity list indexes, so these queries are covered
+@Data
+public class ActivitySummary {
+    private String id;
+    private ActivityType type;
+    private Integer duration; // in minutes
+    private Integer caloriesBurned;
+    private LocalDateTime startTime;
+}
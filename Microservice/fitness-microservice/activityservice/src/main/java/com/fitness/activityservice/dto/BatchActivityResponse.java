@@ -0,0 +1,17 @@
+package com.fitness.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchActivityResponse {
+    private int total;
+    private int created;
+    private int failed;
+    private List<BatchItemResult> results;
+}
@@ -0,0 +1,24 @@
+package com.fitness.activityservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+    // Position of the item in the request array
+    private int index;
+    // CREATED | INVALID | REJECTED | FAILED
+    private String status;
+    private String activityId;
+    private String error;
+    private Map<String, String> errors;
+}
@@ -0,0 +1,15 @@
+package com.fitness.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LeaderboardEntry {
+    private int rank;
+    private String userId;
+    // Week total: kcal for calories, minutes for duration
+    private long value;
+}
@@ -0,0 +1,28 @@
+package com.fitness.activityservice.dto;
+
+import com.fitness.activityservice.model.ActivityType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class LeaderboardPage {
+    private ActivityType type;
+    private String metric;
+    // Monday of the ISO week
+    private LocalDate week;
+    // Users with at least one activity of the type this week; only the top entries are ranked
+    private int participants;
+    private List<LeaderboardEntry> entries;
+    // Pass as ?offset= for the next page; null on the last page
+    private Integer nextOffset;
+    // The requesting user's own standing when userId is given; rank 0 means outside the ranked top
+    private LeaderboardEntry you;
+}
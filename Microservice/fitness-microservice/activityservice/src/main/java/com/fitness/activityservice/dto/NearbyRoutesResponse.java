@@ -0,0 +1,40 @@
+package com.fitness.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class NearbyRoutesResponse {
+    private double lat;
+    private double lon;
+    private double radiusMeters;
+    // "grid" (in-memory index) or "mongo" (2dsphere query, nearest activities only)
+    private String source;
+    private List<Route> routes;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Route {
+        // Geohash cells and their centers; end is null when the activities had no end point
+        private String startCell;
+        private double startLat;
+        private double startLon;
+        private String endCell;
+        private Double endLat;
+        private Double endLon;
+        private long activityCount;
+        private Map<String, Long> byType;
+        // From the query point to the start cell's center
+        private double distanceMeters;
+        private String latestActivityId;
+        private LocalDateTime latestStartTime;
+    }
+}
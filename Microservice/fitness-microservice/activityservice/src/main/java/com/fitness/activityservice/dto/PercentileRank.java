@@ -0,0 +1,19 @@
+package com.fitness.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PercentileRank {
+    private String metric;
+    private double value;
+    // Activities of the same type and week the rank is based on
+    private long sampleSize;
+    // Share of those activities with a lower value, 0-100; null when there are none yet
+    private Double percentile;
+    // 100 - percentile, i.e. "top 20%"
+    private Double topPercent;
+}
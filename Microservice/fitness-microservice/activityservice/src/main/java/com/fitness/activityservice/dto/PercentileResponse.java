@@ -0,0 +1,19 @@
+package com.fitness.activityservice.dto;
+
+import com.fitness.activityservice.model.ActivityType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PercentileResponse {
+    // Null when ranking a plain value rather than a stored activity
+    private String activityId;
+    private ActivityType type;
+    private String week;
+    private List<PercentileRank> ranks;
+}
@@ -0,0 +1,13 @@
+package com.fitness.activityservice.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class SampleBatchRequest {
+    @NotNull(message = "samples is required")
+    private List<@Valid SampleRequest> samples;
+}
@@ -0,0 +1,24 @@
+package com.fitness.activityservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.time.Instant;
+
+// One point of a downsampled series: averages over the bucket, except where noted
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SamplePoint {
+    // Start of the bucket
+    private Instant timestamp;
+    private Double heartRate;
+    private Integer maxHeartRate;
+    // Last position in the bucket
+    private Double latitude;
+    private Double longitude;
+    private Double altitude;
+    // Furthest distance reached in the bucket
+    private Double distance;
+    private Double speed;
+    private Double cadence;
+}
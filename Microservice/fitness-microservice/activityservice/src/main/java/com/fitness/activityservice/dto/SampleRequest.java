@@ -0,0 +1,33 @@
+package com.fitness.activityservice.dto;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+public class SampleRequest {
+    @NotNull(message = "timestamp is required")
+    private Instant timestamp;
+
+    @Min(value = 0, message = "heartRate must be >= 0")
+    private Integer heartRate;
+
+    @Min(value = -90, message = "latitude must be >= -90")
+    @Max(value = 90, message = "latitude must be <= 90")
+    private Double latitude;
+
+    @Min(value = -180, message = "longitude must be >= -180")
+    @Max(value = 180, message = "longitude must be <= 180")
+    private Double longitude;
+
+    private Double altitude;
+
+    @Min(value = 0, message = "distance must be >= 0")
+    private Double distance;
+
+    private Double speed;
+    private Integer cadence;
+}
@@ -0,0 +1,20 @@
+package com.fitness.activityservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SampleSeriesResponse {
+    private String activityId;
+    // Bucket width actually used; may be coarser than requested to stay under the point limit
+    private int resolutionSeconds;
+    private Instant from;
+    private Instant to;
+    private List<SamplePoint> points;
+}
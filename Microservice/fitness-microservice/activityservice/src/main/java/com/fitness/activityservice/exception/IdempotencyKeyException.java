@@ -0,0 +1,15 @@
+package com.fitness.activityservice.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+// 409 while the original request is still in flight, 422 when a key is reused for a different request
+@Getter
+public class IdempotencyKeyException extends RuntimeException {
+    private final HttpStatus status;
+
+    public IdempotencyKeyException(HttpStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+}
@@ -0,0 +1,9 @@
+package com.fitness.activityservice.exception;
+
+// USER-SERVICE could not answer, so a user is neither known valid nor known invalid
+public class UserServiceUnavailableException extends RuntimeException {
+
+    public UserServiceUnavailableException(String message) {
+        super(message);
+    }
+}
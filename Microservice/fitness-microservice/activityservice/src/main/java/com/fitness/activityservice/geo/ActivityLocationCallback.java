@@ -0,0 +1,21 @@
+package com.fitness.activityservice.geo;
+
+import com.fitness.activityservice.model.Activity;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertCallback;
+import org.springframework.stereotype.Component;
+
+// Fills the indexed start/end locations from additionalData on every write path (save, insert and bulk insert)
+@Component
+public class ActivityLocationCallback implements BeforeConvertCallback<Activity> {
+
+    @Override
+    public Activity onBeforeConvert(Activity activity, String collection) {
+        if (activity.getStartLocation() == null) {
+            activity.setStartLocation(ActivityLocations.start(activity.getAdditionalData()));
+        }
+        if (activity.getEndLocation() == null) {
+            activity.setEndLocation(ActivityLocations.end(activity.getAdditionalData()));
+        }
+        return activity;
+    }
+}
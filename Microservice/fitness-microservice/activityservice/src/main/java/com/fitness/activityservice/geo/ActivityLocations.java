@@ -0,0 +1,125 @@
+package com.fitness.activityservice.geo;
+
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads start and end coordinates out of an activity's free-form additionalData. Accepted shapes,
+ * in order of preference:
+ * <ul>
+ *     <li>flat keys: startLat/startLon (also startLatitude, startLng, startLongitude), same for end</li>
+ *     <li>an object under start/startLocation/startPoint (end...): {lat, lon|lng} or {latitude, longitude},
+ *     or a GeoJSON Point</li>
+ *     <li>the first and last point of a route/path: a GeoJSON LineString or a list of {lat, lon} objects</li>
+ * </ul>
+ * Anything else, or coordinates out of range, yields null.
+ */
+public final class ActivityLocations {
+
+    private static final String[] ROUTE_KEYS = {"route", "path", "track"};
+
+    private ActivityLocations() {
+    }
+
+    public static GeoJsonPoint start(Map<String, Object> data) {
+        return find(data, "start", true);
+    }
+
+    public static GeoJsonPoint end(Map<String, Object> data) {
+        return find(data, "end", false);
+    }
+
+    private static GeoJsonPoint find(Map<String, Object> data, String prefix, boolean first) {
+        if (data == null || data.isEmpty()) {
+            return null;
+        }
+        GeoJsonPoint point = point(
+                number(data, prefix + "Lat", prefix + "Latitude"),
+                number(data, prefix + "Lon", prefix + "Lng", prefix + "Longitude"));
+        if (point != null) {
+            return point;
+        }
+        for (String key : new String[]{prefix, prefix + "Location", prefix + "Point"}) {
+            point = parsePoint(data.get(key));
+            if (point != null) {
+                return point;
+            }
+        }
+        for (String key : ROUTE_KEYS) {
+            point = routeEnd(data.get(key), first);
+            if (point != null) {
+                return point;
+            }
+        }
+        return null;
+    }
+
+    private static GeoJsonPoint parsePoint(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            if ("Point".equals(map.get("type"))) {
+                return lonLat(map.get("coordinates"));
+            }
+            return point(number(map, "lat", "latitude"), number(map, "lon", "lng", "longitude"));
+        }
+        return null;
+    }
+
+    private static GeoJsonPoint routeEnd(Object value, boolean first) {
+        List<?> points = null;
+        boolean geoJson = false;
+        if (value instanceof Map<?, ?> map && "LineString".equals(map.get("type")) && map.get("coordinates") instanceof List<?> list) {
+            points = list;
+            geoJson = true;
+        } else if (value instanceof List<?> list) {
+            points = list;
+        }
+        if (points == null || points.isEmpty()) {
+            return null;
+        }
+        Object end = points.get(first ? 0 : points.size() - 1);
+        return geoJson ? lonLat(end) : parsePoint(end);
+    }
+
+    // GeoJSON order: [longitude, latitude]
+    private static GeoJsonPoint lonLat(Object coordinates) {
+        if (coordinates instanceof List<?> list && list.size() >= 2) {
+            return point(toDouble(list.get(1)), toDouble(list.get(0)));
+        }
+        return null;
+    }
+
+    private static GeoJsonPoint point(Double lat, Double lon) {
+        if (lat == null || lon == null || lat < -90 || lat > 90 || lon < -180 || lon > 180) {
+            return null;
+        }
+        return new GeoJsonPoint(lon, lat);
+    }
+
+    private static Double number(Map<?, ?> map, String... keys) {
+        for (String key : keys) {
+            Double value = toDouble(map.get(key));
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static Double toDouble(Object value) {
+        if (value instanceof Number number) {
+            double d = number.doubleValue();
+            return Double.isFinite(d) ? d : null;
+        }
+        if (value instanceof String text) {
+            try {
+                double d = Double.parseDouble(text.trim());
+                return Double.isFinite(d) ? d : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,143 @@
+package com.fitness.activityservice.geo;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Standard base32 geohash. At precision p a cell is 180/2^floor(5p/2) degrees of latitude by
+ * 360/2^ceil(5p/2) degrees of longitude, e.g. about 1.2 x 0.6 km at precision 6.
+ */
+public final class Geohash {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final double METERS_PER_DEGREE = 6_371_008.8 * Math.PI / 180;
+
+    private Geohash() {
+    }
+
+    public static String encode(double lat, double lon, int precision) {
+        double minLat = -90, maxLat = 90, minLon = -180, maxLon = 180;
+        char[] hash = new char[precision];
+        boolean evenBit = true;
+        for (int i = 0; i < precision; i++) {
+            int value = 0;
+            for (int bit = 0; bit < 5; bit++) {
+                if (evenBit) {
+                    double mid = (minLon + maxLon) / 2;
+                    if (lon >= mid) {
+                        value = (value << 1) | 1;
+                        minLon = mid;
+                    } else {
+                        value <<= 1;
+                        maxLon = mid;
+                    }
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if (lat >= mid) {
+                        value = (value << 1) | 1;
+                        minLat = mid;
+                    } else {
+                        value <<= 1;
+                        maxLat = mid;
+                    }
+                }
+                evenBit = !evenBit;
+            }
+            hash[i] = BASE32[value];
+        }
+        return new String(hash);
+    }
+
+    // {minLat, minLon, maxLat, maxLon}
+    public static double[] bounds(String hash) {
+        double minLat = -90, maxLat = 90, minLon = -180, maxLon = 180;
+        boolean evenBit = true;
+        for (int i = 0; i < hash.length(); i++) {
+            int value = indexOf(hash.charAt(i));
+            for (int bit = 4; bit >= 0; bit--) {
+                boolean set = ((value >> bit) & 1) == 1;
+                if (evenBit) {
+                    double mid = (minLon + maxLon) / 2;
+                    if (set) {
+                        minLon = mid;
+                    } else {
+                        maxLon = mid;
+                    }
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if (set) {
+                        minLat = mid;
+                    } else {
+                        maxLat = mid;
+                    }
+                }
+                evenBit = !evenBit;
+            }
+        }
+        return new double[]{minLat, minLon, maxLat, maxLon};
+    }
+
+    // {lat, lon} of the cell center
+    public static double[] center(String hash) {
+        double[] b = bounds(hash);
+        return new double[]{(b[0] + b[2]) / 2, (b[1] + b[3]) / 2};
+    }
+
+    public static double cellHeightDegrees(int precision) {
+        return 180 / Math.pow(2, (5 * precision) / 2);
+    }
+
+    public static double cellWidthDegrees(int precision) {
+        return 360 / Math.pow(2, (5 * precision + 1) / 2);
+    }
+
+    /**
+     * Cells overlapping the bounding box of the circle, by stepping one cell at a time across the
+     * box. Empty if that would be more than maxCells, so callers can fall back to something else.
+     */
+    public static Set<String> cellsAround(double lat, double lon, double radiusMeters, int precision, int maxCells) {
+        double dLat = radiusMeters / METERS_PER_DEGREE;
+        double cos = Math.cos(Math.toRadians(lat));
+        double dLon = cos < 1e-6 ? 180 : Math.min(180, radiusMeters / (METERS_PER_DEGREE * cos));
+        double height = cellHeightDegrees(precision);
+        double width = cellWidthDegrees(precision);
+        double minLat = Math.max(-90, lat - dLat);
+        double maxLat = Math.min(90, lat + dLat);
+        long rows = (long) Math.ceil((maxLat - minLat) / height) + 1;
+        long columns = (long) Math.ceil(2 * dLon / width) + 1;
+        if (rows * columns > maxCells) {
+            return Set.of();
+        }
+        Set<String> cells = new LinkedHashSet<>();
+        for (long r = 0; r < rows; r++) {
+            double cellLat = Math.min(maxLat, minLat + r * height);
+            for (long c = 0; c < columns; c++) {
+                double cellLon = normalizeLongitude(Math.min(lon + dLon, lon - dLon + c * width));
+                cells.add(encode(Math.min(cellLat, 90 - 1e-9), cellLon, precision));
+            }
+        }
+        return cells;
+    }
+
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * 6_371_008.8 * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static double normalizeLongitude(double lon) {
+        double normalized = ((lon + 180) % 360 + 360) % 360 - 180;
+        return normalized == 180 ? -180 : normalized;
+    }
+
+    private static int indexOf(char c) {
+        for (int i = 0; i < BASE32.length; i++) {
+            if (BASE32[i] == c) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Invalid geohash character '" + c + "'");
+    }
+}
@@ -0,0 +1,113 @@
+package com.fitness.activityservice.geo;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Route popularity on a geohash grid. A route is the pair (start cell, end cell); activities
+ * without an end point count towards (start cell, unknown end). Lookups read cells, never
+ * individual activities.
+ */
+public final class RouteGrid {
+
+    // Past this many cells around the query point it is cheaper to check every populated cell
+    private static final int MAX_CELLS = 10_000;
+
+    public record Route(String startCell, String endCell, long count, Map<String, Long> byType,
+                        String latestActivityId, LocalDateTime latestStartTime, double distanceMeters) {
+    }
+
+    private final int precision;
+    // start cell -> end cell ("" when unknown) -> stats
+    private final Map<String, Map<String, Stats>> cells = new ConcurrentHashMap<>();
+
+    public RouteGrid(int precision) {
+        this.precision = precision;
+    }
+
+    public int precision() {
+        return precision;
+    }
+
+    public void add(double startLat, double startLon, Double endLat, Double endLon, String type,
+                    String activityId, LocalDateTime startTime) {
+        String start = Geohash.encode(startLat, startLon, precision);
+        String end = endLat == null || endLon == null ? "" : Geohash.encode(endLat, endLon, precision);
+        Map<String, Stats> routes = cells.computeIfAbsent(start, k -> new HashMap<>());
+        synchronized (routes) {
+            routes.computeIfAbsent(end, k -> new Stats()).add(type, activityId, startTime);
+        }
+    }
+
+    /**
+     * Most popular routes starting within radius of the point (by cell center, allowing for the
+     * cell's half diagonal), most activities first.
+     *
+     * @param type only count activities of this type; null for all
+     */
+    public List<Route> near(double lat, double lon, double radiusMeters, String type, int limit) {
+        Set<String> around = Geohash.cellsAround(lat, lon, radiusMeters, precision, MAX_CELLS);
+        Collection<String> candidates = around.isEmpty() || around.size() > cells.size() ? cells.keySet() : around;
+        double halfDiagonal = halfDiagonalMeters(lat);
+        List<Route> routes = new ArrayList<>();
+        for (String cell : candidates) {
+            Map<String, Stats> fromCell = cells.get(cell);
+            if (fromCell == null) {
+                continue;
+            }
+            double[] center = Geohash.center(cell);
+            double distance = Geohash.distanceMeters(lat, lon, center[0], center[1]);
+            if (distance > radiusMeters + halfDiagonal) {
+                continue;
+            }
+            synchronized (fromCell) {
+                fromCell.forEach((end, stats) -> {
+                    long count = type == null ? stats.count : stats.byType.getOrDefault(type, 0L);
+                    if (count > 0) {
+                        routes.add(new Route(cell, end.isEmpty() ? null : end, count, new TreeMap<>(stats.byType),
+                                stats.latestActivityId, stats.latestStartTime, Math.round(distance * 10) / 10.0));
+                    }
+                });
+            }
+        }
+        routes.sort(Comparator.comparingLong(Route::count).reversed().thenComparingDouble(Route::distanceMeters));
+        return routes.size() > limit ? new ArrayList<>(routes.subList(0, limit)) : routes;
+    }
+
+    public int cellCount() {
+        return cells.size();
+    }
+
+    private double halfDiagonalMeters(double lat) {
+        double metersPerDegree = 6_371_008.8 * Math.PI / 180;
+        double height = Geohash.cellHeightDegrees(precision) * metersPerDegree;
+        double width = Geohash.cellWidthDegrees(precision) * metersPerDegree * Math.cos(Math.toRadians(lat));
+        return Math.hypot(height, width) / 2;
+    }
+
+    private static final class Stats {
+        private long count;
+        private final Map<String, Long> byType = new HashMap<>();
+        private String latestActivityId;
+        private LocalDateTime latestStartTime;
+
+        private void add(String type, String activityId, LocalDateTime startTime) {
+            count++;
+            if (type != null) {
+                byType.merge(type, 1L, Long::sum);
+            }
+            if (startTime != null && (latestStartTime == null || startTime.isAfter(latestStartTime))) {
+                latestStartTime = startTime;
+                latestActivityId = activityId;
+            }
+        }
+    }
+}
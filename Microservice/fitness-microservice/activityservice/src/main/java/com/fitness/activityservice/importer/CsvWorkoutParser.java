@@ -0,0 +1,123 @@
+package com.fitness.activityservice.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One workout per line, columns by header name (case-insensitive): startTime, type, duration
+ * (minutes) are required; caloriesBurned, distance (meters), avgHeartRate and maxHeartRate are
+ * optional. Quoted fields follow RFC 4180 but may not span lines.
+ */
+class CsvWorkoutParser implements WorkoutParser {
+
+    @Override
+    public void parse(InputStream in, ZoneId zone, Sink sink) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String header = reader.readLine();
+        if (header == null) {
+            return;
+        }
+        if (header.startsWith("\uFEFF")) {
+            header = header.substring(1);
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> names = split(header);
+        for (int i = 0; i < names.size(); i++) {
+            columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String required : List.of("starttime", "type", "duration")) {
+            if (!columns.containsKey(required)) {
+                throw new IOException("CSV header is missing the '" + required + "' column");
+            }
+        }
+
+        String line;
+        int lineNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = split(line);
+            try {
+                String startTime = field(fields, columns, "starttime");
+                if (startTime == null) {
+                    sink.reject("line " + lineNumber, "startTime is required");
+                    continue;
+                }
+                Double duration = number(fields, columns, "duration");
+                if (duration == null || duration < 0) {
+                    sink.reject("line " + lineNumber, "duration is required");
+                    continue;
+                }
+                Double calories = number(fields, columns, "caloriesburned");
+                Double maxHeartRate = number(fields, columns, "maxheartrate");
+                sink.accept(WorkoutSummary.builder()
+                        .type(WorkoutParser.typeOf(field(fields, columns, "type")))
+                        .startTime(WorkoutParser.parseTime(startTime, zone))
+                        .durationSeconds(Math.round(duration * 60))
+                        .calories(calories == null ? 0 : (int) Math.round(calories))
+                        .distanceMeters(number(fields, columns, "distance"))
+                        .avgHeartRate(number(fields, columns, "avgheartrate"))
+                        .maxHeartRate(maxHeartRate == null ? null : (int) Math.round(maxHeartRate))
+                        .build());
+            } catch (DateTimeParseException e) {
+                sink.reject("line " + lineNumber, "unreadable startTime");
+            } catch (NumberFormatException e) {
+                sink.reject("line " + lineNumber, "not a number: " + e.getMessage());
+            }
+        }
+    }
+
+    private static String field(List<String> fields, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static Double number(List<String> fields, Map<String, Integer> columns, String name) {
+        String value = field(fields, columns, name);
+        return value == null ? null : Double.valueOf(value);
+    }
+
+    static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,180 @@
+package com.fitness.activityservice.importer;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
+/**
+ * GPX 1.1: one workout per &lt;trk&gt;. Duration is first to last point time, distance the sum of
+ * great-circle steps between points, heart rate from the Garmin TrackPointExtension &lt;hr&gt;.
+ * GPX has no calories, so imported GPX activities get 0.
+ */
+class GpxParser implements WorkoutParser {
+
+    private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+    @Override
+    public void parse(InputStream in, ZoneId zone, Sink sink) throws IOException {
+        try {
+            XMLStreamReader xml = StaxSupport.open(in);
+            try {
+                int trackNumber = 0;
+                Accumulator track = null;
+                Point point = null;
+                while (xml.hasNext()) {
+                    int event = xml.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        switch (xml.getLocalName()) {
+                            case "trk" -> {
+                                trackNumber++;
+                                track = new Accumulator();
+                            }
+                            case "trkpt" -> point = track == null ? null : new Point(
+                                    StaxSupport.parseDouble(xml.getAttributeValue(null, "lat")),
+                                    StaxSupport.parseDouble(xml.getAttributeValue(null, "lon")));
+                            case "name" -> {
+                                if (track != null && point == null && track.name == null) {
+                                    track.name = xml.getElementText().trim();
+                                }
+                            }
+                            case "type" -> {
+                                if (track != null && point == null) {
+                                    track.sport = xml.getElementText();
+                                }
+                            }
+                            case "time" -> {
+                                if (point != null) {
+                                    point.time = xml.getElementText();
+                                }
+                            }
+                            case "hr" -> {
+                                if (point != null) {
+                                    Double hr = StaxSupport.parseDouble(xml.getElementText());
+                                    point.heartRate = hr == null ? null : (int) Math.round(hr);
+                                }
+                            }
+                            default -> {
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        switch (xml.getLocalName()) {
+                            case "trkpt" -> {
+                                if (point != null) {
+                                    track.add(point, zone);
+                                    point = null;
+                                }
+                            }
+                            case "trk" -> {
+                                if (track != null) {
+                                    emit(track, "track " + trackNumber, sink);
+                                    track = null;
+                                }
+                            }
+                            default -> {
+                            }
+                        }
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid GPX: " + e.getMessage(), e);
+        }
+    }
+
+    private static void emit(Accumulator track, String where, Sink sink) {
+        if (track.badTimes > 0 && track.first == null) {
+            sink.reject(where, "unreadable point times");
+            return;
+        }
+        if (track.first == null) {
+            sink.reject(where, "no timestamped points");
+            return;
+        }
+        sink.accept(WorkoutSummary.builder()
+                .type(WorkoutParser.typeOf(track.sport))
+                .startTime(track.first)
+                .durationSeconds(Duration.between(track.first, track.last).toSeconds())
+                .calories(0)
+                .distanceMeters(track.distance)
+                .avgHeartRate(track.heartRateCount == 0 ? null : (double) track.heartRateTotal / track.heartRateCount)
+                .maxHeartRate(track.maxHeartRate)
+                .name(track.name)
+                .startLat(track.firstLat)
+                .startLon(track.firstLon)
+                .endLat(track.lastLat)
+                .endLon(track.lastLon)
+                .build());
+    }
+
+    private static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static final class Point {
+        private final Double lat;
+        private final Double lon;
+        private String time;
+        private Integer heartRate;
+
+        private Point(Double lat, Double lon) {
+            this.lat = lat;
+            this.lon = lon;
+        }
+    }
+
+    // Running totals for one track; nothing per point is retained
+    private static final class Accumulator {
+        private String name;
+        private String sport;
+        private LocalDateTime first;
+        private LocalDateTime last;
+        private Double firstLat;
+        private Double firstLon;
+        private Double lastLat;
+        private Double lastLon;
+        private double distance;
+        private long heartRateTotal;
+        private long heartRateCount;
+        private Integer maxHeartRate;
+        private int badTimes;
+
+        private void add(Point point, ZoneId zone) {
+            if (point.time != null) {
+                try {
+                    LocalDateTime time = WorkoutParser.parseTime(point.time, zone);
+                    first = first == null || time.isBefore(first) ? time : first;
+                    last = last == null || time.isAfter(last) ? time : last;
+                } catch (DateTimeParseException e) {
+                    badTimes++;
+                }
+            }
+            if (point.lat != null && point.lon != null) {
+                if (lastLat != null) {
+                    distance += haversine(lastLat, lastLon, point.lat, point.lon);
+                } else {
+                    firstLat = point.lat;
+                    firstLon = point.lon;
+                }
+                lastLat = point.lat;
+                lastLon = point.lon;
+            }
+            if (point.heartRate != null) {
+                heartRateTotal += point.heartRate;
+                heartRateCount++;
+                maxHeartRate = maxHeartRate == null ? point.heartRate : Math.max(maxHeartRate, point.heartRate);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.fitness.activityservice.importer;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Garmin TCX: one workout per &lt;Activity&gt;, summed from its &lt;Lap&gt; totals (time, distance,
+ * calories, heart rate). Trackpoints are skipped without being read into memory, since the laps
+ * already carry the summary.
+ */
+class TcxParser implements WorkoutParser {
+
+    @Override
+    public void parse(InputStream in, ZoneId zone, Sink sink) throws IOException {
+        try {
+            XMLStreamReader xml = StaxSupport.open(in);
+            try {
+                int activityNumber = 0;
+                Accumulator activity = null;
+                boolean inTrack = false;
+                String heartRateKind = null;
+                double lapSeconds = 0;
+                while (xml.hasNext()) {
+                    int event = xml.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        String name = xml.getLocalName();
+                        if ("Activity".equals(name)) {
+                            activityNumber++;
+                            activity = new Accumulator(xml.getAttributeValue(null, "Sport"));
+                        } else if (activity == null || inTrack && !"Track".equals(name)) {
+                            continue;
+                        }
+                        switch (name) {
+                            case "Track" -> inTrack = true;
+                            case "Id" -> activity.id = xml.getElementText();
+                            case "Lap" -> {
+                                lapSeconds = 0;
+                                if (activity.lapStart == null) {
+                                    activity.lapStart = xml.getAttributeValue(null, "StartTime");
+                                }
+                            }
+                            case "TotalTimeSeconds" -> {
+                                Double seconds = StaxSupport.parseDouble(xml.getElementText());
+                                lapSeconds = seconds == null ? 0 : seconds;
+                                activity.seconds += lapSeconds;
+                            }
+                            case "DistanceMeters" -> {
+                                Double meters = StaxSupport.parseDouble(xml.getElementText());
+                                if (meters != null) {
+                                    activity.distance += meters;
+                                }
+                            }
+                            case "Calories" -> {
+                                Double calories = StaxSupport.parseDouble(xml.getElementText());
+                                if (calories != null) {
+                                    activity.calories += calories.longValue();
+                                }
+                            }
+                            case "AverageHeartRateBpm", "MaximumHeartRateBpm" -> heartRateKind = name;
+                            case "Value" -> {
+                                Double bpm = StaxSupport.parseDouble(xml.getElementText());
+                                if (bpm != null && "AverageHeartRateBpm".equals(heartRateKind)) {
+                                    // Time-weighted across laps
+                                    activity.heartRateWeighted += bpm * lapSeconds;
+                                    activity.heartRateSeconds += lapSeconds;
+                                } else if (bpm != null && "MaximumHeartRateBpm".equals(heartRateKind)) {
+                                    activity.maxHeartRate = Math.max(activity.maxHeartRate, (int) Math.round(bpm));
+                                }
+                            }
+                            default -> {
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        switch (xml.getLocalName()) {
+                            case "Track" -> inTrack = false;
+                            case "AverageHeartRateBpm", "MaximumHeartRateBpm" -> heartRateKind = null;
+                            case "Activity" -> {
+                                if (activity != null) {
+                                    emit(activity, zone, "activity " + activityNumber, sink);
+                                    activity = null;
+                                }
+                            }
+                            default -> {
+                            }
+                        }
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid TCX: " + e.getMessage(), e);
+        }
+    }
+
+    private static void emit(Accumulator activity, ZoneId zone, String where, Sink sink) {
+        String start = activity.id != null ? activity.id : activity.lapStart;
+        if (start == null) {
+            sink.reject(where, "no start time");
+            return;
+        }
+        LocalDateTime startTime;
+        try {
+            startTime = WorkoutParser.parseTime(start, zone);
+        } catch (DateTimeParseException e) {
+            sink.reject(where, "unreadable start time '" + start + "'");
+            return;
+        }
+        sink.accept(WorkoutSummary.builder()
+                .type(WorkoutParser.typeOf(activity.sport))
+                .startTime(startTime)
+                .durationSeconds(Math.round(activity.seconds))
+                .calories((int) Math.min(Integer.MAX_VALUE, activity.calories))
+                .distanceMeters(activity.distance > 0 ? activity.distance : null)
+                .avgHeartRate(activity.heartRateSeconds > 0 ? activity.heartRateWeighted / activity.heartRateSeconds : null)
+                .maxHeartRate(activity.maxHeartRate > 0 ? activity.maxHeartRate : null)
+                .build());
+    }
+
+    private static final class Accumulator {
+        private final String sport;
+        private String id;
+        private String lapStart;
+        private double seconds;
+        private double distance;
+        private long calories;
+        private double heartRateWeighted;
+        private double heartRateSeconds;
+        private int maxHeartRate;
+
+        private Accumulator(String sport) {
+            this.sport = sport;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.fitness.activityservice.importer;
+
+import com.fitness.activityservice.model.ActivityType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Streaming parser for one workout file format. Implementations read the input once, front to
+ * back, and hand each workout to the sink as soon as it is complete, so memory doesn't depend on
+ * file size. A bad workout is reported to the sink and skipped; IOException means the file itself
+ * is unreadable.
+ */
+public interface WorkoutParser {
+
+    void parse(InputStream in, ZoneId zone, Sink sink) throws IOException;
+
+    interface Sink {
+        void accept(WorkoutSummary workout);
+
+        // where: e.g. "track 2" or "line 17"
+        void reject(String where, String reason);
+    }
+
+    static WorkoutParser forFormat(String format) {
+        return switch (format.toLowerCase(Locale.ROOT)) {
+            case "gpx" -> new GpxParser();
+            case "tcx" -> new TcxParser();
+            case "csv" -> new CsvWorkoutParser();
+            default -> throw new IllegalArgumentException("Unsupported format '" + format + "', expected gpx, tcx or csv");
+        };
+    }
+
+    // Sport names as GPX/TCX exporters write them; anything unknown is OTHER
+    static ActivityType typeOf(String sport) {
+        if (sport == null || sport.isBlank()) {
+            return ActivityType.OTHER;
+        }
+        String name = sport.trim().toUpperCase(Locale.ROOT).replace(' ', '_').replace('-', '_');
+        for (ActivityType type : ActivityType.values()) {
+            if (type.name().equals(name)) {
+                return type;
+            }
+        }
+        return switch (name) {
+            case "RUN", "TRAIL_RUNNING", "TREADMILL_RUNNING" -> ActivityType.RUNNING;
+            case "BIKING", "BIKE", "RIDE", "ROAD_BIKING", "MOUNTAIN_BIKING", "VIRTUAL_RIDE" -> ActivityType.CYCLING;
+            case "SWIM", "POOL_SWIMMING", "OPEN_WATER_SWIMMING" -> ActivityType.SWIMMING;
+            case "WALK", "HIKING", "HIKE" -> ActivityType.WALKING;
+            case "STRENGTH", "WEIGHT_TRAINING" -> ActivityType.STRENGTH_TRAINING;
+            default -> ActivityType.OTHER;
+        };
+    }
+
+    // GPX/TCX times are ISO instants, usually with a Z or an offset, and are converted to zone; a bare local
+    // time is already local and is returned unchanged
+    static LocalDateTime parseTime(String text, ZoneId zone) {
+        String value = text.trim();
+        try {
+            return LocalDateTime.ofInstant(OffsetDateTime.parse(value).toInstant(), zone);
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDateTime.ofInstant(Instant.parse(value), zone);
+            } catch (DateTimeParseException e2) {
+                return LocalDateTime.parse(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.fitness.activityservice.importer;
+
+import com.fitness.activityservice.model.ActivityType;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+// What an imported workout contributes to an Activity; the raw points are not kept
+@Data
+@Builder
+public class WorkoutSummary {
+    private ActivityType type;
+    private LocalDateTime startTime;
+    private long durationSeconds;
+    private Integer calories;
+    private Double distanceMeters;
+    private Double avgHeartRate;
+    private Integer maxHeartRate;
+    private String name;
+    // First and last GPS position, when the file has positions
+    private Double startLat;
+    private Double startLon;
+    private Double endLat;
+    private Double endLon;
+}
@@ -0,0 +1,113 @@
+package com.fitness.activityservice.leaderboard;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Leaderboard for one activity type and week: every participant's running totals plus, per
+ * metric, the top {@code capacity} users in order. Totals only grow, so a user outside the top set
+ * can only enter it by passing its last entry, and checking that on each update keeps the set exact
+ * without ever re-sorting everyone.
+ */
+public final class WeeklyLeaderboard {
+
+    public enum Metric {
+        CALORIES,
+        DURATION
+    }
+
+    // Highest value first; equal values by user id so the order is stable
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong(Entry::value).reversed()
+            .thenComparing(Entry::userId);
+
+    public record Entry(String userId, long value) {
+    }
+
+    private final int capacity;
+    // userId -> totals indexed by Metric ordinal
+    private final Map<String, long[]> totals = new HashMap<>();
+    private final List<TreeSet<Entry>> top = new ArrayList<>();
+
+    public WeeklyLeaderboard(int capacity) {
+        this.capacity = capacity;
+        for (int i = 0; i < Metric.values().length; i++) {
+            top.add(new TreeSet<>(ORDER));
+        }
+    }
+
+    public synchronized void add(String userId, long calories, long duration) {
+        long[] userTotals = totals.computeIfAbsent(userId, k -> new long[Metric.values().length]);
+        offer(Metric.CALORIES, userId, userTotals, calories);
+        offer(Metric.DURATION, userId, userTotals, duration);
+    }
+
+    /**
+     * Sets the user's totals to the given values unless they are already higher. Applying the same
+     * or an older reading again changes nothing, so callers can feed stored totals without tracking
+     * which of them the board has seen.
+     */
+    public synchronized void raiseTo(String userId, long calories, long duration) {
+        long[] userTotals = totals.computeIfAbsent(userId, k -> new long[Metric.values().length]);
+        offer(Metric.CALORIES, userId, userTotals, calories - userTotals[Metric.CALORIES.ordinal()]);
+        offer(Metric.DURATION, userId, userTotals, duration - userTotals[Metric.DURATION.ordinal()]);
+    }
+
+    // Ranked entries from offset (0-based); empty past the top set
+    public synchronized List<Entry> page(Metric metric, int offset, int limit) {
+        List<Entry> page = new ArrayList<>(Math.min(limit, capacity));
+        Iterator<Entry> it = top.get(metric.ordinal()).iterator();
+        for (int i = 0; it.hasNext() && i < offset + limit; i++) {
+            Entry entry = it.next();
+            if (i >= offset) {
+                page.add(entry);
+            }
+        }
+        return page;
+    }
+
+    // 1-based rank, or 0 if the user isn't in the top set
+    public synchronized int rankOf(String userId, Metric metric) {
+        long[] userTotals = totals.get(userId);
+        if (userTotals == null) {
+            return 0;
+        }
+        TreeSet<Entry> set = top.get(metric.ordinal());
+        Entry entry = new Entry(userId, userTotals[metric.ordinal()]);
+        return set.contains(entry) ? set.headSet(entry).size() + 1 : 0;
+    }
+
+    public synchronized long totalOf(String userId, Metric metric) {
+        long[] userTotals = totals.get(userId);
+        return userTotals == null ? 0 : userTotals[metric.ordinal()];
+    }
+
+    public synchronized int participants() {
+        return totals.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private void offer(Metric metric, String userId, long[] userTotals, long increment) {
+        int i = metric.ordinal();
+        if (increment <= 0 && userTotals[i] != 0) {
+            return;
+        }
+        TreeSet<Entry> set = top.get(i);
+        boolean inTop = set.remove(new Entry(userId, userTotals[i]));
+        userTotals[i] += Math.max(0, increment);
+        Entry updated = new Entry(userId, userTotals[i]);
+        if (inTop || set.size() < capacity || ORDER.compare(updated, set.last()) < 0) {
+            set.add(updated);
+            if (set.size() > capacity) {
+                set.pollLast();
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.fitness.activityservice.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -7,6 +8,11 @@ import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexed;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -14,6 +20,20 @@ import java.time.LocalDateTime;
 import java.util.Map;
 
 @Document(collection = "activities")
+// Partial, so only documents with an outbox entry are indexed and the relay's scan stays small (sparse would
+// not help: _id is always present). _id breaks ties between entries enqueued in the same millisecond;
+// ObjectIds created by one process increase in creation order
+@CompoundIndex(name = "outbox_order_idx", def = "{'outbox.status': 1, 'outbox.enqueuedAt': 1, '_id': 1}",
+        partialFilter = "{'outbox.status': {'$exists': true}}")
+// GET /api/activities: keyset order (startTime, _id) per user, with the list-view fields appended so the
+// query is answered from the index alone
+@CompoundIndex(name = "user_start_idx",
+        def = "{'userId': 1, 'startTime': -1, '_id': -1, 'type': 1, 'duration': 1, 'caloriesBurned': 1}")
+@CompoundIndex(name = "user_type_start_idx",
+        def = "{'userId': 1, 'type': 1, 'startTime': -1, '_id': -1, 'duration': 1, 'caloriesBurned': 1}")
+// Route grid rebuild: recent activities with a location. Partial, so activities without one cost nothing
+@CompoundIndex(name = "located_start_idx", def = "{'startTime': 1}",
+        partialFilter = "{'startLocation': {'$exists': true}}")
 @Data
 @Builder
 @AllArgsConstructor
@@ -30,8 +50,28 @@ public class Activity {
     @Field("additional_data")
     private Map<String,Object> additionalData;
 
+    // Per-second samples live in activity_samples; only their summary is kept here
+    private ActivitySampleStats sampleStats;
+
+    // Taken from additionalData when the activity is written (ActivityLocationCallback); null if it has none
+    @GeoSpatialIndexed(type = GeoSpatialIndexType.GEO_2DSPHERE)
+    private GeoJsonPoint startLocation;
+    @GeoSpatialIndexed(type = GeoSpatialIndexType.GEO_2DSPHERE)
+    private GeoJsonPoint endLocation;
+
     @CreatedDate
     private LocalDateTime createdAt;
     @LastModifiedDate
     private LocalDateTime updatedAt;
+
+    // Kafka publishing state; not part of the event payload
+    @JsonIgnore
+    private ActivityOutbox outbox;
+    @JsonIgnore
+    private LocalDateTime publishedAt;
+    // Set for activities consumed from the ingest topic or imported from files; unique, so a redelivered
+    // record or a re-imported workout is not stored twice
+    @JsonIgnore
+    @Indexed(unique = true, sparse = true)
+    private String ingestKey;
 }
@@ -0,0 +1,45 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Outbox entry embedded in the activity document, so both are written by one single-document insert.
+// Removed once the event has been published.
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityOutbox {
+    public static final String PENDING = "PENDING";
+    // Gave up after max-attempts; needs a manual requeue
+    public static final String FAILED = "FAILED";
+
+    private String status;
+    private int attempts;
+    private LocalDateTime enqueuedAt;
+    // Relay instance currently publishing this entry, and until when that claim holds
+    private String claimedBy;
+    private LocalDateTime claimedUntil;
+    private String lastError;
+    // Historical data (file imports); published with the backfill header so consumers can throttle it
+    private boolean backfill;
+
+    public static ActivityOutbox pending() {
+        return ActivityOutbox.builder()
+                .status(PENDING)
+                .enqueuedAt(LocalDateTime.now())
+                .build();
+    }
+
+    public static ActivityOutbox backfill() {
+        return ActivityOutbox.builder()
+                .status(PENDING)
+                .enqueuedAt(LocalDateTime.now())
+                .backfill(true)
+                .build();
+    }
+}
@@ -0,0 +1,38 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+// Per-user totals for one day or one ISO week, kept up to date with $inc as activities are stored.
+@Document(collection = "activity_rollups")
+@CompoundIndex(name = "user_period_bucket_idx", def = "{'userId': 1, 'period': 1, 'bucket': 1}")
+// Leaderboard sync reads all users' buckets of one week
+@CompoundIndex(name = "period_bucket_idx", def = "{'period': 1, 'bucket': 1}")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityRollup {
+    public static final String DAY = "DAY";
+    public static final String WEEK = "WEEK";
+
+    @Id
+    private String id; // userId:DAY:2025-01-31 or userId:WEEK:2025-W05
+    private String userId;
+    private String period;
+    // First day of the bucket (the Monday for ISO weeks)
+    private LocalDate bucket;
+    private long count;
+    private long duration; // in minutes
+    private long calories;
+    // Keyed by ActivityType name
+    private Map<String, RollupTotals> byType;
+}
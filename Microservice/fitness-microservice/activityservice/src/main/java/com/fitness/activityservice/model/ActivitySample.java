@@ -0,0 +1,31 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.mapping.TimeSeries;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+
+import java.time.Instant;
+
+// One device reading; stored in a time-series collection bucketed by activity, not in the Activity document.
+@TimeSeries(collection = "activity_samples", timeField = "timestamp", metaField = "activityId",
+        granularity = Granularity.SECONDS)
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivitySample {
+    private Instant timestamp;
+    private String activityId;
+    private Integer heartRate; // bpm
+    private Double latitude;
+    private Double longitude;
+    private Double altitude; // meters
+    private Double distance; // meters since the start of the activity
+    private Double speed; // m/s
+    private Integer cadence;
+    // Idempotency claim of the upload that stored it, so a retried upload can replace a partial one
+    private String batchId;
+}
@@ -0,0 +1,35 @@
+package com.fitness.activityservice.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+
+// Summary of an activity's samples, kept on the Activity and updated as sample batches arrive
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivitySampleStats {
+    private long sampleCount;
+    private Integer maxHeartRate;
+    private Double distanceMeters;
+    private Instant firstSampleAt;
+    private Instant lastSampleAt;
+    // Running sums so the average can be kept with $inc
+    @JsonIgnore
+    private long heartRateCount;
+    @JsonIgnore
+    private long heartRateTotal;
+    // Batches already counted, newest last; a retried batch is never added twice
+    @JsonIgnore
+    private List<String> recentBatches;
+
+    public Double getAvgHeartRate() {
+        return heartRateCount == 0 ? null : (double) heartRateTotal / heartRateCount;
+    }
+}
@@ -0,0 +1,29 @@
+package com.fitness.activityservice.model;
+
+import com.fitness.activityservice.track.TrackLevels;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Encoded track of an activity's samples, built on first read and rebuilt once more samples arrive.
+@Document(collection = "activity_tracks")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ActivityTrack {
+    @Id
+    private String activityId;
+    // sampleStats.sampleCount this was built from; a different count means it is stale
+    private long sampleCount;
+    private LocalDateTime builtAt;
+    private int fullPoints;
+    private byte[] full;
+    private List<TrackLevels.Level> levels;
+}
@@ -0,0 +1,38 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// One month of activities moved to archive segment files; the id doubles as the lock on archiving it
+@Document(collection = "activity_archive_months")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ArchivedMonth {
+    // Files being written; readers ignore the month
+    public static final String WRITING = "WRITING";
+    // Files complete; the archived activities are being removed from Mongo
+    public static final String DELETING = "DELETING";
+    public static final String ARCHIVED = "ARCHIVED";
+
+    @Id
+    private String id; // 2023-04
+    private String status;
+    // Segment file names in the archive directory, in row order
+    private List<String> files;
+    private long rows;
+    private long deleted;
+    private LocalDateTime minStartTime;
+    private LocalDateTime maxStartTime;
+    private String owner;
+    private LocalDateTime claimedAt;
+    private LocalDateTime archivedAt;
+}
@@ -0,0 +1,42 @@
+package com.fitness.activityservice.model;
+
+import com.fitness.activityservice.dto.ActivityResponse;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// One per idempotency key; the _id uniqueness is what lets only one request with a key create an activity
+// (or store a sample batch).
+@Document(collection = "activity_idempotency")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdempotencyRecord {
+    public static final String IN_PROGRESS = "IN_PROGRESS";
+    public static final String COMPLETED = "COMPLETED";
+
+    @Id
+    private String id; // userId:key
+    private String status;
+    // Assigned when the key is claimed, so a retry after a crash can find the activity if it was stored;
+    // for sample uploads it is the batch id the samples are tagged with
+    private String activityId;
+    // Hash of the request body; the same key with a different body is rejected
+    private String requestHash;
+    private LocalDateTime claimedAt;
+    // Returned as-is to duplicates once the activity is stored
+    private ActivityResponse response;
+    // The same for sample uploads
+    private ActivitySampleStats sampleStats;
+
+    // TTL: the document is removed by MongoDB once this time has passed
+    @Indexed(expireAfter = "0s")
+    private LocalDateTime expireAt;
+}
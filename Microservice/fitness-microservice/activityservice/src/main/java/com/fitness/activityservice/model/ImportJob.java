@@ -0,0 +1,50 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Progress of one workout-file upload; polled via GET /api/activities/import/{id}
+@Document(collection = "activity_import_jobs")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportJob {
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    private String id;
+    @Indexed
+    private String userId;
+    private String status;
+    private int filesTotal;
+    private int filesProcessed;
+    private String currentFile;
+    private long activitiesCreated;
+    private long activitiesRejected;
+    // Workouts already stored by an earlier import
+    private long activitiesDuplicate;
+    // First max-errors problems, e.g. "runs.csv line 17: unreadable startTime"
+    private List<String> errors;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    // Instance running the job; it refreshes heartbeatAt until the job ends
+    private String owner;
+    private LocalDateTime heartbeatAt;
+
+    // TTL: the document is removed by MongoDB once this time has passed
+    @Indexed(expireAfter = "0s")
+    private LocalDateTime expireAt;
+}
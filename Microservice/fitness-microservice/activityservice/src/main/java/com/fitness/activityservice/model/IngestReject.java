@@ -0,0 +1,34 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// An ingest-topic record that could not be stored, kept with its payload so it can be fixed and re-sent
+@Document(collection = "activity_ingest_rejects")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class IngestReject {
+    // The record's ingest key, so a redelivered record is not recorded twice
+    @Id
+    private String id;
+    private String topic;
+    private int partition;
+    private long offset;
+    private String key;
+    private String payload;
+    private String reason;
+    private LocalDateTime receivedAt;
+
+    // TTL: the document is removed by MongoDB once this time has passed
+    @Indexed(expireAfter = "0s")
+    private LocalDateTime expireAt;
+}
@@ -0,0 +1,35 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Population histograms (LogHistogram.toBytes) for one activity type and ISO week, across all users
+@Document(collection = "activity_percentile_sketches")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PercentileSketch {
+    @Id
+    private String id; // RUNNING:2025-W05
+    private ActivityType type;
+    private String week;
+    // Monday of the week
+    private LocalDate weekStart;
+    private long count;
+    private byte[] duration; // minutes
+    private byte[] calories;
+    private byte[] intensity; // kcal/min x 100
+    // Instances merge their deltas in with a read-modify-write; the version makes concurrent merges retry
+    @Version
+    private Long version;
+    private LocalDateTime updatedAt;
+}
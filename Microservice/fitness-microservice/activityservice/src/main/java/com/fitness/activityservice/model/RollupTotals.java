@@ -0,0 +1,20 @@
+package com.fitness.activityservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RollupTotals {
+    private long count;
+    private long duration; // in minutes
+    private long calories;
+
+    public void add(long count, long duration, long calories) {
+        this.count += count;
+        this.duration += duration;
+        this.calories += calories;
+    }
+}
@@ -0,0 +1,193 @@
+package com.fitness.activityservice.percentile;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch over non-negative longs, laid out like an HDR histogram: values below
+ * 128 get their own bucket, above that each power of two is split into 64 buckets, so any value is
+ * known to within 1/64 (about 1.6%). Counts live in one long[] with a fixed layout, which makes
+ * merging an element-wise add and the sketch independent of how many values it has seen.
+ * <p>
+ * Not thread-safe; callers synchronize.
+ */
+public final class LogHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    // Larger values are recorded as this; far beyond any duration or calorie count
+    public static final long MAX_VALUE = (1L << 40) - 1;
+    static final int LENGTH = indexOf(MAX_VALUE) + 1;
+
+    private static final byte FORMAT = 1;
+
+    private final long[] counts;
+    private long total;
+    // Prefix sums for rank(); built on first use and dropped by any change
+    private long[] cumulative;
+
+    public LogHistogram() {
+        this.counts = new long[LENGTH];
+    }
+
+    private LogHistogram(long[] counts, long total) {
+        this.counts = counts;
+        this.total = total;
+    }
+
+    public void record(long value) {
+        counts[indexOf(clamp(value))]++;
+        total++;
+        cumulative = null;
+    }
+
+    public void merge(LogHistogram other) {
+        for (int i = 0; i < LENGTH; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        cumulative = null;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    /**
+     * Percentile rank of value: the share of recorded values below it, counting half of the values
+     * in its own bucket, in [0, 100]. NaN if nothing has been recorded.
+     */
+    public double rank(long value) {
+        if (total == 0) {
+            return Double.NaN;
+        }
+        if (cumulative == null) {
+            long[] sums = new long[LENGTH + 1];
+            for (int i = 0; i < LENGTH; i++) {
+                sums[i + 1] = sums[i] + counts[i];
+            }
+            cumulative = sums;
+        }
+        int index = indexOf(clamp(value));
+        double below = cumulative[index] + counts[index] / 2.0;
+        return 100.0 * below / total;
+    }
+
+    // Value at quantile q in [0, 1], as the middle of the bucket it falls in; -1 if empty
+    public long valueAt(double q) {
+        if (total == 0) {
+            return -1;
+        }
+        long target = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return (lowestValue(i) + highestValue(i)) / 2;
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    /**
+     * Compact form for storage: FORMAT varint(total) then (varint(index gap), varint(count)) for
+     * every non-empty bucket. A week of one activity type has a few hundred non-empty buckets at most.
+     */
+    public byte[] toBytes() {
+        ByteWriter out = new ByteWriter();
+        out.buf[out.size++] = FORMAT;
+        out.writeVarint(total);
+        int previous = -1;
+        for (int i = 0; i < LENGTH; i++) {
+            if (counts[i] != 0) {
+                out.writeVarint(i - previous);
+                out.writeVarint(counts[i]);
+                previous = i;
+            }
+        }
+        return Arrays.copyOf(out.buf, out.size);
+    }
+
+    public static LogHistogram fromBytes(byte[] data) {
+        if (data == null || data.length == 0) {
+            return new LogHistogram();
+        }
+        if (data[0] != FORMAT) {
+            throw new IllegalArgumentException("Unsupported histogram format " + data[0]);
+        }
+        int[] pos = {1};
+        long total = readVarint(data, pos);
+        long[] counts = new long[LENGTH];
+        int index = -1;
+        long sum = 0;
+        while (pos[0] < data.length) {
+            long gap = readVarint(data, pos);
+            if (gap <= 0 || index + gap >= LENGTH) {
+                throw new IllegalArgumentException("Corrupt histogram: bucket out of range");
+            }
+            index += (int) gap;
+            counts[index] = readVarint(data, pos);
+            sum += counts[index];
+        }
+        if (sum != total) {
+            throw new IllegalArgumentException("Corrupt histogram: counts don't add up to " + total);
+        }
+        return new LogHistogram(counts, total);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // value >>> shift keeps the top SUB_BUCKET_BITS - 1 bits below the leading one
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) ((value >>> shift) - HALF);
+    }
+
+    static long lowestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        return ((long) (index - SUB_BUCKETS) % HALF + HALF) << shift;
+    }
+
+    static long highestValue(int index) {
+        return index + 1 >= LENGTH ? MAX_VALUE : lowestValue(index + 1) - 1;
+    }
+
+    private static long clamp(long value) {
+        return Math.max(0, Math.min(MAX_VALUE, value));
+    }
+
+    private static long readVarint(byte[] data, int[] pos) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos[0] >= data.length) {
+                throw new IllegalArgumentException("Truncated histogram");
+            }
+            int b = data[pos[0]++] & 0xFF;
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in histogram");
+    }
+
+    private static final class ByteWriter {
+        private byte[] buf = new byte[64];
+        private int size;
+
+        private void writeVarint(long value) {
+            if (size + 10 > buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+    }
+}
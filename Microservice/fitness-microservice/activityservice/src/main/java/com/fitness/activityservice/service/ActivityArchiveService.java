@@ -0,0 +1,584 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.archive.Segment;
+import com.fitness.activityservice.archive.SegmentWriter;
+import com.fitness.activityservice.dto.ActivitySummary;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityType;
+import com.fitness.activityservice.model.ArchivedMonth;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonBinaryReader;
+import org.bson.ByteBuf;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Cold storage for old activities. A monthly job moves activities that started more than
+ * older-than-months whole months ago into columnar {@link Segment} files, one calendar month at a
+ * time, then deletes them from Mongo; activity_archive_months records each month and serves as its
+ * lock. The list API, the rollup rebuild and the export read archived months through the mapped
+ * files, so archived activities stay visible there. Stats are served from activity_rollups, which
+ * are kept.
+ * <p>
+ * Activities still waiting for the outbox relay stay in Mongo, as do activities stored for a month
+ * after it was archived; readers merge both sources. All instances must see the same archive
+ * directory.
+ */
+@Service
+@Slf4j
+public class ActivityArchiveService {
+
+    private static final String SERVICE_NAME = "[ActivityArchiveService]";
+    private static final DocumentCodec DOCUMENT_CODEC = new DocumentCodec();
+
+    private final MongoTemplate mongoTemplate;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExecutorService archiveExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "activity-archive");
+        t.setDaemon(true);
+        return t;
+    });
+    // Opened on first read; file name -> mapped segment
+    private final Map<String, Segment> segments = new ConcurrentHashMap<>();
+    // Readable months, newest first; null until first loaded
+    private volatile List<Month> months;
+
+    @Value("${activity.archive.dir:./activity-archive}")
+    private String dir;
+
+    @Value("${activity.archive.older-than-months:24}")
+    private int olderThanMonths;
+
+    @Value("${activity.archive.max-rows-per-file:1000000}")
+    private int maxRowsPerFile;
+
+    @Value("${activity.archive.cursor-batch-size:1000}")
+    private int cursorBatchSize;
+
+    @Value("${activity.archive.delete-chunk-size:1000}")
+    private int deleteChunkSize;
+
+    @Value("${activity.archive.stale-after:6h}")
+    private Duration staleAfter;
+
+    @Value("${activity.archive.refresh-interval-ms:300000}")
+    private long refreshIntervalMs;
+
+    public ActivityArchiveService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        archiveExecutor.shutdownNow();
+        archiveExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    // Returns false if a run is already in progress on this instance
+    public boolean startRun() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        archiveExecutor.submit(() -> {
+            try {
+                run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException e) {
+                log.error("{} ✗ Archive run failed: {}", SERVICE_NAME, e.getMessage(), e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    // Disabled unless activity.archive.cron is set
+    @Scheduled(cron = "${activity.archive.cron:-}")
+    public void scheduledRun() {
+        if (!startRun()) {
+            log.warn("{} Scheduled run skipped; a run is already in progress", SERVICE_NAME);
+        }
+    }
+
+    // Picks up months written by other instances
+    @Scheduled(initialDelayString = "${activity.archive.refresh-interval-ms:300000}",
+            fixedDelayString = "${activity.archive.refresh-interval-ms:300000}")
+    public void refresh() {
+        List<ArchivedMonth> manifests = mongoTemplate.find(Query.query(Criteria.where("status")
+                        .in(ArchivedMonth.DELETING, ArchivedMonth.ARCHIVED))
+                .with(Sort.by(Sort.Direction.DESC, "_id")), ArchivedMonth.class);
+        List<Month> loaded = new ArrayList<>(manifests.size());
+        Set<String> files = new HashSet<>();
+        for (ArchivedMonth manifest : manifests) {
+            if (manifest.getRows() > 0) {
+                loaded.add(new Month(manifest.getId(), millis(manifest.getMinStartTime()),
+                        millis(manifest.getMaxStartTime()), List.copyOf(manifest.getFiles())));
+                files.addAll(manifest.getFiles());
+            }
+        }
+        segments.keySet().retainAll(files);
+        months = List.copyOf(loaded);
+    }
+
+    // Newest archived startTime, or null if nothing is archived
+    public LocalDateTime newestStartTime() {
+        List<Month> current = months();
+        return current.isEmpty() ? null : time(current.get(0).maxMillis());
+    }
+
+    /**
+     * A user's archived activities in list order (startTime, id descending), starting strictly
+     * after (afterStartTime, afterId) when given, with from inclusive and to exclusive as in
+     * {@link ActivityQueryService}. Returns at most limit rows.
+     */
+    public List<ActivitySummary> list(String userId, LocalDateTime from, LocalDateTime to, ActivityType type,
+                                      LocalDateTime afterStartTime, String afterId, int limit) {
+        long fromMillis = from == null ? Long.MIN_VALUE : millis(from);
+        // Rows must sort strictly after this key; (to, "") excludes startTime == to
+        long seekMillis = to == null ? Long.MAX_VALUE : millis(to);
+        String seekId = "";
+        if (afterStartTime != null && millis(afterStartTime) < seekMillis) {
+            seekMillis = millis(afterStartTime);
+            seekId = afterId;
+        }
+
+        List<ActivitySummary> result = new ArrayList<>(Math.min(limit, 128));
+        for (Month month : months()) {
+            if (month.maxMillis() < fromMillis) {
+                // Months are newest first, so the rest are older still
+                break;
+            }
+            if (month.minMillis() > seekMillis) {
+                continue;
+            }
+            for (String file : month.files()) {
+                Segment segment = segment(file);
+                int[] range = segment.minStart() > seekMillis || segment.maxStart() < fromMillis ? null
+                        : segment.rangeOf(userId);
+                if (range == null) {
+                    continue;
+                }
+                int end = range[0] + range[1];
+                for (int row = segment.seek(range[0], range[1], seekMillis, seekId); row < end; row++) {
+                    if (segment.startMillis(row) < fromMillis) {
+                        break;
+                    }
+                    if (type != null && segment.type(row) != type) {
+                        continue;
+                    }
+                    result.add(summary(segment, row));
+                    if (result.size() >= limit) {
+                        return result;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // A user's archived activities with the list-view fields only, in no particular order
+    public void forEachRow(String userId, Consumer<Activity> consumer) {
+        for (Month month : months()) {
+            for (String file : month.files()) {
+                Segment segment = segment(file);
+                int[] range = segment.rangeOf(userId);
+                if (range == null) {
+                    continue;
+                }
+                for (int row = range[0]; row < range[0] + range[1]; row++) {
+                    consumer.accept(Activity.builder()
+                            .id(segment.id(row))
+                            .userId(userId)
+                            .type(segment.type(row))
+                            .duration(segment.duration(row))
+                            .caloriesBurned(segment.calories(row))
+                            .startTime(time(segment.startMillis(row)))
+                            .build());
+                }
+            }
+        }
+    }
+
+    // A user's archived activities as stored, oldest first (startTime, id ascending)
+    public Iterator<Activity> documents(String userId) {
+        List<Month> current = new ArrayList<>(months());
+        Collections.reverse(current);
+        List<Segment> files = new ArrayList<>();
+        for (Month month : current) {
+            for (int f = month.files().size() - 1; f >= 0; f--) {
+                files.add(segment(month.files().get(f)));
+            }
+        }
+        return new Iterator<>() {
+            private int file = -1;
+            private int row;
+            private int first;
+
+            @Override
+            public boolean hasNext() {
+                while (row < first || file < 0) {
+                    if (++file >= files.size()) {
+                        return false;
+                    }
+                    int[] range = files.get(file).rangeOf(userId);
+                    first = range == null ? 0 : range[0];
+                    row = range == null ? -1 : range[0] + range[1] - 1;
+                }
+                return true;
+            }
+
+            @Override
+            public Activity next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                byte[] bson = files.get(file).document(row--);
+                Document document = DOCUMENT_CODEC.decode(new BsonBinaryReader(ByteBuffer.wrap(bson)),
+                        DecoderContext.builder().build());
+                return mongoTemplate.getConverter().read(Activity.class, document);
+            }
+        };
+    }
+
+    // Users with archived activities, for rebuilds that walk all users
+    public Set<String> users() {
+        Set<String> users = new TreeSet<>();
+        for (Month month : months()) {
+            for (String file : month.files()) {
+                Collections.addAll(users, segment(file).users());
+            }
+        }
+        return users;
+    }
+
+    void run() throws IOException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        Files.createDirectories(Path.of(dir));
+        YearMonth cutoff = YearMonth.now().minusMonths(olderThanMonths);
+        // Late activities of archived months stay in Mongo; every other month with activities is
+        // (re)tried, including ones a previous run released because they were empty or failed
+        Set<String> done = new HashSet<>();
+        Query archived = Query.query(Criteria.where("status").in(ArchivedMonth.DELETING, ArchivedMonth.ARCHIVED));
+        archived.fields().include("_id");
+        mongoTemplate.find(archived, ArchivedMonth.class).forEach(manifest -> done.add(manifest.getId()));
+
+        int written = 0;
+        YearMonth month = oldestMonthFrom(null, cutoff);
+        while (month != null) {
+            if (!done.contains(month.toString())) {
+                try {
+                    if (writeMonth(month)) {
+                        written++;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // Released by writeMonth; the next run tries again
+                    log.error("{} Archiving {} failed: {}", SERVICE_NAME, month, e.getMessage(), e);
+                }
+            }
+            month = oldestMonthFrom(month.plusMonths(1), cutoff);
+        }
+        if (written > 0) {
+            // Every instance must be reading the new months before their activities leave Mongo
+            refresh();
+            Thread.sleep(refreshIntervalMs);
+        }
+        // Also finishes deletions a crashed run left behind
+        List<ArchivedMonth> deleting = mongoTemplate.find(Query.query(Criteria.where("status").is(ArchivedMonth.DELETING)),
+                ArchivedMonth.class);
+        long deleted = 0;
+        for (ArchivedMonth manifest : deleting) {
+            deleted += deleteArchived(manifest);
+        }
+        log.info("{} Archived {} months before {}, removed {} activities from Mongo in {}ms", SERVICE_NAME,
+                deleting.size(), cutoff, deleted, System.currentTimeMillis() - startTime);
+    }
+
+    // Month of the oldest relayed activity from the given month (or ever) up to the cutoff; skips empty months
+    private YearMonth oldestMonthFrom(YearMonth from, YearMonth cutoff) {
+        if (from != null && !from.isBefore(cutoff)) {
+            return null;
+        }
+        Criteria range = Criteria.where("startTime").lt(cutoff.atDay(1).atStartOfDay());
+        if (from != null) {
+            range.gte(from.atDay(1).atStartOfDay());
+        }
+        Query oldest = Query.query(range.and("outbox").exists(false))
+                .with(Sort.by(Sort.Direction.ASC, "startTime"))
+                .limit(1);
+        oldest.fields().include("startTime");
+        Activity first = mongoTemplate.findOne(oldest, Activity.class);
+        return first == null ? null : YearMonth.from(first.getStartTime());
+    }
+
+    // Writes the month's files and marks it DELETING; false if there was nothing to do
+    private boolean writeMonth(YearMonth month) throws IOException {
+        ArchivedMonth manifest = claim(month);
+        if (manifest == null) {
+            return false;
+        }
+        long startTime = System.currentTimeMillis();
+        // Same order as the list API within each user, read off user_start_idx
+        Query query = Query.query(Criteria.where("startTime")
+                        .gte(month.atDay(1).atStartOfDay())
+                        .lt(month.plusMonths(1).atDay(1).atStartOfDay())
+                        .and("outbox").exists(false))
+                .with(Sort.by(Sort.Order.asc("userId"), Sort.Order.desc("startTime"), Sort.Order.desc("_id")))
+                .withHint(ActivityQueryService.USER_START_INDEX)
+                .cursorBatchSize(cursorBatchSize);
+
+        List<String> files = new ArrayList<>();
+        long rows = 0;
+        long skipped = 0;
+        long minStart = Long.MAX_VALUE;
+        long maxStart = Long.MIN_VALUE;
+        SegmentWriter writer = null;
+        try (Stream<Document> documents = mongoTemplate.stream(query, Document.class,
+                mongoTemplate.getCollectionName(Activity.class))) {
+            for (Document document : (Iterable<Document>) documents::iterator) {
+                if (!(document.get("_id") instanceof ObjectId id) || document.getString("userId") == null) {
+                    // Not addressable from a segment; left in Mongo
+                    skipped++;
+                    continue;
+                }
+                if (writer == null) {
+                    files.add(fileName(month, files.size()));
+                    writer = new SegmentWriter(Path.of(dir).resolve(files.get(files.size() - 1)));
+                }
+                long startMillis = document.getDate("startTime").getTime();
+                writer.add(document.getString("userId"), id.toByteArray(), toType(document.getString("type")),
+                        toInteger(document.get("duration")), toInteger(document.get("caloriesBurned")),
+                        startMillis, toBson(document));
+                minStart = Math.min(minStart, startMillis);
+                maxStart = Math.max(maxStart, startMillis);
+                rows++;
+                if (writer.rows() >= maxRowsPerFile) {
+                    writer.finish();
+                    writer.close();
+                    writer = null;
+                }
+            }
+            if (writer != null) {
+                writer.finish();
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                release(manifest, month);
+            } catch (IOException | RuntimeException releaseFailure) {
+                e.addSuppressed(releaseFailure);
+            }
+            throw e;
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+
+        if (rows == 0) {
+            // Only activities still waiting for the relay; the next run tries again
+            release(manifest, month);
+            return false;
+        }
+        long written = 0;
+        for (String file : files) {
+            written += segment(file).rows();
+        }
+        if (written != rows) {
+            release(manifest, month);
+            throw new IllegalStateException("Archive of " + month + " has " + written + " rows, expected " + rows);
+        }
+
+        long updated = mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(manifest.getId())
+                        .and("owner").is(instanceId).and("status").is(ArchivedMonth.WRITING)),
+                new Update().set("status", ArchivedMonth.DELETING).set("files", files).set("rows", rows)
+                        .set("minStartTime", time(minStart)).set("maxStartTime", time(maxStart)),
+                ArchivedMonth.class).getModifiedCount();
+        if (updated == 0) {
+            // Taken over as stale; the new owner rewrites the files
+            log.warn("{} Lost the claim on {} while writing it", SERVICE_NAME, month);
+            return false;
+        }
+        log.info("{} Wrote {}: {} activities in {} files, {} left in Mongo, in {}ms", SERVICE_NAME, month, rows,
+                files.size(), skipped, System.currentTimeMillis() - startTime);
+        return true;
+    }
+
+    // Removes a month's archived activities from Mongo and returns how many; safe to repeat
+    private long deleteArchived(ArchivedMonth manifest) {
+        long deleted = 0;
+        List<ObjectId> ids = new ArrayList<>(deleteChunkSize);
+        for (String file : manifest.getFiles()) {
+            Segment segment = segment(file);
+            for (int row = 0; row < segment.rows(); row++) {
+                ids.add(new ObjectId(segment.id(row)));
+                if (ids.size() >= deleteChunkSize || row == segment.rows() - 1) {
+                    deleted += mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)
+                            .and("outbox").exists(false)), Activity.class).getDeletedCount();
+                    ids.clear();
+                }
+            }
+        }
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(manifest.getId())),
+                new Update().set("status", ArchivedMonth.ARCHIVED).inc("deleted", deleted)
+                        .set("archivedAt", LocalDateTime.now()), ArchivedMonth.class);
+        return deleted;
+    }
+
+    // Null if the month is archived already or being written by another instance
+    private ArchivedMonth claim(YearMonth month) throws IOException {
+        String id = month.toString();
+        LocalDateTime now = LocalDateTime.now();
+        ArchivedMonth existing = mongoTemplate.findById(id, ArchivedMonth.class);
+        if (existing == null) {
+            try {
+                return mongoTemplate.insert(ArchivedMonth.builder()
+                        .id(id)
+                        .status(ArchivedMonth.WRITING)
+                        .files(List.of())
+                        .owner(instanceId)
+                        .claimedAt(now)
+                        .build());
+            } catch (DuplicateKeyException e) {
+                return null;
+            }
+        }
+        if (!ArchivedMonth.WRITING.equals(existing.getStatus()) || existing.getClaimedAt().isAfter(now.minus(staleAfter))) {
+            return null;
+        }
+        // The writing instance died; take over its claim and drop whatever files it left
+        long taken = mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(id)
+                        .and("status").is(ArchivedMonth.WRITING)
+                        .and("claimedAt").is(existing.getClaimedAt())),
+                new Update().set("owner", instanceId).set("claimedAt", now), ArchivedMonth.class).getModifiedCount();
+        if (taken == 0) {
+            return null;
+        }
+        log.warn("{} Took over abandoned archive of {}", SERVICE_NAME, month);
+        deleteFiles(month);
+        existing.setOwner(instanceId);
+        existing.setClaimedAt(now);
+        return existing;
+    }
+
+    private void release(ArchivedMonth manifest, YearMonth month) throws IOException {
+        deleteFiles(month);
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(manifest.getId())
+                .and("owner").is(instanceId).and("status").is(ArchivedMonth.WRITING)), ArchivedMonth.class);
+    }
+
+    private void deleteFiles(YearMonth month) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Path.of(dir), "activities-" + month + "-*")) {
+            for (Path file : files) {
+                segments.remove(file.getFileName().toString());
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private Segment segment(String file) {
+        return segments.computeIfAbsent(file, name -> {
+            try {
+                return Segment.open(Path.of(dir).resolve(name));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open archive segment " + name, e);
+            }
+        });
+    }
+
+    private List<Month> months() {
+        List<Month> current = months;
+        if (current == null) {
+            refresh();
+            current = months;
+        }
+        return current;
+    }
+
+    private static ActivitySummary summary(Segment segment, int row) {
+        ActivitySummary summary = new ActivitySummary();
+        summary.setId(segment.id(row));
+        summary.setType(segment.type(row));
+        summary.setDuration(segment.duration(row));
+        summary.setCaloriesBurned(segment.calories(row));
+        summary.setStartTime(time(segment.startMillis(row)));
+        return summary;
+    }
+
+    private static String fileName(YearMonth month, int part) {
+        return "activities-" + month + "-" + part + ".seg";
+    }
+
+    private static byte[] toBson(Document document) {
+        ByteBuf buffer = new RawBsonDocument(document, DOCUMENT_CODEC).getByteBuffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static ActivityType toType(String name) {
+        try {
+            return name == null ? null : ActivityType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Integer toInteger(Object value) {
+        return value instanceof Number number ? number.intValue() : null;
+    }
+
+    // Spring Data stores LocalDateTime as a Date in the JVM's zone; segments hold those epoch millis
+    private static long millis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime time(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    private record Month(String id, long minMillis, long maxMillis, List<String> files) {
+    }
+}
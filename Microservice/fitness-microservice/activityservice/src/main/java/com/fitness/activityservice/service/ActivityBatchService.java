@@ -0,0 +1,209 @@
+package com.fitness.activityservice.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.activityservice.dto.ActivityRequest;
+import com.fitness.activityservice.dto.BatchActivityResponse;
+import com.fitness.activityservice.dto.BatchItemResult;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityOutbox;
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bulk ingestion for device syncs. The request array is read one element at a time, so only one
+ * chunk of activities is held in memory. Each distinct user is validated once per request and each
+ * chunk is one unordered Mongo bulk insert; the activities carry outbox entries, so Kafka publishing
+ * happens in {@link ActivityOutboxRelay}.
+ * <p>
+ * A body that is too long or malformed is a 400 if it is detected before the first chunk is stored.
+ * After that the response is the usual per-item result, with one REJECTED entry at the position
+ * where reading stopped, so the client knows exactly which items to resend.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ActivityBatchService {
+
+    private static final String SERVICE_NAME = "[ActivityBatchService]";
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final MongoTemplate mongoTemplate;
+    private final UserValidationService userValidationService;
+    private final ActivityRollupService activityRollupService;
+    private final ActivityPercentileService activityPercentileService;
+    private final ActivityLeaderboardService activityLeaderboardService;
+    private final ActivityRouteService activityRouteService;
+
+    @Value("${activity.batch.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${activity.batch.max-items:10000}")
+    private int maxItems;
+
+    public BatchActivityResponse trackActivities(InputStream body) throws IOException {
+        long startTime = System.currentTimeMillis();
+        List<BatchItemResult> results = new ArrayList<>();
+        Map<String, Boolean> validUsers = new HashMap<>();
+        List<Pending> chunk = new ArrayList<>(chunkSize);
+
+        boolean flushed = false;
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Batch body must be a JSON array of activities");
+            }
+            int index = 0;
+            try {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (index >= maxItems) {
+                        throw new IllegalArgumentException("Batch exceeds the maximum of " + maxItems + " activities");
+                    }
+                    // One element as a tree: a bad item can't leave the parser mid-object
+                    JsonNode node = parser.readValueAsTree();
+                    BatchItemResult rejected = toActivity(index, node, validUsers, chunk);
+                    if (rejected != null) {
+                        results.add(rejected);
+                    }
+                    if (chunk.size() >= chunkSize) {
+                        results.addAll(flush(chunk));
+                        chunk.clear();
+                        flushed = true;
+                    }
+                    index++;
+                }
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                if (!flushed) {
+                    // Nothing stored yet: the whole request fails and can be fixed and resent as is
+                    throw e;
+                }
+                // Earlier chunks are committed, so failing the request would invite a duplicating retry.
+                // Items already read are stored as usual; the rest of the array is reported as not processed.
+                String reason = e instanceof JsonProcessingException jpe ? "Malformed JSON: " + jpe.getOriginalMessage()
+                        : e.getMessage();
+                log.warn("{} Batch stopped at item {} after partial storage: {}", SERVICE_NAME, index, reason);
+                results.add(BatchItemResult.builder().index(index).status("REJECTED")
+                        .error(reason + "; this and all later items were not processed").build());
+            }
+        }
+        if (!chunk.isEmpty()) {
+            results.addAll(flush(chunk));
+        }
+
+        results.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+        int created = (int) results.stream().filter(r -> "CREATED".equals(r.getStatus())).count();
+        log.info("{} Batch processed: total={}, created={}, failed={}, users={} in {}ms", SERVICE_NAME,
+                results.size(), created, results.size() - created, validUsers.size(),
+                System.currentTimeMillis() - startTime);
+        return new BatchActivityResponse(results.size(), created, results.size() - created, results);
+    }
+
+    private BatchItemResult toActivity(int index, JsonNode node, Map<String, Boolean> validUsers, List<Pending> chunk) {
+        ActivityRequest request;
+        try {
+            request = objectMapper.treeToValue(node, ActivityRequest.class);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            String message = e instanceof JsonProcessingException jpe ? jpe.getOriginalMessage() : e.getMessage();
+            return BatchItemResult.builder().index(index).status("INVALID").error(message).build();
+        }
+
+        Set<ConstraintViolation<ActivityRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            Map<String, String> errors = new LinkedHashMap<>();
+            violations.forEach(v -> errors.put(v.getPropertyPath().toString(), v.getMessage()));
+            return BatchItemResult.builder().index(index).status("INVALID").errors(errors).build();
+        }
+
+        boolean validUser = validUsers.computeIfAbsent(request.getUserId(),
+                userId -> Boolean.TRUE.equals(userValidationService.validateUser(userId)));
+        if (!validUser) {
+            return BatchItemResult.builder().index(index).status("REJECTED")
+                    .error("Invalid User: " + request.getUserId()).build();
+        }
+
+        // Ids are assigned here so bulk-write errors can be mapped back to items; auditing treats
+        // documents with an id as existing, hence the explicit timestamps
+        LocalDateTime now = LocalDateTime.now();
+        chunk.add(new Pending(index, Activity.builder()
+                .id(new ObjectId().toHexString())
+                .userId(request.getUserId())
+                .type(request.getType())
+                .duration(request.getDuration())
+                .caloriesBurned(request.getCaloriesBurned())
+                .startTime(request.getStartTime())
+                .additionalData(request.getAdditionalData())
+                .createdAt(now)
+                .updatedAt(now)
+                .outbox(ActivityOutbox.pending())
+                .build()));
+        return null;
+    }
+
+    private List<BatchItemResult> flush(List<Pending> chunk) {
+        Map<Integer, String> writeErrors = insert(chunk);
+
+        List<BatchItemResult> results = new ArrayList<>(chunk.size());
+        List<Activity> inserted = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            Pending item = chunk.get(i);
+            String error = writeErrors.get(i);
+            if (error == null) {
+                inserted.add(item.activity);
+            }
+            results.add(error != null
+                    ? BatchItemResult.builder().index(item.index).status("FAILED").error(error).build()
+                    : BatchItemResult.builder().index(item.index).status("CREATED").activityId(item.activity.getId()).build());
+        }
+        activityRollupService.recordAll(inserted);
+        activityPercentileService.recordAll(inserted);
+        activityLeaderboardService.recordAll(inserted);
+        activityRouteService.recordAll(inserted);
+        return results;
+    }
+
+    // Unordered: one bad document doesn't stop the rest of the chunk
+    private Map<Integer, String> insert(List<Pending> chunk) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Activity.class);
+        chunk.forEach(item -> bulk.insert(item.activity));
+        Map<Integer, String> errors = new HashMap<>();
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                errors.put(error.getIndex(), error.getMessage());
+            }
+            log.warn("{} Bulk insert: {} of {} documents failed", SERVICE_NAME, errors.size(), chunk.size());
+        } catch (RuntimeException e) {
+            log.error("{} ✗ Bulk insert failed: {}", SERVICE_NAME, e.getMessage(), e);
+            for (int i = 0; i < chunk.size(); i++) {
+                errors.put(i, e.getMessage());
+            }
+        }
+        return errors;
+    }
+
+    private record Pending(int index, Activity activity) {
+    }
+}
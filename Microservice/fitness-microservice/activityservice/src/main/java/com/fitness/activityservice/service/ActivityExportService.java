@@ -0,0 +1,298 @@
+package com.fitness.activityservice.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+/**
+ * Writes a user's full activity history straight from a Mongo cursor to the response stream. Only
+ * one cursor batch and one output buffer are held at a time, and writes block while the client is
+ * slow to read, so memory stays flat however long the history is. Archived months are read from
+ * the archive segments and merged in startTime order.
+ */
+@Service
+@Slf4j
+public class ActivityExportService {
+
+    private static final String SERVICE_NAME = "[ActivityExportService]";
+    private static final String CSV_HEADER = "id,userId,type,duration,caloriesBurned,startTime,createdAt,updatedAt,additionalData\n";
+
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString USER_ID = new SerializedString("userId");
+    private static final SerializedString TYPE = new SerializedString("type");
+    private static final SerializedString DURATION = new SerializedString("duration");
+    private static final SerializedString CALORIES = new SerializedString("caloriesBurned");
+    private static final SerializedString START_TIME = new SerializedString("startTime");
+    private static final SerializedString CREATED_AT = new SerializedString("createdAt");
+    private static final SerializedString UPDATED_AT = new SerializedString("updatedAt");
+    private static final SerializedString ADDITIONAL_DATA = new SerializedString("additionalData");
+    // Enum values are encoded once rather than per row
+    private static final Map<ActivityType, SerializedString> TYPE_VALUES = new EnumMap<>(ActivityType.class);
+
+    static {
+        for (ActivityType type : ActivityType.values()) {
+            TYPE_VALUES.put(type, new SerializedString(type.name()));
+        }
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final ActivityArchiveService activityArchiveService;
+
+    @Value("${activity.export.cursor-batch-size:500}")
+    private int cursorBatchSize;
+
+    @Value("${activity.export.buffer-size:65536}")
+    private int bufferSize;
+
+    public ActivityExportService(MongoTemplate mongoTemplate, ObjectMapper objectMapper,
+                                 ActivityArchiveService activityArchiveService) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.activityArchiveService = activityArchiveService;
+    }
+
+    public static boolean isSupported(String format) {
+        return "ndjson".equals(format) || "csv".equals(format);
+    }
+
+    public void export(String userId, String format, OutputStream out) throws IOException {
+        long startTime = System.currentTimeMillis();
+        // Oldest first, walking user_start_idx backwards
+        Query query = Query.query(Criteria.where("userId").is(userId))
+                .with(Sort.by(Sort.Order.asc("startTime"), Sort.Order.asc("_id")))
+                .cursorBatchSize(cursorBatchSize);
+        query.fields().exclude("outbox");
+
+        long rows;
+        try (Stream<Activity> activities = mongoTemplate.stream(query, Activity.class)) {
+            Iterator<Activity> merged = oldestFirst(activityArchiveService.documents(userId), activities.iterator());
+            rows = "csv".equals(format)
+                    ? writeCsv(merged, out)
+                    : writeNdjson(merged, out);
+        }
+        log.info("{} Exported {} activities for userId={} as {} in {}ms", SERVICE_NAME, rows, userId, format,
+                System.currentTimeMillis() - startTime);
+    }
+
+    private long writeNdjson(Iterator<Activity> activities, OutputStream out) throws IOException {
+        DateTimeEncoder dates = new DateTimeEncoder();
+        long rows = 0;
+        // The generator's own buffer is the only output buffer; it is flushed to the response as it fills
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(new SerializedString("\n"));
+            while (activities.hasNext()) {
+                Activity activity = activities.next();
+                generator.writeStartObject();
+                generator.writeFieldName(ID);
+                generator.writeString(activity.getId());
+                generator.writeFieldName(USER_ID);
+                generator.writeString(activity.getUserId());
+                if (activity.getType() != null) {
+                    generator.writeFieldName(TYPE);
+                    generator.writeString(TYPE_VALUES.get(activity.getType()));
+                }
+                writeNumber(generator, DURATION, activity.getDuration());
+                writeNumber(generator, CALORIES, activity.getCaloriesBurned());
+                writeDate(generator, dates, START_TIME, activity.getStartTime());
+                writeDate(generator, dates, CREATED_AT, activity.getCreatedAt());
+                writeDate(generator, dates, UPDATED_AT, activity.getUpdatedAt());
+                if (activity.getAdditionalData() != null) {
+                    generator.writeFieldName(ADDITIONAL_DATA);
+                    generator.writeObject(activity.getAdditionalData());
+                }
+                generator.writeEndObject();
+                rows++;
+            }
+            generator.writeRaw('\n');
+        }
+        return rows;
+    }
+
+    private long writeCsv(Iterator<Activity> activities, OutputStream out) throws IOException {
+        DateTimeEncoder dates = new DateTimeEncoder();
+        long rows = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), bufferSize);
+        writer.write(CSV_HEADER);
+        while (activities.hasNext()) {
+            Activity activity = activities.next();
+            writer.write(activity.getId());
+            writer.write(',');
+            writeCsvText(writer, activity.getUserId());
+            writer.write(',');
+            if (activity.getType() != null) {
+                writer.write(activity.getType().name());
+            }
+            writer.write(',');
+            if (activity.getDuration() != null) {
+                writer.write(Integer.toString(activity.getDuration()));
+            }
+            writer.write(',');
+            if (activity.getCaloriesBurned() != null) {
+                writer.write(Integer.toString(activity.getCaloriesBurned()));
+            }
+            writer.write(',');
+            writeCsvDate(writer, dates, activity.getStartTime());
+            writer.write(',');
+            writeCsvDate(writer, dates, activity.getCreatedAt());
+            writer.write(',');
+            writeCsvDate(writer, dates, activity.getUpdatedAt());
+            writer.write(',');
+            if (activity.getAdditionalData() != null && !activity.getAdditionalData().isEmpty()) {
+                writeCsvText(writer, objectMapper.writeValueAsString(activity.getAdditionalData()));
+            }
+            writer.write('\n');
+            rows++;
+        }
+        writer.flush();
+        return rows;
+    }
+
+    // Merges two (startTime, id) ascending iterators; an activity present in both is returned once
+    static Iterator<Activity> oldestFirst(Iterator<Activity> archived, Iterator<Activity> live) {
+        if (!archived.hasNext()) {
+            return live;
+        }
+        return new Iterator<>() {
+            private Activity nextArchived = archived.next();
+            private Activity nextLive = live.hasNext() ? live.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return nextArchived != null || nextLive != null;
+            }
+
+            @Override
+            public Activity next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int order = nextArchived == null ? 1 : nextLive == null ? -1 : compare(nextArchived, nextLive);
+                Activity result = order <= 0 ? nextArchived : nextLive;
+                if (order <= 0) {
+                    nextArchived = archived.hasNext() ? archived.next() : null;
+                }
+                if (order >= 0) {
+                    nextLive = live.hasNext() ? live.next() : null;
+                }
+                return result;
+            }
+        };
+    }
+
+    private static int compare(Activity a, Activity b) {
+        int byTime = Comparator.nullsFirst(LocalDateTime::compareTo).compare(a.getStartTime(), b.getStartTime());
+        return byTime != 0 ? byTime : a.getId().compareTo(b.getId());
+    }
+
+    private static void writeNumber(JsonGenerator generator, SerializedString name, Integer value) throws IOException {
+        if (value != null) {
+            generator.writeFieldName(name);
+            generator.writeNumber(value);
+        }
+    }
+
+    private static void writeDate(JsonGenerator generator, DateTimeEncoder dates, SerializedString name,
+                                  LocalDateTime value) throws IOException {
+        if (value != null) {
+            generator.writeFieldName(name);
+            generator.writeString(dates.chars, 0, dates.encode(value));
+        }
+    }
+
+    private static void writeCsvDate(Writer writer, DateTimeEncoder dates, LocalDateTime value) throws IOException {
+        if (value != null) {
+            writer.write(dates.chars, 0, dates.encode(value));
+        }
+    }
+
+    // RFC 4180: quote only when needed, doubling embedded quotes
+    private static void writeCsvText(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    /**
+     * Same text as ISO_LOCAL_DATE_TIME (what the JSON API returns), written into a reused buffer. The
+     * date part is copied from the previous row while rows share a day, which exports sorted by
+     * startTime mostly do.
+     */
+    static final class DateTimeEncoder {
+        final char[] chars = new char[40];
+        private LocalDate lastDate;
+        private int dateLength;
+
+        int encode(LocalDateTime value) {
+            LocalDate date = value.toLocalDate();
+            if (!date.equals(lastDate)) {
+                String text = date.toString();
+                text.getChars(0, text.length(), chars, 0);
+                chars[text.length()] = 'T';
+                dateLength = text.length() + 1;
+                lastDate = date;
+            }
+            int pos = dateLength;
+            pos = twoDigits(value.getHour(), pos);
+            chars[pos++] = ':';
+            pos = twoDigits(value.getMinute(), pos);
+            chars[pos++] = ':';
+            pos = twoDigits(value.getSecond(), pos);
+            int nanos = value.getNano();
+            if (nanos != 0) {
+                chars[pos++] = '.';
+                int divisor = 100_000_000;
+                // Shortest fraction, as the ISO formatter prints it
+                while (nanos != 0) {
+                    chars[pos++] = (char) ('0' + nanos / divisor);
+                    nanos %= divisor;
+                    divisor /= 10;
+                }
+            }
+            return pos;
+        }
+
+        private int twoDigits(int value, int pos) {
+            chars[pos] = (char) ('0' + value / 10);
+            chars[pos + 1] = (char) ('0' + value % 10);
+            return pos + 2;
+        }
+    }
+}
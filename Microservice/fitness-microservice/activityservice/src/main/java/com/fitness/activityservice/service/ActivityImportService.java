@@ -0,0 +1,384 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.importer.WorkoutParser;
+import com.fitness.activityservice.importer.WorkoutSummary;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityOutbox;
+import com.fitness.activityservice.model.ImportJob;
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports workout history from GPX/TCX/CSV files. Uploads are spooled to temp files and processed
+ * in the background: each file is parsed in one streaming pass (see {@link WorkoutParser}), every
+ * workout becomes one Activity summary, and chunks go to Mongo as unordered bulk inserts, as in
+ * {@link ActivityBatchService}. Imported activities are published with a backfill outbox entry so
+ * consumers can deprioritize them. Each workout gets an ingestKey derived from user, source, start
+ * time and type, so importing the same export twice stores it once. Progress is kept in an
+ * {@link ImportJob}.
+ */
+@Service
+@Slf4j
+public class ActivityImportService {
+
+    private static final String SERVICE_NAME = "[ActivityImportService]";
+
+    private final MongoTemplate mongoTemplate;
+    private final UserValidationService userValidationService;
+    private final ActivityRollupService activityRollupService;
+    private final ActivityPercentileService activityPercentileService;
+    private final ActivityLeaderboardService activityLeaderboardService;
+    private final ActivityRouteService activityRouteService;
+    private final ExecutorService importExecutor;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @Value("${activity.import.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${activity.import.max-files:20}")
+    private int maxFiles;
+
+    @Value("${activity.import.max-errors:100}")
+    private int maxErrors;
+
+    @Value("${activity.import.job-retention:7d}")
+    private Duration jobRetention;
+
+    // Several heartbeat intervals, so a busy instance's jobs are never failed
+    @Value("${activity.import.stale-after:10m}")
+    private Duration staleAfter;
+
+    public ActivityImportService(MongoTemplate mongoTemplate, UserValidationService userValidationService,
+                                 ActivityRollupService activityRollupService,
+                                 ActivityPercentileService activityPercentileService,
+                                 ActivityLeaderboardService activityLeaderboardService,
+                                 ActivityRouteService activityRouteService,
+                                 @Value("${activity.import.workers:2}") int workers) {
+        this.mongoTemplate = mongoTemplate;
+        this.userValidationService = userValidationService;
+        this.activityRollupService = activityRollupService;
+        this.activityPercentileService = activityPercentileService;
+        this.activityLeaderboardService = activityLeaderboardService;
+        this.activityRouteService = activityRouteService;
+        AtomicInteger threads = new AtomicInteger();
+        this.importExecutor = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "activity-import-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        importExecutor.shutdownNow();
+        importExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Validates the request, spools the files and queues the job.
+     *
+     * @param format gpx, tcx or csv for all files; null infers it from each file name
+     */
+    public ImportJob startImport(String userId, List<MultipartFile> files, String format, ZoneId zone) throws IOException {
+        if (files == null || files.isEmpty()) {
+            throw new IllegalArgumentException("At least one file is required");
+        }
+        if (files.size() > maxFiles) {
+            throw new IllegalArgumentException("At most " + maxFiles + " files per import");
+        }
+        List<String> formats = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            String fileFormat = format != null ? format : extensionOf(file.getOriginalFilename());
+            WorkoutParser.forFormat(fileFormat);
+            formats.add(fileFormat);
+        }
+        if (!Boolean.TRUE.equals(userValidationService.validateUser(userId))) {
+            log.error("{} ✗ Invalid user: {}", SERVICE_NAME, userId);
+            throw new RuntimeException("Invalid User: " + userId);
+        }
+
+        // The container deletes multipart temp files when the request ends, before the job runs
+        List<Upload> uploads = new ArrayList<>(files.size());
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                MultipartFile file = files.get(i);
+                Path path = Files.createTempFile("activity-import-", "." + formats.get(i));
+                uploads.add(new Upload(displayName(file, i), formats.get(i), path));
+                file.transferTo(path);
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteAll(uploads);
+            throw e;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        ImportJob job = mongoTemplate.insert(ImportJob.builder()
+                .userId(userId)
+                .status(ImportJob.QUEUED)
+                .filesTotal(uploads.size())
+                .errors(new ArrayList<>())
+                .owner(instanceId)
+                .heartbeatAt(now)
+                .createdAt(now)
+                .expireAt(now.plus(jobRetention))
+                .build());
+        importExecutor.execute(() -> run(job, uploads, zone));
+        log.info("{} Queued import job {} for userId={}: {} files", SERVICE_NAME, job.getId(), userId, uploads.size());
+        return job;
+    }
+
+    // Keeps jobs of this instance that are still waiting for a worker from looking abandoned
+    @Scheduled(fixedDelayString = "${activity.import.heartbeat-interval-ms:60000}")
+    public void heartbeat() {
+        mongoTemplate.updateMulti(Query.query(Criteria.where("owner").is(instanceId)
+                        .and("status").in(ImportJob.QUEUED, ImportJob.RUNNING)),
+                new Update().set("heartbeatAt", LocalDateTime.now()), ImportJob.class);
+    }
+
+    /**
+     * Jobs whose instance stopped (restart, crash) would otherwise stay QUEUED or RUNNING forever,
+     * since the uploads lived in that instance's temp files. The first run happens right after startup.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${activity.import.stale-check-interval-ms:300000}")
+    public void failStaleJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        // not().gte also matches jobs without a heartbeat
+        long failed = mongoTemplate.updateMulti(Query.query(Criteria.where("status").in(ImportJob.QUEUED, ImportJob.RUNNING)
+                        .and("heartbeatAt").not().gte(now.minus(staleAfter))),
+                new Update().set("status", ImportJob.FAILED)
+                        .set("finishedAt", now)
+                        .unset("currentFile")
+                        .push("errors", "Interrupted: the instance running the import stopped; upload the files again"),
+                ImportJob.class).getModifiedCount();
+        if (failed > 0) {
+            log.warn("{} Marked {} abandoned import jobs as FAILED", SERVICE_NAME, failed);
+        }
+    }
+
+    public Optional<ImportJob> getJob(String jobId) {
+        return Optional.ofNullable(mongoTemplate.findById(jobId, ImportJob.class));
+    }
+
+    private void run(ImportJob job, List<Upload> uploads, ZoneId zone) {
+        long startTime = System.currentTimeMillis();
+        job.setStatus(ImportJob.RUNNING);
+        job.setStartedAt(LocalDateTime.now());
+        saveProgress(job);
+        try {
+            for (Upload upload : uploads) {
+                job.setCurrentFile(upload.name);
+                saveProgress(job);
+                importFile(job, upload, zone);
+                job.setFilesProcessed(job.getFilesProcessed() + 1);
+            }
+            job.setStatus(ImportJob.COMPLETED);
+        } catch (RuntimeException e) {
+            log.error("{} ✗ Import job {} failed: {}", SERVICE_NAME, job.getId(), e.getMessage(), e);
+            addError(job, e.getMessage());
+            job.setStatus(ImportJob.FAILED);
+        } finally {
+            deleteAll(uploads);
+            job.setCurrentFile(null);
+            job.setFinishedAt(LocalDateTime.now());
+            saveProgress(job);
+        }
+        log.info("{} Import job {} {}: created={}, duplicate={}, rejected={} in {}ms", SERVICE_NAME, job.getId(),
+                job.getStatus(), job.getActivitiesCreated(), job.getActivitiesDuplicate(), job.getActivitiesRejected(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    // A file that can't be read is recorded and skipped; the job carries on with the next one
+    private void importFile(ImportJob job, Upload upload, ZoneId zone) {
+        List<Activity> chunk = new ArrayList<>(chunkSize);
+        WorkoutParser.Sink sink = new WorkoutParser.Sink() {
+            @Override
+            public void accept(WorkoutSummary workout) {
+                chunk.add(toActivity(job.getUserId(), upload, workout));
+                if (chunk.size() >= chunkSize) {
+                    flush(job, chunk);
+                }
+            }
+
+            @Override
+            public void reject(String where, String reason) {
+                job.setActivitiesRejected(job.getActivitiesRejected() + 1);
+                addError(job, upload.name + " " + where + ": " + reason);
+            }
+        };
+        try (InputStream in = Files.newInputStream(upload.path)) {
+            WorkoutParser.forFormat(upload.format).parse(in, zone, sink);
+        } catch (IOException e) {
+            log.warn("{} Import job {}: {} unreadable: {}", SERVICE_NAME, job.getId(), upload.name, e.getMessage());
+            addError(job, upload.name + ": " + e.getMessage());
+        }
+        // Workouts parsed before a read error are still stored
+        flush(job, chunk);
+    }
+
+    // Stores the chunk and records progress on the job
+    private void flush(ImportJob job, List<Activity> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Activity.class);
+        chunk.forEach(bulk::insert);
+        Set<Integer> failedIndexes = new HashSet<>();
+        int duplicates = 0;
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                failedIndexes.add(error.getIndex());
+                if (ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY) {
+                    duplicates++;
+                } else {
+                    addError(job, "insert failed: " + error.getMessage());
+                }
+            }
+            log.warn("{} Bulk insert: {} of {} documents not stored, {} already imported", SERVICE_NAME,
+                    failedIndexes.size(), chunk.size(), duplicates);
+        }
+
+        List<Activity> inserted = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            if (!failedIndexes.contains(i)) {
+                inserted.add(chunk.get(i));
+            }
+        }
+        activityRollupService.recordAll(inserted);
+        activityPercentileService.recordAll(inserted);
+        activityLeaderboardService.recordAll(inserted);
+        activityRouteService.recordAll(inserted);
+        job.setActivitiesCreated(job.getActivitiesCreated() + inserted.size());
+        job.setActivitiesDuplicate(job.getActivitiesDuplicate() + duplicates);
+        job.setActivitiesRejected(job.getActivitiesRejected() + failedIndexes.size() - duplicates);
+        saveProgress(job);
+        chunk.clear();
+    }
+
+    // Ids and timestamps are set here for the same reasons as in ActivityBatchService
+    private Activity toActivity(String userId, Upload upload, WorkoutSummary workout) {
+        Map<String, Object> additionalData = new LinkedHashMap<>();
+        additionalData.put("source", upload.format.toLowerCase(Locale.ROOT));
+        additionalData.put("fileName", upload.name);
+        putIfPresent(additionalData, "name", workout.getName());
+        putIfPresent(additionalData, "distanceMeters", workout.getDistanceMeters());
+        putIfPresent(additionalData, "avgHeartRate", workout.getAvgHeartRate());
+        putIfPresent(additionalData, "maxHeartRate", workout.getMaxHeartRate());
+        putIfPresent(additionalData, "startLat", workout.getStartLat());
+        putIfPresent(additionalData, "startLon", workout.getStartLon());
+        putIfPresent(additionalData, "endLat", workout.getEndLat());
+        putIfPresent(additionalData, "endLon", workout.getEndLon());
+
+        LocalDateTime now = LocalDateTime.now();
+        return Activity.builder()
+                .id(new ObjectId().toHexString())
+                .userId(userId)
+                .type(workout.getType())
+                .duration((int) Math.max(1, Math.round(workout.getDurationSeconds() / 60.0)))
+                .caloriesBurned(workout.getCalories() != null ? workout.getCalories() : 0)
+                .startTime(workout.getStartTime())
+                .additionalData(additionalData)
+                .createdAt(now)
+                .updatedAt(now)
+                .outbox(ActivityOutbox.backfill())
+                .ingestKey(ingestKeyOf(userId, upload, workout))
+                .build();
+    }
+
+    // Same workout imported again, from any file or job: same key, so the unique index turns it away
+    private static String ingestKeyOf(String userId, Upload upload, WorkoutSummary workout) {
+        return "import:" + sha256(userId + "|" + upload.format.toLowerCase(Locale.ROOT) + "|" + workout.getStartTime()
+                + "|" + workout.getType());
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void saveProgress(ImportJob job) {
+        job.setHeartbeatAt(LocalDateTime.now());
+        mongoTemplate.save(job);
+    }
+
+    private void addError(ImportJob job, String error) {
+        if (job.getErrors().size() < maxErrors) {
+            job.getErrors().add(error);
+        }
+    }
+
+    private static void putIfPresent(Map<String, Object> map, String key, Object value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+
+    private static String extensionOf(String fileName) {
+        int dot = fileName == null ? -1 : fileName.lastIndexOf('.');
+        if (dot < 0) {
+            throw new IllegalArgumentException("Cannot tell the format of '" + fileName + "'; pass format=gpx|tcx|csv");
+        }
+        return fileName.substring(dot + 1);
+    }
+
+    private static String displayName(MultipartFile file, int index) {
+        String name = file.getOriginalFilename();
+        return name == null || name.isBlank() ? "file " + (index + 1) : name;
+    }
+
+    private static void deleteAll(List<Upload> uploads) {
+        for (Upload upload : uploads) {
+            try {
+                Files.deleteIfExists(upload.path);
+            } catch (IOException e) {
+                log.warn("{} Could not delete {}: {}", SERVICE_NAME, upload.path, e.getMessage());
+            }
+        }
+    }
+
+    private record Upload(String name, String format, Path path) {
+    }
+}
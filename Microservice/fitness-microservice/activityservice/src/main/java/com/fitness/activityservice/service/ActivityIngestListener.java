@@ -0,0 +1,243 @@
+package com.fitness.activityservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.activityservice.dto.ActivityRequest;
+import com.fitness.activityservice.exception.UserServiceUnavailableException;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityOutbox;
+import com.fitness.activityservice.model.IngestReject;
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Consumes activities from the ingest topic (device bridge) in batches. Each poll is validated
+ * against the cached user set, stored with one unordered bulk insert, and only then acknowledged;
+ * a failed write, or a user that can't be validated because USER-SERVICE is down, throws, so the
+ * batch is redelivered from its first offset (see KafkaIngestConfig).
+ * Redelivery is harmless because every activity carries a unique ingestKey, which turns the
+ * at-least-once consumer into exactly-once storage. Republishing to activity-events goes through
+ * the outbox like every other write; outbox ids follow the partition order, so the relay keeps it.
+ */
+@Service
+@Slf4j
+public class ActivityIngestListener {
+
+    // Optional producer-supplied id of the workout; without it the record's topic/partition/offset is used
+    public static final String INGEST_KEY_HEADER = "ingest-key";
+    private static final String SERVICE_NAME = "[ActivityIngestListener]";
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final MongoTemplate mongoTemplate;
+    private final UserValidationService userValidationService;
+    private final ActivityRollupService activityRollupService;
+    private final ActivityPercentileService activityPercentileService;
+    private final ActivityLeaderboardService activityLeaderboardService;
+    private final ActivityRouteService activityRouteService;
+    private final Counter created;
+    private final Counter duplicates;
+    private final Counter rejected;
+
+    @Value("${activity.ingest.reject-retention:14d}")
+    private Duration rejectRetention;
+
+    public ActivityIngestListener(ObjectMapper objectMapper, Validator validator, MongoTemplate mongoTemplate,
+                                  UserValidationService userValidationService,
+                                  ActivityRollupService activityRollupService,
+                                  ActivityPercentileService activityPercentileService,
+                                  ActivityLeaderboardService activityLeaderboardService,
+                                  ActivityRouteService activityRouteService, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.mongoTemplate = mongoTemplate;
+        this.userValidationService = userValidationService;
+        this.activityRollupService = activityRollupService;
+        this.activityPercentileService = activityPercentileService;
+        this.activityLeaderboardService = activityLeaderboardService;
+        this.activityRouteService = activityRouteService;
+        this.created = meterRegistry.counter("activity.ingest.records", "result", "created");
+        this.duplicates = meterRegistry.counter("activity.ingest.records", "result", "duplicate");
+        this.rejected = meterRegistry.counter("activity.ingest.records", "result", "rejected");
+    }
+
+    @KafkaListener(topics = "${kafka.topic.ingest}", groupId = "${activity.ingest.group-id:activity-ingest-group}",
+            concurrency = "${activity.ingest.concurrency:1}", autoStartup = "${activity.ingest.enabled:true}",
+            batch = "true")
+    public void ingest(List<ConsumerRecord<String, String>> records, Acknowledgment ack) {
+        long startTime = System.currentTimeMillis();
+        Map<String, UserValidationService.Result> validUsers = new HashMap<>();
+        List<Activity> activities = new ArrayList<>(records.size());
+        List<IngestReject> rejects = new ArrayList<>();
+        // Records arrive in partition order. The whole batch shares one enqueue time and the relay breaks the tie
+        // on _id, so ids are created here in record order
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<String, String> record = records.get(i);
+            String ingestKey = ingestKeyOf(record);
+            String problem = null;
+            ActivityRequest request = null;
+            try {
+                request = record.value() == null ? null : objectMapper.readValue(record.value(), ActivityRequest.class);
+                problem = request == null ? "empty payload" : validate(request, validUsers);
+            } catch (JsonProcessingException e) {
+                problem = "unreadable payload: " + e.getOriginalMessage();
+            }
+            if (problem != null) {
+                rejects.add(reject(record, ingestKey, problem, now));
+                continue;
+            }
+            // Ids and timestamps are set explicitly for the same reasons as in ActivityBatchService
+            activities.add(Activity.builder()
+                    .id(new ObjectId().toHexString())
+                    .userId(request.getUserId())
+                    .type(request.getType())
+                    .duration(request.getDuration())
+                    .caloriesBurned(request.getCaloriesBurned())
+                    .startTime(request.getStartTime())
+                    .additionalData(request.getAdditionalData())
+                    .createdAt(now)
+                    .updatedAt(now)
+                    .outbox(ActivityOutbox.builder().status(ActivityOutbox.PENDING).enqueuedAt(now).build())
+                    .ingestKey(ingestKey)
+                    .build());
+        }
+
+        List<Activity> inserted = insert(activities, records, rejects, now);
+        if (!rejects.isEmpty()) {
+            saveRejects(rejects);
+        }
+        activityRollupService.recordAll(inserted);
+        activityPercentileService.recordAll(inserted);
+        activityLeaderboardService.recordAll(inserted);
+        activityRouteService.recordAll(inserted);
+        // Only now is the batch safe to skip on restart
+        ack.acknowledge();
+
+        created.increment(inserted.size());
+        rejected.increment(rejects.size());
+        log.info("{} Ingested batch: records={}, created={}, rejected={} in {}ms", SERVICE_NAME, records.size(),
+                inserted.size(), rejects.size(), System.currentTimeMillis() - startTime);
+    }
+
+    private String validate(ActivityRequest request, Map<String, UserValidationService.Result> validUsers) {
+        Set<ConstraintViolation<ActivityRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+        }
+        UserValidationService.Result result = validUsers.computeIfAbsent(request.getUserId(), userValidationService::check);
+        if (result == UserValidationService.Result.UNAVAILABLE) {
+            // Not the record's fault; nothing is acked, so the error handler redelivers the batch
+            throw new UserServiceUnavailableException("Cannot validate userId=" + request.getUserId()
+                    + ": USER-SERVICE unavailable");
+        }
+        return result == UserValidationService.Result.VALID ? null : "Invalid User: " + request.getUserId();
+    }
+
+    /**
+     * Duplicate ingest keys are activities stored by an earlier delivery and count as done. Other
+     * per-document errors won't go away on retry, so those records become rejects. Anything else
+     * (Mongo unreachable, ...) propagates and the batch is redelivered.
+     */
+    private List<Activity> insert(List<Activity> activities, List<ConsumerRecord<String, String>> records,
+                                  List<IngestReject> rejects, LocalDateTime now) {
+        if (activities.isEmpty()) {
+            return activities;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Activity.class);
+        activities.forEach(bulk::insert);
+        Map<Integer, BulkWriteError> errors = new HashMap<>();
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            e.getErrors().forEach(error -> errors.put(error.getIndex(), error));
+        }
+        if (errors.isEmpty()) {
+            return activities;
+        }
+
+        Map<String, ConsumerRecord<String, String>> byKey = new HashMap<>();
+        records.forEach(record -> byKey.put(ingestKeyOf(record), record));
+        List<Activity> inserted = new ArrayList<>(activities.size());
+        for (int i = 0; i < activities.size(); i++) {
+            BulkWriteError error = errors.get(i);
+            if (error == null) {
+                inserted.add(activities.get(i));
+            } else if (ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY) {
+                duplicates.increment();
+            } else {
+                String ingestKey = activities.get(i).getIngestKey();
+                rejects.add(reject(byKey.get(ingestKey), ingestKey, "insert failed: " + error.getMessage(), now));
+            }
+        }
+        log.info("{} Bulk insert: {} of {} documents not stored (duplicates or errors)", SERVICE_NAME,
+                activities.size() - inserted.size(), activities.size());
+        return inserted;
+    }
+
+    // Keyed by ingest key, so a redelivered reject is skipped rather than stored again
+    private void saveRejects(List<IngestReject> rejects) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, IngestReject.class);
+        rejects.forEach(bulk::insert);
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            boolean onlyDuplicates = e.getErrors().stream()
+                    .allMatch(error -> ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY);
+            if (!onlyDuplicates) {
+                throw e;
+            }
+        }
+        log.warn("{} Rejected {} records, see activity_ingest_rejects", SERVICE_NAME, rejects.size());
+    }
+
+    private IngestReject reject(ConsumerRecord<String, String> record, String ingestKey, String reason, LocalDateTime now) {
+        return IngestReject.builder()
+                .id(ingestKey)
+                .topic(record.topic())
+                .partition(record.partition())
+                .offset(record.offset())
+                .key(record.key())
+                .payload(record.value())
+                .reason(reason)
+                .receivedAt(now)
+                .expireAt(now.plus(rejectRetention))
+                .build();
+    }
+
+    private static String ingestKeyOf(ConsumerRecord<String, String> record) {
+        Header header = record.headers().lastHeader(INGEST_KEY_HEADER);
+        if (header != null && header.value() != null && header.value().length > 0) {
+            return new String(header.value(), StandardCharsets.UTF_8);
+        }
+        return record.topic() + ":" + record.partition() + ":" + record.offset();
+    }
+}
@@ -0,0 +1,203 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.dto.LeaderboardEntry;
+import com.fitness.activityservice.dto.LeaderboardPage;
+import com.fitness.activityservice.leaderboard.WeeklyLeaderboard;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityRollup;
+import com.fitness.activityservice.model.ActivityType;
+import com.fitness.activityservice.model.RollupTotals;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Weekly challenge leaderboards per activity type, held in memory as {@link WeeklyLeaderboard}s
+ * for the most recent weeks. The persistent per-user totals are the WEEK buckets in
+ * activity_rollups; the boards are rebuilt from them on startup and every sync interval, which
+ * also brings in activities stored by other instances. Writes on this instance raise the writers'
+ * totals to their stored rollups rather than adding increments, so a write racing a sync is never
+ * counted twice; at worst it is missing from the board until that user's next write or the next sync.
+ */
+@Service
+@Slf4j
+public class ActivityLeaderboardService {
+
+    private static final String SERVICE_NAME = "[ActivityLeaderboardService]";
+
+    private final MongoTemplate mongoTemplate;
+    // Monday of the week -> boards by type
+    private final Map<LocalDate, Map<ActivityType, WeeklyLeaderboard>> boards = new ConcurrentHashMap<>();
+
+    @Value("${activity.leaderboard.top-k:1000}")
+    private int topK;
+
+    @Value("${activity.leaderboard.weeks:2}")
+    private int weeks;
+
+    @Value("${activity.leaderboard.max-page-size:100}")
+    private int maxPageSize;
+
+    public ActivityLeaderboardService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Called after {@link ActivityRollupService#recordAll} has stored the same activities: the
+     * touched users' weekly rollups are read back and their boards raised to those totals, so an
+     * activity the last sync already counted is never added a second time.
+     */
+    public void recordAll(Collection<Activity> activities) {
+        LocalDate oldest = oldestWeek();
+        Set<String> users = new HashSet<>();
+        Set<LocalDate> liveWeeks = new HashSet<>();
+        for (Activity activity : activities) {
+            if (activity.getType() == null || activity.getStartTime() == null || activity.getUserId() == null) {
+                continue;
+            }
+            LocalDate week = activity.getStartTime().toLocalDate().with(DayOfWeek.MONDAY);
+            if (week.isBefore(oldest)) {
+                // Backdated (e.g. imported) activities are in the rollups, but past weeks have no live board
+                continue;
+            }
+            users.add(activity.getUserId());
+            liveWeeks.add(week);
+        }
+        if (users.isEmpty()) {
+            return;
+        }
+        Query query = Query.query(Criteria.where("userId").in(users)
+                .and("period").is(ActivityRollup.WEEK)
+                .and("bucket").in(liveWeeks));
+        query.fields().include("userId", "bucket", "byType");
+        try {
+            for (ActivityRollup rollup : mongoTemplate.find(query, ActivityRollup.class)) {
+                Map<ActivityType, WeeklyLeaderboard> weekBoards =
+                        boards.computeIfAbsent(rollup.getBucket(), k -> new ConcurrentHashMap<>());
+                apply(rollup, (type, totals) -> weekBoards.computeIfAbsent(type, k -> new WeeklyLeaderboard(topK))
+                        .raiseTo(rollup.getUserId(), totals.getCalories(), totals.getDuration()));
+            }
+        } catch (RuntimeException e) {
+            // The rollups have the activities; the next sync brings them onto the boards
+            log.warn("{} Leaderboard update failed for {} users: {}", SERVICE_NAME, users.size(), e.getMessage());
+        }
+    }
+
+    public LeaderboardPage getPage(ActivityType type, String metric, LocalDate date, int offset, Integer limit, String userId) {
+        WeeklyLeaderboard.Metric parsed = parseMetric(metric);
+        LocalDate week = (date != null ? date : LocalDate.now()).with(DayOfWeek.MONDAY);
+        if (week.isBefore(oldestWeek()) || week.isAfter(LocalDate.now().with(DayOfWeek.MONDAY))) {
+            throw new IllegalArgumentException("Leaderboards cover the last " + weeks + " weeks only");
+        }
+        int size = limit == null ? Math.min(50, maxPageSize) : limit;
+        if (size < 1 || size > maxPageSize) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxPageSize);
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative");
+        }
+
+        WeeklyLeaderboard board = boards.getOrDefault(week, Map.of()).get(type);
+        if (board == null) {
+            board = new WeeklyLeaderboard(topK);
+        }
+        List<WeeklyLeaderboard.Entry> page = board.page(parsed, offset, size);
+        List<LeaderboardEntry> entries = new ArrayList<>(page.size());
+        for (int i = 0; i < page.size(); i++) {
+            entries.add(new LeaderboardEntry(offset + i + 1, page.get(i).userId(), page.get(i).value()));
+        }
+        int end = offset + page.size();
+        boolean more = page.size() == size && end < Math.min(board.capacity(), board.participants());
+        return LeaderboardPage.builder()
+                .type(type)
+                .metric(parsed.name().toLowerCase(Locale.ROOT))
+                .week(week)
+                .participants(board.participants())
+                .entries(entries)
+                .nextOffset(more ? end : null)
+                .you(userId == null ? null
+                        : new LeaderboardEntry(board.rankOf(userId, parsed), userId, board.totalOf(userId, parsed)))
+                .build();
+    }
+
+    /**
+     * Rebuilds the boards of the covered weeks from activity_rollups and drops older weeks. The
+     * first run happens right after startup.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${activity.leaderboard.sync-interval-ms:60000}")
+    public void sync() {
+        long startTime = System.currentTimeMillis();
+        LocalDate oldest = oldestWeek();
+        boards.keySet().removeIf(week -> week.isBefore(oldest));
+        int users = 0;
+        for (LocalDate week = oldest; !week.isAfter(LocalDate.now()); week = week.plusWeeks(1)) {
+            Map<ActivityType, WeeklyLeaderboard> rebuilt = new EnumMap<>(ActivityType.class);
+            Query query = Query.query(Criteria.where("period").is(ActivityRollup.WEEK).and("bucket").is(week));
+            query.fields().include("userId", "byType");
+            try (Stream<ActivityRollup> rollups = mongoTemplate.stream(query, ActivityRollup.class)) {
+                for (ActivityRollup rollup : (Iterable<ActivityRollup>) rollups::iterator) {
+                    apply(rollup, (type, totals) -> rebuilt.computeIfAbsent(type, k -> new WeeklyLeaderboard(topK))
+                            .add(rollup.getUserId(), totals.getCalories(), totals.getDuration()));
+                    users++;
+                }
+            } catch (RuntimeException e) {
+                // Keep serving the boards we have; the next sync tries again
+                log.warn("{} Sync of week {} failed: {}", SERVICE_NAME, week, e.getMessage());
+                continue;
+            }
+            boards.put(week, new ConcurrentHashMap<>(rebuilt));
+        }
+        log.info("{} Synced leaderboards for {} weeks from {} weekly rollups in {}ms", SERVICE_NAME, weeks, users,
+                System.currentTimeMillis() - startTime);
+    }
+
+    private LocalDate oldestWeek() {
+        return LocalDate.now().with(DayOfWeek.MONDAY).minusWeeks(weeks - 1L);
+    }
+
+    private static WeeklyLeaderboard.Metric parseMetric(String metric) {
+        try {
+            return WeeklyLeaderboard.Metric.valueOf(metric.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("metric must be calories or duration");
+        }
+    }
+
+    private static void apply(ActivityRollup rollup, BiConsumer<ActivityType, RollupTotals> action) {
+        if (rollup.getByType() == null) {
+            return;
+        }
+        rollup.getByType().forEach((typeName, totals) -> {
+            ActivityType type = toType(typeName);
+            if (type != null) {
+                action.accept(type, totals);
+            }
+        });
+    }
+
+    private static ActivityType toType(String name) {
+        try {
+            return ActivityType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityOutbox;
+import com.fitness.events.ActivityEventHeaders;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes activities that carry a pending outbox entry. Each run claims a batch (so several
+ * instances don't publish the same entries), sends it in one go on the idempotent producer, then
+ * removes the outbox entry from the activities that were acknowledged. Failed sends stay pending and
+ * are retried with backoff; delivery is at-least-once.
+ */
+@Service
+@Slf4j
+public class ActivityOutboxRelay {
+
+    private static final String SERVICE_NAME = "[ActivityOutboxRelay]";
+    // Enqueue order; enqueuedAt is stored to the millisecond, so _id orders entries of the same batch
+    private static final Sort PUBLISH_ORDER = Sort.by(Sort.Order.asc("outbox.enqueuedAt"), Sort.Order.asc("_id"));
+
+    private final MongoTemplate mongoTemplate;
+    private final KafkaTemplate<String, Activity> kafkaTemplate;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Timer relayDelay;
+    private final Counter published;
+    private final Counter failed;
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final AtomicLong oldestPendingAgeMs = new AtomicLong();
+
+    @Value("${kafka.topic.activity}")
+    private String topicName;
+
+    @Value("${activity.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${activity.outbox.claim-timeout-ms:30000}")
+    private long claimTimeoutMs;
+
+    @Value("${activity.outbox.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    @Value("${activity.outbox.max-attempts:20}")
+    private int maxAttempts;
+
+    public ActivityOutboxRelay(MongoTemplate mongoTemplate, KafkaTemplate<String, Activity> kafkaTemplate,
+                               MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.kafkaTemplate = kafkaTemplate;
+        this.relayDelay = Timer.builder("activity.outbox.relay.delay")
+                .description("Time from outbox enqueue until the Kafka ack")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.published = meterRegistry.counter("activity.outbox.published");
+        this.failed = meterRegistry.counter("activity.outbox.send.failed");
+        Gauge.builder("activity.outbox.pending", pendingCount, AtomicLong::get)
+                .description("Outbox entries waiting to be published")
+                .register(meterRegistry);
+        Gauge.builder("activity.outbox.lag", oldestPendingAgeMs, AtomicLong::get)
+                .description("Age of the oldest pending outbox entry")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${activity.outbox.poll-interval-ms:200}")
+    public void relay() {
+        try {
+            List<Activity> batch = claimBatch();
+            if (!batch.isEmpty()) {
+                publish(batch);
+            }
+        } catch (RuntimeException e) {
+            log.error("{} ✗ Relay run failed: {}", SERVICE_NAME, e.getMessage(), e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${activity.outbox.metrics-interval-ms:10000}")
+    public void updateLagMetrics() {
+        Query pending = Query.query(Criteria.where("outbox.status").is(ActivityOutbox.PENDING));
+        pendingCount.set(mongoTemplate.count(pending, Activity.class));
+        Activity oldest = mongoTemplate.findOne(Query.query(Criteria.where("outbox.status").is(ActivityOutbox.PENDING))
+                .with(Sort.by(Sort.Direction.ASC, "outbox.enqueuedAt")), Activity.class);
+        oldestPendingAgeMs.set(oldest == null || oldest.getOutbox().getEnqueuedAt() == null ? 0
+                : Duration.between(oldest.getOutbox().getEnqueuedAt(), LocalDateTime.now()).toMillis());
+    }
+
+    private List<Activity> claimBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        Criteria claimable = new Criteria().andOperator(
+                Criteria.where("outbox.status").is(ActivityOutbox.PENDING),
+                new Criteria().orOperator(
+                        Criteria.where("outbox.claimedUntil").exists(false),
+                        Criteria.where("outbox.claimedUntil").lt(now)));
+
+        Query candidates = Query.query(claimable)
+                .with(PUBLISH_ORDER)
+                .limit(batchSize);
+        candidates.fields().include("_id");
+        List<String> ids = mongoTemplate.find(candidates, Activity.class).stream().map(Activity::getId).toList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        // Re-checking claimable in the update makes the claim atomic per document across instances
+        // Mongo keeps millisecond precision; truncate so the equality lookup below matches
+        LocalDateTime claimedUntil = now.plus(Duration.ofMillis(claimTimeoutMs)).truncatedTo(ChronoUnit.MILLIS);
+        mongoTemplate.updateMulti(Query.query(new Criteria().andOperator(Criteria.where("_id").in(ids), claimable)),
+                new Update().set("outbox.claimedBy", instanceId).set("outbox.claimedUntil", claimedUntil),
+                Activity.class);
+        return mongoTemplate.find(Query.query(Criteria.where("_id").in(ids)
+                        .and("outbox.claimedBy").is(instanceId)
+                        .and("outbox.claimedUntil").is(claimedUntil))
+                .with(PUBLISH_ORDER), Activity.class);
+    }
+
+    private void publish(List<Activity> batch) {
+        long startTime = System.currentTimeMillis();
+        List<CompletableFuture<SendResult<String, Activity>>> sends = new ArrayList<>(batch.size());
+        for (Activity activity : batch) {
+            sends.add(send(activity));
+        }
+        // Everything is handed to the producer before waiting, so it goes out in as few requests as possible
+        kafkaTemplate.flush();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        List<String> sent = new ArrayList<>(batch.size());
+        int failures = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Activity activity = batch.get(i);
+            String error = await(sends.get(i), deadline);
+            if (error == null) {
+                sent.add(activity.getId());
+                if (activity.getOutbox().getEnqueuedAt() != null) {
+                    relayDelay.record(Duration.between(activity.getOutbox().getEnqueuedAt(), LocalDateTime.now()));
+                }
+            } else {
+                markFailed(activity, error);
+                failures++;
+            }
+        }
+        if (failures > 0) {
+            log.error("[Hint] Check: 1) Kafka running at spring.kafka.bootstrap-servers 2) topic name '{}' exists 3) serializers configured.", topicName);
+        }
+
+        if (!sent.isEmpty()) {
+            mongoTemplate.updateMulti(Query.query(Criteria.where("_id").in(sent)),
+                    new Update().unset("outbox").set("publishedAt", LocalDateTime.now()), Activity.class);
+            published.increment(sent.size());
+        }
+        log.info("{} Published {}/{} outbox entries in {}ms", SERVICE_NAME, sent.size(), batch.size(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    private CompletableFuture<SendResult<String, Activity>> send(Activity activity) {
+        ProducerRecord<String, Activity> record = new ProducerRecord<>(topicName, activity.getUserId(), activity);
+        record.headers().add(ActivityEventHeaders.SENT_AT_HEADER,
+                String.valueOf(System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8));
+        LocalDateTime enqueuedAt = activity.getOutbox().getEnqueuedAt();
+        if (enqueuedAt != null) {
+            record.headers().add(ActivityEventHeaders.ENQUEUED_AT_HEADER,
+                    String.valueOf(enqueuedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli())
+                            .getBytes(StandardCharsets.UTF_8));
+        }
+        if (activity.getOutbox().isBackfill()) {
+            record.headers().add(ActivityEventHeaders.BACKFILL_HEADER, "true".getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            return kafkaTemplate.send(record);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private String await(CompletableFuture<SendResult<String, Activity>> send, long deadlineNanos) {
+        try {
+            send.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "interrupted";
+        } catch (ExecutionException e) {
+            return e.getCause().getMessage();
+        } catch (TimeoutException e) {
+            return "send timed out";
+        }
+    }
+
+    private void markFailed(Activity activity, String error) {
+        failed.increment();
+        int attempts = activity.getOutbox().getAttempts() + 1;
+        String status = attempts >= maxAttempts ? ActivityOutbox.FAILED : ActivityOutbox.PENDING;
+        log.error("{} ✗ Send failed for activityId={} (attempt {}{}): {}", SERVICE_NAME, activity.getId(), attempts,
+                ActivityOutbox.FAILED.equals(status) ? ", giving up" : "", error);
+        // Keep the entry claimed for an exponential backoff so a Kafka outage isn't retried in a tight loop
+        long backoffMs = Math.min(claimTimeoutMs, 1000L << Math.min(attempts, 16));
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(activity.getId())),
+                new Update().set("outbox.attempts", attempts)
+                        .set("outbox.status", status)
+                        .set("outbox.lastError", error)
+                        .set("outbox.claimedUntil", LocalDateTime.now().plus(Duration.ofMillis(backoffMs)))
+                        .unset("outbox.claimedBy"),
+                Activity.class);
+    }
+}
@@ -0,0 +1,295 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.dto.PercentileRank;
+import com.fitness.activityservice.dto.PercentileResponse;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityType;
+import com.fitness.activityservice.model.PercentileSketch;
+import com.fitness.activityservice.percentile.LogHistogram;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * "How do I compare": population percentiles of duration, calories and intensity (kcal/min) per
+ * activity type and ISO week, served from {@link LogHistogram} sketches rather than aggregations
+ * over activities. Stored activities are added to in-memory deltas; a checkpoint merges the deltas
+ * into activity_percentile_sketches, where every instance's contributions add up. Reads use the
+ * stored sketches, cached briefly, so a rank is a prefix-sum lookup.
+ * <p>
+ * Deltas not yet checkpointed are lost if the instance dies; the sketches are population
+ * statistics, where that is an acceptable error.
+ */
+@Service
+@Slf4j
+public class ActivityPercentileService {
+
+    private static final String SERVICE_NAME = "[ActivityPercentileService]";
+    private static final int MERGE_ATTEMPTS = 5;
+
+    enum Metric {
+        DURATION(Activity::getDuration, 1),
+        CALORIES(Activity::getCaloriesBurned, 1),
+        // kcal/min; recorded x100 so two decimals survive the integer histogram
+        INTENSITY(null, 100);
+
+        private final Function<Activity, Integer> field;
+        private final double scale;
+
+        Metric(Function<Activity, Integer> field, double scale) {
+            this.field = field;
+            this.scale = scale;
+        }
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        // Null if the activity has no value for this metric
+        Double extract(Activity activity) {
+            if (this != INTENSITY) {
+                Integer value = field.apply(activity);
+                return value == null ? null : value.doubleValue();
+            }
+            Integer duration = activity.getDuration();
+            Integer calories = activity.getCaloriesBurned();
+            return duration == null || calories == null || duration <= 0 ? null : calories / (double) duration;
+        }
+
+        long scaled(double value) {
+            return Math.round(value * scale);
+        }
+
+        static Metric of(String label) {
+            try {
+                return valueOf(label.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("metric must be duration, calories or intensity");
+            }
+        }
+    }
+
+    private final MongoTemplate mongoTemplate;
+    // Recorded here since the last checkpoint, keyed like PercentileSketch ids
+    private final Map<String, Sketches> deltas = new ConcurrentHashMap<>();
+    private final LoadingCache<String, Sketches> stored;
+
+    public ActivityPercentileService(MongoTemplate mongoTemplate,
+                                     @Value("${activity.percentiles.read-cache-ttl:30s}") Duration readCacheTtl,
+                                     @Value("${activity.percentiles.read-cache-size:1000}") long readCacheSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.stored = Caffeine.newBuilder()
+                .maximumSize(readCacheSize)
+                .expireAfterWrite(readCacheTtl)
+                .build(this::load);
+    }
+
+    public void recordAll(Collection<Activity> activities) {
+        for (Activity activity : activities) {
+            if (activity.getType() == null || activity.getStartTime() == null) {
+                continue;
+            }
+            String id = idOf(activity.getType(), weekOf(activity.getStartTime().toLocalDate()));
+            boolean recorded = false;
+            while (!recorded) {
+                Sketches sketches = deltas.computeIfAbsent(id, key -> new Sketches());
+                synchronized (sketches) {
+                    // A checkpoint may have taken this delta in the meantime; then record into a fresh one
+                    if (deltas.get(id) == sketches) {
+                        sketches.record(activity);
+                        recorded = true;
+                    }
+                }
+            }
+        }
+    }
+
+    // Ranks a stored activity among activities of its type in its week; empty if it doesn't exist
+    public Optional<PercentileResponse> rankActivity(String activityId) {
+        Activity activity = mongoTemplate.findById(activityId, Activity.class);
+        if (activity == null) {
+            return Optional.empty();
+        }
+        if (activity.getType() == null || activity.getStartTime() == null) {
+            return Optional.of(new PercentileResponse(activityId, activity.getType(), null, List.of()));
+        }
+        String week = weekOf(activity.getStartTime().toLocalDate());
+        Sketches sketches = stored.get(idOf(activity.getType(), week));
+        List<PercentileRank> ranks = new ArrayList<>(Metric.values().length);
+        for (Metric metric : Metric.values()) {
+            Double value = metric.extract(activity);
+            if (value != null) {
+                ranks.add(sketches.rank(metric, value));
+            }
+        }
+        return Optional.of(new PercentileResponse(activityId, activity.getType(), week, ranks));
+    }
+
+    // Ranks a value for a type in the week containing the given day (default: this week)
+    public PercentileResponse rank(ActivityType type, String metric, double value, LocalDate day) {
+        Metric parsed = Metric.of(metric);
+        String week = weekOf(day != null ? day : LocalDate.now());
+        Sketches sketches = stored.get(idOf(type, week));
+        return new PercentileResponse(null, type, week, List.of(sketches.rank(parsed, value)));
+    }
+
+    @Scheduled(fixedDelayString = "${activity.percentiles.checkpoint-interval-ms:10000}")
+    public void checkpoint() {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        int merged = 0;
+        for (String id : List.copyOf(deltas.keySet())) {
+            Sketches delta = deltas.get(id);
+            if (delta == null) {
+                continue;
+            }
+            synchronized (delta) {
+                deltas.remove(id, delta);
+                try {
+                    mergeIntoStored(id, delta);
+                    merged++;
+                } catch (RuntimeException e) {
+                    log.warn("{} Checkpoint of {} failed, keeping it for the next run: {}", SERVICE_NAME, id, e.getMessage());
+                    deltas.merge(id, delta, (current, failed) -> {
+                        synchronized (current) {
+                            current.merge(failed);
+                        }
+                        return current;
+                    });
+                }
+            }
+        }
+        log.debug("{} Checkpointed {} sketches in {}ms", SERVICE_NAME, merged, System.currentTimeMillis() - startTime);
+    }
+
+    @PreDestroy
+    public void stop() {
+        checkpoint();
+    }
+
+    private void mergeIntoStored(String id, Sketches delta) {
+        for (int attempt = 1; ; attempt++) {
+            PercentileSketch document = mongoTemplate.findById(id, PercentileSketch.class);
+            if (document == null) {
+                int colon = id.indexOf(':');
+                String week = id.substring(colon + 1);
+                document = PercentileSketch.builder()
+                        .id(id)
+                        .type(ActivityType.valueOf(id.substring(0, colon)))
+                        .week(week)
+                        .weekStart(weekStart(week))
+                        .build();
+            }
+            Sketches merged = Sketches.from(document);
+            merged.merge(delta);
+            merged.writeTo(document);
+            document.setUpdatedAt(LocalDateTime.now());
+            try {
+                mongoTemplate.save(document);
+                return;
+            } catch (OptimisticLockingFailureException | DuplicateKeyException e) {
+                // Another instance merged first; re-read and merge on top of its result
+                if (attempt >= MERGE_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private Sketches load(String id) {
+        PercentileSketch document = mongoTemplate.findOne(Query.query(Criteria.where("_id").is(id)), PercentileSketch.class);
+        return document == null ? new Sketches() : Sketches.from(document);
+    }
+
+    static String idOf(ActivityType type, String week) {
+        return type.name() + ":" + week;
+    }
+
+    // ISO week label, as in activity_rollups: 2025-W05
+    static String weekOf(LocalDate day) {
+        return String.format("%d-W%02d", day.get(IsoFields.WEEK_BASED_YEAR), day.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+    }
+
+    private static LocalDate weekStart(String week) {
+        int year = Integer.parseInt(week.substring(0, 4));
+        int number = Integer.parseInt(week.substring(6));
+        return LocalDate.of(year, 1, 4)
+                .with(IsoFields.WEEK_OF_WEEK_BASED_YEAR, number)
+                .with(DayOfWeek.MONDAY);
+    }
+
+    // One histogram per metric; guarded by its own monitor while it is a delta
+    private static final class Sketches {
+        private final LogHistogram[] histograms = new LogHistogram[Metric.values().length];
+
+        private Sketches() {
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LogHistogram();
+            }
+        }
+
+        static Sketches from(PercentileSketch document) {
+            Sketches sketches = new Sketches();
+            sketches.histograms[Metric.DURATION.ordinal()] = LogHistogram.fromBytes(document.getDuration());
+            sketches.histograms[Metric.CALORIES.ordinal()] = LogHistogram.fromBytes(document.getCalories());
+            sketches.histograms[Metric.INTENSITY.ordinal()] = LogHistogram.fromBytes(document.getIntensity());
+            return sketches;
+        }
+
+        void writeTo(PercentileSketch document) {
+            document.setCount(histograms[Metric.DURATION.ordinal()].count());
+            document.setDuration(histograms[Metric.DURATION.ordinal()].toBytes());
+            document.setCalories(histograms[Metric.CALORIES.ordinal()].toBytes());
+            document.setIntensity(histograms[Metric.INTENSITY.ordinal()].toBytes());
+        }
+
+        void record(Activity activity) {
+            for (Metric metric : Metric.values()) {
+                Double value = metric.extract(activity);
+                if (value != null) {
+                    histograms[metric.ordinal()].record(metric.scaled(value));
+                }
+            }
+        }
+
+        void merge(Sketches other) {
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i].merge(other.histograms[i]);
+            }
+        }
+
+        // Cached stored sketches are never modified, but rank() builds prefix sums lazily
+        synchronized PercentileRank rank(Metric metric, double value) {
+            LogHistogram histogram = histograms[metric.ordinal()];
+            double percentile = histogram.rank(metric.scaled(value));
+            Double rounded = Double.isNaN(percentile) ? null : Math.round(percentile * 10) / 10.0;
+            return new PercentileRank(metric.label(), value, histogram.count(), rounded,
+                    rounded == null ? null : Math.round((100 - rounded) * 10) / 10.0);
+        }
+    }
+}
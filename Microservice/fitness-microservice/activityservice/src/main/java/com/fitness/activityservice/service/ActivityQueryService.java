@@ -0,0 +1,149 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.dto.ActivityPage;
+import com.fitness.activityservice.dto.ActivitySummary;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Lists a user's activities newest first with keyset pagination on (startTime, _id). Each page is a
+ * bounded scan of user_start_idx (or user_type_start_idx when filtering by type) and the projection
+ * only asks for indexed fields, so no documents are fetched. Pages that reach back into archived
+ * months are merged with rows from {@link ActivityArchiveService}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ActivityQueryService {
+
+    private static final String SERVICE_NAME = "[ActivityQueryService]";
+    static final String USER_START_INDEX = "user_start_idx";
+    static final String USER_TYPE_START_INDEX = "user_type_start_idx";
+    static final int DEFAULT_LIMIT = 20;
+    static final int MAX_LIMIT = 100;
+
+    private final MongoTemplate mongoTemplate;
+    private final ActivityArchiveService activityArchiveService;
+
+    public ActivityPage listActivities(String userId, LocalDateTime from, LocalDateTime to,
+                                       ActivityType type, Integer limit, String after) {
+        int pageSize = limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(MAX_LIMIT, limit));
+        Query query = buildQuery(userId, from, to, type, pageSize, after);
+
+        List<ActivitySummary> rows = mongoTemplate.find(query, ActivitySummary.class,
+                mongoTemplate.getCollectionName(Activity.class));
+        // Skipped when Mongo filled the page with rows newer than anything archived
+        LocalDateTime newestArchived = activityArchiveService.newestStartTime();
+        if (newestArchived != null && (from == null || !newestArchived.isBefore(from))
+                && (rows.size() <= pageSize || !rows.get(pageSize).getStartTime().isAfter(newestArchived))) {
+            Cursor cursor = after == null || after.isBlank() ? null : decodeCursor(after);
+            List<ActivitySummary> archived = activityArchiveService.list(userId, from, to, type,
+                    cursor == null ? null : cursor.startTime(), cursor == null ? null : cursor.id().toHexString(),
+                    pageSize + 1);
+            rows = merge(rows, archived, pageSize + 1);
+        }
+        // One extra row tells us whether there is a next page
+        String next = null;
+        if (rows.size() > pageSize) {
+            rows = new ArrayList<>(rows.subList(0, pageSize));
+            ActivitySummary last = rows.get(pageSize - 1);
+            next = encodeCursor(last.getStartTime(), last.getId());
+        }
+        log.info("{} userId={}, type={}, from={}, to={} -> {} items, more={}",
+                SERVICE_NAME, userId, type, from, to, rows.size(), next != null);
+        return new ActivityPage(rows, next);
+    }
+
+    Query buildQuery(String userId, LocalDateTime from, LocalDateTime to, ActivityType type,
+                     int pageSize, String after) {
+        if (userId == null || userId.isBlank()) {
+            throw new IllegalArgumentException("userId is required");
+        }
+        Criteria criteria = Criteria.where("userId").is(userId);
+        if (type != null) {
+            criteria.and("type").is(type.name());
+        }
+        if (from != null || to != null) {
+            Criteria range = criteria.and("startTime");
+            if (from != null) {
+                range.gte(from);
+            }
+            if (to != null) {
+                range.lt(to);
+            }
+        }
+
+        Query query = new Query(criteria);
+        if (after != null && !after.isBlank()) {
+            Cursor cursor = decodeCursor(after);
+            // Strictly after the last row of the previous page in (startTime desc, _id desc) order
+            query.addCriteria(new Criteria().orOperator(
+                    Criteria.where("startTime").lt(cursor.startTime()),
+                    new Criteria().andOperator(
+                            Criteria.where("startTime").is(cursor.startTime()),
+                            Criteria.where("_id").lt(cursor.id()))));
+        }
+
+        query.with(Sort.by(Sort.Order.desc("startTime"), Sort.Order.desc("_id")))
+                .limit(pageSize + 1)
+                .withHint(type != null ? USER_TYPE_START_INDEX : USER_START_INDEX);
+        query.fields().include("_id", "type", "duration", "caloriesBurned", "startTime");
+        return query;
+    }
+
+    // Both lists are in page order; an activity still in Mongo while its month is archived appears once
+    static List<ActivitySummary> merge(List<ActivitySummary> live, List<ActivitySummary> archived, int limit) {
+        if (archived.isEmpty()) {
+            return live;
+        }
+        List<ActivitySummary> merged = new ArrayList<>(Math.min(limit, live.size() + archived.size()));
+        int i = 0;
+        int j = 0;
+        while (merged.size() < limit && (i < live.size() || j < archived.size())) {
+            int order = i == live.size() ? 1 : j == archived.size() ? -1 : compareDescending(live.get(i), archived.get(j));
+            if (order == 0) {
+                j++;
+            }
+            merged.add(order <= 0 ? live.get(i++) : archived.get(j++));
+        }
+        return merged;
+    }
+
+    private static int compareDescending(ActivitySummary a, ActivitySummary b) {
+        int byTime = b.getStartTime().compareTo(a.getStartTime());
+        return byTime != 0 ? byTime : b.getId().compareTo(a.getId());
+    }
+
+    static String encodeCursor(LocalDateTime startTime, String id) {
+        String raw = startTime + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Cursor decodeCursor(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            return new Cursor(LocalDateTime.parse(raw.substring(0, separator)), new ObjectId(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | StringIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid 'after' cursor");
+        }
+    }
+
+    private record Cursor(LocalDateTime startTime, ObjectId id) {
+    }
+}
@@ -0,0 +1,246 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.dto.ActivityStatsResponse;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityRollup;
+import com.fitness.activityservice.model.RollupTotals;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Maintains activity_rollups: per-user day and ISO-week buckets that are incremented as activities
+ * are stored, so stats never aggregate raw activities. Rollups are derived data; a rebuild
+ * regenerates them from the activities collection and the archive if they drift (e.g. after a
+ * failed increment).
+ */
+@Service
+@Slf4j
+public class ActivityRollupService {
+
+    private static final String SERVICE_NAME = "[ActivityRollupService]";
+
+    private final MongoTemplate mongoTemplate;
+    private final ActivityArchiveService activityArchiveService;
+    private final Counter failed;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "rollup-rebuild");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ActivityRollupService(MongoTemplate mongoTemplate, ActivityArchiveService activityArchiveService,
+                                 MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.activityArchiveService = activityArchiveService;
+        this.failed = meterRegistry.counter("activity.rollup.update.failed");
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        rebuildExecutor.shutdownNow();
+        rebuildExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    public void record(Activity activity) {
+        recordAll(List.of(activity));
+    }
+
+    // Activities landing in the same bucket are summed first, so a batch costs one upsert per bucket
+    public void recordAll(Collection<Activity> activities) {
+        Map<String, ActivityRollup> rollups = new LinkedHashMap<>();
+        activities.forEach(activity -> addTo(rollups, activity));
+        if (rollups.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ActivityRollup.class);
+        for (ActivityRollup rollup : rollups.values()) {
+            Update update = new Update()
+                    .setOnInsert("userId", rollup.getUserId())
+                    .setOnInsert("period", rollup.getPeriod())
+                    .setOnInsert("bucket", rollup.getBucket())
+                    .inc("count", rollup.getCount())
+                    .inc("duration", rollup.getDuration())
+                    .inc("calories", rollup.getCalories());
+            rollup.getByType().forEach((type, totals) -> update
+                    .inc("byType." + type + ".count", totals.getCount())
+                    .inc("byType." + type + ".duration", totals.getDuration())
+                    .inc("byType." + type + ".calories", totals.getCalories()));
+            bulk.upsert(Query.query(Criteria.where("_id").is(rollup.getId())), update);
+        }
+        try {
+            bulk.execute();
+        } catch (RuntimeException e) {
+            // The activities themselves are stored; only the stats are behind until the next rebuild
+            failed.increment(activities.size());
+            log.error("{} ✗ Rollup update failed for {} activities: {}", SERVICE_NAME, activities.size(), e.getMessage(), e);
+        }
+    }
+
+    public ActivityStatsResponse getStats(String userId, String period, LocalDate from, LocalDate to) {
+        String normalized = period == null ? ActivityRollup.DAY : period.toUpperCase();
+        if (!ActivityRollup.DAY.equals(normalized) && !ActivityRollup.WEEK.equals(normalized)) {
+            throw new IllegalArgumentException("period must be DAY or WEEK");
+        }
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from
+                : ActivityRollup.DAY.equals(normalized) ? end.minusDays(29) : end.minusWeeks(11);
+        if (ActivityRollup.WEEK.equals(normalized)) {
+            start = start.with(DayOfWeek.MONDAY);
+        }
+        if (start.isAfter(end)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+
+        List<ActivityRollup> rollups = mongoTemplate.find(Query.query(Criteria.where("userId").is(userId)
+                        .and("period").is(normalized)
+                        .and("bucket").gte(start).lte(end))
+                .with(Sort.by(Sort.Direction.ASC, "bucket")), ActivityRollup.class);
+
+        RollupTotals totals = new RollupTotals();
+        Map<String, RollupTotals> byType = new TreeMap<>();
+        List<ActivityStatsResponse.Bucket> buckets = new ArrayList<>(rollups.size());
+        for (ActivityRollup rollup : rollups) {
+            totals.add(rollup.getCount(), rollup.getDuration(), rollup.getCalories());
+            Map<String, RollupTotals> types = rollup.getByType() == null ? Map.of() : rollup.getByType();
+            types.forEach((type, t) -> byType.computeIfAbsent(type, k -> new RollupTotals())
+                    .add(t.getCount(), t.getDuration(), t.getCalories()));
+            buckets.add(new ActivityStatsResponse.Bucket(rollup.getBucket(),
+                    new RollupTotals(rollup.getCount(), rollup.getDuration(), rollup.getCalories()), types));
+        }
+        return ActivityStatsResponse.builder()
+                .userId(userId)
+                .period(normalized)
+                .from(start)
+                .to(end)
+                .totals(totals)
+                .byType(byType)
+                .buckets(buckets)
+                .build();
+    }
+
+    // Returns the number of buckets written
+    public int rebuildUser(String userId) {
+        Query query = Query.query(Criteria.where("userId").is(userId));
+        query.fields().include("userId", "type", "duration", "caloriesBurned", "startTime", "createdAt");
+        Map<String, ActivityRollup> rollups = new LinkedHashMap<>();
+        Set<String> archived = new HashSet<>();
+        activityArchiveService.forEachRow(userId, activity -> {
+            archived.add(activity.getId());
+            addTo(rollups, activity);
+        });
+        // Activities of a month being archived are in both places until they are deleted from Mongo
+        try (Stream<Activity> activities = mongoTemplate.stream(query, Activity.class)) {
+            activities.filter(activity -> !archived.contains(activity.getId()))
+                    .forEach(activity -> addTo(rollups, activity));
+        }
+
+        // Replace in place and then drop buckets that no longer have activities, so stats never read
+        // an empty user halfway through. Increments for this user that land during the rebuild can
+        // be lost or counted twice; rebuild when the user is idle, or rerun it.
+        if (!rollups.isEmpty()) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ActivityRollup.class);
+            rollups.values().forEach(rollup -> bulk.replaceOne(Query.query(Criteria.where("_id").is(rollup.getId())),
+                    rollup, FindAndReplaceOptions.options().upsert()));
+            bulk.execute();
+        }
+        mongoTemplate.remove(Query.query(Criteria.where("userId").is(userId)
+                .and("_id").nin(rollups.keySet())), ActivityRollup.class);
+        return rollups.size();
+    }
+
+    // Returns false if a full rebuild is already running
+    public boolean startRebuildAll() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        rebuildExecutor.submit(() -> {
+            long startTime = System.currentTimeMillis();
+            int users = 0;
+            int buckets = 0;
+            try {
+                Set<String> userIds = new LinkedHashSet<>(
+                        mongoTemplate.findDistinct(new Query(), "userId", Activity.class, String.class));
+                userIds.addAll(activityArchiveService.users());
+                for (String userId : userIds) {
+                    buckets += rebuildUser(userId);
+                    users++;
+                }
+                log.info("{} Rebuilt {} rollup buckets for {} users in {}ms", SERVICE_NAME, buckets, users,
+                        System.currentTimeMillis() - startTime);
+            } catch (RuntimeException e) {
+                log.error("{} ✗ Rollup rebuild failed after {} users: {}", SERVICE_NAME, users, e.getMessage(), e);
+            } finally {
+                rebuilding.set(false);
+            }
+        });
+        return true;
+    }
+
+    // Disabled unless activity.rollup.rebuild-cron is set
+    @Scheduled(cron = "${activity.rollup.rebuild-cron:-}")
+    public void scheduledRebuild() {
+        if (!startRebuildAll()) {
+            log.warn("{} Scheduled rebuild skipped; a rebuild is already running", SERVICE_NAME);
+        }
+    }
+
+    private static void addTo(Map<String, ActivityRollup> rollups, Activity activity) {
+        LocalDateTime time = activity.getStartTime() != null ? activity.getStartTime()
+                : activity.getCreatedAt() != null ? activity.getCreatedAt() : LocalDateTime.now();
+        LocalDate day = time.toLocalDate();
+        LocalDate monday = day.with(DayOfWeek.MONDAY);
+        String weekLabel = String.format("%d-W%02d", day.get(IsoFields.WEEK_BASED_YEAR), day.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+
+        add(rollups, activity, activity.getUserId() + ":" + ActivityRollup.DAY + ":" + day, ActivityRollup.DAY, day);
+        add(rollups, activity, activity.getUserId() + ":" + ActivityRollup.WEEK + ":" + weekLabel, ActivityRollup.WEEK, monday);
+    }
+
+    private static void add(Map<String, ActivityRollup> rollups, Activity activity, String id, String period, LocalDate bucket) {
+        ActivityRollup rollup = rollups.computeIfAbsent(id, k -> ActivityRollup.builder()
+                .id(id)
+                .userId(activity.getUserId())
+                .period(period)
+                .bucket(bucket)
+                .byType(new LinkedHashMap<>())
+                .build());
+        long duration = activity.getDuration() == null ? 0 : activity.getDuration();
+        long calories = activity.getCaloriesBurned() == null ? 0 : activity.getCaloriesBurned();
+        rollup.setCount(rollup.getCount() + 1);
+        rollup.setDuration(rollup.getDuration() + duration);
+        rollup.setCalories(rollup.getCalories() + calories);
+        String type = activity.getType() == null ? "OTHER" : activity.getType().name();
+        rollup.getByType().computeIfAbsent(type, k -> new RollupTotals()).add(1, duration, calories);
+    }
+}
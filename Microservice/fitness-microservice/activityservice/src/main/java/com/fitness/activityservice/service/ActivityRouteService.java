@@ -0,0 +1,145 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.dto.NearbyRoutesResponse;
+import com.fitness.activityservice.geo.Geohash;
+import com.fitness.activityservice.geo.RouteGrid;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * "Popular routes near me". Activities with a start location (see ActivityLocationCallback) within
+ * the last window-days are counted on an in-memory {@link RouteGrid}; lookups read only the grid
+ * cells around the query point. The grid is rebuilt from the activities' geo fields on startup
+ * and every sync interval, which also brings in other instances' writes. Until the first build
+ * finishes the answer comes from a 2dsphere query instead, counting only the nearest
+ * fallback-max-activities activities.
+ */
+@Service
+@Slf4j
+public class ActivityRouteService {
+
+    private static final String SERVICE_NAME = "[ActivityRouteService]";
+
+    private final MongoTemplate mongoTemplate;
+    // Null until the first build
+    private volatile RouteGrid grid;
+
+    @Value("${activity.routes.precision:6}")
+    private int precision;
+
+    @Value("${activity.routes.window-days:90}")
+    private int windowDays;
+
+    @Value("${activity.routes.max-radius-m:50000}")
+    private double maxRadiusMeters;
+
+    @Value("${activity.routes.fallback-max-activities:2000}")
+    private int fallbackMaxActivities;
+
+    public ActivityRouteService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public void recordAll(Collection<Activity> activities) {
+        RouteGrid current = grid;
+        if (current == null) {
+            // The first build reads them from Mongo
+            return;
+        }
+        LocalDateTime since = LocalDateTime.now().minusDays(windowDays);
+        for (Activity activity : activities) {
+            if (activity.getStartTime() != null && activity.getStartTime().isAfter(since)) {
+                add(current, activity);
+            }
+        }
+    }
+
+    public NearbyRoutesResponse nearby(double lat, double lon, double radiusMeters, ActivityType type, int limit) {
+        if (lat < -90 || lat > 90 || lon < -180 || lon > 180) {
+            throw new IllegalArgumentException("lat must be within [-90, 90] and lon within [-180, 180]");
+        }
+        if (radiusMeters <= 0 || radiusMeters > maxRadiusMeters) {
+            throw new IllegalArgumentException("radius must be between 0 and " + (long) maxRadiusMeters + " meters");
+        }
+        if (limit < 1 || limit > 100) {
+            throw new IllegalArgumentException("limit must be between 1 and 100");
+        }
+        String typeName = type == null ? null : type.name();
+        RouteGrid current = grid;
+        List<RouteGrid.Route> routes = current != null ? current.near(lat, lon, radiusMeters, typeName, limit)
+                : fromMongo(lat, lon, radiusMeters, type, limit);
+        String source = current != null ? "grid" : "mongo";
+        List<NearbyRoutesResponse.Route> result = new ArrayList<>(routes.size());
+        for (RouteGrid.Route route : routes) {
+            double[] start = Geohash.center(route.startCell());
+            double[] end = route.endCell() == null ? null : Geohash.center(route.endCell());
+            result.add(new NearbyRoutesResponse.Route(route.startCell(), start[0], start[1], route.endCell(),
+                    end == null ? null : end[0], end == null ? null : end[1], route.count(), route.byType(),
+                    route.distanceMeters(), route.latestActivityId(), route.latestStartTime()));
+        }
+        return new NearbyRoutesResponse(lat, lon, radiusMeters, source, result);
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${activity.routes.sync-interval-ms:900000}")
+    public void rebuild() {
+        long startTime = System.currentTimeMillis();
+        RouteGrid rebuilt = new RouteGrid(precision);
+        Query query = Query.query(Criteria.where("startLocation").exists(true)
+                .and("startTime").gt(LocalDateTime.now().minusDays(windowDays)))
+                // The window range on the partial index; otherwise the planner may walk user_start_idx
+                .withHint("located_start_idx");
+        query.fields().include("startLocation", "endLocation", "type", "startTime");
+        long activities = 0;
+        try (Stream<Activity> stream = mongoTemplate.stream(query, Activity.class)) {
+            for (Activity activity : (Iterable<Activity>) stream::iterator) {
+                add(rebuilt, activity);
+                activities++;
+            }
+        } catch (RuntimeException e) {
+            log.warn("{} Route grid rebuild failed, keeping the current one: {}", SERVICE_NAME, e.getMessage());
+            return;
+        }
+        grid = rebuilt;
+        log.info("{} Rebuilt route grid: {} activities in {} cells in {}ms", SERVICE_NAME, activities,
+                rebuilt.cellCount(), System.currentTimeMillis() - startTime);
+    }
+
+    // Same aggregation over the nearest activities only; popular routes further out may be missed
+    private List<RouteGrid.Route> fromMongo(double lat, double lon, double radiusMeters, ActivityType type, int limit) {
+        // $nearSphere names the field, so it works with both 2dsphere indexes on the collection; nearest first
+        Query query = Query.query(Criteria.where("startLocation").nearSphere(new GeoJsonPoint(lon, lat)).maxDistance(radiusMeters)
+                        .and("startTime").gt(LocalDateTime.now().minusDays(windowDays)))
+                .limit(fallbackMaxActivities);
+        if (type != null) {
+            query.addCriteria(Criteria.where("type").is(type));
+        }
+        query.fields().include("startLocation", "endLocation", "type", "startTime");
+        RouteGrid local = new RouteGrid(precision);
+        mongoTemplate.find(query, Activity.class).forEach(activity -> add(local, activity));
+        return local.near(lat, lon, radiusMeters, type == null ? null : type.name(), limit);
+    }
+
+    private static void add(RouteGrid target, Activity activity) {
+        GeoJsonPoint start = activity.getStartLocation();
+        if (start == null) {
+            return;
+        }
+        GeoJsonPoint end = activity.getEndLocation();
+        target.add(start.getY(), start.getX(), end == null ? null : end.getY(), end == null ? null : end.getX(),
+                activity.getType() == null ? null : activity.getType().name(), activity.getId(), activity.getStartTime());
+    }
+}
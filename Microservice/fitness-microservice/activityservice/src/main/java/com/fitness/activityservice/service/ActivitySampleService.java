@@ -0,0 +1,226 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.dto.SamplePoint;
+import com.fitness.activityservice.dto.SampleRequest;
+import com.fitness.activityservice.dto.SampleSeriesResponse;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivitySample;
+import com.fitness.activityservice.model.ActivitySampleStats;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Heart-rate/GPS sample streams. Samples go to the activity_samples time-series collection (meta
+ * field activityId, so Mongo buckets them per activity); the Activity document only carries
+ * {@link ActivitySampleStats}, which keeps activity reads and Kafka events small. Range reads are
+ * downsampled in Mongo to the requested resolution. Uploads are idempotent through
+ * {@link IdempotencyService}.
+ */
+@Service
+@Slf4j
+public class ActivitySampleService {
+
+    private static final String SERVICE_NAME = "[ActivitySampleService]";
+
+    // Far more batches than can arrive for one activity within the idempotency in-flight timeout
+    private static final int RECENT_BATCHES = 100;
+
+    private final MongoTemplate mongoTemplate;
+    private final IdempotencyService idempotencyService;
+
+    @Value("${activity.samples.max-per-request:20000}")
+    private int maxPerRequest;
+
+    @Value("${activity.samples.max-points:5000}")
+    private int maxPoints;
+
+    public ActivitySampleService(MongoTemplate mongoTemplate, IdempotencyService idempotencyService) {
+        this.mongoTemplate = mongoTemplate;
+        this.idempotencyService = idempotencyService;
+    }
+
+    // Inserting into a missing collection would create a regular one, so create the time-series collection up front
+    @PostConstruct
+    public void ensureCollection() {
+        if (mongoTemplate.collectionExists(ActivitySample.class)) {
+            return;
+        }
+        try {
+            mongoTemplate.createCollection(ActivitySample.class);
+            log.info("{} Created time-series collection {}", SERVICE_NAME, mongoTemplate.getCollectionName(ActivitySample.class));
+        } catch (DataAccessException e) {
+            // Another instance created it first
+            log.info("{} Time-series collection not created: {}", SERVICE_NAME, e.getMessage());
+        }
+    }
+
+    /**
+     * Empty if the activity doesn't exist. The upload must carry an Idempotency-Key: a retry of a
+     * stored batch gets the original stats back, and one that follows a failed attempt replaces
+     * whatever that attempt stored.
+     */
+    public Optional<ActivitySampleStats> addSamples(String activityId, List<SampleRequest> samples, String idempotencyKey) {
+        if (samples.size() > maxPerRequest) {
+            throw new IllegalArgumentException("At most " + maxPerRequest + " samples per request");
+        }
+        if (!mongoTemplate.exists(Query.query(Criteria.where("_id").is(activityId)), Activity.class)) {
+            return Optional.empty();
+        }
+        IdempotencyService.SampleClaim claim = idempotencyService.claimSamples(activityId, idempotencyKey, samples);
+        if (claim.isReplay()) {
+            return Optional.of(claim.replay());
+        }
+
+        ActivitySampleStats stats;
+        try {
+            stats = samples.isEmpty() ? findStats(activityId) : store(activityId, samples, claim);
+        } catch (RuntimeException e) {
+            idempotencyService.abandon(claim);
+            throw e;
+        }
+        if (stats == null) {
+            // Deleted meanwhile
+            idempotencyService.release(claim);
+            return Optional.empty();
+        }
+        stats.setRecentBatches(null);
+        idempotencyService.complete(claim, stats);
+        return Optional.of(stats);
+    }
+
+    private ActivitySampleStats store(String activityId, List<SampleRequest> samples, IdempotencyService.SampleClaim claim) {
+        if (claim.takenOver()) {
+            // The earlier attempt may have stored part of this batch
+            long removed = mongoTemplate.remove(Query.query(Criteria.where("activityId").is(activityId)
+                    .and("batchId").is(claim.batchId())), ActivitySample.class).getDeletedCount();
+            log.warn("{} Replacing {} samples of an abandoned upload for activityId={}", SERVICE_NAME, removed, activityId);
+        }
+
+        long startTime = System.currentTimeMillis();
+        List<ActivitySample> documents = new ArrayList<>(samples.size());
+        long heartRateCount = 0;
+        long heartRateTotal = 0;
+        Integer maxHeartRate = null;
+        Double distance = null;
+        Instant first = null;
+        Instant last = null;
+        for (SampleRequest sample : samples) {
+            documents.add(ActivitySample.builder()
+                    .timestamp(sample.getTimestamp())
+                    .activityId(activityId)
+                    .heartRate(sample.getHeartRate())
+                    .latitude(sample.getLatitude())
+                    .longitude(sample.getLongitude())
+                    .altitude(sample.getAltitude())
+                    .distance(sample.getDistance())
+                    .speed(sample.getSpeed())
+                    .cadence(sample.getCadence())
+                    .batchId(claim.batchId())
+                    .build());
+            if (sample.getHeartRate() != null) {
+                heartRateCount++;
+                heartRateTotal += sample.getHeartRate();
+                maxHeartRate = maxHeartRate == null ? sample.getHeartRate() : Math.max(maxHeartRate, sample.getHeartRate());
+            }
+            if (sample.getDistance() != null) {
+                distance = distance == null ? sample.getDistance() : Math.max(distance, sample.getDistance());
+            }
+            first = first == null || sample.getTimestamp().isBefore(first) ? sample.getTimestamp() : first;
+            last = last == null || sample.getTimestamp().isAfter(last) ? sample.getTimestamp() : last;
+        }
+        mongoTemplate.insert(documents, ActivitySample.class);
+
+        // Batches can arrive in any order, so the summary only ever moves with $inc/$min/$max;
+        // the batch id guard keeps a retried batch from being counted twice
+        Update update = new Update()
+                .inc("sampleStats.sampleCount", documents.size())
+                .inc("sampleStats.heartRateCount", heartRateCount)
+                .inc("sampleStats.heartRateTotal", heartRateTotal)
+                .min("sampleStats.firstSampleAt", first)
+                .max("sampleStats.lastSampleAt", last);
+        if (maxHeartRate != null) {
+            update.max("sampleStats.maxHeartRate", maxHeartRate);
+        }
+        if (distance != null) {
+            update.max("sampleStats.distanceMeters", distance);
+        }
+        update.push("sampleStats.recentBatches").slice(-RECENT_BATCHES).each(claim.batchId());
+        Activity updated = mongoTemplate.findAndModify(Query.query(Criteria.where("_id").is(activityId)
+                        .and("sampleStats.recentBatches").ne(claim.batchId())), update,
+                FindAndModifyOptions.options().returnNew(true), Activity.class);
+        log.info("{} Stored {} samples for activityId={} in {}ms", SERVICE_NAME, documents.size(), activityId,
+                System.currentTimeMillis() - startTime);
+        // No match: the abandoned attempt had counted the batch already (or the activity is gone)
+        return updated != null ? updated.getSampleStats() : findStats(activityId);
+    }
+
+    // Empty if the activity doesn't exist
+    public Optional<SampleSeriesResponse> getSamples(String activityId, Instant from, Instant to, Integer resolutionSeconds) {
+        if (!mongoTemplate.exists(Query.query(Criteria.where("_id").is(activityId)), Activity.class)) {
+            return Optional.empty();
+        }
+        ActivitySampleStats stats = findStats(activityId);
+        if (stats == null || stats.getSampleCount() == 0) {
+            return Optional.of(new SampleSeriesResponse(activityId, 0, from, to, List.of()));
+        }
+        Instant start = from != null ? from : stats.getFirstSampleAt();
+        // The range end is exclusive; include the last sample when no end is given
+        Instant end = to != null ? to : stats.getLastSampleAt().plusSeconds(1);
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+
+        // Coarsen the buckets if the requested resolution would return more than max-points
+        long rangeSeconds = Math.max(1, Duration.between(start, end).toSeconds());
+        int minimum = (int) Math.min(Integer.MAX_VALUE, (rangeSeconds + maxPoints - 1) / maxPoints);
+        int resolution = Math.max(Math.max(1, minimum), resolutionSeconds == null ? 1 : resolutionSeconds);
+
+        AggregationOperation bucket = context -> new Document("$group", new Document()
+                .append("_id", new Document("$dateTrunc", new Document("date", "$timestamp")
+                        .append("unit", "second").append("binSize", resolution)))
+                .append("heartRate", new Document("$avg", "$heartRate"))
+                .append("maxHeartRate", new Document("$max", "$heartRate"))
+                .append("latitude", new Document("$last", "$latitude"))
+                .append("longitude", new Document("$last", "$longitude"))
+                .append("altitude", new Document("$avg", "$altitude"))
+                .append("distance", new Document("$max", "$distance"))
+                .append("speed", new Document("$avg", "$speed"))
+                .append("cadence", new Document("$avg", "$cadence")));
+        AggregationOperation toPoint = context -> new Document("$set", new Document("timestamp", "$_id"));
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("activityId").is(activityId).and("timestamp").gte(start).lt(end)),
+                Aggregation.sort(Sort.Direction.ASC, "timestamp"),
+                bucket,
+                toPoint,
+                Aggregation.sort(Sort.Direction.ASC, "timestamp"));
+
+        List<SamplePoint> points = mongoTemplate.aggregate(aggregation,
+                mongoTemplate.getCollectionName(ActivitySample.class), SamplePoint.class).getMappedResults();
+        return Optional.of(new SampleSeriesResponse(activityId, resolution, start, end, points));
+    }
+
+    private ActivitySampleStats findStats(String activityId) {
+        Query query = Query.query(Criteria.where("_id").is(activityId));
+        query.fields().include("sampleStats");
+        Activity activity = mongoTemplate.findOne(query, Activity.class);
+        return activity == null ? null : activity.getSampleStats();
+    }
+}
@@ -4,14 +4,15 @@ import com.fitness.activityservice.ActivityRepository;
 import com.fitness.activityservice.dto.ActivityRequest;
 import com.fitness.activityservice.dto.ActivityResponse;
 import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityOutbox;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.kafka.support.SendResult;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.CompletableFuture;
+import java.time.LocalDateTime;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
@@ -20,12 +21,16 @@ public class ActivityService {
 
     private final ActivityRepository activityRepository;
     private final UserValidationService userValidationService;
-    private final KafkaTemplate<String, Activity> kafkaTemplate;
+    private final ActivityRollupService activityRollupService;
+    private final ActivityPercentileService activityPercentileService;
+    private final ActivityLeaderboardService activityLeaderboardService;
+    private final ActivityRouteService activityRouteService;
+    private final IdempotencyService idempotencyService;
 
     @Value("${kafka.topic.activity}")
     private String topicName;
 
-    public ActivityResponse trackActivity(ActivityRequest request) {
+    public ActivityResponse trackActivity(ActivityRequest request, String idempotencyKey) {
         // Minimal, helpful logs for beginners
         log.info("[ActivityService] Incoming activity: userId={}, type={}, duration={}, topic={}",
                 request.getUserId(), request.getType(), request.getDuration(), topicName);
@@ -37,46 +42,54 @@ public class ActivityService {
         }
         log.info("[ActivityService] User validation success for userId={}", request.getUserId());
 
+        IdempotencyService.Claim claim = idempotencyService.claim(request, idempotencyKey);
+        if (claim.isReplay()) {
+            return claim.replay();
+        }
+
+        ActivityResponse response;
+        try {
+            response = mapToResponse(save(request, claim.activityId()));
+        } catch (RuntimeException e) {
+            idempotencyService.release(claim);
+            throw e;
+        }
+        idempotencyService.complete(claim, response);
+        return response;
+    }
+
+    private Activity save(ActivityRequest request, String activityId) {
+        // The id comes from the idempotency claim; auditing treats documents with an id as existing,
+        // hence the explicit timestamps
+        LocalDateTime now = LocalDateTime.now();
         Activity activity = Activity.builder()
+                .id(activityId)
                 .userId(request.getUserId())
                 .type(request.getType())
                 .duration(request.getDuration())
                 .caloriesBurned(request.getCaloriesBurned())
                 .startTime(request.getStartTime())
                 .additionalData(request.getAdditionalData())
+                .createdAt(now)
+                .updatedAt(now)
+                // Published to Kafka by ActivityOutboxRelay; no Kafka I/O on the request thread
+                .outbox(ActivityOutbox.pending())
                 .build();
 
-        Activity savedActivity = activityRepository.save(activity);
-        log.info("[ActivityService] Saved activity with id={}", savedActivity.getId());
-
-        // Add simple Kafka send logging without changing behavior
+        Activity savedActivity;
         try {
-            log.info("[ActivityService->Kafka] Sending message: topic={}, key(userId)={}, activityId={}",
-                    topicName, savedActivity.getUserId(), savedActivity.getId());
-            CompletableFuture<SendResult<String, Activity>> future =
-                    kafkaTemplate.send(topicName, savedActivity.getUserId(), savedActivity);
-            future.whenComplete((result, ex) -> {
-                if (ex == null) {
-                    if (result != null && result.getRecordMetadata() != null) {
-                        log.info("[Kafka->ActivityService] Send OK: topic={}, partition={}, offset={}, ts={}",
-                                result.getRecordMetadata().topic(),
-                                result.getRecordMetadata().partition(),
-                                result.getRecordMetadata().offset(),
-                                result.getRecordMetadata().timestamp());
-                    } else {
-                        log.info("[Kafka->ActivityService] Send OK (no metadata available)");
-                    }
-                } else {
-                    log.error("[Kafka->ActivityService] Send FAILED: topic={}, key(userId)={}, error={}",
-                            topicName, savedActivity.getUserId(), ex.getMessage(), ex);
-                    log.error("[Hint] Check: 1) Kafka running at spring.kafka.bootstrap-servers 2) topic name '{}' exists 3) serializers configured.", topicName);
-                }
-            });
-        } catch (Exception e) {
-            log.error("[Kafka->ActivityService] Send threw exception: {}", e.getMessage(), e);
+            savedActivity = activityRepository.insert(activity);
+        } catch (DuplicateKeyException e) {
+            // A taken-over claim whose original request had already stored the activity
+            log.info("[ActivityService] Activity id={} already stored, returning it", activityId);
+            return activityRepository.findById(activityId).orElseThrow(() -> e);
         }
-
-        return mapToResponse(savedActivity);
+        log.info("[ActivityService] Saved activity with id={} (queued for publishing)", savedActivity.getId());
+        activityRollupService.record(savedActivity);
+        activityPercentileService.recordAll(List.of(savedActivity));
+        activityLeaderboardService.recordAll(List.of(savedActivity));
+        activityRouteService.recordAll(List.of(savedActivity));
+        return savedActivity;
     }
 
     private ActivityResponse mapToResponse(Activity activity) {
@@ -88,6 +101,7 @@ public class ActivityService {
         response.setCaloriesBurned(activity.getCaloriesBurned());
         response.setStartTime(activity.getStartTime());
         response.setAdditionalData(activity.getAdditionalData());
+        response.setSampleStats(activity.getSampleStats());
         response.setCreatedAt(activity.getCreatedAt());
         response.setUpdatedAt(activity.getUpdatedAt());
         return response;
@@ -0,0 +1,113 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivitySample;
+import com.fitness.activityservice.model.ActivitySampleStats;
+import com.fitness.activityservice.model.ActivityTrack;
+import com.fitness.activityservice.track.Track;
+import com.fitness.activityservice.track.TrackLevels;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Serves an activity's samples as a {@link com.fitness.activityservice.track.TrackCodec} blob, at
+ * full resolution or as one of the pre-simplified levels. The blobs are built from activity_samples
+ * on first read and kept in activity_tracks until the activity's sample count changes.
+ */
+@Service
+@Slf4j
+public class ActivityTrackService {
+
+    private static final String SERVICE_NAME = "[ActivityTrackService]";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${activity.track.gps-tolerances-m:2,10,50}")
+    private double[] gpsTolerancesMeters;
+
+    @Value("${activity.track.hr-tolerances-bpm:1,3,8}")
+    private double[] heartRateTolerancesBpm;
+
+    public ActivityTrackService(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // Empty if the activity doesn't exist. level null is full resolution, 0 the finest simplified level.
+    public Optional<TrackBlob> getTrack(String activityId, Integer level) {
+        Query activityQuery = Query.query(Criteria.where("_id").is(activityId));
+        activityQuery.fields().include("sampleStats");
+        Activity activity = mongoTemplate.findOne(activityQuery, Activity.class);
+        if (activity == null) {
+            return Optional.empty();
+        }
+        ActivitySampleStats stats = activity.getSampleStats();
+        long sampleCount = stats == null ? 0 : stats.getSampleCount();
+
+        ActivityTrack track = mongoTemplate.findById(activityId, ActivityTrack.class);
+        if (track == null || track.getSampleCount() != sampleCount) {
+            track = build(activityId, sampleCount);
+        }
+        if (level == null) {
+            return Optional.of(new TrackBlob(track.getFull(), track.getFullPoints(), track.getLevels().size()));
+        }
+        if (level < 0 || level >= track.getLevels().size()) {
+            throw new IllegalArgumentException("level must be between 0 and " + (track.getLevels().size() - 1));
+        }
+        TrackLevels.Level selected = track.getLevels().get(level);
+        return Optional.of(new TrackBlob(selected.data(), selected.points(), track.getLevels().size()));
+    }
+
+    private ActivityTrack build(String activityId, long sampleCount) {
+        long startTime = System.currentTimeMillis();
+        Query query = Query.query(Criteria.where("activityId").is(activityId))
+                .with(Sort.by(Sort.Direction.ASC, "timestamp"));
+        query.fields().include("timestamp", "latitude", "longitude", "altitude", "heartRate");
+
+        List<Long> timestamps = new ArrayList<>();
+        List<Double> latitudes = new ArrayList<>();
+        List<Double> longitudes = new ArrayList<>();
+        List<Double> altitudes = new ArrayList<>();
+        List<Integer> heartRates = new ArrayList<>();
+        try (Stream<ActivitySample> samples = mongoTemplate.stream(query, ActivitySample.class)) {
+            samples.forEach(sample -> {
+                timestamps.add(sample.getTimestamp().toEpochMilli());
+                latitudes.add(sample.getLatitude());
+                longitudes.add(sample.getLongitude());
+                altitudes.add(sample.getAltitude());
+                heartRates.add(sample.getHeartRate());
+            });
+        }
+        Track track = Track.of(timestamps.stream().mapToLong(Long::longValue).toArray(),
+                latitudes.toArray(Double[]::new), longitudes.toArray(Double[]::new),
+                altitudes.toArray(Double[]::new), heartRates.toArray(Integer[]::new));
+        TrackLevels levels = TrackLevels.build(track, gpsTolerancesMeters, heartRateTolerancesBpm);
+
+        ActivityTrack built = ActivityTrack.builder()
+                .activityId(activityId)
+                .sampleCount(sampleCount)
+                .builtAt(LocalDateTime.now())
+                .fullPoints(levels.fullPoints())
+                .full(levels.full())
+                .levels(levels.levels())
+                .build();
+        mongoTemplate.save(built);
+        log.info("{} Built track for activityId={}: {} points, {} bytes, levels={} in {}ms", SERVICE_NAME,
+                activityId, levels.fullPoints(), levels.full().length,
+                levels.levels().stream().map(TrackLevels.Level::points).toList(), System.currentTimeMillis() - startTime);
+        return built;
+    }
+
+    public record TrackBlob(byte[] data, int points, int levelCount) {
+    }
+}
@@ -0,0 +1,266 @@
+package com.fitness.activityservice.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.activityservice.dto.ActivityRequest;
+import com.fitness.activityservice.dto.ActivityResponse;
+import com.fitness.activityservice.dto.SampleRequest;
+import com.fitness.activityservice.exception.IdempotencyKeyException;
+import com.fitness.activityservice.model.ActivitySampleStats;
+import com.fitness.activityservice.model.IdempotencyRecord;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * De-duplicates POST /api/activities retries. The key is the Idempotency-Key header, or a hash of
+ * userId + startTime + type when the client sends none, scoped per user. The first request claims the
+ * key in activity_idempotency (unique _id); later requests with the key get the stored response back
+ * and never create an activity or an outbox entry. Recently completed keys are also kept in memory so
+ * the common retry doesn't need a Mongo round trip. Sample uploads use the same claims, keyed per
+ * activity by a required header.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    private static final String SERVICE_NAME = "[IdempotencyService]";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, Completed> recent;
+    private final Counter replayed;
+    private final Duration ttl;
+    private final Duration inFlightTimeout;
+
+    public IdempotencyService(MongoTemplate mongoTemplate, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                              @Value("${activity.idempotency.ttl:24h}") Duration ttl,
+                              @Value("${activity.idempotency.in-flight-timeout:30s}") Duration inFlightTimeout,
+                              @Value("${activity.idempotency.recent-cache-size:10000}") long recentCacheSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        this.inFlightTimeout = inFlightTimeout;
+        this.recent = Caffeine.newBuilder()
+                .maximumSize(recentCacheSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.replayed = meterRegistry.counter("activity.idempotency.replayed");
+    }
+
+    /**
+     * Either returns the original response for a key that has already been used, or claims the key
+     * and returns the activity id the caller must store the new activity under.
+     */
+    public Claim claim(ActivityRequest request, String headerKey) {
+        boolean explicit = headerKey != null && !headerKey.isBlank();
+        if (explicit && headerKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(HEADER + " must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+        String key = request.getUserId() + ":" + (explicit ? headerKey.strip()
+                : "auto:" + sha256(request.getUserId() + "|" + request.getStartTime() + "|" + request.getType()));
+        // Only explicit keys are checked against the body: a derived key already says what a duplicate is
+        String requestHash = explicit ? sha256(toJson(request)) : null;
+
+        Claimed claimed = claimKey(key, requestHash);
+        if (claimed.completed() != null) {
+            ActivityResponse response = claimed.completed().response();
+            log.info("{} Duplicate request for key={}, returning activityId={}", SERVICE_NAME, key, response.getId());
+            return new Claim(key, response.getId(), null, response);
+        }
+        return new Claim(key, claimed.id(), requestHash, null);
+    }
+
+    public void complete(Claim claim, ActivityResponse response) {
+        complete(claim.key(), new Completed(claim.requestHash(), response, null));
+    }
+
+    // The request failed before an activity was stored, so a retry should be allowed to run again
+    public void release(Claim claim) {
+        release(claim.key());
+    }
+
+    /**
+     * POST /{activityId}/samples. Samples carry no natural key, so the header is required here; it is
+     * scoped to the activity and always checked against the body.
+     */
+    public SampleClaim claimSamples(String activityId, String headerKey, List<SampleRequest> samples) {
+        if (headerKey == null || headerKey.isBlank()) {
+            throw new IllegalArgumentException(HEADER + " is required when uploading samples");
+        }
+        if (headerKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(HEADER + " must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+        String key = "samples:" + activityId + ":" + headerKey.strip();
+        String requestHash = sha256(toJson(samples));
+
+        Claimed claimed = claimKey(key, requestHash);
+        if (claimed.completed() != null) {
+            log.info("{} Duplicate sample upload for key={}", SERVICE_NAME, key);
+            return new SampleClaim(key, null, requestHash, false, claimed.completed().sampleStats());
+        }
+        return new SampleClaim(key, claimed.id(), requestHash, claimed.takenOver(), null);
+    }
+
+    public void complete(SampleClaim claim, ActivitySampleStats stats) {
+        complete(claim.key(), new Completed(claim.requestHash(), null, stats));
+    }
+
+    public void release(SampleClaim claim) {
+        release(claim.key());
+    }
+
+    // After a failure that may have stored part of the batch: the next retry takes over at once and cleans up
+    public void abandon(SampleClaim claim) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(claim.key())
+                        .and("status").is(IdempotencyRecord.IN_PROGRESS)),
+                new Update().set("claimedAt", LocalDateTime.now().minus(inFlightTimeout).minusSeconds(1)),
+                IdempotencyRecord.class);
+    }
+
+    private Claimed claimKey(String key, String requestHash) {
+        Completed cached = recent.getIfPresent(key);
+        if (cached != null) {
+            checkSameRequest(requestHash, cached.requestHash());
+            replayed.increment();
+            return new Claimed(null, false, cached);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        IdempotencyRecord record = IdempotencyRecord.builder()
+                .id(key)
+                .status(IdempotencyRecord.IN_PROGRESS)
+                .activityId(new ObjectId().toHexString())
+                .requestHash(requestHash)
+                .claimedAt(now)
+                .expireAt(now.plus(ttl))
+                .build();
+        try {
+            mongoTemplate.insert(record);
+            return new Claimed(record.getActivityId(), false, null);
+        } catch (DuplicateKeyException e) {
+            return resolveExisting(key, requestHash, now);
+        }
+    }
+
+    private void complete(String key, Completed completed) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(key)),
+                new Update().set("status", IdempotencyRecord.COMPLETED)
+                        .set("response", completed.response())
+                        .set("sampleStats", completed.sampleStats()),
+                IdempotencyRecord.class);
+        recent.put(key, completed);
+    }
+
+    private void release(String key) {
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(key)
+                .and("status").is(IdempotencyRecord.IN_PROGRESS)), IdempotencyRecord.class);
+    }
+
+    private Claimed resolveExisting(String key, String requestHash, LocalDateTime now) {
+        IdempotencyRecord existing = mongoTemplate.findById(key, IdempotencyRecord.class);
+        if (existing == null) {
+            // Expired between the insert and the read; rare enough to let the client retry
+            throw new IdempotencyKeyException(HttpStatus.CONFLICT, "Idempotency key changed state, retry the request");
+        }
+        checkSameRequest(requestHash, existing.getRequestHash());
+
+        if (IdempotencyRecord.COMPLETED.equals(existing.getStatus())
+                && (existing.getResponse() != null || existing.getSampleStats() != null)) {
+            Completed completed = new Completed(existing.getRequestHash(), existing.getResponse(), existing.getSampleStats());
+            recent.put(key, completed);
+            replayed.increment();
+            return new Claimed(null, false, completed);
+        }
+        if (existing.getClaimedAt() != null && existing.getClaimedAt().isAfter(now.minus(inFlightTimeout))) {
+            throw new IdempotencyKeyException(HttpStatus.CONFLICT,
+                    "A request with this " + HEADER + " is still being processed");
+        }
+
+        // The claiming request died; take over its claim (and its id, in case it got as far as storing)
+        long taken = mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(key)
+                        .and("status").is(IdempotencyRecord.IN_PROGRESS)
+                        .and("claimedAt").is(existing.getClaimedAt())),
+                new Update().set("claimedAt", now), IdempotencyRecord.class).getModifiedCount();
+        if (taken == 0) {
+            throw new IdempotencyKeyException(HttpStatus.CONFLICT,
+                    "A request with this " + HEADER + " is still being processed");
+        }
+        log.warn("{} Took over abandoned claim for key={}, id={}", SERVICE_NAME, key, existing.getActivityId());
+        return new Claimed(existing.getActivityId(), true, null);
+    }
+
+    private static void checkSameRequest(String requestHash, String storedHash) {
+        if (requestHash != null && storedHash != null && !requestHash.equals(storedHash)) {
+            throw new IdempotencyKeyException(HttpStatus.UNPROCESSABLE_ENTITY,
+                    HEADER + " was already used for a different request");
+        }
+    }
+
+    private String toJson(Object request) {
+        try {
+            return objectMapper.writeValueAsString(request);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not hash request: " + e.getOriginalMessage());
+        }
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Result of {@link #claim}: replay is set for a duplicate; otherwise the caller owns the key and
+     * must store the activity under activityId, then call complete or release.
+     */
+    public record Claim(String key, String activityId, String requestHash, ActivityResponse replay) {
+        public boolean isReplay() {
+            return replay != null;
+        }
+    }
+
+    /**
+     * Result of {@link #claimSamples}: replay is set for a duplicate. Otherwise the caller stores the
+     * samples tagged with batchId; takenOver means an earlier attempt with the key may have stored
+     * some of them already.
+     */
+    public record SampleClaim(String key, String batchId, String requestHash, boolean takenOver,
+                              ActivitySampleStats replay) {
+        public boolean isReplay() {
+            return replay != null;
+        }
+    }
+
+    // id: the activity id or sample batch id the caller stores under; completed: set for a duplicate
+    private record Claimed(String id, boolean takenOver, Completed completed) {
+    }
+
+    private record Completed(String requestHash, ActivityResponse response, ActivitySampleStats sampleStats) {
+    }
+}
@@ -1,32 +1,124 @@
 package com.fitness.activityservice.service;
 
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Caches USER-SERVICE validation results. Known users are refreshed in the background once they are
+ * older than refresh-after and served stale for up to positive-ttl if user-service is failing;
+ * unknown users are cached only briefly so a newly registered user isn't rejected for long.
+ * Concurrent misses for one user share a single HTTP call.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class UserValidationService {
     private final WebClient userServiceWebClient;
+    private final AsyncLoadingCache<String, Boolean> cache;
+    private final Timer loadTimer;
+    private final Duration requestTimeout;
+
+    public UserValidationService(WebClient userServiceWebClient,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${user-validation.cache.maximum-size:100000}") long maximumSize,
+                                 @Value("${user-validation.cache.positive-ttl:24h}") Duration positiveTtl,
+                                 @Value("${user-validation.cache.negative-ttl:30s}") Duration negativeTtl,
+                                 @Value("${user-validation.cache.refresh-after:5m}") Duration refreshAfter,
+                                 @Value("${user-validation.request-timeout:2s}") Duration requestTimeout) {
+        this.userServiceWebClient = userServiceWebClient;
+        this.requestTimeout = requestTimeout;
+        this.loadTimer = Timer.builder("user.validation.load")
+                .description("USER-SERVICE validation calls made on cache misses and refreshes")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, Boolean>() {
+                    @Override
+                    public long expireAfterCreate(String userId, Boolean valid, long currentTime) {
+                        return (valid ? positiveTtl : negativeTtl).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String userId, Boolean valid, long currentTime, long currentDuration) {
+                        return (valid ? positiveTtl : negativeTtl).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String userId, Boolean valid, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                // A failed refresh keeps the old value, which is what makes stale-if-error work
+                .refreshAfterWrite(refreshAfter)
+                .recordStats()
+                .buildAsync((userId, executor) -> fetch(userId));
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "user-validation");
+    }
+
+    public enum Result {
+        VALID,
+        INVALID,
+        // USER-SERVICE failed or timed out and nothing usable was cached; says nothing about the user
+        UNAVAILABLE
+    }
 
     public Boolean validateUser(String userId) {
-        log.info("[UserValidation] GET /api/users/{}/validate via Eureka (service=USER-SERVICE)", userId);
+        return check(userId) == Result.VALID;
+    }
+
+    // For callers that must not treat an outage as an unknown user
+    public Result check(String userId) {
         try {
-            Boolean result = userServiceWebClient.get()
-                    .uri("/api/users/{userId}/validate", userId)
-                    .retrieve()
-                    .bodyToMono(Boolean.class)
-                    .block();
-            log.info("[UserValidation] Response: {}", result);
-            return result;
-        } catch (WebClientResponseException e) {
-            log.error("[UserValidation] HTTP {} from USER-SERVICE for userId={}, body={}", e.getRawStatusCode(), userId, e.getResponseBodyAsString(), e);
-        } catch (Exception e) {
-            log.error("[UserValidation] Error calling USER-SERVICE for userId={}: {}", userId, e.getMessage(), e);
+            Boolean valid = cache.get(userId).get(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            return Boolean.TRUE.equals(valid) ? Result.VALID : Result.INVALID;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Nothing cached to fall back on; errors are not cached, so the next call retries
+            log.error("[UserValidation] Error calling USER-SERVICE for userId={}: {}", userId, e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            log.error("[UserValidation] Timed out after {} validating userId={}", requestTimeout, userId);
         }
-        return false;
+        return Result.UNAVAILABLE;
+    }
+
+    // Errors propagate so Caffeine neither caches them nor replaces an existing value with them
+    private CompletableFuture<Boolean> fetch(String userId) {
+        log.info("[UserValidation] GET /api/users/{}/validate via Eureka (service=USER-SERVICE)", userId);
+        Timer.Sample sample = Timer.start();
+        return userServiceWebClient.get()
+                .uri("/api/users/{userId}/validate", userId)
+                .retrieve()
+                .bodyToMono(Boolean.class)
+                .defaultIfEmpty(false)
+                .onErrorResume(WebClientResponseException.class, e -> {
+                    if (e.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
+                        return Mono.just(false);
+                    }
+                    log.error("[UserValidation] HTTP {} from USER-SERVICE for userId={}, body={}",
+                            e.getStatusCode().value(), userId, e.getResponseBodyAsString());
+                    return Mono.error(e);
+                })
+                .timeout(requestTimeout)
+                .doOnNext(result -> log.info("[UserValidation] Response: {}", result))
+                .doFinally(signal -> sample.stop(loadTimer))
+                .toFuture();
     }
 }
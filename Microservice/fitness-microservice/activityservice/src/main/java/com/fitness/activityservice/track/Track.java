@@ -0,0 +1,116 @@
+package com.fitness.activityservice.track;
+
+/**
+ * Column-oriented sample series in the integer units {@link TrackCodec} stores: epoch millis,
+ * microdegrees, decimeters and bpm. Optional columns are null when the device sent none of that
+ * reading; gaps inside a column are filled by {@link #of} with the previous reading.
+ */
+public record Track(long[] timestamps, int[] latitudes, int[] longitudes, int[] altitudes, int[] heartRates) {
+
+    public static final double DEGREE_SCALE = 1_000_000;
+    public static final double ALTITUDE_SCALE = 10;
+
+    public Track {
+        if (timestamps == null) {
+            throw new IllegalArgumentException("timestamps are required");
+        }
+        if ((latitudes == null) != (longitudes == null)) {
+            throw new IllegalArgumentException("latitudes and longitudes go together");
+        }
+        checkLength(latitudes, timestamps.length);
+        checkLength(longitudes, timestamps.length);
+        checkLength(altitudes, timestamps.length);
+        checkLength(heartRates, timestamps.length);
+    }
+
+    /**
+     * Builds a track from nullable readings (degrees, meters, bpm). A column with no readings at all
+     * is left out; otherwise missing readings repeat the previous one (or the first one, at the start).
+     */
+    public static Track of(long[] timestamps, Double[] latitudes, Double[] longitudes, Double[] altitudes,
+                           Integer[] heartRates) {
+        int[] lat = fill(latitudes, DEGREE_SCALE);
+        int[] lon = fill(longitudes, DEGREE_SCALE);
+        if (lat == null || lon == null) {
+            lat = null;
+            lon = null;
+        }
+        Double[] hr = null;
+        if (heartRates != null) {
+            hr = new Double[heartRates.length];
+            for (int i = 0; i < heartRates.length; i++) {
+                hr[i] = heartRates[i] == null ? null : heartRates[i].doubleValue();
+            }
+        }
+        return new Track(timestamps, lat, lon, fill(altitudes, ALTITUDE_SCALE), fill(hr, 1));
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    public boolean hasPosition() {
+        return latitudes != null;
+    }
+
+    public double latitude(int i) {
+        return latitudes[i] / DEGREE_SCALE;
+    }
+
+    public double longitude(int i) {
+        return longitudes[i] / DEGREE_SCALE;
+    }
+
+    public double altitude(int i) {
+        return altitudes[i] / ALTITUDE_SCALE;
+    }
+
+    // The points at the given (ascending) indices
+    public Track select(int[] indices) {
+        long[] t = new long[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            t[i] = timestamps[indices[i]];
+        }
+        return new Track(t, pick(latitudes, indices), pick(longitudes, indices), pick(altitudes, indices),
+                pick(heartRates, indices));
+    }
+
+    private static int[] fill(Double[] values, double scale) {
+        if (values == null) {
+            return null;
+        }
+        int first = -1;
+        for (int i = 0; i < values.length && first < 0; i++) {
+            first = values[i] != null ? i : -1;
+        }
+        if (first < 0) {
+            return null;
+        }
+        int[] result = new int[values.length];
+        int previous = (int) Math.round(values[first] * scale);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                previous = (int) Math.round(values[i] * scale);
+            }
+            result[i] = previous;
+        }
+        return result;
+    }
+
+    private static int[] pick(int[] column, int[] indices) {
+        if (column == null) {
+            return null;
+        }
+        int[] result = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            result[i] = column[indices[i]];
+        }
+        return result;
+    }
+
+    private static void checkLength(int[] column, int length) {
+        if (column != null && column.length != length) {
+            throw new IllegalArgumentException("All columns must have " + length + " values");
+        }
+    }
+}
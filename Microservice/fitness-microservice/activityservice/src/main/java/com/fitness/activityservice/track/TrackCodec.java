@@ -0,0 +1,226 @@
+package com.fitness.activityservice.track;
+
+import java.util.Arrays;
+
+/**
+ * Compact binary encoding of a {@link Track}.
+ *
+ * <pre>
+ * track   := MAGIC VERSION flags varint(count) timestamps [lat lon] [altitude] [heartRate]
+ * column  := zigzag(v0) zigzag(v1 - v0) zigzag(delta-of-delta | delta)*
+ * </pre>
+ *
+ * Timestamps and positions are encoded as delta-of-delta: at a steady sample rate and pace the
+ * second difference is 0 or close to it, so most entries take one byte. Altitude and heart rate
+ * wander rather than trend, so plain deltas are smaller for them. All values are varints. Encoding is
+ * lossless for the integer units of {@link Track}; the only loss is the quantization done when a
+ * track is built from degrees and meters.
+ */
+public final class TrackCodec {
+
+    public static final byte MAGIC = (byte) 0xA8;
+    public static final byte VERSION = 1;
+
+    private static final int HAS_POSITION = 1;
+    private static final int HAS_ALTITUDE = 2;
+    private static final int HAS_HEART_RATE = 4;
+
+    private TrackCodec() {
+    }
+
+    public static byte[] encode(Track track) {
+        int n = track.size();
+        int columns = 1 + (track.hasPosition() ? 2 : 0) + (track.altitudes() != null ? 1 : 0)
+                + (track.heartRates() != null ? 1 : 0);
+        // At 1 Hz nearly every value is one byte
+        Writer out = new Writer(8 + n * columns + 32);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte((track.hasPosition() ? HAS_POSITION : 0)
+                | (track.altitudes() != null ? HAS_ALTITUDE : 0)
+                | (track.heartRates() != null ? HAS_HEART_RATE : 0));
+        out.writeVarint(n);
+
+        writeDeltaOfDelta(out, track.timestamps());
+        if (track.hasPosition()) {
+            writeDeltaOfDelta(out, track.latitudes());
+            writeDeltaOfDelta(out, track.longitudes());
+        }
+        if (track.altitudes() != null) {
+            writeDelta(out, track.altitudes());
+        }
+        if (track.heartRates() != null) {
+            writeDelta(out, track.heartRates());
+        }
+        return out.toByteArray();
+    }
+
+    public static Track decode(byte[] data) {
+        Reader in = new Reader(data);
+        if (in.readByte() != (MAGIC & 0xFF)) {
+            throw new IllegalArgumentException("Not an encoded track");
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported track version " + version);
+        }
+        int flags = in.readByte();
+        long count = in.readVarint();
+        // Every value takes at least one byte, which bounds what a corrupt count can allocate
+        if (count < 0 || count > data.length) {
+            throw new IllegalArgumentException("Invalid track length " + count);
+        }
+        int n = (int) count;
+
+        long[] timestamps = new long[n];
+        readDeltaOfDelta(in, n, (i, v) -> timestamps[i] = v);
+        int[] latitudes = null;
+        int[] longitudes = null;
+        if ((flags & HAS_POSITION) != 0) {
+            latitudes = readIntDeltaOfDelta(in, n);
+            longitudes = readIntDeltaOfDelta(in, n);
+        }
+        int[] altitudes = (flags & HAS_ALTITUDE) != 0 ? readIntDelta(in, n) : null;
+        int[] heartRates = (flags & HAS_HEART_RATE) != 0 ? readIntDelta(in, n) : null;
+        return new Track(timestamps, latitudes, longitudes, altitudes, heartRates);
+    }
+
+    private static void writeDeltaOfDelta(Writer out, long[] values) {
+        long previous = 0;
+        long previousDelta = 0;
+        for (int i = 0; i < values.length; i++) {
+            long delta = values[i] - previous;
+            out.writeVarint(zigZag(i < 2 ? delta : delta - previousDelta));
+            previous = values[i];
+            previousDelta = delta;
+        }
+    }
+
+    private static void writeDeltaOfDelta(Writer out, int[] values) {
+        long previous = 0;
+        long previousDelta = 0;
+        for (int i = 0; i < values.length; i++) {
+            long delta = values[i] - previous;
+            out.writeVarint(zigZag(i < 2 ? delta : delta - previousDelta));
+            previous = values[i];
+            previousDelta = delta;
+        }
+    }
+
+    private static void writeDelta(Writer out, int[] values) {
+        long previous = 0;
+        for (int value : values) {
+            out.writeVarint(zigZag(value - previous));
+            previous = value;
+        }
+    }
+
+    private static void readDeltaOfDelta(Reader in, int n, LongSink sink) {
+        long previous = 0;
+        long previousDelta = 0;
+        for (int i = 0; i < n; i++) {
+            long encoded = unZigZag(in.readVarint());
+            long delta = i < 2 ? encoded : previousDelta + encoded;
+            previous += delta;
+            previousDelta = delta;
+            sink.accept(i, previous);
+        }
+    }
+
+    private static int[] readIntDeltaOfDelta(Reader in, int n) {
+        int[] values = new int[n];
+        readDeltaOfDelta(in, n, (i, v) -> values[i] = toInt(v));
+        return values;
+    }
+
+    private static int[] readIntDelta(Reader in, int n) {
+        int[] values = new int[n];
+        long previous = 0;
+        for (int i = 0; i < n; i++) {
+            previous += unZigZag(in.readVarint());
+            values[i] = toInt(previous);
+        }
+        return values;
+    }
+
+    private static int toInt(long value) {
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Corrupt track: value out of range");
+        }
+        return (int) value;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @FunctionalInterface
+    private interface LongSink {
+        void accept(int index, long value);
+    }
+
+    private static final class Writer {
+        private byte[] buf;
+        private int size;
+
+        private Writer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+
+        private void writeByte(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        private void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buf;
+        private int pos;
+
+        private Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        private int readByte() {
+            if (pos >= buf.length) {
+                throw new IllegalArgumentException("Truncated track");
+            }
+            return buf[pos++] & 0xFF;
+        }
+
+        private long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in track");
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.fitness.activityservice.track;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The full-resolution blob of a track plus pre-simplified levels, finest first. Views pick the
+ * coarsest level that still looks right at their zoom, so they download a few KB instead of the
+ * whole series.
+ */
+public record TrackLevels(byte[] full, int fullPoints, List<Level> levels) {
+
+    public record Level(double gpsToleranceMeters, double heartRateToleranceBpm, int points, byte[] data) {
+    }
+
+    /**
+     * One level per tolerance pair; the arrays must be the same length. Each level is simplified from
+     * the full track, not from the previous level, so errors don't add up.
+     */
+    public static TrackLevels build(Track track, double[] gpsTolerancesMeters, double[] heartRateTolerancesBpm) {
+        if (gpsTolerancesMeters.length != heartRateTolerancesBpm.length) {
+            throw new IllegalArgumentException("GPS and heart-rate tolerances must pair up");
+        }
+        List<Level> levels = new ArrayList<>(gpsTolerancesMeters.length);
+        for (int i = 0; i < gpsTolerancesMeters.length; i++) {
+            Track simplified = TrackSimplifier.simplify(track, gpsTolerancesMeters[i], heartRateTolerancesBpm[i]);
+            levels.add(new Level(gpsTolerancesMeters[i], heartRateTolerancesBpm[i], simplified.size(),
+                    TrackCodec.encode(simplified)));
+        }
+        return new TrackLevels(TrackCodec.encode(track), track.size(), levels);
+    }
+}
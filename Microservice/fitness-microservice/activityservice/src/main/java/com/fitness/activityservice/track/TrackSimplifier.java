@@ -0,0 +1,112 @@
+package com.fitness.activityservice.track;
+
+import java.util.Arrays;
+
+/**
+ * Douglas–Peucker downsampling. The GPS path is simplified in meters (perpendicular distance on a
+ * local flat projection, fine at activity scale); the heart-rate series by its vertical distance
+ * from the straight line between kept points, in bpm. A point survives if either simplification
+ * keeps it, so a level stays usable for both the map and the chart.
+ */
+public final class TrackSimplifier {
+
+    // Meters per degree of latitude on a spherical earth
+    private static final double METERS_PER_DEGREE = 6_371_008.8 * Math.PI / 180;
+
+    private TrackSimplifier() {
+    }
+
+    /**
+     * @param gpsToleranceMeters how far the simplified path may stray from the original
+     * @param heartRateToleranceBpm how far the simplified heart-rate line may stray
+     */
+    public static Track simplify(Track track, double gpsToleranceMeters, double heartRateToleranceBpm) {
+        int n = track.size();
+        if (n <= 2) {
+            return track;
+        }
+        boolean[] keep = new boolean[n];
+        if (track.hasPosition()) {
+            double[] x = new double[n];
+            double[] y = new double[n];
+            double metersPerLonDegree = METERS_PER_DEGREE * Math.cos(Math.toRadians(track.latitude(0)));
+            for (int i = 0; i < n; i++) {
+                x[i] = track.longitude(i) * metersPerLonDegree;
+                y[i] = track.latitude(i) * METERS_PER_DEGREE;
+            }
+            douglasPeucker(n, (a, b, p) -> segmentDistance(x[a], y[a], x[b], y[b], x[p], y[p]), gpsToleranceMeters, keep);
+        }
+        if (track.heartRates() != null) {
+            long[] t = track.timestamps();
+            int[] hr = track.heartRates();
+            douglasPeucker(n, (a, b, p) -> verticalDistance(t[a], hr[a], t[b], hr[b], t[p], hr[p]),
+                    heartRateToleranceBpm, keep);
+        }
+        if (!track.hasPosition() && track.heartRates() == null) {
+            // Nothing to simplify by; timestamps alone carry no shape
+            keep[0] = true;
+            keep[n - 1] = true;
+        }
+
+        int[] indices = new int[n];
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                indices[kept++] = i;
+            }
+        }
+        return kept == n ? track : track.select(Arrays.copyOf(indices, kept));
+    }
+
+    // Iterative, so a long track can't overflow the stack
+    static void douglasPeucker(int n, Distance distance, double tolerance, boolean[] keep) {
+        keep[0] = true;
+        keep[n - 1] = true;
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            double max = -1;
+            int farthest = -1;
+            for (int i = start + 1; i < end; i++) {
+                double d = distance.between(start, end, i);
+                if (d > max) {
+                    max = d;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0 && max > tolerance) {
+                keep[farthest] = true;
+                stack[top++] = start;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = end;
+            }
+        }
+    }
+
+    static double segmentDistance(double ax, double ay, double bx, double by, double px, double py) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        return Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+    }
+
+    static double verticalDistance(long ta, int va, long tb, int vb, long tp, int vp) {
+        if (tb == ta) {
+            return Math.abs(vp - va);
+        }
+        double expected = va + (double) (vb - va) * (tp - ta) / (tb - ta);
+        return Math.abs(vp - expected);
+    }
+
+    @FunctionalInterface
+    interface Distance {
+        // Distance of point p from the simplified segment start..end
+        double between(int start, int end, int p);
+    }
+}
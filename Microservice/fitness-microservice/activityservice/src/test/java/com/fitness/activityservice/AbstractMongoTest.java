@@ -0,0 +1,37 @@
+package com.fitness.activityservice;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+// Base for tests against a real Mongo. One container serves every subclass (started once, stopped with the JVM),
+// so the cached Spring contexts keep a valid connection; subclasses are skipped when Docker is not available
+@DataMongoTest(properties = {
+		"spring.data.mongodb.auto-index-creation=true",
+		"spring.cloud.config.enabled=false"
+})
+@Testcontainers(disabledWithoutDocker = true)
+public abstract class AbstractMongoTest {
+
+	@ServiceConnection
+	protected static final MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+	static {
+		mongo.start();
+	}
+
+	@Autowired
+	protected MongoTemplate mongoTemplate;
+
+	// Empties every collection but keeps the indexes auto-index-creation built
+	@BeforeEach
+	void clearCollections() {
+		mongoTemplate.getCollectionNames()
+				.forEach(name -> mongoTemplate.getCollection(name).deleteMany(new Document()));
+	}
+}
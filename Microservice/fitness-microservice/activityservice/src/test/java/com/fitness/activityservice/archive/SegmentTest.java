@@ -0,0 +1,122 @@
+package com.fitness.activityservice.archive;
+
+import com.fitness.activityservice.model.ActivityType;
+import org.bson.BsonBinaryReader;
+import org.bson.ByteBuf;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SegmentTest {
+
+	private static final long START = 1_680_300_000_000L;
+	private static final DocumentCodec CODEC = new DocumentCodec();
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void columnsAndDocumentsRoundTrip() throws IOException {
+		List<ObjectId> ids = new ArrayList<>();
+		long rawBytes = 0;
+		Path file = dir.resolve("activities-2023-04-0.seg");
+		try (SegmentWriter writer = new SegmentWriter(file)) {
+			for (String user : List.of("alice", "bob")) {
+				// Newest first within a user, as the archive job reads them
+				for (int i = 0; i < 600; i++) {
+					ObjectId id = new ObjectId();
+					ids.add(id);
+					Integer duration = i % 50 == 0 ? null : 20 + i % 40;
+					byte[] document = bson(new Document("_id", id).append("userId", user)
+							.append("additional_data", new Document("note", "row " + i)));
+					writer.add(user, id.toByteArray(), ActivityType.values()[i % ActivityType.values().length],
+							duration, 100 + i, START - i * 60_000L, document);
+					// id, type, two ints and a long per row, plus the document
+					rawBytes += 12 + 1 + 4 + 4 + 8 + document.length;
+				}
+			}
+			assertThat(writer.finish()).isEqualTo(1200);
+		}
+		assertThat(Files.list(dir)).containsExactly(file);
+
+		Segment segment = Segment.open(file);
+		assertThat(segment.rows()).isEqualTo(1200);
+		assertThat(segment.minStart()).isEqualTo(START - 599 * 60_000L);
+		assertThat(segment.maxStart()).isEqualTo(START);
+		assertThat(segment.users()).containsExactly("alice", "bob");
+		assertThat(segment.rangeOf("bob")).containsExactly(600, 600);
+		assertThat(segment.rangeOf("carol")).isNull();
+
+		for (int row = 0; row < 1200; row++) {
+			int i = row % 600;
+			assertThat(segment.id(row)).isEqualTo(ids.get(row).toHexString());
+			assertThat(segment.type(row)).isEqualTo(ActivityType.values()[i % ActivityType.values().length]);
+			assertThat(segment.duration(row)).isEqualTo(i % 50 == 0 ? null : 20 + i % 40);
+			assertThat(segment.calories(row)).isEqualTo(100 + i);
+			assertThat(segment.startMillis(row)).isEqualTo(START - i * 60_000L);
+		}
+		Document document = CODEC.decode(new BsonBinaryReader(ByteBuffer.wrap(segment.document(777))),
+				DecoderContext.builder().build());
+		assertThat(document.getObjectId("_id")).isEqualTo(ids.get(777));
+		assertThat(document.get("additional_data", Document.class).getString("note")).isEqualTo("row 177");
+		// Packed columns and deflated documents beat the raw values, header and directory included
+		assertThat(Files.size(file)).isLessThan(rawBytes / 2);
+	}
+
+	@Test
+	void seekFindsTheFirstRowAfterAPageCursor() throws IOException {
+		Path file = dir.resolve("seek.seg");
+		List<ObjectId> ids = new ArrayList<>();
+		try (SegmentWriter writer = new SegmentWriter(file)) {
+			for (int i = 0; i < 10; i++) {
+				ids.add(new ObjectId());
+			}
+			// Pairs share a start time; ties are ordered by id, descending
+			for (int i = 0; i < 10; i++) {
+				writer.add("alice", ids.get(9 - i).toByteArray(), ActivityType.RUNNING, 30, 300,
+						START - (i / 2) * 1000L, bson(new Document("_id", ids.get(9 - i))));
+			}
+			writer.finish();
+		}
+		Segment segment = Segment.open(file);
+
+		assertThat(segment.seek(0, 10, Long.MAX_VALUE, "")).isZero();
+		assertThat(segment.seek(0, 10, segment.startMillis(4), segment.id(4))).isEqualTo(5);
+		assertThat(segment.seek(0, 10, segment.startMillis(5), segment.id(5))).isEqualTo(6);
+		// An exclusive upper bound on startTime
+		assertThat(segment.seek(0, 10, START - 2000L, "")).isEqualTo(6);
+		assertThat(segment.seek(0, 10, START - 9000L, "")).isEqualTo(10);
+	}
+
+	@Test
+	void rowsMustBeGroupedByUser() throws IOException {
+		try (SegmentWriter writer = new SegmentWriter(dir.resolve("unordered.seg"))) {
+			writer.add("bob", new ObjectId().toByteArray(), ActivityType.YOGA, 60, 200, START, bson(new Document()));
+			assertThatThrownBy(() -> writer.add("alice", new ObjectId().toByteArray(), ActivityType.YOGA, 60, 200,
+					START, bson(new Document()))).isInstanceOf(IllegalStateException.class);
+		}
+		// Nothing is left behind by an unfinished writer
+		assertThat(Files.list(dir)).isEmpty();
+	}
+
+	private static byte[] bson(Document document) {
+		ByteBuf buffer = new RawBsonDocument(document, CODEC).getByteBuffer();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+}
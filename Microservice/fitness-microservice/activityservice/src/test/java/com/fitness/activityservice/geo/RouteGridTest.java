@@ -0,0 +1,67 @@
+package com.fitness.activityservice.geo;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RouteGridTest {
+
+	private static final LocalDateTime MONDAY = LocalDateTime.of(2025, 6, 2, 7, 0);
+
+	@Test
+	void geohashMatchesKnownValueAndDecodesToContainingCell() {
+		assertThat(Geohash.encode(57.64911, 10.40744, 11)).isEqualTo("u4pruydqqvj");
+
+		double[] bounds = Geohash.bounds("u4pruy");
+		assertThat(57.64911).isBetween(bounds[0], bounds[2]);
+		assertThat(10.40744).isBetween(bounds[1], bounds[3]);
+		assertThat(bounds[2] - bounds[0]).isCloseTo(Geohash.cellHeightDegrees(6), within(1e-12));
+		assertThat(bounds[3] - bounds[1]).isCloseTo(Geohash.cellWidthDegrees(6), within(1e-12));
+	}
+
+	@Test
+	void cellsAroundCoverTheCircle() {
+		double lat = 52.52;
+		double lon = 13.405;
+		Set<String> cells = Geohash.cellsAround(lat, lon, 3000, 6, 10_000);
+
+		// Points on the circle in every direction fall into one of the returned cells
+		for (int degrees = 0; degrees < 360; degrees += 15) {
+			double bearing = Math.toRadians(degrees);
+			double pointLat = lat + 2990 * Math.cos(bearing) / 111_195;
+			double pointLon = lon + 2990 * Math.sin(bearing) / (111_195 * Math.cos(Math.toRadians(lat)));
+			assertThat(cells).contains(Geohash.encode(pointLat, pointLon, 6));
+		}
+		assertThat(Geohash.cellsAround(lat, lon, 50_000, 6, 100)).isEmpty();
+	}
+
+	@Test
+	void nearRanksRoutesByPopularityWithinRadius() {
+		RouteGrid grid = new RouteGrid(6);
+		for (int i = 0; i < 5; i++) {
+			grid.add(52.5200, 13.4050, 52.5300, 13.4200, "RUNNING", "run-" + i, MONDAY.plusDays(i));
+		}
+		grid.add(52.5200, 13.4050, null, null, "CYCLING", "ride", MONDAY);
+		grid.add(52.5250, 13.4100, 52.5250, 13.4100, "WALKING", "walk-1", MONDAY);
+		grid.add(52.5250, 13.4100, 52.5250, 13.4100, "WALKING", "walk-2", MONDAY);
+		// About 30 km away
+		grid.add(52.2500, 13.4050, 52.2500, 13.4050, "RUNNING", "far", MONDAY);
+
+		List<RouteGrid.Route> routes = grid.near(52.5210, 13.4060, 2000, null, 10);
+
+		assertThat(routes).extracting(RouteGrid.Route::count).containsExactly(5L, 2L, 1L);
+		assertThat(routes.get(0).latestActivityId()).isEqualTo("run-4");
+		assertThat(routes.get(0).endCell()).isEqualTo(Geohash.encode(52.5300, 13.4200, 6));
+		assertThat(routes.get(2).endCell()).isNull();
+		assertThat(grid.near(52.5210, 13.4060, 2000, "WALKING", 10))
+				.extracting(RouteGrid.Route::count).containsExactly(2L);
+		// A radius too large to enumerate still answers, from the populated cells
+		assertThat(grid.near(52.5210, 13.4060, 50_000, "RUNNING", 10))
+				.extracting(RouteGrid.Route::count).containsExactly(5L, 1L);
+	}
+}
@@ -0,0 +1,69 @@
+package com.fitness.activityservice.importer;
+
+import com.fitness.activityservice.model.ActivityType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+class CsvWorkoutParserTest {
+
+	@Test
+	void readsRowsByHeaderName() throws IOException {
+		RecordingSink sink = RecordingSink.parse(new CsvWorkoutParser(), "workouts.csv", ZoneOffset.UTC);
+
+		assertThat(sink.accepted).extracting(WorkoutSummary::getType)
+				.containsExactly(ActivityType.RUNNING, ActivityType.CYCLING, ActivityType.STRENGTH_TRAINING);
+		WorkoutSummary run = sink.accepted.get(0);
+		assertThat(run.getStartTime()).isEqualTo(LocalDateTime.of(2025, 3, 1, 6, 0));
+		assertThat(run.getDurationSeconds()).isEqualTo(1800);
+		assertThat(run.getCalories()).isEqualTo(300);
+		assertThat(run.getDistanceMeters()).isEqualTo(5000.0);
+		assertThat(run.getAvgHeartRate()).isEqualTo(150.0);
+		assertThat(run.getMaxHeartRate()).isEqualTo(172);
+	}
+
+	@Test
+	void quotedFieldsKeepTheirCommas() throws IOException {
+		RecordingSink sink = RecordingSink.parse(new CsvWorkoutParser(), "workouts.csv", ZoneOffset.UTC);
+
+		// Had the quoted notes been split, the columns after them would be shifted
+		WorkoutSummary ride = sink.accepted.get(1);
+		assertThat(ride.getStartTime()).isEqualTo(LocalDateTime.of(2025, 3, 2, 7, 0));
+		assertThat(ride.getDurationSeconds()).isEqualTo(5430);
+		assertThat(ride.getCalories()).isZero();
+		assertThat(ride.getDistanceMeters()).isEqualTo(40000.0);
+		assertThat(ride.getAvgHeartRate()).isNull();
+		assertThat(ride.getMaxHeartRate()).isNull();
+		assertThat(CsvWorkoutParser.split("a,\"b, \"\"c\"\"\",d")).containsExactly("a", "b, \"c\"", "d");
+	}
+
+	@Test
+	void rejectsBadRowsByLineNumber() throws IOException {
+		RecordingSink sink = RecordingSink.parse(new CsvWorkoutParser(), "workouts.csv", ZoneOffset.UTC);
+
+		assertThat(sink.rejected).containsOnlyKeys("line 4", "line 5", "line 6", "line 7");
+		assertThat(sink.rejected).contains(
+				entry("line 4", "startTime is required"),
+				entry("line 5", "duration is required"),
+				entry("line 7", "unreadable startTime"));
+		assertThat(sink.rejected.get("line 6")).startsWith("not a number");
+	}
+
+	@Test
+	void missingRequiredColumnIsIOException() {
+		byte[] csv = "\uFEFFstartTime,type,calories\n2025-03-01T06:00:00Z,run,300\n".getBytes(StandardCharsets.UTF_8);
+
+		assertThatThrownBy(() -> new CsvWorkoutParser().parse(new ByteArrayInputStream(csv), ZoneOffset.UTC,
+				new RecordingSink()))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("'duration'");
+	}
+}
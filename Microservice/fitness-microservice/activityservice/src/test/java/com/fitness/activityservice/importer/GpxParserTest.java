@@ -0,0 +1,64 @@
+package com.fitness.activityservice.importer;
+
+import com.fitness.activityservice.model.ActivityType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.within;
+
+class GpxParserTest {
+
+	@Test
+	void summarizesTrackAndSkipsBadPoint() throws IOException {
+		RecordingSink sink = RecordingSink.parse(new GpxParser(), "workouts.gpx", ZoneOffset.UTC);
+
+		assertThat(sink.accepted).hasSize(1);
+		WorkoutSummary run = sink.accepted.get(0);
+		assertThat(run.getName()).isEqualTo("Morning Run");
+		assertThat(run.getType()).isEqualTo(ActivityType.RUNNING);
+		assertThat(run.getStartTime()).isEqualTo(LocalDateTime.of(2025, 3, 1, 6, 0));
+		assertThat(run.getDurationSeconds()).isEqualTo(1800);
+		assertThat(run.getCalories()).isZero();
+		// Two 0.001 degree steps of latitude; the point without a position adds nothing
+		assertThat(run.getDistanceMeters()).isCloseTo(222.39, within(0.01));
+		assertThat(run.getAvgHeartRate()).isEqualTo(150.0);
+		assertThat(run.getMaxHeartRate()).isEqualTo(160);
+		assertThat(run.getStartLat()).isEqualTo(52.0);
+		assertThat(run.getEndLat()).isEqualTo(52.002);
+		assertThat(run.getEndLon()).isEqualTo(13.0);
+	}
+
+	@Test
+	void rejectsTracksWithoutUsableTimes() throws IOException {
+		RecordingSink sink = RecordingSink.parse(new GpxParser(), "workouts.gpx", ZoneOffset.UTC);
+
+		assertThat(sink.rejected).containsExactly(
+				entry("track 2", "no timestamped points"),
+				entry("track 3", "unreadable point times"));
+	}
+
+	@Test
+	void startTimeIsLocalToZone() throws IOException {
+		RecordingSink sink = RecordingSink.parse(new GpxParser(), "workouts.gpx", ZoneId.of("Europe/Berlin"));
+
+		assertThat(sink.accepted.get(0).getStartTime()).isEqualTo(LocalDateTime.of(2025, 3, 1, 7, 0));
+	}
+
+	@Test
+	void malformedXmlIsIOException() {
+		byte[] gpx = "<gpx><trk><trkpt lat=\"52\" lon=\"13\">".getBytes(StandardCharsets.UTF_8);
+
+		assertThatThrownBy(() -> new GpxParser().parse(new ByteArrayInputStream(gpx), ZoneOffset.UTC, new RecordingSink()))
+				.isInstanceOf(IOException.class)
+				.hasMessageStartingWith("Invalid GPX");
+	}
+}
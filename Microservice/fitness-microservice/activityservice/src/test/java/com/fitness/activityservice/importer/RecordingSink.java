@@ -0,0 +1,34 @@
+package com.fitness.activityservice.importer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Collects what a parser emits, in order; rejects are keyed by where
+class RecordingSink implements WorkoutParser.Sink {
+
+	final List<WorkoutSummary> accepted = new ArrayList<>();
+	final Map<String, String> rejected = new LinkedHashMap<>();
+
+	static RecordingSink parse(WorkoutParser parser, String fixture, ZoneId zone) throws IOException {
+		RecordingSink sink = new RecordingSink();
+		try (InputStream in = RecordingSink.class.getResourceAsStream("/importer/" + fixture)) {
+			parser.parse(in, zone, sink);
+		}
+		return sink;
+	}
+
+	@Override
+	public void accept(WorkoutSummary workout) {
+		accepted.add(workout);
+	}
+
+	@Override
+	public void reject(String where, String reason) {
+		rejected.put(where, reason);
+	}
+}
@@ -0,0 +1,52 @@
+package com.fitness.activityservice.importer;
+
+import com.fitness.activityservice.model.ActivityType;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+class TcxParserTest {
+
+	@Test
+	void sumsLapsAndIgnoresTrackpoints() throws IOException {
+		RecordingSink sink = RecordingSink.parse(new TcxParser(), "workouts.tcx", ZoneOffset.UTC);
+
+		WorkoutSummary run = sink.accepted.get(0);
+		assertThat(run.getType()).isEqualTo(ActivityType.RUNNING);
+		assertThat(run.getStartTime()).isEqualTo(LocalDateTime.of(2025, 3, 1, 6, 0));
+		assertThat(run.getDurationSeconds()).isEqualTo(1800);
+		assertThat(run.getDistanceMeters()).isEqualTo(6000.0);
+		assertThat(run.getCalories()).isEqualTo(450);
+		// Time-weighted: (140 * 600 + 155 * 1200) / 1800
+		assertThat(run.getAvgHeartRate()).isEqualTo(150.0);
+		assertThat(run.getMaxHeartRate()).isEqualTo(170);
+	}
+
+	@Test
+	void fallsBackToLapStartWhenIdIsMissing() throws IOException {
+		RecordingSink sink = RecordingSink.parse(new TcxParser(), "workouts.tcx", ZoneOffset.UTC);
+
+		assertThat(sink.accepted).hasSize(2);
+		WorkoutSummary other = sink.accepted.get(1);
+		assertThat(other.getType()).isEqualTo(ActivityType.OTHER);
+		assertThat(other.getStartTime()).isEqualTo(LocalDateTime.of(2025, 3, 2, 8, 0));
+		assertThat(other.getDurationSeconds()).isEqualTo(900);
+		assertThat(other.getDistanceMeters()).isNull();
+		assertThat(other.getAvgHeartRate()).isNull();
+		assertThat(other.getMaxHeartRate()).isNull();
+	}
+
+	@Test
+	void rejectsActivitiesWithoutUsableStartTime() throws IOException {
+		RecordingSink sink = RecordingSink.parse(new TcxParser(), "workouts.tcx", ZoneOffset.UTC);
+
+		assertThat(sink.rejected).containsExactly(
+				entry("activity 2", "no start time"),
+				entry("activity 3", "unreadable start time 'yesterday'"));
+	}
+}
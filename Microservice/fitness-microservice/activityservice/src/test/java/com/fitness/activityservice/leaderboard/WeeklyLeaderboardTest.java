@@ -0,0 +1,92 @@
+package com.fitness.activityservice.leaderboard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WeeklyLeaderboardTest {
+
+	@Test
+	void topSetMatchesFullSortAfterRandomUpdates() {
+		Random random = new Random(11);
+		WeeklyLeaderboard board = new WeeklyLeaderboard(50);
+		Map<String, Long> calories = new HashMap<>();
+		Map<String, Long> duration = new HashMap<>();
+		for (int i = 0; i < 20_000; i++) {
+			String user = "user-" + random.nextInt(800);
+			long kcal = random.nextInt(900);
+			long minutes = 10 + random.nextInt(120);
+			board.add(user, kcal, minutes);
+			calories.merge(user, kcal, Long::sum);
+			duration.merge(user, minutes, Long::sum);
+		}
+
+		assertThat(board.participants()).isEqualTo(calories.size());
+		assertThat(board.page(WeeklyLeaderboard.Metric.CALORIES, 0, 50)).isEqualTo(expectedTop(calories, 50));
+		assertThat(board.page(WeeklyLeaderboard.Metric.DURATION, 0, 50)).isEqualTo(expectedTop(duration, 50));
+	}
+
+	@Test
+	void pagesAndRanks() {
+		WeeklyLeaderboard board = new WeeklyLeaderboard(3);
+		board.add("a", 100, 30);
+		board.add("b", 300, 20);
+		board.add("c", 200, 10);
+		board.add("d", 50, 60);
+		board.add("d", 400, 0);
+
+		assertThat(board.page(WeeklyLeaderboard.Metric.CALORIES, 0, 2)).containsExactly(
+				new WeeklyLeaderboard.Entry("d", 450), new WeeklyLeaderboard.Entry("b", 300));
+		assertThat(board.page(WeeklyLeaderboard.Metric.CALORIES, 2, 2)).containsExactly(
+				new WeeklyLeaderboard.Entry("c", 200));
+		assertThat(board.rankOf("d", WeeklyLeaderboard.Metric.CALORIES)).isEqualTo(1);
+		// Fourth by calories, outside the top 3
+		assertThat(board.rankOf("a", WeeklyLeaderboard.Metric.CALORIES)).isZero();
+		assertThat(board.totalOf("a", WeeklyLeaderboard.Metric.CALORIES)).isEqualTo(100);
+		assertThat(board.rankOf("d", WeeklyLeaderboard.Metric.DURATION)).isEqualTo(1);
+		assertThat(board.rankOf("nobody", WeeklyLeaderboard.Metric.DURATION)).isZero();
+	}
+
+	@Test
+	void userOutsideTopCanClimbBackIn() {
+		WeeklyLeaderboard board = new WeeklyLeaderboard(2);
+		board.add("a", 10, 0);
+		board.add("b", 20, 0);
+		board.add("c", 30, 0);
+		board.add("a", 25, 0);
+
+		assertThat(board.page(WeeklyLeaderboard.Metric.CALORIES, 0, 10)).containsExactly(
+				new WeeklyLeaderboard.Entry("a", 35), new WeeklyLeaderboard.Entry("c", 30));
+	}
+
+	@Test
+	void raiseToIgnoresRepeatedAndOlderTotals() {
+		WeeklyLeaderboard board = new WeeklyLeaderboard(2);
+		board.raiseTo("a", 100, 30);
+		board.raiseTo("b", 50, 60);
+		board.raiseTo("a", 100, 30);
+		board.raiseTo("a", 80, 10);
+		board.raiseTo("b", 150, 60);
+
+		assertThat(board.totalOf("a", WeeklyLeaderboard.Metric.CALORIES)).isEqualTo(100);
+		assertThat(board.totalOf("a", WeeklyLeaderboard.Metric.DURATION)).isEqualTo(30);
+		assertThat(board.page(WeeklyLeaderboard.Metric.CALORIES, 0, 10)).containsExactly(
+				new WeeklyLeaderboard.Entry("b", 150), new WeeklyLeaderboard.Entry("a", 100));
+		assertThat(board.rankOf("a", WeeklyLeaderboard.Metric.DURATION)).isEqualTo(2);
+	}
+
+	private static List<WeeklyLeaderboard.Entry> expectedTop(Map<String, Long> totals, int k) {
+		List<WeeklyLeaderboard.Entry> all = new ArrayList<>();
+		totals.forEach((user, total) -> all.add(new WeeklyLeaderboard.Entry(user, total)));
+		all.sort(Comparator.comparingLong(WeeklyLeaderboard.Entry::value).reversed()
+				.thenComparing(WeeklyLeaderboard.Entry::userId));
+		return all.subList(0, k);
+	}
+}
@@ -0,0 +1,93 @@
+package com.fitness.activityservice.percentile;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class LogHistogramTest {
+
+	@Test
+	void bucketsAreContiguousAndWithinRelativeError() {
+		for (int i = 0; i < LogHistogram.LENGTH - 1; i++) {
+			assertThat(LogHistogram.lowestValue(i + 1)).isEqualTo(LogHistogram.highestValue(i) + 1);
+			long low = LogHistogram.lowestValue(i);
+			assertThat(LogHistogram.indexOf(low)).isEqualTo(i);
+			assertThat(LogHistogram.indexOf(LogHistogram.highestValue(i))).isEqualTo(i);
+			assertThat(LogHistogram.highestValue(i) - low).isLessThanOrEqualTo(Math.max(0, low / 64));
+		}
+	}
+
+	@Test
+	void rankMatchesExactPercentile() {
+		Random random = new Random(7);
+		long[] values = new long[50_000];
+		LogHistogram histogram = new LogHistogram();
+		for (int i = 0; i < values.length; i++) {
+			// Log-normal, like workout durations in minutes
+			values[i] = Math.round(Math.exp(3.5 + 0.6 * random.nextGaussian()));
+			histogram.record(values[i]);
+		}
+		Arrays.sort(values);
+
+		for (long probe : new long[]{5, 20, 33, 60, 150, 400}) {
+			long below = Arrays.stream(values).filter(v -> v < probe).count();
+			long equal = Arrays.stream(values).filter(v -> v == probe).count();
+			double exact = 100.0 * (below + equal / 2.0) / values.length;
+			assertThat(histogram.rank(probe)).isCloseTo(exact, within(1.0));
+		}
+		assertThat(histogram.valueAt(0.5)).isCloseTo(values[values.length / 2], within(values[values.length / 2] / 50));
+	}
+
+	@Test
+	void mergeEqualsRecordingEverythingInOne() {
+		Random random = new Random(3);
+		LogHistogram a = new LogHistogram();
+		LogHistogram b = new LogHistogram();
+		LogHistogram all = new LogHistogram();
+		for (int i = 0; i < 10_000; i++) {
+			long value = random.nextInt(5_000);
+			(i % 3 == 0 ? a : b).record(value);
+			all.record(value);
+		}
+		a.merge(b);
+
+		assertThat(a.count()).isEqualTo(all.count());
+		assertThat(a.toBytes()).isEqualTo(all.toBytes());
+	}
+
+	@Test
+	void bytesRoundTrip() {
+		LogHistogram histogram = new LogHistogram();
+		for (long value : new long[]{0, 1, 127, 128, 1_000, 1_000, 123_456, LogHistogram.MAX_VALUE + 1, -5}) {
+			histogram.record(value);
+		}
+
+		LogHistogram decoded = LogHistogram.fromBytes(histogram.toBytes());
+
+		assertThat(decoded.count()).isEqualTo(9);
+		assertThat(decoded.toBytes()).isEqualTo(histogram.toBytes());
+		assertThat(decoded.rank(1_000)).isEqualTo(histogram.rank(1_000));
+		assertThat(LogHistogram.fromBytes(null).count()).isZero();
+	}
+
+	@Test
+	void emptyHistogramHasNoRank() {
+		assertThat(new LogHistogram().rank(10)).isNaN();
+		assertThat(new LogHistogram().valueAt(0.5)).isEqualTo(-1);
+	}
+
+	@Test
+	void rejectsCorruptBytes() {
+		LogHistogram histogram = new LogHistogram();
+		histogram.record(42);
+		byte[] data = histogram.toBytes();
+		data[1] = 5;
+
+		assertThatThrownBy(() -> LogHistogram.fromBytes(data)).isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,142 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.AbstractMongoTest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.activityservice.exception.UserServiceUnavailableException;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.IngestReject;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Redelivery and reject handling of the ingest consumer against a real Mongo; the aggregate services are stubs
+class ActivityIngestListenerTest extends AbstractMongoTest {
+
+	private static final String TOPIC = "activity-ingest";
+
+	private UserValidationService userValidationService;
+	private ActivityLeaderboardService activityLeaderboardService;
+	private ActivityIngestListener listener;
+
+	@BeforeEach
+	void setUp() {
+		userValidationService = mock(UserValidationService.class);
+		when(userValidationService.check(anyString())).thenReturn(UserValidationService.Result.VALID);
+		when(userValidationService.check("ghost")).thenReturn(UserValidationService.Result.INVALID);
+		activityLeaderboardService = mock(ActivityLeaderboardService.class);
+		listener = new ActivityIngestListener(new ObjectMapper().findAndRegisterModules(),
+				Validation.buildDefaultValidatorFactory().getValidator(), mongoTemplate, userValidationService,
+				mock(ActivityRollupService.class), mock(ActivityPercentileService.class), activityLeaderboardService,
+				mock(ActivityRouteService.class), new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(listener, "rejectRetention", Duration.ofDays(14));
+	}
+
+	@Test
+	void redeliveredBatchIsStoredOnce() {
+		List<ConsumerRecord<String, String>> batch = List.of(
+				record(0, "device-workout-1", activity("user-1", 30)),
+				record(1, null, activity("user-1", 45)),
+				record(2, null, activity("user-2", 60)));
+
+		Acknowledgment ack = mock(Acknowledgment.class);
+		listener.ingest(batch, ack);
+		listener.ingest(batch, ack);
+
+		List<Activity> stored = mongoTemplate.findAll(Activity.class);
+		assertThat(stored).extracting(Activity::getIngestKey)
+				.containsExactlyInAnyOrder("device-workout-1", TOPIC + ":0:1", TOPIC + ":0:2");
+		assertThat(stored).allSatisfy(a -> assertThat(a.getOutbox()).isNotNull());
+		verify(ack, times(2)).acknowledge();
+		// Aggregates only see the first delivery
+		verify(activityLeaderboardService).recordAll(List.of());
+	}
+
+	@Test
+	void sameIngestKeyInOneBatchIsStoredOnce() {
+		listener.ingest(List.of(
+				record(0, "device-workout-1", activity("user-1", 30)),
+				record(1, "device-workout-1", activity("user-1", 30))), mock(Acknowledgment.class));
+
+		assertThat(mongoTemplate.findAll(Activity.class)).hasSize(1);
+		assertThat(mongoTemplate.findAll(IngestReject.class)).isEmpty();
+	}
+
+	@Test
+	void badRecordsAreRejectedAndTheRestStored() {
+		List<ConsumerRecord<String, String>> batch = List.of(
+				record(0, null, activity("user-1", 30)),
+				record(1, null, "{not json"),
+				record(2, null, activity("user-1", 0)),
+				record(3, null, activity("ghost", 30)),
+				record(4, null, null));
+
+		Acknowledgment ack = mock(Acknowledgment.class);
+		listener.ingest(batch, ack);
+		// A redelivered reject is not recorded twice
+		listener.ingest(batch, ack);
+
+		assertThat(mongoTemplate.findAll(Activity.class)).extracting(Activity::getIngestKey)
+				.containsExactly(TOPIC + ":0:0");
+		List<IngestReject> rejects = mongoTemplate.findAll(IngestReject.class);
+		assertThat(rejects).extracting(IngestReject::getId)
+				.containsExactlyInAnyOrder(TOPIC + ":0:1", TOPIC + ":0:2", TOPIC + ":0:3", TOPIC + ":0:4");
+		assertThat(rejects).filteredOn(r -> r.getOffset() == 1).singleElement()
+				.satisfies(r -> {
+					assertThat(r.getReason()).startsWith("unreadable payload");
+					assertThat(r.getPayload()).isEqualTo("{not json");
+				});
+		assertThat(rejects).filteredOn(r -> r.getOffset() == 2).singleElement()
+				.satisfies(r -> assertThat(r.getReason()).contains("duration"));
+		assertThat(rejects).filteredOn(r -> r.getOffset() == 3).singleElement()
+				.satisfies(r -> assertThat(r.getReason()).isEqualTo("Invalid User: ghost"));
+		assertThat(rejects).filteredOn(r -> r.getOffset() == 4).singleElement()
+				.satisfies(r -> assertThat(r.getReason()).isEqualTo("empty payload"));
+		verify(ack, times(2)).acknowledge();
+	}
+
+	@Test
+	void unavailableUserServiceLeavesBatchUnacknowledged() {
+		when(userValidationService.check("user-2")).thenReturn(UserValidationService.Result.UNAVAILABLE);
+		Acknowledgment ack = mock(Acknowledgment.class);
+
+		assertThatThrownBy(() -> listener.ingest(List.of(
+				record(0, null, activity("user-1", 30)),
+				record(1, null, activity("user-2", 30))), ack))
+				.isInstanceOf(UserServiceUnavailableException.class);
+
+		verify(ack, never()).acknowledge();
+		assertThat(mongoTemplate.findAll(Activity.class)).isEmpty();
+		assertThat(mongoTemplate.findAll(IngestReject.class)).isEmpty();
+	}
+
+	private static ConsumerRecord<String, String> record(long offset, String ingestKey, String value) {
+		ConsumerRecord<String, String> record = new ConsumerRecord<>(TOPIC, 0, offset, "key-" + offset, value);
+		if (ingestKey != null) {
+			record.headers().add(ActivityIngestListener.INGEST_KEY_HEADER, ingestKey.getBytes(StandardCharsets.UTF_8));
+		}
+		return record;
+	}
+
+	private static String activity(String userId, int duration) {
+		return """
+				{"userId":"%s","type":"RUNNING","duration":%d,"caloriesBurned":300,"startTime":"2025-03-01T07:30:00"}
+				""".formatted(userId, duration);
+	}
+}
@@ -0,0 +1,155 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.AbstractMongoTest;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityOutbox;
+import com.fitness.activityservice.model.ActivityType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Claiming and retry bookkeeping of the outbox relay against a real Mongo; Kafka is a stub
+class ActivityOutboxRelayTest extends AbstractMongoTest {
+
+	private static final int MAX_ATTEMPTS = 2;
+
+	@Test
+	void secondRelayDoesNotClaimBatchHeldByFirst() {
+		List<String> ids = insertPending(5);
+		KafkaTemplate<String, Activity> otherKafka = mockKafka();
+		ActivityOutboxRelay other = relay(otherKafka);
+
+		List<String> sent = new ArrayList<>();
+		KafkaTemplate<String, Activity> kafka = mockKafka();
+		when(kafka.send(any(ProducerRecord.class))).thenAnswer(invocation -> {
+			if (sent.isEmpty()) {
+				// The first relay holds its claim while sending; the other instance runs in between
+				other.relay();
+			}
+			ProducerRecord<String, Activity> record = invocation.getArgument(0);
+			sent.add(record.value().getId());
+			return CompletableFuture.completedFuture(null);
+		});
+
+		relay(kafka).relay();
+
+		verify(otherKafka, never()).send(any(ProducerRecord.class));
+		assertThat(sent).containsExactlyElementsOf(ids);
+		assertThat(mongoTemplate.find(Query.query(Criteria.where("outbox").exists(true)), Activity.class)).isEmpty();
+		assertThat(mongoTemplate.findAll(Activity.class)).allSatisfy(a -> assertThat(a.getPublishedAt()).isNotNull());
+	}
+
+	@Test
+	void expiredClaimIsTakenOverByAnotherRelay() {
+		List<String> ids = insertPending(3);
+		mongoTemplate.updateMulti(new Query(), new Update()
+				.set("outbox.claimedBy", "crashed-instance")
+				.set("outbox.claimedUntil", LocalDateTime.now().minusSeconds(1)), Activity.class);
+
+		KafkaTemplate<String, Activity> kafka = mockKafka();
+		relay(kafka).relay();
+
+		verify(kafka, times(ids.size())).send(any(ProducerRecord.class));
+		assertThat(mongoTemplate.find(Query.query(Criteria.where("outbox").exists(true)), Activity.class)).isEmpty();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void failedSendIsRetriedAfterBackoffAndThenGivesUp() {
+		String id = insertPending(1).get(0);
+		KafkaTemplate<String, Activity> kafka = mock(KafkaTemplate.class);
+		when(kafka.send(any(ProducerRecord.class)))
+				.thenAnswer(invocation -> CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+		ActivityOutboxRelay relay = relay(kafka);
+
+		relay.relay();
+		ActivityOutbox outbox = outbox(id);
+		assertThat(outbox.getStatus()).isEqualTo(ActivityOutbox.PENDING);
+		assertThat(outbox.getAttempts()).isEqualTo(1);
+		assertThat(outbox.getLastError()).isEqualTo("broker down");
+		assertThat(outbox.getClaimedBy()).isNull();
+		assertThat(outbox.getClaimedUntil()).isAfter(LocalDateTime.now());
+
+		// Still backing off: nothing is sent
+		relay.relay();
+		verify(kafka, times(1)).send(any(ProducerRecord.class));
+
+		expireBackoff(id);
+		relay.relay();
+		verify(kafka, times(2)).send(any(ProducerRecord.class));
+		outbox = outbox(id);
+		assertThat(outbox.getStatus()).isEqualTo(ActivityOutbox.FAILED);
+		assertThat(outbox.getAttempts()).isEqualTo(MAX_ATTEMPTS);
+
+		// FAILED entries wait for a manual requeue
+		expireBackoff(id);
+		relay.relay();
+		verify(kafka, times(2)).send(any(ProducerRecord.class));
+		assertThat(mongoTemplate.findById(id, Activity.class).getPublishedAt()).isNull();
+	}
+
+	private ActivityOutboxRelay relay(KafkaTemplate<String, Activity> kafka) {
+		ActivityOutboxRelay relay = new ActivityOutboxRelay(mongoTemplate, kafka, new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(relay, "topicName", "activity-events");
+		ReflectionTestUtils.setField(relay, "batchSize", 100);
+		ReflectionTestUtils.setField(relay, "claimTimeoutMs", 30_000L);
+		ReflectionTestUtils.setField(relay, "sendTimeoutMs", 1_000L);
+		ReflectionTestUtils.setField(relay, "maxAttempts", MAX_ATTEMPTS);
+		return relay;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static KafkaTemplate<String, Activity> mockKafka() {
+		KafkaTemplate<String, Activity> kafka = mock(KafkaTemplate.class);
+		when(kafka.send(any(ProducerRecord.class)))
+				.thenAnswer(invocation -> CompletableFuture.<SendResult<String, Activity>>completedFuture(null));
+		return kafka;
+	}
+
+	// Returns the ids in publish order
+	private List<String> insertPending(int count) {
+		List<Activity> activities = new ArrayList<>();
+		LocalDateTime enqueuedAt = LocalDateTime.now().minusMinutes(1);
+		for (int i = 0; i < count; i++) {
+			ActivityOutbox outbox = ActivityOutbox.pending();
+			outbox.setEnqueuedAt(enqueuedAt.plusSeconds(i));
+			activities.add(Activity.builder()
+					.userId("user-1")
+					.type(ActivityType.RUNNING)
+					.duration(30)
+					.caloriesBurned(300)
+					.startTime(enqueuedAt.minusHours(1))
+					.outbox(outbox)
+					.build());
+		}
+		return mongoTemplate.insertAll(activities).stream().map(Activity::getId).toList();
+	}
+
+	private void expireBackoff(String id) {
+		mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(id)),
+				new Update().set("outbox.claimedUntil", LocalDateTime.now().minusSeconds(1)), Activity.class);
+	}
+
+	private ActivityOutbox outbox(String id) {
+		return mongoTemplate.findById(id, Activity.class).getOutbox();
+	}
+}
@@ -0,0 +1,135 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.AbstractMongoTest;
+import com.fitness.activityservice.dto.ActivityPage;
+import com.fitness.activityservice.dto.ActivitySummary;
+import com.fitness.activityservice.model.Activity;
+import com.fitness.activityservice.model.ActivityType;
+import com.mongodb.ExplainVerbosity;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Checks that list queries are answered from the compound indexes: no document fetches, no in-memory sort
+@Import({ActivityQueryService.class, ActivityArchiveService.class})
+class ActivityQueryServiceTest extends AbstractMongoTest {
+
+	private static final LocalDateTime BASE = LocalDateTime.of(2025, 1, 1, 6, 0);
+
+	@Autowired
+	private ActivityQueryService queryService;
+
+	private List<Activity> userActivities;
+
+	@BeforeEach
+	void setUp() {
+		ActivityType[] types = ActivityType.values();
+		List<Activity> activities = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			// Every third activity shares a start time with the previous one, so pages split on ties
+			activities.add(Activity.builder()
+					.userId(i % 4 == 0 ? "other-user" : "user-1")
+					.type(types[i % types.length])
+					.duration(30 + i)
+					.caloriesBurned(200 + i)
+					.startTime(BASE.plusHours(i - i / 3))
+					.build());
+		}
+		mongoTemplate.insertAll(activities);
+		userActivities = mongoTemplate.find(Query.query(Criteria.where("userId").is("user-1")), Activity.class);
+		userActivities.sort(Comparator.comparing(Activity::getStartTime).thenComparing(Activity::getId).reversed());
+	}
+
+	@Test
+	void firstPageIsCoveredByUserStartIndex() {
+		Document stats = explain(queryService.buildQuery("user-1", null, null, null, 20, null));
+
+		assertCovered(stats, ActivityQueryService.USER_START_INDEX);
+		assertThat(executionStats(stats).getInteger("totalKeysExamined")).isLessThanOrEqualTo(21);
+	}
+
+	@Test
+	void typeFilterIsCoveredByUserTypeStartIndex() {
+		Document stats = explain(queryService.buildQuery("user-1", BASE, BASE.plusDays(30), ActivityType.RUNNING, 20, null));
+
+		assertCovered(stats, ActivityQueryService.USER_TYPE_START_INDEX);
+	}
+
+	@Test
+	void laterPageStartsAtCursorInIndex() {
+		Activity last = userActivities.get(19);
+		String cursor = ActivityQueryService.encodeCursor(last.getStartTime(), last.getId());
+
+		Document stats = explain(queryService.buildQuery("user-1", null, null, null, 20, cursor));
+
+		assertCovered(stats, ActivityQueryService.USER_START_INDEX);
+		// The cursor is an index bound, not a skip: only the page (plus ties at the boundary) is read
+		assertThat(executionStats(stats).getInteger("totalKeysExamined")).isLessThanOrEqualTo(23);
+	}
+
+	@Test
+	void pagesWalkAllActivitiesInOrderWithoutGaps() {
+		List<String> seen = new ArrayList<>();
+		String after = null;
+		do {
+			ActivityPage page = queryService.listActivities("user-1", null, null, null, 7, after);
+			assertThat(page.getItems()).hasSizeLessThanOrEqualTo(7);
+			page.getItems().stream().map(ActivitySummary::getId).forEach(seen::add);
+			after = page.getNext();
+		} while (after != null);
+
+		assertThat(seen).containsExactlyElementsOf(userActivities.stream().map(Activity::getId).toList());
+	}
+
+	private Document explain(Query query) {
+		QueryMapper mapper = new QueryMapper(mongoTemplate.getConverter());
+		var entity = mongoTemplate.getConverter().getMappingContext().getPersistentEntity(Activity.class);
+		return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Activity.class))
+				.find(mapper.getMappedObject(query.getQueryObject(), entity))
+				.projection(mapper.getMappedFields(query.getFieldsObject(), entity))
+				.sort(mapper.getMappedSort(query.getSortObject(), entity))
+				.hintString(query.getHint())
+				.limit(query.getLimit())
+				.explain(ExplainVerbosity.EXECUTION_STATS);
+	}
+
+	private static void assertCovered(Document explain, String indexName) {
+		List<String> stages = new ArrayList<>();
+		List<String> indexes = new ArrayList<>();
+		collectStages(explain.get("queryPlanner", Document.class).get("winningPlan"), stages, indexes);
+
+		assertThat(stages).contains("IXSCAN").doesNotContain("FETCH", "COLLSCAN", "SORT");
+		assertThat(indexes).containsOnly(indexName);
+		assertThat(executionStats(explain).getInteger("totalDocsExamined")).isZero();
+	}
+
+	private static Document executionStats(Document explain) {
+		return explain.get("executionStats", Document.class);
+	}
+
+	private static void collectStages(Object node, List<String> stages, List<String> indexes) {
+		if (node instanceof Document doc) {
+			if (doc.get("stage") instanceof String stage) {
+				stages.add(stage);
+			}
+			if (doc.get("indexName") instanceof String index) {
+				indexes.add(index);
+			}
+			doc.values().forEach(value -> collectStages(value, stages, indexes));
+		} else if (node instanceof List<?> list) {
+			list.forEach(value -> collectStages(value, stages, indexes));
+		}
+	}
+}
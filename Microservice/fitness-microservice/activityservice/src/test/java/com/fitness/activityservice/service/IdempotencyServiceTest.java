@@ -0,0 +1,164 @@
+package com.fitness.activityservice.service;
+
+import com.fitness.activityservice.AbstractMongoTest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fitness.activityservice.dto.ActivityRequest;
+import com.fitness.activityservice.dto.ActivityResponse;
+import com.fitness.activityservice.dto.SampleRequest;
+import com.fitness.activityservice.exception.IdempotencyKeyException;
+import com.fitness.activityservice.model.ActivityType;
+import com.fitness.activityservice.model.IdempotencyRecord;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyServiceTest extends AbstractMongoTest {
+
+	private static final Duration IN_FLIGHT_TIMEOUT = Duration.ofSeconds(30);
+	private static final LocalDateTime START = LocalDateTime.of(2025, 3, 1, 7, 30);
+
+	private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+	@Test
+	void completedKeyReplaysStoredResponse() {
+		IdempotencyService service = service();
+		IdempotencyService.Claim claim = service.claim(request(30), "key-1");
+		assertThat(claim.isReplay()).isFalse();
+		service.complete(claim, response(claim.activityId()));
+
+		// A fresh instance has nothing cached, so the replay comes from Mongo
+		IdempotencyService.Claim retry = service().claim(request(30), "key-1");
+
+		assertThat(retry.isReplay()).isTrue();
+		assertThat(retry.activityId()).isEqualTo(claim.activityId());
+		assertThat(retry.replay().getId()).isEqualTo(claim.activityId());
+	}
+
+	@Test
+	void keyStillInFlightIsConflict() {
+		service().claim(request(30), "key-1");
+
+		assertThatThrownBy(() -> service().claim(request(30), "key-1"))
+				.isInstanceOfSatisfying(IdempotencyKeyException.class,
+						e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.CONFLICT));
+	}
+
+	@Test
+	void keyReusedWithDifferentBodyIsUnprocessable() {
+		IdempotencyService service = service();
+		IdempotencyService.Claim claim = service.claim(request(30), "key-1");
+		service.complete(claim, response(claim.activityId()));
+
+		// Both from the recent cache and from the stored record
+		assertThatThrownBy(() -> service.claim(request(45), "key-1"))
+				.isInstanceOfSatisfying(IdempotencyKeyException.class,
+						e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY));
+		assertThatThrownBy(() -> service().claim(request(45), "key-1"))
+				.isInstanceOfSatisfying(IdempotencyKeyException.class,
+						e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY));
+	}
+
+	@Test
+	void derivedKeyIsNotCheckedAgainstBody() {
+		IdempotencyService service = service();
+		IdempotencyService.Claim claim = service.claim(request(30), null);
+		service.complete(claim, response(claim.activityId()));
+
+		// Same user, start time and type: a duplicate even though the duration differs
+		IdempotencyService.Claim retry = service().claim(request(45), " ");
+
+		assertThat(retry.isReplay()).isTrue();
+		assertThat(retry.activityId()).isEqualTo(claim.activityId());
+	}
+
+	@Test
+	void staleClaimIsTakenOverOnce() {
+		IdempotencyService.Claim claim = service().claim(request(30), "key-1");
+		age(claim.key(), IN_FLIGHT_TIMEOUT.plusSeconds(1));
+
+		IdempotencyService.Claim takeover = service().claim(request(30), "key-1");
+
+		// The abandoned claim's id is kept, in case the first request stored the activity before dying
+		assertThat(takeover.isReplay()).isFalse();
+		assertThat(takeover.activityId()).isEqualTo(claim.activityId());
+		assertThatThrownBy(() -> service().claim(request(30), "key-1"))
+				.isInstanceOfSatisfying(IdempotencyKeyException.class,
+						e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.CONFLICT));
+	}
+
+	@Test
+	void releasedKeyCanBeClaimedAgain() {
+		IdempotencyService service = service();
+		IdempotencyService.Claim claim = service.claim(request(30), "key-1");
+		service.release(claim);
+
+		IdempotencyService.Claim retry = service.claim(request(30), "key-1");
+
+		assertThat(retry.isReplay()).isFalse();
+		assertThat(retry.activityId()).isNotEqualTo(claim.activityId());
+	}
+
+	@Test
+	void abandonedSampleUploadIsTakenOverImmediately() {
+		IdempotencyService service = service();
+		IdempotencyService.SampleClaim claim = service.claimSamples("activity-1", "batch-1", samples());
+		assertThat(claim.takenOver()).isFalse();
+		service.abandon(claim);
+
+		IdempotencyService.SampleClaim retry = service().claimSamples("activity-1", "batch-1", samples());
+
+		assertThat(retry.takenOver()).isTrue();
+		assertThat(retry.batchId()).isEqualTo(claim.batchId());
+	}
+
+	@Test
+	void sampleUploadRequiresKey() {
+		assertThatThrownBy(() -> service().claimSamples("activity-1", null, samples()))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private IdempotencyService service() {
+		return new IdempotencyService(mongoTemplate, objectMapper, new SimpleMeterRegistry(),
+				Duration.ofHours(24), IN_FLIGHT_TIMEOUT, 100);
+	}
+
+	private void age(String key, Duration by) {
+		mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(key)),
+				new Update().set("claimedAt", LocalDateTime.now().minus(by)), IdempotencyRecord.class);
+	}
+
+	private static ActivityRequest request(int duration) {
+		ActivityRequest request = new ActivityRequest();
+		request.setUserId("user-1");
+		request.setType(ActivityType.RUNNING);
+		request.setDuration(duration);
+		request.setCaloriesBurned(300);
+		request.setStartTime(START);
+		return request;
+	}
+
+	private static ActivityResponse response(String id) {
+		ActivityResponse response = new ActivityResponse();
+		response.setId(id);
+		response.setUserId("user-1");
+		return response;
+	}
+
+	private static List<SampleRequest> samples() {
+		SampleRequest sample = new SampleRequest();
+		sample.setTimestamp(Instant.parse("2025-03-01T07:30:00Z"));
+		sample.setHeartRate(140);
+		return List.of(sample);
+	}
+}
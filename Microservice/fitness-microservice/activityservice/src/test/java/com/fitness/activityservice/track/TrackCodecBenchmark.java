@@ -0,0 +1,54 @@
+package com.fitness.activityservice.track;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Size and encode/decode/simplify throughput for a one-hour 1 Hz track. Not part of the regular build:
+ * <pre>mvn test -Dtest=TrackCodecBenchmark -Dbenchmark=true</pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TrackCodecBenchmark {
+
+	private static final int WARMUP_ROUNDS = 500;
+	private static final int MEASURED_ROUNDS = 2_000;
+
+	@Test
+	void oneHourTrack() throws Exception {
+		Track track = TrackCodecTest.runningTrack(3600, 42);
+		byte[] encoded = TrackCodec.encode(track);
+		// What the samples cost as raw columns: 8-byte timestamp, 3 doubles, 4-byte heart rate
+		int raw = track.size() * (8 + 3 * 8 + 4);
+		TrackLevels levels = TrackLevels.build(track, new double[]{2, 10, 50}, new double[]{1, 3, 8});
+
+		System.out.printf("points=%d raw=%,d B encoded=%,d B (%.2f B/point)%n",
+				track.size(), raw, encoded.length, (double) encoded.length / track.size());
+		for (TrackLevels.Level level : levels.levels()) {
+			System.out.printf("level gps=%.0fm hr=%.0fbpm: points=%d bytes=%,d%n",
+					level.gpsToleranceMeters(), level.heartRateToleranceBpm(), level.points(), level.data().length);
+		}
+
+		run("encode", track.size(), () -> TrackCodec.encode(track));
+		run("decode", track.size(), () -> TrackCodec.decode(encoded));
+		run("simplify 10m", track.size(), () -> TrackSimplifier.simplify(track, 10, 3));
+	}
+
+	private static void run(String name, int points, Op op) throws Exception {
+		Object sink = null;
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			sink = op.run();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < MEASURED_ROUNDS; i++) {
+			sink = op.run();
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.printf("%s: %,.0f points/s (%.0f us/track)%s%n", name,
+				(double) points * MEASURED_ROUNDS / (elapsed / 1e9), elapsed / 1e3 / MEASURED_ROUNDS, sink == null ? "?" : "");
+	}
+
+	@FunctionalInterface
+	private interface Op {
+		Object run() throws Exception;
+	}
+}
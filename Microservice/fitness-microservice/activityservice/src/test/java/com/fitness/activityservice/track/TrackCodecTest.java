@@ -0,0 +1,180 @@
+package com.fitness.activityservice.track;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.offset;
+
+class TrackCodecTest {
+
+	// One hour at 1 Hz: a loop at running pace with a little GPS jitter and a drifting heart rate
+	static Track runningTrack(int seconds, long seed) {
+		Random random = new Random(seed);
+		long[] t = new long[seconds];
+		Double[] lat = new Double[seconds];
+		Double[] lon = new Double[seconds];
+		Double[] alt = new Double[seconds];
+		Integer[] hr = new Integer[seconds];
+		double heartRate = 120;
+		for (int i = 0; i < seconds; i++) {
+			t[i] = 1_735_689_600_000L + i * 1000L + (random.nextInt(20) == 0 ? random.nextInt(40) : 0);
+			double angle = 2 * Math.PI * i / seconds;
+			lat[i] = 52.52 + 0.01 * Math.sin(angle) + random.nextGaussian() * 0.000005;
+			lon[i] = 13.405 + 0.015 * Math.cos(angle) + random.nextGaussian() * 0.000005;
+			alt[i] = 34.0 + 5 * Math.sin(3 * angle);
+			heartRate = Math.max(60, Math.min(200, heartRate + random.nextGaussian()));
+			hr[i] = (int) Math.round(heartRate);
+		}
+		return Track.of(t, lat, lon, alt, hr);
+	}
+
+	@Test
+	void roundTripIsExact() {
+		Track track = runningTrack(3600, 1);
+
+		Track decoded = TrackCodec.decode(TrackCodec.encode(track));
+
+		assertThat(decoded.timestamps()).containsExactly(track.timestamps());
+		assertThat(decoded.latitudes()).containsExactly(track.latitudes());
+		assertThat(decoded.longitudes()).containsExactly(track.longitudes());
+		assertThat(decoded.altitudes()).containsExactly(track.altitudes());
+		assertThat(decoded.heartRates()).containsExactly(track.heartRates());
+	}
+
+	@Test
+	void quantizationStaysWithinUnits() {
+		long[] t = {0, 1000};
+		Track track = Track.of(t, new Double[]{52.5200004, -33.8688196}, new Double[]{13.4049996, 151.2092955},
+				new Double[]{34.56, -2.04}, new Integer[]{140, 141});
+
+		Track decoded = TrackCodec.decode(TrackCodec.encode(track));
+
+		assertThat(decoded.latitude(0)).isCloseTo(52.5200004, offset(0.5e-6));
+		assertThat(decoded.longitude(1)).isCloseTo(151.2092955, offset(0.5e-6));
+		assertThat(decoded.altitude(1)).isCloseTo(-2.04, offset(0.05));
+	}
+
+	@Test
+	void steadyOneHertzSeriesTakesAboutOneBytePerValue() {
+		Track track = runningTrack(3600, 2);
+
+		byte[] encoded = TrackCodec.encode(track);
+
+		// 5 columns of 3600 values, versus 8 + 4 * 4 = 24 bytes per point uncompressed
+		assertThat(encoded.length).isLessThan(3600 * 5 * 2);
+	}
+
+	@Test
+	void optionalColumnsAndGapsSurvive() {
+		long[] t = {10, 20, 30, 40};
+		Track heartRateOnly = Track.of(t, null, null, new Double[]{null, null, null, null}, new Integer[]{null, 90, null, 95});
+
+		Track decoded = TrackCodec.decode(TrackCodec.encode(heartRateOnly));
+
+		assertThat(decoded.hasPosition()).isFalse();
+		assertThat(decoded.altitudes()).isNull();
+		// Leading gaps take the first reading, later gaps the previous one
+		assertThat(decoded.heartRates()).containsExactly(90, 90, 90, 95);
+	}
+
+	@Test
+	void edgeValuesRoundTrip() {
+		long[] t = {Long.MIN_VALUE, -1, 0, Long.MAX_VALUE, 5};
+		int[] values = {Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1, Integer.MAX_VALUE};
+		Track track = new Track(t, values, values, values, values);
+
+		Track decoded = TrackCodec.decode(TrackCodec.encode(track));
+
+		assertThat(decoded.timestamps()).containsExactly(t);
+		assertThat(decoded.latitudes()).containsExactly(values);
+		assertThat(decoded.heartRates()).containsExactly(values);
+	}
+
+	@Test
+	void emptyAndSinglePointTracks() {
+		Track empty = new Track(new long[0], null, null, null, null);
+		Track single = new Track(new long[]{42}, new int[]{1}, new int[]{2}, null, new int[]{60});
+
+		assertThat(TrackCodec.decode(TrackCodec.encode(empty)).size()).isZero();
+		Track decoded = TrackCodec.decode(TrackCodec.encode(single));
+		assertThat(decoded.timestamps()).containsExactly(42);
+		assertThat(decoded.heartRates()).containsExactly(60);
+	}
+
+	@Test
+	void rejectsCorruptInput() {
+		byte[] encoded = TrackCodec.encode(runningTrack(100, 3));
+
+		assertThatThrownBy(() -> TrackCodec.decode(new byte[]{'{', 1})).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> TrackCodec.decode(Arrays.copyOf(encoded, encoded.length / 2)))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void simplifiedPathStaysWithinTolerance() {
+		Track track = runningTrack(3600, 4);
+
+		for (double tolerance : new double[]{2, 10, 50}) {
+			Track simplified = TrackSimplifier.simplify(track, tolerance, Double.MAX_VALUE);
+
+			assertThat(simplified.size()).isLessThan(track.size());
+			assertThat(simplified.timestamps()[0]).isEqualTo(track.timestamps()[0]);
+			assertThat(simplified.timestamps()[simplified.size() - 1]).isEqualTo(track.timestamps()[track.size() - 1]);
+			assertThat(maxDeviationMeters(track, simplified)).isLessThanOrEqualTo(tolerance + 1e-6);
+		}
+	}
+
+	@Test
+	void heartRateToleranceBoundsTheChartError() {
+		Track track = runningTrack(3600, 5);
+		Track simplified = TrackSimplifier.simplify(track, Double.MAX_VALUE, 3);
+
+		int k = 0;
+		for (int i = 0; i < track.size(); i++) {
+			while (simplified.timestamps()[k + 1] < track.timestamps()[i]) {
+				k++;
+			}
+			double distance = TrackSimplifier.verticalDistance(simplified.timestamps()[k], simplified.heartRates()[k],
+					simplified.timestamps()[k + 1], simplified.heartRates()[k + 1], track.timestamps()[i], track.heartRates()[i]);
+			assertThat(distance).isLessThanOrEqualTo(3 + 1e-9);
+		}
+	}
+
+	@Test
+	void levelsGetSmallerAsToleranceGrows() {
+		Track track = runningTrack(3600, 6);
+
+		TrackLevels levels = TrackLevels.build(track, new double[]{2, 10, 50}, new double[]{1, 3, 8});
+
+		assertThat(levels.fullPoints()).isEqualTo(3600);
+		assertThat(levels.levels()).hasSize(3);
+		for (int i = 1; i < levels.levels().size(); i++) {
+			assertThat(levels.levels().get(i).data().length).isLessThan(levels.levels().get(i - 1).data().length);
+		}
+		assertThat(levels.levels().get(2).data().length).isLessThan(levels.full().length / 4);
+		assertThat(TrackCodec.decode(levels.levels().get(2).data()).size()).isEqualTo(levels.levels().get(2).points());
+	}
+
+	// Largest distance of an original point from the simplified path, on the simplifier's projection
+	private static double maxDeviationMeters(Track original, Track simplified) {
+		double metersPerDegree = 6_371_008.8 * Math.PI / 180;
+		double lonScale = metersPerDegree * Math.cos(Math.toRadians(original.latitude(0)));
+		double max = 0;
+		int k = 0;
+		for (int i = 0; i < original.size(); i++) {
+			while (k + 1 < simplified.size() - 1 && simplified.timestamps()[k + 1] <= original.timestamps()[i]) {
+				k++;
+			}
+			double d = TrackSimplifier.segmentDistance(
+					simplified.longitude(k) * lonScale, simplified.latitude(k) * metersPerDegree,
+					simplified.longitude(k + 1) * lonScale, simplified.latitude(k + 1) * metersPerDegree,
+					original.longitude(i) * lonScale, original.latitude(i) * metersPerDegree);
+			max = Math.max(max, d);
+		}
+		return max;
+	}
+}
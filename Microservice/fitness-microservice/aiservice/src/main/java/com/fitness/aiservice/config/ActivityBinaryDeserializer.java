@@ -0,0 +1,41 @@
+package com.fitness.aiservice.config;
+
+import com.fitness.activityservice.model.ActivityType;
+import com.fitness.aiservice.model.Activity;
+import com.fitness.events.ActivityEvent;
+import com.fitness.events.ActivityEventDeserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+// Consumer value-deserializer: binary events, with JSON (configured through spring.json.*) as the fallback
+public class ActivityBinaryDeserializer extends ActivityEventDeserializer<Activity> {
+
+    public ActivityBinaryDeserializer() {
+        super(ActivityBinaryDeserializer::toActivity, new JsonDeserializer<>());
+    }
+
+    static Activity toActivity(ActivityEvent event) {
+        return Activity.builder()
+                .id(event.getId())
+                .userId(event.getUserId())
+                .type(toType(event.getType()))
+                .duration(event.getDuration())
+                .caloriesBurned(event.getCaloriesBurned())
+                .startTime(event.getStartTime())
+                .additionalData(event.getAdditionalData())
+                .createdAt(event.getCreatedAt())
+                .updatedAt(event.getUpdatedAt())
+                .build();
+    }
+
+    // Same leniency as the JSON path, which maps unknown names to OTHER
+    private static ActivityType toType(String name) {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return ActivityType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return ActivityType.OTHER;
+        }
+    }
+}
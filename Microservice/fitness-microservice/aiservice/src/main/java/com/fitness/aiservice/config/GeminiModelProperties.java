@@ -0,0 +1,39 @@
+package com.fitness.aiservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Endpoint profiles for the model router; when empty, gemini.api.url is used as a single "default" profile.
+@Component
+@ConfigurationProperties(prefix = "gemini")
+@Data
+public class GeminiModelProperties {
+
+    private List<ModelProfile> models = new ArrayList<>();
+    private Routing routing = new Routing();
+
+    @Data
+    public static class ModelProfile {
+        private String name;
+        private String url;
+        // fast | quality
+        private String tier = "fast";
+        private long timeoutMs = 30000;
+        private double costWeight = 1.0;
+        // p95 latency above which the router stops sending new work to this profile (0 = no SLO)
+        private long latencySloMs = 0;
+        private int maxConnections = 50;
+    }
+
+    @Data
+    public static class Routing {
+        // Sessions at least this long count as complex and prefer the quality tier
+        private int complexDurationMinutes = 60;
+        private int complexCalories = 600;
+        private List<String> complexTypes = new ArrayList<>();
+    }
+}
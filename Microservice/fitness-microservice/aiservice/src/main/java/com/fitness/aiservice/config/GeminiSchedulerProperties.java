@@ -0,0 +1,36 @@
+package com.fitness.aiservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Fair-share scheduling of Gemini capacity between users (see GeminiRequestScheduler).
+@Component
+@ConfigurationProperties(prefix = "gemini.scheduler")
+@Data
+public class GeminiSchedulerProperties {
+
+    private boolean enabled = false;
+    private int workers = 4;
+    // Requests a user may queue before new ones go straight to the fallback path
+    private int perUserQueueCapacity = 200;
+    // Deficit-round-robin quantum, in requests, multiplied by the user's weight
+    private int quantum = 1;
+    private int perUserDailyQuota = 100;
+    private int globalDailyQuota = 10000;
+    // Past this share of the global quota, users above their fair share are degraded first
+    private double softLimitRatio = 0.8;
+    private int defaultWeight = 1;
+    // How long a queued activity stays claimed by this instance without a heartbeat before another
+    // instance (or this one after a restart) picks it up again
+    private long leaseMs = 60000;
+    // Queued activities claimed per recovery run
+    private int recoveryBatchSize = 100;
+    // Generation attempts before a queued activity is left for on-demand generation on first read
+    private int maxAttempts = 3;
+    // userId -> weight, e.g. paying tiers or internal integrations
+    private Map<String, Integer> weights = new HashMap<>();
+}
@@ -0,0 +1,23 @@
+package com.fitness.aiservice.controller;
+
+import com.fitness.aiservice.service.PipelineLatencyTracker;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// GET /actuator/pipeline: live per-stage latency percentiles and consumer lag
+@Component
+@Endpoint(id = "pipeline")
+@RequiredArgsConstructor
+public class PipelineLatencyEndpoint {
+
+    private final PipelineLatencyTracker pipelineLatencyTracker;
+
+    @ReadOperation
+    public Map<String, Object> pipeline() {
+        return pipelineLatencyTracker.summary();
+    }
+}
@@ -1,6 +1,7 @@
 package com.fitness.aiservice.controller;
 
 import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.model.RecommendationSummary;
 import com.fitness.aiservice.service.RecommandationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -8,6 +9,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
@@ -32,6 +34,26 @@ public class RecommendationController {
         return ResponseEntity.ok(result);
     }
 
+    @GetMapping("/user/{userId}/search")
+    public ResponseEntity<List<Recommendation>> searchUserRecommendations(@PathVariable String userId,
+                                                                          @RequestParam("q") String query,
+                                                                          @RequestParam(defaultValue = "20") int limit) {
+        long start = System.currentTimeMillis();
+        log.info("[HTTP GET] /api/recommendations/user/{}/search?q={}", userId, query);
+        List<Recommendation> result = recommandationService.searchUserRecommendations(userId, query, limit);
+        log.info("[HTTP 200] /api/recommendations/user/{}/search -> {} items ({} ms)", userId, result.size(), (System.currentTimeMillis()-start));
+        return ResponseEntity.ok(result);
+    }
+
+    @GetMapping("/user/{userId}/summaries")
+    public ResponseEntity<List<RecommendationSummary>> getUserSummaries(@PathVariable String userId) {
+        long start = System.currentTimeMillis();
+        log.info("[HTTP GET] /api/recommendations/user/{}/summaries", userId);
+        List<RecommendationSummary> result = recommandationService.getUserSummaries(userId);
+        log.info("[HTTP 200] /api/recommendations/user/{}/summaries -> {} items ({} ms)", userId, result.size(), (System.currentTimeMillis()-start));
+        return ResponseEntity.ok(result);
+    }
+
     @GetMapping("/activity/{activityId}")
     public ResponseEntity<List<Recommendation>> getActivityRecommendation(@PathVariable String activityId) {
         long start = System.currentTimeMillis();
@@ -0,0 +1,31 @@
+package com.fitness.aiservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Activities buffered for one user and window; closed into a single digest recommendation.
+@Document(collection = "digest_windows")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class DigestWindow {
+    @Id
+    private String id; // userId:windowStart
+    private String userId;
+    private LocalDateTime windowStart;
+    @Indexed
+    private LocalDateTime windowEnd;
+    private List<Activity> activities;
+    // Instance closing the window, and until when that claim holds
+    private String closingBy;
+    private LocalDateTime closingUntil;
+}
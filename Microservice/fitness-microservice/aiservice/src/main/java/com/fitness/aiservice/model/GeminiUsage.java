@@ -0,0 +1,29 @@
+package com.fitness.aiservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// Daily Gemini call count, one per user and one global per day, shared by all instances.
+@Document(collection = "gemini_usage")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class GeminiUsage {
+    @Id
+    private String id; // day:userId, or day:* for the global counter
+    private int count;
+    // Global counter only: users who made at least one call that day
+    private int users;
+
+    // TTL: the document is removed by MongoDB once this time has passed
+    @Indexed(expireAfter = "0s")
+    private LocalDateTime expireAt;
+}
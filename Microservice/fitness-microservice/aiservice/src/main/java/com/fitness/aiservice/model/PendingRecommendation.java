@@ -0,0 +1,39 @@
+package com.fitness.aiservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// Marker written by the listener in lazy mode; the recommendation itself is generated on first read.
+// The fair-share scheduler writes one per queued activity too, so its in-memory queues survive a restart.
+@Document(collection = "pending_recommendations")
+@CompoundIndex(name = "scheduled_claim_idx", def = "{'scheduled': 1, 'claimedUntil': 1}",
+        partialFilter = "{'scheduled': true}")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PendingRecommendation {
+    @Id
+    private String activityId;
+    @Indexed
+    private String userId;
+    private Activity activity;
+
+    // Queued by GeminiRequestScheduler; the instance holding it renews claimedUntil until it is done
+    private boolean scheduled;
+    private String claimedBy;
+    private LocalDateTime claimedUntil;
+    private int attempts;
+
+    @CreatedDate
+    private LocalDateTime createdAt;
+}
@@ -4,14 +4,18 @@ import lombok.Builder;
 import lombok.Data;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
 @Document(collection = "recommendations")
+// Serves findByUserId and the compaction job's newest-first scans
+@CompoundIndex(name = "user_created_idx", def = "{'userId': 1, 'createdAt': -1}")
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class Recommendation {
     @Id
     private String id;
@@ -22,8 +26,18 @@ public class Recommendation {
     private List<String> improvements;
     private List<String> suggestions;
     private List<String> safety;
+    // Set in dedup storage mode; the body fields above are then resolved from recommendation_bodies
+    @Indexed(sparse = true)
+    private String bodyId;
+
+    // Digest recommendations cover several activities; activityId is null and activityIds lists them all
+    private Boolean digest;
+    @Indexed(sparse = true)
+    private List<String> activityIds;
 
     @CreatedDate
     private LocalDateTime createdAt;
+    // Set once, the first time the recommendation is served to a client
+    private LocalDateTime firstReadAt;
 //    private LocalDateTime updatedAt;
 }
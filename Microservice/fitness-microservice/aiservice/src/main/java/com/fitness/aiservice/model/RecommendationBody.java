@@ -0,0 +1,28 @@
+package com.fitness.aiservice.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Recommendation payload stored once per distinct content; id is the SHA-256 of the payload.
+@Document(collection = "recommendation_bodies")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RecommendationBody {
+    @Id
+    private String id;
+    private String recommendation;
+    private List<String> improvements;
+    private List<String> suggestions;
+    private List<String> safety;
+    // Last time a save used this body; the compaction sweep only removes bodies unused for a while
+    private LocalDateTime referencedAt;
+}
@@ -0,0 +1,42 @@
+package com.fitness.aiservice.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+// Compact monthly rollup of a user's older recommendations, written by the compaction job.
+@Document(collection = "recommendation_summaries")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RecommendationSummary {
+    @Id
+    private String id; // userId:yyyy-MM
+    @Indexed
+    private String userId;
+    private String month;
+    private Integer count;
+    private Map<String, Integer> countsByType;
+    private List<String> activityIds;
+    // A few representative improvement lines, newest last
+    private List<String> highlights;
+    private LocalDateTime firstCreatedAt;
+    private LocalDateTime lastCreatedAt;
+    // Recommendations already folded in, so a repeated or concurrent compaction never counts one twice
+    @JsonIgnore
+    private List<String> compactedIds;
+
+    // TTL: the document is removed by MongoDB once this time has passed
+    @Indexed(expireAfter = "0s")
+    private LocalDateTime expireAt;
+}
@@ -0,0 +1,14 @@
+package com.fitness.aiservice.repository;
+
+import com.fitness.aiservice.model.PendingRecommendation;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface PendingRecommendationRepository extends MongoRepository<PendingRecommendation,String> {
+
+    List<PendingRecommendation> findByUserIdOrderByCreatedAtDesc(String userId, Pageable pageable);
+}
@@ -0,0 +1,10 @@
+package com.fitness.aiservice.repository;
+
+import com.fitness.aiservice.model.RecommendationBody;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface RecommendationBodyRepository extends MongoRepository<RecommendationBody,String> {
+
+}
@@ -13,4 +13,7 @@ public interface RecommendationRepository extends MongoRepository<Recommendation
     List<Recommendation> findByUserId(String userId);
 
     Optional<Recommendation> findByActivityId(String activityId);
+
+    // Matches digest recommendations whose activityIds array contains the given id
+    Optional<Recommendation> findFirstByActivityIds(String activityId);
 }
@@ -0,0 +1,13 @@
+package com.fitness.aiservice.repository;
+
+import com.fitness.aiservice.model.RecommendationSummary;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface RecommendationSummaryRepository extends MongoRepository<RecommendationSummary,String> {
+
+    List<RecommendationSummary> findByUserIdOrderByMonthDesc(String userId);
+}
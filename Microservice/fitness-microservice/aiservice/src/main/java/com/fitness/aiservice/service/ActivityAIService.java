@@ -11,13 +11,20 @@ import org.springframework.stereotype.Service;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @Slf4j
 @AllArgsConstructor
 public class ActivityAIService {
     private final GeminiService geminiService;
+    private final GeminiModelRouter geminiModelRouter;
+    private final PipelineLatencyTracker pipelineLatencyTracker;
     private static final String SERVICE_NAME = "[ActivityAIService]";
+    public static final String DIGEST_TYPE = "DIGEST";
+
+    // Gemini calls currently running, in every scheduling mode; compaction backs off while it is non-zero
+    private final AtomicInteger inFlight = new AtomicInteger();
 
     public Recommendation generateRecommendation(Activity activity) {
         log.info("{} Starting recommendation generation for activityId={}, userId={}, type={}",
@@ -46,7 +53,8 @@ public class ActivityAIService {
                     SERVICE_NAME, activity.getId());
 
             long startTime = System.currentTimeMillis();
-            String aiResponse = geminiService.getRecommendations(prompt);
+            String model = geminiModelRouter.route(activity);
+            String aiResponse = callGemini(prompt, model);
             if (aiResponse == null) {
                 log.warn("{} Received null AI response for activityId={}", SERVICE_NAME, activity.getId());
                 return null;
@@ -59,6 +67,7 @@ public class ActivityAIService {
             System.out.println();
             System.out.println();
             long duration = System.currentTimeMillis() - startTime;
+            pipelineLatencyTracker.recordStage(PipelineLatencyTracker.STAGE_GEMINI, duration);
 
             log.info("{} ✓ Received AI response for activityId={}, responseLength={}, duration={}ms",
                     SERVICE_NAME, activity.getId(), aiResponse.length(), duration);
@@ -84,40 +93,62 @@ public class ActivityAIService {
         }
     }
 
+    public Recommendation generateDigestRecommendation(String userId, List<Activity> activities) {
+        log.info("{} Starting digest generation for userId={}, activities={}", SERVICE_NAME, userId, activities.size());
+        List<String> activityIds = activities.stream().map(Activity::getId).toList();
+
+        // Route on the day's combined load so long training days can still reach the quality tier
+        Activity combined = Activity.builder()
+                .userId(userId)
+                .type(activities.get(0).getType())
+                .duration(activities.stream().mapToInt(a -> a.getDuration() == null ? 0 : a.getDuration()).sum())
+                .caloriesBurned(activities.stream().mapToInt(a -> a.getCaloriesBurned() == null ? 0 : a.getCaloriesBurned()).sum())
+                .build();
+
+        String prompt = createPromptForDigest(activities);
+        long startTime = System.currentTimeMillis();
+        String aiResponse = callGemini(prompt, geminiModelRouter.route(combined));
+        log.info("{} ✓ Received digest AI response for userId={}, duration={}ms",
+                SERVICE_NAME, userId, System.currentTimeMillis() - startTime);
+
+        Recommendation.RecommendationBuilder builder;
+        try {
+            builder = parseAIResponse(aiResponse);
+        } catch (Exception e) {
+            log.warn("{} Failed to parse digest AI response for userId={}: {}", SERVICE_NAME, userId, e.getMessage(), e);
+            builder = Recommendation.builder()
+                    .recommendation("Unable to generate detailed recommendation at this time.")
+                    .improvements(Collections.singletonList("No specific improvements suggested."))
+                    .suggestions(Collections.singletonList("No specific workout suggestions provided."))
+                    .safety(List.of("No specific safety guidelines provided."));
+        }
+        return builder
+                .userId(userId)
+                .type(DIGEST_TYPE)
+                .digest(true)
+                .activityIds(activityIds)
+                .build();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    private String callGemini(String prompt, String model) {
+        inFlight.incrementAndGet();
+        try {
+            return geminiService.getRecommendations(prompt, model);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
     private Recommendation processAIResponse(Activity activity, String aiResponse) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode rootNode = mapper.readTree(aiResponse);
-            JsonNode textNode = rootNode.path("candidates").get(0)
-                    .path("content")
-                    .path("parts").get(0)
-                    .path("text");
-
-            String jsonContent = textNode.asText().replaceAll("```json\\n","")
-                    .replaceAll("\\n```","");
-
-            JsonNode analysisJson = mapper.readTree(jsonContent);
-            JsonNode analysisNode = analysisJson.path("analysis");
-            StringBuilder fullAnalysis = new StringBuilder();
-
-            addAnalysisSection(fullAnalysis,analysisNode,"overall","Overall:");
-            addAnalysisSection(fullAnalysis,analysisNode,"pace","Pace:");
-            addAnalysisSection(fullAnalysis,analysisNode,"heartRate","Heart Rate:");
-            addAnalysisSection(fullAnalysis,analysisNode,"caloriesBurned","Calories:");
-
-            List<String> improvements = extractImprovements(analysisJson.path("improvements"));
-            List<String> suggestions = extractSuggestions(analysisJson.path("suggestions"));
-            List<String> safety = extractSafetyGuidelines(analysisJson.path("safety"));
-
-            return Recommendation.builder()
+            return parseAIResponse(aiResponse)
                     .activityId(activity.getId())
                     .userId(activity.getUserId())
                     .type(activity.getType().toString())
-                    .recommendation(fullAnalysis.toString().trim())
-                    .improvements(improvements)
-                    .suggestions(suggestions)
-
-                    .safety(safety)
                     .build();
 
         }catch (Exception e) {
@@ -129,6 +160,45 @@ public class ActivityAIService {
 
     }
 
+    // Parses the Gemini envelope into the recommendation body; callers fill in the activity/user keys
+    private Recommendation.RecommendationBuilder parseAIResponse(String aiResponse) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode rootNode = mapper.readTree(aiResponse);
+        JsonNode textNode = rootNode.path("candidates").get(0)
+                .path("content")
+                .path("parts").get(0)
+                .path("text");
+
+        String jsonContent = textNode.asText().replaceAll("```json\\n","")
+                .replaceAll("\\n```","");
+
+        JsonNode analysisJson = mapper.readTree(jsonContent);
+        JsonNode analysisNode = analysisJson.path("analysis");
+        StringBuilder fullAnalysis = new StringBuilder();
+
+        addAnalysisSection(fullAnalysis,analysisNode,"overall","Overall:");
+        addAnalysisSection(fullAnalysis,analysisNode,"pace","Pace:");
+        addAnalysisSection(fullAnalysis,analysisNode,"heartRate","Heart Rate:");
+        addAnalysisSection(fullAnalysis,analysisNode,"caloriesBurned","Calories:");
+
+        List<String> improvements = extractImprovements(analysisJson.path("improvements"));
+        List<String> suggestions = extractSuggestions(analysisJson.path("suggestions"));
+        List<String> safety = extractSafetyGuidelines(analysisJson.path("safety"));
+
+        return Recommendation.builder()
+                .recommendation(fullAnalysis.toString().trim())
+                .improvements(improvements)
+                .suggestions(suggestions)
+                .safety(safety);
+    }
+
+    // Used when the Gemini budget for this user or the whole service is exhausted
+    public Recommendation generateFallbackRecommendation(Activity activity) {
+        log.info("{} Using fallback recommendation for activityId={}, userId={}",
+                SERVICE_NAME, activity.getId(), activity.getUserId());
+        return createDefaultRecommendation(activity);
+    }
+
     private Recommendation createDefaultRecommendation(Activity activity) {
         return Recommendation.builder()
                 .activityId(activity.getId())
@@ -194,7 +264,42 @@ public class ActivityAIService {
         int caloriesBurned = activity.getCaloriesBurned() == null ? 0 : activity.getCaloriesBurned();
         String additionalMetrics = "N/A";
 
-        String prompt = String.format("""
+        String inputData = String.format("""
+Activity Type: %s
+Duration: %d minutes
+Calories Burned: %d
+Additional Metrics: %s""", activityType, durationMinutes, caloriesBurned, additionalMetrics);
+
+        String prompt = buildPrompt(inputData,
+                "Analyze the activity focusing on performance, improvement areas, next workout suggestions, and safety.");
+
+        log.debug("{} Prompt generated successfully, totalLength={} characters", SERVICE_NAME, prompt.length());
+        return prompt;
+    }
+
+    // Digest mode: one prompt for all activities a user logged in the window
+    private String createPromptForDigest(List<Activity> activities) {
+        StringBuilder inputData = new StringBuilder();
+        inputData.append("Number of Activities: ").append(activities.size()).append('\n');
+        int index = 1;
+        for (Activity activity : activities) {
+            inputData.append(String.format("%d. Activity Type: %s, Duration: %d minutes, Calories Burned: %d, Start: %s%n",
+                    index++,
+                    activity.getType(),
+                    activity.getDuration() == null ? 0 : activity.getDuration(),
+                    activity.getCaloriesBurned() == null ? 0 : activity.getCaloriesBurned(),
+                    activity.getStartTime() == null ? "N/A" : activity.getStartTime().toString()));
+        }
+
+        String prompt = buildPrompt(inputData.toString().trim(),
+                "Analyze the whole day of training as one session log: overall load, balance between activities, recovery, next workout suggestions, and safety.");
+        log.debug("{} Digest prompt generated for {} activities, totalLength={} characters",
+                SERVICE_NAME, activities.size(), prompt.length());
+        return prompt;
+    }
+
+    private String buildPrompt(String inputData, String instruction) {
+        return String.format("""
   You are an Elite Sports Physiologist and Senior Exercise Scientist analyzing workouts for a daily-use fitness app.
  Your response should feel like guidance from a friendly, experienced personal trainer: correct, clear, detailed, encouraging, and practical.
 
@@ -260,19 +365,13 @@ UX WRITING RULES (CRITICAL)
 ━━━━━━━━━━━━━━━━━━━━━━
 INPUT DATA TO ANALYZE
 ━━━━━━━━━━━━━━━━━━━━━━
-Activity Type: %s
-Duration: %d minutes
-Calories Burned: %d
-Additional Metrics: %s
+%s
 
 ━━━━━━━━━━━━━━━━━━━━━━
 FINAL INSTRUCTION
 ━━━━━━━━━━━━━━━━━━━━━━
-Analyze the activity focusing on performance, improvement areas, next workout suggestions, and safety.
+%s
 Return ONLY the JSON object in the exact format specified above.
-""", activityType, durationMinutes, caloriesBurned, additionalMetrics);
-
-        log.debug("{} Prompt generated successfully, totalLength={} characters", SERVICE_NAME, prompt.length());
-        return prompt;
+""", inputData, instruction);
     }
 }
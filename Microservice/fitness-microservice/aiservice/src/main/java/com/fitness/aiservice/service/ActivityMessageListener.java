@@ -2,9 +2,12 @@ package com.fitness.aiservice.service;
 
 import com.fitness.aiservice.model.Activity;
 import com.fitness.aiservice.model.Recommendation;
-import com.fitness.aiservice.repository.RecommendationRepository;
+import com.fitness.events.ActivityEventHeaders;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
@@ -17,7 +20,12 @@ import org.springframework.stereotype.Service;
 public class ActivityMessageListener {
 
     private final ActivityAIService activityAIService;
-    private final RecommendationRepository recommendationRepository;
+    private final RecommendationStore recommendationStore;
+    private final LazyRecommendationService lazyRecommendationService;
+    private final RecommendationMetrics recommendationMetrics;
+    private final GeminiRequestScheduler geminiRequestScheduler;
+    private final DigestRecommendationService digestRecommendationService;
+    private final PipelineLatencyTracker pipelineLatencyTracker;
     private static final String SERVICE_NAME = "[ActivityMessageListener]";
 
     @KafkaListener(topics = "${kafka.topic.activity}", groupId = "activity-processor-group")
@@ -27,10 +35,15 @@ public class ActivityMessageListener {
             @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
             @Header(KafkaHeaders.OFFSET) long offset,
             @Header(value = KafkaHeaders.RECEIVED_KEY, required = false) String key,
-            @Header(value = KafkaHeaders.RECEIVED_TIMESTAMP, required = false) Long ts
+            @Header(value = KafkaHeaders.RECEIVED_TIMESTAMP, required = false) Long ts,
+            ConsumerRecord<String, Activity> record,
+            Consumer<?, ?> consumer
     ) {
         log.info("{} ▶ Message received: topic={}, partition={}, offset={}, key={}, ts={}",
                 SERVICE_NAME, topic, partition, offset, key, ts);
+        pipelineLatencyTracker.recordConsumed(record, activity == null ? null : activity.getId());
+        consumer.currentLag(new TopicPartition(topic, partition))
+                .ifPresent(lag -> pipelineLatencyTracker.recordLag(topic, partition, lag));
 
         try {
             // Step 1: Validate incoming activity payload
@@ -64,6 +77,34 @@ public class ActivityMessageListener {
 
             log.debug("{} Validation passed for activityId={}", SERVICE_NAME, activity.getId());
 
+            // Backfill (imported history): never spend Gemini calls in bulk; generate on first read instead
+            if (record.headers().lastHeader(ActivityEventHeaders.BACKFILL_HEADER) != null) {
+                lazyRecommendationService.markPending(activity);
+                log.info("{} Deferred backfill activityId={}", SERVICE_NAME, activity.getId());
+                return;
+            }
+
+            // Digest mode: buffer into the user's window; one recommendation is generated when it closes
+            if (digestRecommendationService.usesDigest(activity.getUserId())) {
+                digestRecommendationService.buffer(activity);
+                return;
+            }
+
+            // Lazy mode: defer the Gemini call until the recommendation is first requested
+            if (lazyRecommendationService.isLazyMode()) {
+                lazyRecommendationService.markPending(activity);
+                return;
+            }
+
+            // Fair scheduling: hand off to the per-user queues instead of calling Gemini in Kafka order.
+            // submit persists the queued activity first, so committing the offset on return loses nothing
+            if (geminiRequestScheduler.isEnabled()) {
+                geminiRequestScheduler.submit(activity);
+                log.info("{} Queued activityId={} for fair-share generation (queued={})",
+                        SERVICE_NAME, activity.getId(), geminiRequestScheduler.getQueuedCount());
+                return;
+            }
+
             // Step 3: Process the activity
             log.debug("{} Starting recommendation generation for activityId={}", SERVICE_NAME, activity.getId());
             long startTime = System.currentTimeMillis();
@@ -85,7 +126,8 @@ public class ActivityMessageListener {
                     recommendation.getSuggestions() == null ? 0 : recommendation.getSuggestions().size(),
                     recommendation.getSafety() == null ? 0 : recommendation.getSafety().size());
 
-            recommendationRepository.save(recommendation);
+            recommendationStore.save(recommendation);
+            recommendationMetrics.recordGenerated("eager");
 
             long duration = System.currentTimeMillis() - startTime;
             log.info("{} ✓ Successfully processed activity message: activityId={}, userId={}, processingTime={}ms, offset={}",
@@ -0,0 +1,149 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.DigestWindow;
+import com.fitness.aiservice.model.Recommendation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Digest mode: activities are buffered per user in a Mongo-backed window and, once the window
+ * closes, a single Gemini call covers all of them. Users listed in per-activity-users keep the
+ * one-recommendation-per-activity path. Closing instances claim a window before calling Gemini.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class DigestRecommendationService {
+
+    private final MongoTemplate mongoTemplate;
+    private final ActivityAIService activityAIService;
+    private final RecommendationStore recommendationStore;
+    private final RecommendationMetrics recommendationMetrics;
+    private static final String SERVICE_NAME = "[DigestRecommendationService]";
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @Value("${recommendation.digest.enabled:false}")
+    private boolean enabled;
+
+    @Value("${recommendation.digest.window-hours:24}")
+    private int windowHours;
+
+    // Wait a little after the window ends so late events for that day still make it in
+    @Value("${recommendation.digest.close-grace-minutes:30}")
+    private long closeGraceMinutes;
+
+    @Value("${recommendation.digest.close-batch-size:50}")
+    private int closeBatchSize;
+
+    // Longer than a digest call takes, including scheduler queueing and retries
+    @Value("${recommendation.digest.claim-timeout-minutes:10}")
+    private long claimTimeoutMinutes;
+
+    @Value("${recommendation.digest.per-activity-users:}")
+    private List<String> perActivityUsers;
+
+    public boolean usesDigest(String userId) {
+        return enabled && !perActivityUsers.contains(userId);
+    }
+
+    public void buffer(Activity activity) {
+        // Windows follow when the workout happened, not when the event arrived. A late event for a window
+        // that has already closed opens it again and gets a digest of its own on the next close run
+        LocalDateTime at = activity.getStartTime() != null ? activity.getStartTime() : LocalDateTime.now();
+        int hours = Math.max(1, Math.min(24, windowHours));
+        LocalDateTime windowStart = at.toLocalDate().atStartOfDay()
+                .plusHours((long) (at.getHour() / hours) * hours);
+        LocalDateTime windowEnd = windowStart.plusHours(hours);
+        String windowId = activity.getUserId() + ":" + windowStart;
+
+        // $addToSet keeps Kafka redeliveries of the same event from being counted twice
+        Update update = new Update()
+                .setOnInsert("userId", activity.getUserId())
+                .setOnInsert("windowStart", windowStart)
+                .setOnInsert("windowEnd", windowEnd)
+                .addToSet("activities", activity);
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(windowId)), update, DigestWindow.class);
+        log.info("{} Buffered activityId={} into digest window {}", SERVICE_NAME, activity.getId(), windowId);
+    }
+
+    @Scheduled(fixedDelayString = "${recommendation.digest.close-interval-ms:60000}")
+    public void closeWindows() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(closeGraceMinutes);
+        for (int i = 0; i < closeBatchSize; i++) {
+            DigestWindow window = claim(cutoff);
+            if (window == null) {
+                return;
+            }
+            try {
+                close(window);
+            } catch (RuntimeException e) {
+                // Hand the window back; the next run retries it
+                release(window);
+                log.error("{} ✗ Failed to close digest window {}: {}", SERVICE_NAME, window.getId(), e.getMessage(), e);
+            }
+        }
+    }
+
+    // One window per call, so no instance sends a window another one is already closing to Gemini
+    private DigestWindow claim(LocalDateTime cutoff) {
+        LocalDateTime now = LocalDateTime.now();
+        Query query = Query.query(Criteria.where("windowEnd").lt(cutoff)
+                .orOperator(Criteria.where("closingUntil").exists(false), Criteria.where("closingUntil").lt(now)));
+        Update update = new Update()
+                .set("closingBy", instanceId)
+                .set("closingUntil", now.plusMinutes(claimTimeoutMinutes));
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true),
+                DigestWindow.class);
+    }
+
+    private void release(DigestWindow window) {
+        mongoTemplate.updateFirst(ownClaim(window), new Update().unset("closingBy").unset("closingUntil"),
+                DigestWindow.class);
+    }
+
+    private Query ownClaim(DigestWindow window) {
+        return Query.query(Criteria.where("_id").is(window.getId()).and("closingBy").is(instanceId));
+    }
+
+    private void close(DigestWindow window) {
+        List<Activity> activities = window.getActivities();
+        if (activities == null || activities.isEmpty()) {
+            mongoTemplate.remove(ownClaim(window), DigestWindow.class);
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        Recommendation digest = activityAIService.generateDigestRecommendation(window.getUserId(), activities);
+        recommendationStore.save(digest);
+        Query unchanged = ownClaim(window).addCriteria(Criteria.where("activities").size(activities.size()));
+        if (mongoTemplate.remove(unchanged, DigestWindow.class).getDeletedCount() == 0) {
+            // A late event joined the window meanwhile: keep it for the next run, minus what was digested
+            Update digested = new Update().pullAll("activities", activities.toArray())
+                    .unset("closingBy").unset("closingUntil");
+            if (mongoTemplate.updateFirst(ownClaim(window), digested, DigestWindow.class).getMatchedCount() == 0) {
+                // The claim expired while Gemini was answering and another instance took the window over
+                log.warn("{} Lost the claim on digest window {}; it may be digested twice",
+                        SERVICE_NAME, window.getId());
+            }
+        }
+        recommendationMetrics.recordGenerated("digest");
+        log.info("{} ✓ Closed digest window {} with {} activities in {}ms",
+                SERVICE_NAME, window.getId(), activities.size(), System.currentTimeMillis() - startTime);
+    }
+}
@@ -0,0 +1,110 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.config.GeminiModelProperties.ModelProfile;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import lombok.Getter;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One Gemini model endpoint: its own connection pool, latency histogram, hedge budget and meters
+ * (all tagged with the profile name).
+ */
+@Getter
+public class GeminiEndpoint {
+
+    private static final double MAX_HEDGE_TOKENS = 10.0;
+
+    private final ModelProfile profile;
+    private final WebClient webClient;
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram(TimeUnit.MINUTES.toMillis(5));
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Timer requestTimer;
+    private final Counter hedgeFired;
+    private final Counter hedgeWon;
+    private double hedgeTokens = 1.0;
+
+    public GeminiEndpoint(ModelProfile profile, WebClient.Builder webClientBuilder, MeterRegistry meterRegistry) {
+        this.profile = profile;
+
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("gemini-" + profile.getName())
+                .maxConnections(profile.getMaxConnections())
+                .pendingAcquireTimeout(Duration.ofMillis(profile.getTimeoutMs()))
+                .build();
+        // Configure HttpClient with connection and response timeouts
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .responseTimeout(Duration.ofMillis(profile.getTimeoutMs()))
+                // connectTimeout(...) is not available on some Reactor Netty versions; use ChannelOption instead
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) TimeUnit.SECONDS.toMillis(10));
+        this.webClient = webClientBuilder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+
+        String model = profile.getName();
+        this.requestTimer = Timer.builder("gemini.requests")
+                .description("Successful Gemini calls")
+                .tag("model", model)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.hedgeFired = Counter.builder("gemini.hedge.fired")
+                .description("Hedged Gemini requests sent after the primary exceeded the latency percentile")
+                .tag("model", model)
+                .register(meterRegistry);
+        this.hedgeWon = Counter.builder("gemini.hedge.won")
+                .description("Hedged Gemini requests that answered before the primary")
+                .tag("model", model)
+                .register(meterRegistry);
+        Gauge.builder("gemini.requests.in-flight", inFlight, AtomicInteger::get)
+                .tag("model", model)
+                .register(meterRegistry);
+    }
+
+    public String getName() {
+        return profile.getName();
+    }
+
+    // Time the caller waited for a successful response, hedge included
+    public void recordSuccess(long millis) {
+        requestTimer.record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    // One HTTP attempt on its own; a hedge must not feed the histogram that sets the hedge delay
+    public void recordAttempt(long millis) {
+        latencyHistogram.record(millis);
+    }
+
+    // True while observed p95 stays within the profile's SLO and the pool is not saturated
+    public boolean isWithinSlo() {
+        if (inFlight.get() >= profile.getMaxConnections()) {
+            return false;
+        }
+        if (profile.getLatencySloMs() <= 0) {
+            return true;
+        }
+        long p95 = latencyHistogram.percentile(0.95);
+        return p95 < 0 || p95 <= profile.getLatencySloMs();
+    }
+
+    // Retry-budget style token bucket: each primary earns budget-ratio tokens, each hedge spends one
+    public synchronized void depositHedgeToken(double budgetRatio) {
+        hedgeTokens = Math.min(MAX_HEDGE_TOKENS, hedgeTokens + budgetRatio);
+    }
+
+    public synchronized boolean tryAcquireHedgeToken() {
+        if (hedgeTokens < 1.0) {
+            return false;
+        }
+        hedgeTokens -= 1.0;
+        return true;
+    }
+}
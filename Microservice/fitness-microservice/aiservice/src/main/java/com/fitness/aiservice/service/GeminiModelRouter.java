@@ -0,0 +1,74 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.config.GeminiModelProperties;
+import com.fitness.aiservice.model.Activity;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Picks the Gemini model profile for an activity. Simple activities and overload periods go to the
+ * cheapest fast profile; complex or long sessions go to a quality profile while it stays within SLO.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class GeminiModelRouter {
+
+    private final GeminiService geminiService;
+    private final GeminiModelProperties modelProperties;
+    private final MeterRegistry meterRegistry;
+    private static final String SERVICE_NAME = "[GeminiModelRouter]";
+
+    public String route(Activity activity) {
+        List<GeminiEndpoint> endpoints = List.copyOf(geminiService.getEndpoints());
+        if (endpoints.size() == 1) {
+            return endpoints.get(0).getName();
+        }
+
+        Optional<GeminiEndpoint> fast = cheapest(endpoints, "fast");
+        Optional<GeminiEndpoint> quality = cheapest(endpoints, "quality");
+
+        String model;
+        String reason;
+        if (isComplex(activity) && quality.isPresent() && quality.get().isWithinSlo()) {
+            model = quality.get().getName();
+            reason = "complex";
+        } else if (fast.isPresent() && fast.get().isWithinSlo()) {
+            model = fast.get().getName();
+            reason = isComplex(activity) ? "quality-over-slo" : "simple";
+        } else {
+            // Every tier is degraded: fall back to whichever endpoint has the fewest calls in flight
+            model = endpoints.stream()
+                    .min(Comparator.comparingInt(e -> e.getInFlight().get()))
+                    .map(GeminiEndpoint::getName)
+                    .orElse(GeminiService.DEFAULT_MODEL);
+            reason = "overload";
+        }
+
+        meterRegistry.counter("gemini.route", "model", model, "reason", reason).increment();
+        log.debug("{} activityId={} type={} duration={} -> model={} ({})", SERVICE_NAME,
+                activity.getId(), activity.getType(), activity.getDuration(), model, reason);
+        return model;
+    }
+
+    private boolean isComplex(Activity activity) {
+        GeminiModelProperties.Routing routing = modelProperties.getRouting();
+        int duration = activity.getDuration() == null ? 0 : activity.getDuration();
+        int calories = activity.getCaloriesBurned() == null ? 0 : activity.getCaloriesBurned();
+        return duration >= routing.getComplexDurationMinutes()
+                || calories >= routing.getComplexCalories()
+                || (activity.getType() != null && routing.getComplexTypes().contains(activity.getType().name()));
+    }
+
+    private Optional<GeminiEndpoint> cheapest(List<GeminiEndpoint> endpoints, String tier) {
+        return endpoints.stream()
+                .filter(e -> tier.equalsIgnoreCase(e.getProfile().getTier()))
+                .min(Comparator.comparingDouble(e -> e.getProfile().getCostWeight()));
+    }
+}
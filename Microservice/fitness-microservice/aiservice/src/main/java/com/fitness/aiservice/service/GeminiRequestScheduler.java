@@ -0,0 +1,387 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.config.GeminiSchedulerProperties;
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.GeminiUsage;
+import com.fitness.aiservice.model.PendingRecommendation;
+import com.fitness.aiservice.model.Recommendation;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sits between the Kafka listener and Gemini. Each user gets a queue, and workers drain the queues
+ * with deficit round robin, so one user replaying thousands of activities cannot starve everyone
+ * else. Per-user and global daily quotas decide whether a request goes to Gemini or the fallback
+ * path; heavy users are degraded first once the global budget runs low.
+ * <p>
+ * Every queued activity is also written to pending_recommendations before the listener returns
+ * and its offset is committed. The marker is claimed by this instance and renewed while queued;
+ * after a crash or deploy the claim runs out and the activity is picked up again by whichever
+ * instance recovers it first. Quotas are counted in gemini_usage, so they hold across instances.
+ */
+@Service
+@Slf4j
+public class GeminiRequestScheduler {
+
+    private static final String SERVICE_NAME = "[GeminiRequestScheduler]";
+    private static final int REQUEST_COST = 1;
+    private static final String GLOBAL_USAGE = "*";
+    private static final int MAX_USAGE_UPSERT_ATTEMPTS = 2;
+
+    private final GeminiSchedulerProperties properties;
+    private final ActivityAIService activityAIService;
+    private final RecommendationStore recommendationStore;
+    private final RecommendationMetrics recommendationMetrics;
+    private final MeterRegistry meterRegistry;
+    private final MongoTemplate mongoTemplate;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    // Users with queued work, in round-robin order; guarded by lock
+    private final ArrayDeque<UserQueue> ring = new ArrayDeque<>();
+    private final Map<String, UserQueue> queues = new HashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    // Last global usage seen by this instance, for the gauge
+    private final AtomicInteger globalUsage = new AtomicInteger();
+
+    private ExecutorService workers;
+    private volatile boolean running;
+
+    public GeminiRequestScheduler(GeminiSchedulerProperties properties, ActivityAIService activityAIService,
+                                  RecommendationStore recommendationStore,
+                                  RecommendationMetrics recommendationMetrics, MeterRegistry meterRegistry,
+                                  MongoTemplate mongoTemplate) {
+        this.properties = properties;
+        this.activityAIService = activityAIService;
+        this.recommendationStore = recommendationStore;
+        this.recommendationMetrics = recommendationMetrics;
+        this.meterRegistry = meterRegistry;
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Gauge.builder("gemini.scheduler.queued", queued, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("gemini.scheduler.daily.usage", globalUsage, AtomicInteger::get).register(meterRegistry);
+
+        running = true;
+        workers = Executors.newFixedThreadPool(properties.getWorkers(), r -> {
+            Thread t = new Thread(r, "gemini-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < properties.getWorkers(); i++) {
+            workers.submit(this::workerLoop);
+        }
+        log.info("{} Started with workers={}, perUserDailyQuota={}, globalDailyQuota={}", SERVICE_NAME,
+                properties.getWorkers(), properties.getPerUserDailyQuota(), properties.getGlobalDailyQuota());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (workers != null) {
+            workers.shutdownNow();
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        // What is still queued here is released rather than left to time out, so it is recovered right away
+        try {
+            long released = mongoTemplate.updateMulti(Query.query(Criteria.where("scheduled").is(true)
+                                    .and("claimedBy").is(instanceId)),
+                            new Update().unset("claimedBy").set("claimedUntil", LocalDateTime.now()),
+                            PendingRecommendation.class)
+                    .getModifiedCount();
+            if (released > 0) {
+                log.info("{} Released {} queued activities on shutdown", SERVICE_NAME, released);
+            }
+        } catch (RuntimeException e) {
+            log.warn("{} Could not release queued activities; they are recovered once their claim runs out: {}",
+                    SERVICE_NAME, e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    /**
+     * Queues the activity, or answers it with the fallback at once if the user's queue is full. The
+     * queued activity is persisted before this returns, so the caller may acknowledge the message.
+     */
+    public void submit(Activity activity) {
+        if (isFull(activity.getUserId())) {
+            // Don't let one user's backlog grow without bound; answer cheaply instead
+            log.warn("{} Queue full for userId={}, degrading activityId={} to fallback",
+                    SERVICE_NAME, activity.getUserId(), activity.getId());
+            complete(activity, "fallback-overflow");
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        mongoTemplate.save(PendingRecommendation.builder()
+                .activityId(activity.getId())
+                .userId(activity.getUserId())
+                .activity(activity)
+                .scheduled(true)
+                .claimedBy(instanceId)
+                .claimedUntil(now.plus(Duration.ofMillis(properties.getLeaseMs())))
+                .createdAt(now)
+                .build());
+        enqueue(activity);
+    }
+
+    @Scheduled(fixedDelayString = "${gemini.scheduler.heartbeat-interval-ms:20000}")
+    public void heartbeat() {
+        if (!running) {
+            return;
+        }
+        mongoTemplate.updateMulti(Query.query(Criteria.where("scheduled").is(true).and("claimedBy").is(instanceId)),
+                new Update().set("claimedUntil", LocalDateTime.now().plus(Duration.ofMillis(properties.getLeaseMs()))),
+                PendingRecommendation.class);
+    }
+
+    /**
+     * Claims queued activities whose owner went away (crash, deploy, or a failed attempt), oldest
+     * first. Runs right after startup and then periodically.
+     */
+    @Scheduled(fixedDelayString = "${gemini.scheduler.recovery-interval-ms:30000}")
+    public void recover() {
+        if (!running || queued.get() >= properties.getRecoveryBatchSize()) {
+            return;
+        }
+        int recovered = 0;
+        while (recovered < properties.getRecoveryBatchSize()) {
+            LocalDateTime now = LocalDateTime.now();
+            Query claimable = Query.query(Criteria.where("scheduled").is(true)
+                            .and("attempts").lt(properties.getMaxAttempts())
+                            .orOperator(Criteria.where("claimedUntil").exists(false),
+                                    Criteria.where("claimedUntil").lt(now)))
+                    .with(Sort.by(Sort.Direction.ASC, "createdAt"));
+            PendingRecommendation marker = mongoTemplate.findAndModify(claimable,
+                    new Update().set("claimedBy", instanceId)
+                            .set("claimedUntil", now.plus(Duration.ofMillis(properties.getLeaseMs()))),
+                    PendingRecommendation.class);
+            if (marker == null) {
+                break;
+            }
+            enqueue(marker.getActivity());
+            recovered++;
+        }
+        if (recovered > 0) {
+            log.info("{} Recovered {} queued activities", SERVICE_NAME, recovered);
+        }
+    }
+
+    private boolean isFull(String userId) {
+        lock.lock();
+        try {
+            UserQueue queue = queues.get(userId);
+            return queue != null && queue.tasks.size() >= properties.getPerUserQueueCapacity();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(Activity activity) {
+        lock.lock();
+        try {
+            UserQueue queue = queues.get(activity.getUserId());
+            if (queue == null) {
+                queue = new UserQueue(activity.getUserId(),
+                        properties.getWeights().getOrDefault(activity.getUserId(), properties.getDefaultWeight()));
+                queues.put(queue.userId, queue);
+                ring.addLast(queue);
+            }
+            queue.tasks.addLast(activity);
+            queued.incrementAndGet();
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void workerLoop() {
+        while (running) {
+            Activity activity;
+            try {
+                activity = next();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                process(activity);
+            } catch (RuntimeException e) {
+                log.error("{} ✗ Failed to process activityId={}, userId={}: {}",
+                        SERVICE_NAME, activity.getId(), activity.getUserId(), e.getMessage(), e);
+                release(activity);
+            }
+        }
+    }
+
+    private void process(Activity activity) {
+        Query owned = Query.query(Criteria.where("_id").is(activity.getId()).and("claimedBy").is(instanceId));
+        // Gone: served on demand by a read, or taken over after this instance missed its heartbeats
+        if (!mongoTemplate.exists(owned, PendingRecommendation.class)) {
+            log.debug("{} activityId={} no longer queued here; skipping", SERVICE_NAME, activity.getId());
+            return;
+        }
+        complete(activity, tryConsumeQuota(activity.getUserId()) ? "gemini" : "fallback-quota");
+        mongoTemplate.remove(owned, PendingRecommendation.class);
+    }
+
+    // Leaves the marker for recovery to retry, until max-attempts
+    private void release(Activity activity) {
+        try {
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(activity.getId()).and("claimedBy").is(instanceId)),
+                    new Update().unset("claimedBy").set("claimedUntil", LocalDateTime.now()).inc("attempts", 1),
+                    PendingRecommendation.class);
+        } catch (RuntimeException e) {
+            log.warn("{} Could not release activityId={}: {}", SERVICE_NAME, activity.getId(), e.getMessage());
+        }
+    }
+
+    // Deficit round robin: serve the head queue while it has credit, otherwise refill it and rotate
+    private Activity next() throws InterruptedException {
+        lock.lock();
+        try {
+            while (ring.isEmpty()) {
+                notEmpty.await();
+            }
+            while (true) {
+                UserQueue queue = ring.peekFirst();
+                if (queue.deficit >= REQUEST_COST) {
+                    Activity activity = queue.tasks.pollFirst();
+                    queue.deficit -= REQUEST_COST;
+                    queued.decrementAndGet();
+                    if (queue.tasks.isEmpty()) {
+                        ring.pollFirst();
+                        queues.remove(queue.userId);
+                    }
+                    return activity;
+                }
+                ring.pollFirst();
+                queue.deficit += (long) Math.max(1, properties.getQuantum()) * queue.weight;
+                ring.addLast(queue);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes one call from the user's and the global daily budget, or neither. Each counter is one
+     * conditional $inc, so concurrent workers and instances can't go past a quota.
+     */
+    private boolean tryConsumeQuota(String userId) {
+        LocalDate today = LocalDate.now();
+        String globalId = today + ":" + GLOBAL_USAGE;
+        GeminiUsage global = mongoTemplate.findById(globalId, GeminiUsage.class);
+        int globalCount = global == null ? 0 : global.getCount();
+        globalUsage.set(globalCount);
+
+        int userLimit = properties.getPerUserDailyQuota();
+        if (global != null && globalCount >= properties.getSoftLimitRatio() * properties.getGlobalDailyQuota()) {
+            // Budget is getting tight: only users below their fair share keep using Gemini
+            userLimit = Math.min(userLimit, properties.getGlobalDailyQuota() / Math.max(1, global.getUsers()));
+        }
+        String userKey = today + ":" + userId;
+        Boolean firstCall = increment(userKey, userLimit, today, 0);
+        if (firstCall == null) {
+            return false;
+        }
+        if (increment(globalId, properties.getGlobalDailyQuota(), today, firstCall ? 1 : 0) == null) {
+            // The global budget ran out meanwhile: give the user's call back
+            mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(userKey)), new Update().inc("count", -1),
+                    GeminiUsage.class);
+            return false;
+        }
+        globalUsage.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Increments the counter if it is below limit. Returns null at the limit, otherwise whether the
+     * counter was created. At the limit the filter doesn't match and the upsert collides with the
+     * existing _id; a collision can also be a concurrent first insert, hence the second attempt.
+     */
+    private Boolean increment(String id, int limit, LocalDate day, int newUsers) {
+        if (limit <= 0) {
+            return null;
+        }
+        Update update = new Update().inc("count", 1)
+                .setOnInsert("expireAt", day.plusDays(2).atStartOfDay());
+        if (newUsers > 0) {
+            update.inc("users", newUsers);
+        }
+        for (int attempt = 0; attempt < MAX_USAGE_UPSERT_ATTEMPTS; attempt++) {
+            try {
+                return mongoTemplate.upsert(Query.query(Criteria.where("_id").is(id).and("count").lt(limit)),
+                        update, GeminiUsage.class).getUpsertedId() != null;
+            } catch (DuplicateKeyException e) {
+                log.debug("{} Usage counter {} at its limit or just created", SERVICE_NAME, id);
+            }
+        }
+        return null;
+    }
+
+    private void complete(Activity activity, String outcome) {
+        meterRegistry.counter("gemini.scheduler.requests", "outcome", outcome).increment();
+        Recommendation recommendation = "gemini".equals(outcome)
+                ? activityAIService.generateRecommendation(activity)
+                : activityAIService.generateFallbackRecommendation(activity);
+        if (recommendation == null) {
+            log.warn("{} ⚠ Recommendation is null; skipping save. activityId={}", SERVICE_NAME, activity.getId());
+            return;
+        }
+        recommendationStore.save(recommendation);
+        recommendationMetrics.recordGenerated("gemini".equals(outcome) ? "eager" : "fallback");
+        log.info("{} ✓ Saved recommendation for activityId={}, userId={} ({})",
+                SERVICE_NAME, activity.getId(), activity.getUserId(), outcome);
+    }
+
+    private static final class UserQueue {
+        private final String userId;
+        private final int weight;
+        private final ArrayDeque<Activity> tasks = new ArrayDeque<>();
+        private long deficit;
+
+        private UserQueue(String userId, int weight) {
+            this.userId = userId;
+            this.weight = Math.max(1, weight);
+        }
+    }
+}
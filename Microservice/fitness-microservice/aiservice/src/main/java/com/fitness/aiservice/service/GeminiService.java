@@ -1,15 +1,23 @@
 package com.fitness.aiservice.service;
 
+import com.fitness.aiservice.config.GeminiModelProperties;
+import com.fitness.aiservice.config.GeminiModelProperties.ModelProfile;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.http.client.reactive.ReactorClientHttpConnector;
-import reactor.netty.http.client.HttpClient;
-import io.netty.channel.ChannelOption;
-
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.time.Duration;
+import java.util.NoSuchElementException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.reactive.function.client.WebClientRequestException;
@@ -21,7 +29,12 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 @Service
 @Slf4j
 public class GeminiService {
-    private final WebClient webClient;
+    public static final String DEFAULT_MODEL = "default";
+
+    private final WebClient.Builder webClientBuilder;
+    private final MeterRegistry meterRegistry;
+    private final GeminiModelProperties modelProperties;
+    private final Map<String, GeminiEndpoint> endpoints = new LinkedHashMap<>();
 
     @Value("${gemini.api.url:}")
     private String geminiApiUrl;
@@ -29,39 +42,77 @@ public class GeminiService {
     @Value("${gemini.api.key:}")
     private String geminiApiKey;
 
+    @Value("${gemini.api.timeout-seconds:30}")
+    private long timeoutSeconds;
+
     @Value("${gemini.api.retry.max-attempts:3}")
     private int maxRetries;
 
     @Value("${gemini.api.retry.backoff-delay-ms:1000}")
     private long backoffDelay;
 
+    @Value("${gemini.api.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    // Fire the hedge once the primary is slower than this share of recent calls
+    @Value("${gemini.api.hedge.percentile:0.95}")
+    private double hedgePercentile;
+
+    // Hedges allowed per primary request, e.g. 0.05 caps extra load at 5%
+    @Value("${gemini.api.hedge.budget-ratio:0.05}")
+    private double hedgeBudgetRatio;
+
+    @Value("${gemini.api.hedge.min-delay-ms:500}")
+    private long hedgeMinDelayMs;
+
+    @Value("${gemini.api.hedge.min-samples:20}")
+    private long hedgeMinSamples;
+
     private boolean isConfigured = false;
+    private String defaultModel = DEFAULT_MODEL;
     private static final String SERVICE_NAME = "[GeminiService]";
 
     private final ObjectMapper mapper = new ObjectMapper();
 
-    public GeminiService(WebClient.Builder webClientBuilder) {
-        // Configure HttpClient with connection and response timeouts
-        HttpClient httpClient = HttpClient.create()
-                .responseTimeout(Duration.ofSeconds(30))
-                // connectTimeout(...) is not available on some Reactor Netty versions; use ChannelOption instead
-                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) TimeUnit.SECONDS.toMillis(10));
-
-        this.webClient = webClientBuilder
-                .clientConnector(new ReactorClientHttpConnector(httpClient))
-                .build();
-
-        log.debug("{} WebClient initialized with responseTimeout=30s, connectTimeout=10s", SERVICE_NAME);
+    public GeminiService(WebClient.Builder webClientBuilder, MeterRegistry meterRegistry,
+                         GeminiModelProperties modelProperties) {
+        this.webClientBuilder = webClientBuilder;
+        this.meterRegistry = meterRegistry;
+        this.modelProperties = modelProperties;
     }
 
     @PostConstruct
     public void validateConfiguration() {
-        isConfigured = geminiApiUrl != null && !geminiApiUrl.isBlank() &&
-                geminiApiKey != null && !geminiApiKey.isBlank();
+        List<ModelProfile> profiles = modelProperties.getModels();
+        if (profiles.isEmpty()) {
+            // Single-model setup: keep the original gemini.api.url behaviour
+            ModelProfile profile = new ModelProfile();
+            profile.setName(DEFAULT_MODEL);
+            profile.setUrl(geminiApiUrl);
+            profile.setTimeoutMs(TimeUnit.SECONDS.toMillis(timeoutSeconds));
+            profiles = List.of(profile);
+        }
+        for (ModelProfile profile : profiles) {
+            GeminiEndpoint endpoint = new GeminiEndpoint(profile, webClientBuilder, meterRegistry);
+            endpoints.put(profile.getName(), endpoint);
+            Gauge.builder("gemini.hedge.delay", endpoint, e -> hedgeDelay(e).toMillis())
+                    .description("Current hedge delay in ms")
+                    .tag("model", profile.getName())
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            log.debug("{} Endpoint '{}' initialized: tier={}, responseTimeout={}ms, maxConnections={}, connectTimeout=10s",
+                    SERVICE_NAME, profile.getName(), profile.getTier(), profile.getTimeoutMs(), profile.getMaxConnections());
+        }
+        defaultModel = profiles.get(0).getName();
+
+        boolean urlsConfigured = endpoints.values().stream()
+                .allMatch(e -> e.getProfile().getUrl() != null && !e.getProfile().getUrl().isBlank());
+        isConfigured = urlsConfigured && geminiApiKey != null && !geminiApiKey.isBlank();
 
-        log.info("{} Configuration validation - URL configured: {}, Key configured: {}, Ready: {}",
+        log.info("{} Configuration validation - models: {}, URL configured: {}, Key configured: {}, Ready: {}",
                 SERVICE_NAME,
-                geminiApiUrl != null && !geminiApiUrl.isBlank(),
+                endpoints.keySet(),
+                urlsConfigured,
                 geminiApiKey != null && !geminiApiKey.isBlank(),
                 isConfigured);
 
@@ -72,8 +123,17 @@ public class GeminiService {
         }
     }
 
+    public Collection<GeminiEndpoint> getEndpoints() {
+        return endpoints.values();
+    }
+
     public String getRecommendations(String details) {
-        log.info("{} Requesting recommendations from Gemini API", SERVICE_NAME);
+        return getRecommendations(details, defaultModel);
+    }
+
+    public String getRecommendations(String details, String model) {
+        GeminiEndpoint endpoint = endpoints.getOrDefault(model, endpoints.get(defaultModel));
+        log.info("{} Requesting recommendations from Gemini API (model={})", SERVICE_NAME, endpoint.getName());
         String safeDetails = details == null ? "" : details;
 
         if (details == null) {
@@ -90,10 +150,15 @@ public class GeminiService {
         }
 
         // Implement retry logic with exponential backoff
-        return callWithRetry(safeDetails);
+        endpoint.getInFlight().incrementAndGet();
+        try {
+            return callWithRetry(safeDetails, endpoint);
+        } finally {
+            endpoint.getInFlight().decrementAndGet();
+        }
     }
 
-    private String callWithRetry(String details) {
+    private String callWithRetry(String details, GeminiEndpoint endpoint) {
         int attempt = 0;
         long currentBackoff = backoffDelay;
 
@@ -119,20 +184,27 @@ public class GeminiService {
                     log.warn("{} Failed to serialize request body for logging: {}", SERVICE_NAME, jsonLogEx.getMessage());
                 }
 
-                log.debug("{} Sending POST request to Gemini API endpoint: {}", SERVICE_NAME, geminiApiUrl);
+                String url = endpoint.getProfile().getUrl();
+                log.debug("{} Sending POST request to Gemini API endpoint: {}", SERVICE_NAME, url);
                 long startTime = System.currentTimeMillis();
 
-                String response = webClient.post()
-                        .uri(geminiApiUrl)
+                // Cold Mono: every subscription issues its own HTTP request, which is what hedging relies on
+                Mono<String> call = endpoint.getWebClient().post()
+                        .uri(url)
                         .header("Content-Type", "application/json")
                         // Use canonical header name for Gemini API key
                         .header("x-goog-api-key", geminiApiKey)
                         .bodyValue(requestBody)
                         .retrieve()
-                        .bodyToMono(String.class)
-                        .block();
+                        .bodyToMono(String.class);
+
+                String response = hedgeEnabled ? hedged(call, endpoint).block() : call.block();
 
                 long duration = System.currentTimeMillis() - startTime;
+                if (!hedgeEnabled) {
+                    endpoint.recordAttempt(duration);
+                }
+                endpoint.recordSuccess(duration);
                 log.info("{}  Successfully received response from Gemini API (duration={}ms, responseLength={})",
                         SERVICE_NAME, duration, response != null ? response.length() : 0);
 
@@ -253,6 +325,52 @@ public class GeminiService {
         return getMockResponse();
     }
 
+    // Races the primary call against a delayed duplicate; the first value wins and the other is cancelled.
+    private Mono<String> hedged(Mono<String> call, GeminiEndpoint endpoint) {
+        endpoint.depositHedgeToken(hedgeBudgetRatio);
+        Duration delay = hedgeDelay(endpoint);
+        AtomicReference<Throwable> primaryError = new AtomicReference<>();
+        Sinks.One<Boolean> primaryDone = Sinks.one();
+
+        // Only the primary's own latency is recorded. When the hedge wins, the primary's time until
+        // it was cancelled is recorded as a lower bound, so slow periods still raise the delay
+        Mono<String> primary = Mono.defer(() -> {
+                    long startNanos = System.nanoTime();
+                    return call
+                            .doOnNext(r -> endpoint.recordAttempt(elapsedMillis(startNanos)))
+                            .doOnCancel(() -> endpoint.recordAttempt(elapsedMillis(startNanos)));
+                })
+                .doOnError(primaryError::set)
+                .doFinally(signal -> primaryDone.tryEmitValue(Boolean.TRUE));
+
+        Mono<String> hedge = Mono.delay(delay)
+                .takeUntilOther(primaryDone.asMono())
+                .filter(tick -> endpoint.tryAcquireHedgeToken())
+                .flatMap(tick -> {
+                    endpoint.getHedgeFired().increment();
+                    log.info("{} Primary exceeded {}ms on model={}, firing hedged request",
+                            SERVICE_NAME, delay.toMillis(), endpoint.getName());
+                    return call.doOnNext(r -> endpoint.getHedgeWon().increment());
+                });
+
+        // If neither source produced a value, surface the primary's error so retry handling still applies
+        return Mono.firstWithValue(primary, hedge)
+                .onErrorMap(NoSuchElementException.class,
+                        e -> primaryError.get() != null ? primaryError.get() : e);
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private Duration hedgeDelay(GeminiEndpoint endpoint) {
+        LatencyHistogram histogram = endpoint.getLatencyHistogram();
+        long percentile = histogram.count() >= hedgeMinSamples
+                ? histogram.percentile(hedgePercentile)
+                : -1;
+        return Duration.ofMillis(Math.max(hedgeMinDelayMs, percentile));
+    }
+
     // Helper to centralize sleep and handle interruption
     private boolean sleepBackoff(long millis) {
         try {
@@ -0,0 +1,103 @@
+package com.fitness.aiservice.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Small lock-free latency histogram (milliseconds) over a sliding window of two rotating slots.
+ * Buckets are log-linear: exact below 8 ms, then 8 sub-buckets per power of two (~12% error).
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int MAX_EXPONENT = 20; // ~17 minutes, far above any HTTP timeout
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long windowMillis;
+    private volatile AtomicLongArray current = new AtomicLongArray(BUCKET_COUNT);
+    private volatile AtomicLongArray previous = new AtomicLongArray(BUCKET_COUNT);
+    private volatile long windowStart = System.currentTimeMillis();
+
+    public LatencyHistogram(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public void record(long millis) {
+        rotateIfNeeded();
+        current.incrementAndGet(bucketIndex(Math.max(0, millis)));
+    }
+
+    public long count() {
+        rotateIfNeeded();
+        long total = 0;
+        AtomicLongArray cur = current;
+        AtomicLongArray prev = previous;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += cur.get(i) + prev.get(i);
+        }
+        return total;
+    }
+
+    /** Upper bound of the bucket holding the given quantile, or -1 when no samples were recorded. */
+    public long percentile(double quantile) {
+        rotateIfNeeded();
+        AtomicLongArray cur = current;
+        AtomicLongArray prev = previous;
+        long[] merged = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            merged[i] = cur.get(i) + prev.get(i);
+            total += merged[i];
+        }
+        if (total == 0) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += merged[i];
+            if (seen >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(BUCKET_COUNT - 1);
+    }
+
+    private void rotateIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now - windowStart < windowMillis) {
+            return;
+        }
+        synchronized (this) {
+            if (now - windowStart < windowMillis) {
+                return;
+            }
+            // After a long idle gap both slots are stale
+            previous = now - windowStart >= 2 * windowMillis ? new AtomicLongArray(BUCKET_COUNT) : current;
+            current = new AtomicLongArray(BUCKET_COUNT);
+            windowStart = now;
+        }
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,155 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.PendingRecommendation;
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.repository.PendingRecommendationRepository;
+import com.fitness.aiservice.repository.RecommendationRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lazy recommendation mode: the listener only records a pending marker and the Gemini call
+ * happens when the recommendation is first requested. Users who read recommendations recently
+ * are still served eagerly by a background pre-generation pass.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class LazyRecommendationService {
+
+    private final ActivityAIService activityAIService;
+    private final RecommendationRepository recommendationRepository;
+    private final RecommendationStore recommendationStore;
+    private final PendingRecommendationRepository pendingRecommendationRepository;
+    private final RecommendationMetrics recommendationMetrics;
+    private static final String SERVICE_NAME = "[LazyRecommendationService]";
+
+    // One generation per activity at a time; concurrent readers share the same future
+    private final Map<String, CompletableFuture<Recommendation>> inFlight = new ConcurrentHashMap<>();
+    // userId -> last time the user read recommendations
+    private final Map<String, Instant> recentReaders = new ConcurrentHashMap<>();
+
+    @Value("${recommendation.generation.mode:eager}")
+    private String generationMode;
+
+    @Value("${recommendation.lazy.active-user-window-minutes:30}")
+    private long activeUserWindowMinutes;
+
+    @Value("${recommendation.lazy.pregenerate.batch-size:20}")
+    private int pregenerateBatchSize;
+
+    public boolean isLazyMode() {
+        return "lazy".equalsIgnoreCase(generationMode);
+    }
+
+    public void markPending(Activity activity) {
+        PendingRecommendation pending = PendingRecommendation.builder()
+                .activityId(activity.getId())
+                .userId(activity.getUserId())
+                .activity(activity)
+                .build();
+        pendingRecommendationRepository.save(pending);
+        recommendationMetrics.recordPendingMarked();
+        log.info("{} Recorded pending recommendation: activityId={}, userId={}",
+                SERVICE_NAME, activity.getId(), activity.getUserId());
+    }
+
+    public void recordRead(String userId) {
+        if (userId != null) {
+            recentReaders.put(userId, Instant.now());
+        }
+    }
+
+    public Optional<Recommendation> generateOnDemand(String activityId) {
+        return generate(activityId, "on-demand");
+    }
+
+    private Optional<Recommendation> generate(String activityId, String trigger) {
+        CompletableFuture<Recommendation> created = new CompletableFuture<>();
+        CompletableFuture<Recommendation> existing = inFlight.putIfAbsent(activityId, created);
+        if (existing != null) {
+            recommendationMetrics.recordCoalesced();
+            log.debug("{} Joining in-flight generation for activityId={}", SERVICE_NAME, activityId);
+            try {
+                return Optional.ofNullable(existing.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+
+        try {
+            Recommendation recommendation = generateFromPending(activityId, trigger);
+            created.complete(recommendation);
+            return Optional.ofNullable(recommendation);
+        } catch (RuntimeException e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(activityId, created);
+        }
+    }
+
+    private Recommendation generateFromPending(String activityId, String trigger) {
+        Optional<PendingRecommendation> pending = pendingRecommendationRepository.findById(activityId);
+        if (pending.isEmpty()) {
+            // Another request (or instance) may have finished just before us
+            return recommendationStore.resolve(recommendationRepository.findByActivityId(activityId).orElse(null));
+        }
+
+        long startTime = System.currentTimeMillis();
+        Recommendation recommendation = activityAIService.generateRecommendation(pending.get().getActivity());
+        if (recommendation == null) {
+            log.warn("{} ⚠ Recommendation is null for pending activityId={}", SERVICE_NAME, activityId);
+            return null;
+        }
+
+        Recommendation saved = recommendationStore.save(recommendation);
+        pendingRecommendationRepository.deleteById(activityId);
+        recommendationMetrics.recordGenerated(trigger);
+        log.info("{} ✓ Generated {} recommendation for activityId={}, userId={} in {}ms",
+                SERVICE_NAME, trigger, activityId, saved.getUserId(), System.currentTimeMillis() - startTime);
+        return saved;
+    }
+
+    @Scheduled(fixedDelayString = "${recommendation.lazy.pregenerate.interval-ms:60000}")
+    public void pregenerateForActiveUsers() {
+        if (!isLazyMode() || recentReaders.isEmpty()) {
+            return;
+        }
+
+        Instant cutoff = Instant.now().minus(Duration.ofMinutes(activeUserWindowMinutes));
+        recentReaders.entrySet().removeIf(e -> e.getValue().isBefore(cutoff));
+
+        int budget = pregenerateBatchSize;
+        for (String userId : recentReaders.keySet()) {
+            if (budget <= 0) {
+                break;
+            }
+            List<PendingRecommendation> pending = pendingRecommendationRepository
+                    .findByUserIdOrderByCreatedAtDesc(userId, PageRequest.of(0, budget));
+            for (PendingRecommendation p : pending) {
+                try {
+                    generate(p.getActivityId(), "pregenerate");
+                } catch (RuntimeException e) {
+                    log.warn("{} Pre-generation failed for activityId={}: {}",
+                            SERVICE_NAME, p.getActivityId(), e.getMessage());
+                }
+                budget--;
+            }
+        }
+    }
+}
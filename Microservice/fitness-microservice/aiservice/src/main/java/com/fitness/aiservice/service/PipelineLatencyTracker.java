@@ -0,0 +1,186 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.events.ActivityEventHeaders;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.record.TimestampType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency of the activity -> recommendation pipeline, split into stages:
+ * <ul>
+ *   <li>{@code outbox}: activity-service outbox write until the relay sent it</li>
+ *   <li>{@code producer}: activity-service send call until the broker timestamp (only meaningful
+ *       when the topic uses LogAppendTime; with CreateTime the record timestamp is the producer's)</li>
+ *   <li>{@code broker}: record timestamp until this service consumed it</li>
+ *   <li>{@code gemini} and {@code save}: time spent in those calls</li>
+ *   <li>{@code end-to-end}: activity-service outbox write until the recommendation was saved</li>
+ * </ul>
+ * Origins are remembered per activity in a bounded map, so scheduled, lazy and digest paths are
+ * measured up to their save as well. Consumer lag is exported per partition.
+ */
+@Component
+@Slf4j
+public class PipelineLatencyTracker {
+
+    public static final String STAGE_OUTBOX = "outbox";
+    public static final String STAGE_PRODUCER = "producer";
+    public static final String STAGE_BROKER = "broker";
+    public static final String STAGE_GEMINI = "gemini";
+    public static final String STAGE_SAVE = "save";
+    public static final String STAGE_END_TO_END = "end-to-end";
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> stages = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> partitionLag = new ConcurrentHashMap<>();
+    private final Map<String, Long> origins;
+
+    public PipelineLatencyTracker(MeterRegistry registry,
+                                  @Value("${pipeline.latency.tracked-activities:10000}") int trackedActivities) {
+        this.registry = registry;
+        this.origins = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > trackedActivities;
+            }
+        });
+        Gauge.builder("pipeline.tracked.activities", origins, Map::size)
+                .description("Activities consumed whose recommendation has not been saved yet")
+                .register(registry);
+    }
+
+    public void recordConsumed(ConsumerRecord<?, ?> record, String activityId) {
+        long now = System.currentTimeMillis();
+        Long enqueuedAt = epochMillis(record, ActivityEventHeaders.ENQUEUED_AT_HEADER);
+        Long sentAt = epochMillis(record, ActivityEventHeaders.SENT_AT_HEADER);
+        long recordTs = record.timestamp();
+        boolean brokerTs = record.timestampType() == TimestampType.LOG_APPEND_TIME;
+
+        if (enqueuedAt != null && sentAt != null) {
+            recordStage(STAGE_OUTBOX, sentAt - enqueuedAt);
+        }
+        if (sentAt != null && brokerTs) {
+            recordStage(STAGE_PRODUCER, recordTs - sentAt);
+        }
+        if (recordTs > 0) {
+            recordStage(STAGE_BROKER, now - recordTs);
+        }
+        // Without the headers (older producers) the record timestamp is the best origin we have
+        long origin = enqueuedAt != null ? enqueuedAt : sentAt != null ? sentAt : recordTs > 0 ? recordTs : now;
+        if (activityId != null) {
+            origins.put(activityId, origin);
+        }
+    }
+
+    public void recordLag(String topic, int partition, long lag) {
+        partitionLag.computeIfAbsent(topic + "-" + partition, key -> {
+            AtomicLong value = new AtomicLong();
+            Gauge.builder("pipeline.consumer.lag", value, AtomicLong::get)
+                    .description("Records behind the log end offset")
+                    .tag("topic", topic)
+                    .tag("partition", String.valueOf(partition))
+                    .register(registry);
+            return value;
+        }).set(lag);
+    }
+
+    // Last reported lag summed over all partitions this instance consumes
+    public long totalLag() {
+        return partitionLag.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    public void recordStage(String stage, long millis) {
+        if (millis < 0) {
+            // Clock skew between hosts; a negative sample would only distort the histogram
+            return;
+        }
+        timer(stage).record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    public void recordSaved(Recommendation recommendation) {
+        List<String> activityIds = new ArrayList<>();
+        if (recommendation.getActivityId() != null) {
+            activityIds.add(recommendation.getActivityId());
+        }
+        if (recommendation.getActivityIds() != null) {
+            activityIds.addAll(recommendation.getActivityIds());
+        }
+        long now = System.currentTimeMillis();
+        for (String activityId : activityIds) {
+            Long origin = origins.remove(activityId);
+            if (origin != null) {
+                recordStage(STAGE_END_TO_END, now - origin);
+            }
+        }
+    }
+
+    public Map<String, Object> summary() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        Map<String, Object> stageSummary = new LinkedHashMap<>();
+        for (String stage : List.of(STAGE_OUTBOX, STAGE_PRODUCER, STAGE_BROKER, STAGE_GEMINI, STAGE_SAVE,
+                STAGE_END_TO_END)) {
+            Timer timer = stages.get(stage);
+            if (timer == null) {
+                continue;
+            }
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("count", snapshot.count());
+            values.put("meanMs", snapshot.mean(TimeUnit.MILLISECONDS));
+            values.put("maxMs", snapshot.max(TimeUnit.MILLISECONDS));
+            for (ValueAtPercentile p : snapshot.percentileValues()) {
+                values.put("p" + Math.round(p.percentile() * 100) + "Ms", p.value(TimeUnit.MILLISECONDS));
+            }
+            stageSummary.put(stage, values);
+        }
+        result.put("stages", stageSummary);
+        Map<String, Long> lag = new LinkedHashMap<>();
+        partitionLag.forEach((partition, value) -> lag.put(partition, value.get()));
+        result.put("consumerLag", lag);
+        result.put("trackedActivities", origins.size());
+        return result;
+    }
+
+    private Timer timer(String stage) {
+        return stages.computeIfAbsent(stage, s -> Timer.builder("pipeline.latency")
+                .description("Activity to recommendation pipeline latency by stage")
+                .tag("stage", s)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofHours(1))
+                .register(registry));
+    }
+
+    private static Long epochMillis(ConsumerRecord<?, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        if (header == null || header.value() == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(new String(header.value(), StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            log.debug("[PipelineLatencyTracker] Ignoring malformed {} header", name);
+            return null;
+        }
+    }
+}
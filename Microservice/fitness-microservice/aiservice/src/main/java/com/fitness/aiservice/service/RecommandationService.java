@@ -1,23 +1,42 @@
 package com.fitness.aiservice.service;
 
 import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.model.RecommendationSummary;
 import com.fitness.aiservice.repository.RecommendationRepository;
+import com.fitness.aiservice.repository.RecommendationSummaryRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class RecommandationService {
     private final RecommendationRepository recommendationRepository;
+    private final RecommendationStore recommendationStore;
+    private final RecommendationSummaryRepository recommendationSummaryRepository;
+    private final LazyRecommendationService lazyRecommendationService;
+    private final RecommendationMetrics recommendationMetrics;
+    private final RecommendationSearchIndex recommendationSearchIndex;
+    private final MongoTemplate mongoTemplate;
 
     public List<Recommendation> getUserRecommendation(String userId) {
         log.info("[RecommendationService] getUserRecommendation userId={}", userId);
-        List<Recommendation> list = recommendationRepository.findByUserId(userId);
+        lazyRecommendationService.recordRead(userId);
+        List<Recommendation> list = recommendationStore.resolve(recommendationRepository.findByUserId(userId));
+        markFirstRead(Criteria.where("userId").is(userId));
         log.info("[RecommendationService] userId={} -> {} items", userId, list.size());
         return list;
     }
@@ -25,8 +44,47 @@ public class RecommandationService {
     public List<Recommendation> getActivityRecommendation(String activityId) {
         log.info("[RecommendationService] getActivityRecommendation activityId={}", activityId);
         Recommendation rec = recommendationRepository.findByActivityId(activityId)
+                .or(() -> recommendationRepository.findFirstByActivityIds(activityId))
+                .or(() -> lazyRecommendationService.generateOnDemand(activityId))
+                .map(recommendationStore::resolve)
                 .orElseThrow(() -> new RuntimeException("Recommendation not found for activityId: " + activityId));
+        lazyRecommendationService.recordRead(rec.getUserId());
+        markFirstRead(Criteria.where("_id").is(rec.getId()));
         log.info("[RecommendationService] activityId={} -> 1 item", activityId);
         return Collections.singletonList(rec);
     }
+
+    public List<Recommendation> searchUserRecommendations(String userId, String query, int limit) {
+        log.info("[RecommendationService] searchUserRecommendations userId={}, q='{}'", userId, query);
+        lazyRecommendationService.recordRead(userId);
+        List<String> ids = recommendationSearchIndex.search(userId, query, limit,
+                () -> recommendationStore.resolve(recommendationRepository.findByUserId(userId)));
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        // findAllById doesn't keep order; put results back in the index's newest-first order
+        Map<String, Recommendation> byId = recommendationRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Recommendation::getId, Function.identity()));
+        List<Recommendation> list = recommendationStore.resolve(ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList());
+        log.info("[RecommendationService] userId={}, q='{}' -> {} items", userId, query, list.size());
+        return list;
+    }
+
+    public List<RecommendationSummary> getUserSummaries(String userId) {
+        log.info("[RecommendationService] getUserSummaries userId={}", userId);
+        List<RecommendationSummary> list = recommendationSummaryRepository.findByUserIdOrderByMonthDesc(userId);
+        log.info("[RecommendationService] userId={} -> {} monthly summaries", userId, list.size());
+        return list;
+    }
+
+    // Only flips documents that were never read before, so the count feeds the first-read counter
+    private void markFirstRead(Criteria criteria) {
+        Query query = new Query(criteria.and("firstReadAt").is(null));
+        long modified = mongoTemplate.updateMulti(query, new Update().set("firstReadAt", LocalDateTime.now()),
+                Recommendation.class).getModifiedCount();
+        recommendationMetrics.recordFirstReads(modified);
+    }
 }
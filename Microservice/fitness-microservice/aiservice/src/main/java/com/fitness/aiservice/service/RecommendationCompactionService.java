@@ -0,0 +1,313 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.model.RecommendationBody;
+import com.fitness.aiservice.model.RecommendationSummary;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps per-user recommendation history bounded: the newest N recommendations stay in full, older
+ * ones are folded into monthly summary documents, and both collections expire through TTL indexes.
+ * Users are visited incrementally (keyset on userId) and the job backs off while the listener is
+ * busy: scheduler work queued, Gemini calls in flight or consumer lag above a threshold. Each summary records the ids it has absorbed, so a run that dies between the merge
+ * and the delete, or two instances compacting the same user, never count a recommendation twice.
+ * Deduplicated bodies that no recommendation references any more are swept after each run.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class RecommendationCompactionService {
+
+    private final MongoTemplate mongoTemplate;
+    private final RecommendationStore recommendationStore;
+    private final GeminiRequestScheduler geminiRequestScheduler;
+    private final RecommendationSearchIndex recommendationSearchIndex;
+    private final ActivityAIService activityAIService;
+    private final PipelineLatencyTracker pipelineLatencyTracker;
+    private static final String SERVICE_NAME = "[RecommendationCompaction]";
+    private static final String TTL_INDEX_NAME = "created_ttl_idx";
+    private static final int MAX_HIGHLIGHTS = 10;
+    private static final int MAX_MERGE_ATTEMPTS = 3;
+
+    @Value("${recommendation.retention.enabled:false}")
+    private boolean enabled;
+
+    @Value("${recommendation.retention.keep-recent:50}")
+    private int keepRecent;
+
+    // 0 disables expiry
+    @Value("${recommendation.retention.max-age-days:365}")
+    private long maxAgeDays;
+
+    @Value("${recommendation.retention.users-per-run:20}")
+    private int usersPerRun;
+
+    @Value("${recommendation.retention.max-docs-per-user:500}")
+    private int maxDocsPerUser;
+
+    @Value("${recommendation.retention.pause-between-users-ms:200}")
+    private long pauseBetweenUsersMs;
+
+    @Value("${recommendation.retention.max-consumer-lag:100}")
+    private long maxConsumerLag;
+
+    @Value("${recommendation.retention.body-grace:24h}")
+    private Duration bodyGrace;
+
+    @Value("${recommendation.retention.body-sweep-batch:500}")
+    private int bodySweepBatch;
+
+    // Keyset cursor over userIds; wraps around once the last user has been visited
+    private String lastUserId;
+    // The same over recommendation_bodies for the sweep
+    private String lastBodyId;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureTtlIndex() {
+        if (!enabled || maxAgeDays <= 0) {
+            return;
+        }
+        try {
+            mongoTemplate.indexOps(Recommendation.class).createIndex(new Index()
+                    .on("createdAt", Sort.Direction.ASC)
+                    .named(TTL_INDEX_NAME)
+                    .expire(Duration.ofDays(maxAgeDays)));
+        } catch (RuntimeException e) {
+            // An existing TTL index with a different age must be changed with collMod
+            log.warn("{} Could not create TTL index on recommendations.createdAt: {}", SERVICE_NAME, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${recommendation.retention.interval-ms:300000}")
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        if (!compactUsers()) {
+            return;
+        }
+        try {
+            sweepBodies();
+        } catch (RuntimeException e) {
+            log.error("{} ✗ Body sweep failed: {}", SERVICE_NAME, e.getMessage(), e);
+        }
+    }
+
+    // False if the run stopped early because the listener got busy
+    private boolean compactUsers() {
+        for (int i = 0; i < usersPerRun; i++) {
+            if (listenerBusy()) {
+                return false;
+            }
+            String userId = nextUserId();
+            if (userId == null) {
+                return true;
+            }
+            try {
+                compactUser(userId);
+            } catch (RuntimeException e) {
+                log.error("{} ✗ Compaction failed for userId={}: {}", SERVICE_NAME, userId, e.getMessage(), e);
+            }
+            if (!sleep(pauseBetweenUsersMs)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The scheduler queue is always empty when it is disabled, so in-flight calls and lag cover the direct path
+    private boolean listenerBusy() {
+        int queued = geminiRequestScheduler.getQueuedCount();
+        int inFlight = activityAIService.getInFlightCount();
+        long lag = pipelineLatencyTracker.totalLag();
+        if (queued > 0 || inFlight > 0 || lag > maxConsumerLag) {
+            log.debug("{} Listener busy (queued={}, inFlight={}, lag={}); pausing compaction",
+                    SERVICE_NAME, queued, inFlight, lag);
+            return true;
+        }
+        return false;
+    }
+
+    private String nextUserId() {
+        Query query = new Query()
+                .with(Sort.by(Sort.Direction.ASC, "userId"))
+                .limit(1);
+        if (lastUserId != null) {
+            query.addCriteria(Criteria.where("userId").gt(lastUserId));
+        }
+        query.fields().include("userId");
+        Recommendation next = mongoTemplate.findOne(query, Recommendation.class);
+        lastUserId = next == null ? null : next.getUserId();
+        return lastUserId;
+    }
+
+    private void compactUser(String userId) {
+        Query olderThanRecent = Query.query(Criteria.where("userId").is(userId))
+                .with(Sort.by(Sort.Direction.DESC, "createdAt"))
+                .skip(keepRecent)
+                .limit(maxDocsPerUser);
+        List<Recommendation> older = recommendationStore.resolve(mongoTemplate.find(olderThanRecent, Recommendation.class));
+        if (older.isEmpty()) {
+            return;
+        }
+
+        Map<YearMonth, List<Recommendation>> byMonth = new LinkedHashMap<>();
+        for (Recommendation rec : older) {
+            LocalDateTime created = rec.getCreatedAt() == null ? LocalDateTime.now() : rec.getCreatedAt();
+            byMonth.computeIfAbsent(YearMonth.from(created), m -> new ArrayList<>()).add(rec);
+        }
+        byMonth.forEach((month, recs) -> mergeIntoSummary(userId, month, recs));
+
+        List<String> ids = older.stream().map(Recommendation::getId).toList();
+        long removed = mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), Recommendation.class)
+                .getDeletedCount();
+        recommendationSearchIndex.evict(userId);
+        log.info("{} userId={} compacted {} recommendations into {} monthly summaries",
+                SERVICE_NAME, userId, removed, byMonth.size());
+    }
+
+    /**
+     * Folds the recommendations into the month's summary unless it already contains them. The
+     * upsert only matches while none of the ids are recorded; if another instance got there
+     * first, its insert collides on _id and the remaining ones are merged on the next attempt.
+     */
+    private void mergeIntoSummary(String userId, YearMonth month, List<Recommendation> recs) {
+        String id = userId + ":" + month;
+        for (int attempt = 0; attempt < MAX_MERGE_ATTEMPTS; attempt++) {
+            List<Recommendation> pending = notYetMerged(id, recs);
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<String> ids = pending.stream().map(Recommendation::getId).toList();
+            Update update = summaryUpdate(userId, month, pending);
+            update.addToSet("compactedIds").each(ids.toArray());
+            try {
+                mongoTemplate.upsert(Query.query(Criteria.where("_id").is(id).and("compactedIds").nin(ids)),
+                        update, RecommendationSummary.class);
+                return;
+            } catch (DuplicateKeyException e) {
+                log.debug("{} Summary {} changed concurrently; retrying", SERVICE_NAME, id);
+            }
+        }
+        // The sources are kept and the next run tries again
+        throw new IllegalStateException("Summary " + id + " kept changing concurrently");
+    }
+
+    private List<Recommendation> notYetMerged(String summaryId, List<Recommendation> recs) {
+        Query query = Query.query(Criteria.where("_id").is(summaryId));
+        query.fields().include("compactedIds");
+        RecommendationSummary summary = mongoTemplate.findOne(query, RecommendationSummary.class);
+        if (summary == null || summary.getCompactedIds() == null) {
+            return recs;
+        }
+        Set<String> merged = new HashSet<>(summary.getCompactedIds());
+        return recs.stream().filter(rec -> !merged.contains(rec.getId())).toList();
+    }
+
+    private Update summaryUpdate(String userId, YearMonth month, List<Recommendation> recs) {
+        LocalDateTime monthStart = month.atDay(1).atStartOfDay();
+        List<LocalDateTime> created = recs.stream().map(Recommendation::getCreatedAt).filter(Objects::nonNull).toList();
+        Update update = new Update()
+                .setOnInsert("userId", userId)
+                .setOnInsert("month", month.toString())
+                .inc("count", recs.size())
+                .min("firstCreatedAt", created.stream().min(LocalDateTime::compareTo).orElse(monthStart))
+                .max("lastCreatedAt", created.stream().max(LocalDateTime::compareTo).orElse(monthStart));
+
+        Map<String, Integer> byType = new LinkedHashMap<>();
+        List<String> activityIds = new ArrayList<>();
+        List<String> highlights = new ArrayList<>();
+        for (Recommendation rec : recs) {
+            byType.merge(rec.getType() == null ? "UNKNOWN" : rec.getType(), 1, Integer::sum);
+            if (rec.getActivityId() != null) {
+                activityIds.add(rec.getActivityId());
+            }
+            if (rec.getActivityIds() != null) {
+                activityIds.addAll(rec.getActivityIds());
+            }
+            if (rec.getImprovements() != null && !rec.getImprovements().isEmpty()) {
+                highlights.add(rec.getImprovements().get(0));
+            }
+        }
+        byType.forEach((type, count) -> update.inc("countsByType." + type, count));
+        if (!activityIds.isEmpty()) {
+            update.addToSet("activityIds").each(activityIds.toArray());
+        }
+        if (!highlights.isEmpty()) {
+            update.push("highlights").slice(-MAX_HIGHLIGHTS).each(highlights.toArray());
+        }
+        if (maxAgeDays > 0) {
+            update.set("expireAt", month.plusMonths(1).atDay(1).atStartOfDay().plusDays(maxAgeDays));
+        }
+        return update;
+    }
+
+    /**
+     * Mark and sweep over recommendation_bodies, one keyset batch per run: a body goes once no
+     * recommendation references it and no save has used it for body-grace. Saves refresh
+     * referencedAt well within that, and the delete re-checks it, so a body being reused is kept.
+     */
+    private void sweepBodies() {
+        Criteria unused = new Criteria().orOperator(
+                Criteria.where("referencedAt").lt(LocalDateTime.now().minus(bodyGrace)),
+                Criteria.where("referencedAt").exists(false));
+        Query candidates = Query.query(unused)
+                .with(Sort.by(Sort.Direction.ASC, "_id"))
+                .limit(bodySweepBatch);
+        if (lastBodyId != null) {
+            candidates.addCriteria(Criteria.where("_id").gt(lastBodyId));
+        }
+        candidates.fields().include("_id");
+        List<String> ids = mongoTemplate.find(candidates, RecommendationBody.class).stream()
+                .map(RecommendationBody::getId).toList();
+        lastBodyId = ids.size() < bodySweepBatch ? null : ids.get(ids.size() - 1);
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        Set<String> referenced = new HashSet<>(mongoTemplate.findDistinct(Query.query(Criteria.where("bodyId").in(ids)),
+                "bodyId", Recommendation.class, String.class));
+        List<String> unreferenced = ids.stream().filter(id -> !referenced.contains(id)).toList();
+        if (unreferenced.isEmpty()) {
+            return;
+        }
+        long removed = mongoTemplate.remove(Query.query(new Criteria().andOperator(
+                Criteria.where("_id").in(unreferenced), unused)), RecommendationBody.class).getDeletedCount();
+        log.info("{} Swept {} unreferenced recommendation bodies", SERVICE_NAME, removed);
+    }
+
+    private boolean sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
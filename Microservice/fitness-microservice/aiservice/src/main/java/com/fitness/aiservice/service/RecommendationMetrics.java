@@ -0,0 +1,57 @@
+package com.fitness.aiservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The read ratio is sum(rate(recommendations.first.read)) / sum(rate(recommendations.generated)), computed in
+// the metrics backend: a recommendation is often generated on one instance and first read on another
+@Component
+public class RecommendationMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<String, Counter> generatedByTrigger = new ConcurrentHashMap<>();
+    private final Counter firstReads;
+    private final Counter pendingMarked;
+    private final Counter coalescedRequests;
+
+    public RecommendationMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.firstReads = Counter.builder("recommendations.first.read")
+                .description("Generated recommendations served to a client for the first time")
+                .register(registry);
+        this.pendingMarked = Counter.builder("recommendations.pending.marked")
+                .description("Activities recorded as pending in lazy mode")
+                .register(registry);
+        this.coalescedRequests = Counter.builder("recommendations.generation.coalesced")
+                .description("On-demand requests that joined an in-flight generation")
+                .register(registry);
+    }
+
+    // trigger: eager | on-demand | pregenerate
+    public void recordGenerated(String trigger) {
+        generatedByTrigger.computeIfAbsent(trigger, t -> Counter.builder("recommendations.generated")
+                        .description("Recommendations generated, by trigger")
+                        .tag("trigger", t)
+                        .register(registry))
+                .increment();
+    }
+
+    public void recordFirstReads(long count) {
+        if (count <= 0) {
+            return;
+        }
+        firstReads.increment(count);
+    }
+
+    public void recordPendingMarked() {
+        pendingMarked.increment();
+    }
+
+    public void recordCoalesced() {
+        coalescedRequests.increment();
+    }
+}
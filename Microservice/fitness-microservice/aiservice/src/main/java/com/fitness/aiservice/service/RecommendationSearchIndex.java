@@ -0,0 +1,240 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Recommendation;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Per-user in-memory inverted index over recommendation text. Each user's documents get dense
+ * ordinals in insertion order, so posting lists are plain sorted int arrays and a multi-term query
+ * is an intersection starting from the shortest list. Indexes are built on first search, kept up to
+ * date by {@link RecommendationStore#save}, and dropped once the user has been idle for a while.
+ */
+@Service
+@Slf4j
+public class RecommendationSearchIndex {
+
+    private static final String SERVICE_NAME = "[RecommendationSearchIndex]";
+    private static final int MIN_TOKEN_LENGTH = 2;
+
+    private final Map<String, UserIndex> indexes = new ConcurrentHashMap<>();
+    // Users whose index is being built -> recommendations saved meanwhile
+    private final Map<String, Queue<Recommendation>> building = new ConcurrentHashMap<>();
+
+    @Value("${recommendation.search.idle-evict-minutes:30}")
+    private long idleEvictMinutes;
+
+    public RecommendationSearchIndex(MeterRegistry meterRegistry) {
+        Gauge.builder("recommendation.search.indexed.users", indexes, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Returns matching recommendation ids, newest first. All query terms must match.
+     */
+    public List<String> search(String userId, String query, int limit,
+                               Supplier<List<Recommendation>> loader) {
+        List<String> terms = new ArrayList<>(tokenize(query));
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        UserIndex index = indexes.get(userId);
+        if (index == null) {
+            index = load(userId, loader);
+        }
+        return index.search(terms, limit);
+    }
+
+    /**
+     * Only users whose index is loaded or being built are updated; anyone else gets a full build on
+     * first search. Recording into both is harmless because an index skips ids it already has.
+     */
+    public void add(Recommendation recommendation) {
+        if (recommendation == null || recommendation.getUserId() == null || recommendation.getId() == null) {
+            return;
+        }
+        Queue<Recommendation> pending = building.get(recommendation.getUserId());
+        if (pending != null) {
+            pending.add(recommendation);
+        }
+        UserIndex index = indexes.get(recommendation.getUserId());
+        if (index != null) {
+            index.add(recommendation);
+        }
+    }
+
+    // Also invalidates a build in progress, which may have read documents that are gone now
+    public void evict(String userId) {
+        building.remove(userId);
+        if (indexes.remove(userId) != null) {
+            log.debug("{} Evicted index for userId={}", SERVICE_NAME, userId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${recommendation.search.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long cutoff = System.nanoTime() - Duration.ofMinutes(idleEvictMinutes).toNanos();
+        int before = indexes.size();
+        indexes.values().removeIf(index -> index.lastAccessNanos - cutoff < 0);
+        int evicted = before - indexes.size();
+        if (evicted > 0) {
+            log.info("{} Evicted {} idle user indexes, {} remaining", SERVICE_NAME, evicted, indexes.size());
+        }
+    }
+
+    /**
+     * Reads the user's recommendations outside the map, so a slow Mongo read holds no lock, then
+     * installs the index and replays the adds that arrived while reading. If another search is
+     * already building the same user, this one answers from its own copy without installing it.
+     */
+    private UserIndex load(String userId, Supplier<List<Recommendation>> loader) {
+        Queue<Recommendation> pending = new ConcurrentLinkedQueue<>();
+        boolean owner = building.putIfAbsent(userId, pending) == null;
+        UserIndex built;
+        try {
+            built = build(userId, loader.get());
+        } catch (RuntimeException e) {
+            if (owner) {
+                building.remove(userId, pending);
+            }
+            throw e;
+        }
+        if (!owner) {
+            return built;
+        }
+        UserIndex installed = indexes.putIfAbsent(userId, built);
+        UserIndex index = installed != null ? installed : built;
+        // Installed first: an add that no longer finds the queue finds the index
+        boolean evicted = !building.remove(userId, pending);
+        pending.forEach(index::add);
+        if (evicted) {
+            indexes.remove(userId, index);
+        }
+        return index;
+    }
+
+    private UserIndex build(String userId, List<Recommendation> recommendations) {
+        long startTime = System.currentTimeMillis();
+        UserIndex index = new UserIndex();
+        recommendations.stream()
+                .sorted(Comparator.comparing(Recommendation::getCreatedAt,
+                        Comparator.nullsFirst(Comparator.naturalOrder())))
+                .forEach(index::add);
+        log.info("{} Built index for userId={}: {} documents, {} terms in {}ms", SERVICE_NAME, userId,
+                index.ids.size(), index.postings.size(), System.currentTimeMillis() - startTime);
+        return index;
+    }
+
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() >= MIN_TOKEN_LENGTH) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static final class UserIndex {
+        // ordinal -> recommendation id
+        private final List<String> ids = new ArrayList<>();
+        private final Map<String, Integer> ordinals = new HashMap<>();
+        private final Map<String, Postings> postings = new HashMap<>();
+        private volatile long lastAccessNanos = System.nanoTime();
+
+        private synchronized void add(Recommendation rec) {
+            if (ordinals.containsKey(rec.getId())) {
+                return;
+            }
+            int ordinal = ids.size();
+            ids.add(rec.getId());
+            ordinals.put(rec.getId(), ordinal);
+
+            Set<String> terms = tokenize(rec.getType());
+            terms.addAll(tokenize(rec.getRecommendation()));
+            for (List<String> section : Arrays.asList(rec.getImprovements(), rec.getSuggestions(), rec.getSafety())) {
+                if (section != null) {
+                    section.forEach(item -> terms.addAll(tokenize(item)));
+                }
+            }
+            // Ordinals only grow, so appending keeps every posting list sorted
+            for (String term : terms) {
+                postings.computeIfAbsent(term, t -> new Postings()).append(ordinal);
+            }
+        }
+
+        private synchronized List<String> search(List<String> terms, int limit) {
+            lastAccessNanos = System.nanoTime();
+            List<Postings> lists = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                Postings p = postings.get(term);
+                if (p == null) {
+                    return List.of();
+                }
+                lists.add(p);
+            }
+            lists.sort(Comparator.comparingInt(p -> p.size));
+
+            int[] matches = Arrays.copyOf(lists.get(0).values, lists.get(0).size);
+            int count = matches.length;
+            for (int i = 1; i < lists.size() && count > 0; i++) {
+                count = intersect(matches, count, lists.get(i));
+            }
+
+            List<String> result = new ArrayList<>(Math.min(count, limit));
+            for (int i = count - 1; i >= 0 && result.size() < limit; i--) {
+                result.add(ids.get(matches[i]));
+            }
+            return result;
+        }
+
+        // Intersects matches[0..count) with other in place; binary search skips ahead in the longer list
+        private static int intersect(int[] matches, int count, Postings other) {
+            int out = 0;
+            int from = 0;
+            for (int i = 0; i < count && from < other.size; i++) {
+                int pos = Arrays.binarySearch(other.values, from, other.size, matches[i]);
+                if (pos >= 0) {
+                    matches[out++] = matches[i];
+                    from = pos + 1;
+                } else {
+                    from = -pos - 1;
+                }
+            }
+            return out;
+        }
+    }
+
+    private static final class Postings {
+        private int[] values = new int[4];
+        private int size;
+
+        private void append(int ordinal) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = ordinal;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.model.Recommendation;
+import com.fitness.aiservice.model.RecommendationBody;
+import com.fitness.aiservice.repository.RecommendationBodyRepository;
+import com.fitness.aiservice.repository.RecommendationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Single write/read path for recommendations. In dedup mode the payload is hashed and stored once in
+ * recommendation_bodies; the recommendation keeps only bodyId plus its activity/user keys. Reads
+ * resolve bodies through an in-process LRU so hot bodies cost no extra round-trip.
+ */
+@Service
+@Slf4j
+public class RecommendationStore {
+
+    private static final String SERVICE_NAME = "[RecommendationStore]";
+
+    private final RecommendationRepository recommendationRepository;
+    private final RecommendationBodyRepository recommendationBodyRepository;
+    private final MongoTemplate mongoTemplate;
+    private final RecommendationSearchIndex searchIndex;
+    private final PipelineLatencyTracker pipelineLatencyTracker;
+    private final Counter bodyCacheHits;
+    private final Counter bodyCacheMisses;
+    private final Counter bodiesDeduplicated;
+    private final Map<String, RecommendationBody> bodyCache;
+
+    @Value("${recommendation.storage.dedup-bodies:false}")
+    private boolean dedupBodies;
+
+    // Must stay well below recommendation.retention.body-grace, or a reused body could be swept
+    @Value("${recommendation.storage.body-refresh-after:6h}")
+    private Duration bodyRefreshAfter;
+
+    public RecommendationStore(RecommendationRepository recommendationRepository,
+                               RecommendationBodyRepository recommendationBodyRepository,
+                               MongoTemplate mongoTemplate,
+                               RecommendationSearchIndex searchIndex,
+                               PipelineLatencyTracker pipelineLatencyTracker,
+                               MeterRegistry meterRegistry,
+                               @Value("${recommendation.storage.body-cache-size:10000}") int bodyCacheSize) {
+        this.recommendationRepository = recommendationRepository;
+        this.recommendationBodyRepository = recommendationBodyRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.searchIndex = searchIndex;
+        this.pipelineLatencyTracker = pipelineLatencyTracker;
+        this.bodyCacheHits = meterRegistry.counter("recommendation.body.cache", "result", "hit");
+        this.bodyCacheMisses = meterRegistry.counter("recommendation.body.cache", "result", "miss");
+        this.bodiesDeduplicated = meterRegistry.counter("recommendation.body.deduplicated");
+        this.bodyCache = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RecommendationBody> eldest) {
+                return size() > bodyCacheSize;
+            }
+        });
+    }
+
+    public Recommendation save(Recommendation recommendation) {
+        long startTime = System.currentTimeMillis();
+        Recommendation saved = doSave(recommendation);
+        pipelineLatencyTracker.recordStage(PipelineLatencyTracker.STAGE_SAVE, System.currentTimeMillis() - startTime);
+        pipelineLatencyTracker.recordSaved(saved);
+        searchIndex.add(saved);
+        return saved;
+    }
+
+    private Recommendation doSave(Recommendation recommendation) {
+        if (!dedupBodies || recommendation.getRecommendation() == null) {
+            return recommendationRepository.save(recommendation);
+        }
+
+        RecommendationBody body = RecommendationBody.builder()
+                .id(hash(recommendation))
+                .recommendation(recommendation.getRecommendation())
+                .improvements(recommendation.getImprovements())
+                .suggestions(recommendation.getSuggestions())
+                .safety(recommendation.getSafety())
+                .build();
+        storeBody(body);
+
+        Recommendation saved = recommendationRepository.save(recommendation.toBuilder()
+                .bodyId(body.getId())
+                .recommendation(null)
+                .improvements(null)
+                .suggestions(null)
+                .safety(null)
+                .build());
+        // Callers get the full recommendation back, as with a plain save
+        return withBody(saved, body);
+    }
+
+    public Recommendation resolve(Recommendation recommendation) {
+        if (recommendation == null) {
+            return null;
+        }
+        return resolve(List.of(recommendation)).get(0);
+    }
+
+    // Fills in bodies for deduplicated documents: cache first, then one findAllById for the misses
+    public List<Recommendation> resolve(List<Recommendation> recommendations) {
+        Map<String, RecommendationBody> found = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (Recommendation rec : recommendations) {
+            if (rec.getBodyId() == null || rec.getRecommendation() != null || found.containsKey(rec.getBodyId())) {
+                continue;
+            }
+            RecommendationBody cached = bodyCache.get(rec.getBodyId());
+            if (cached != null) {
+                bodyCacheHits.increment();
+                found.put(cached.getId(), cached);
+            } else {
+                missing.add(rec.getBodyId());
+            }
+        }
+        if (found.isEmpty() && missing.isEmpty()) {
+            return recommendations;
+        }
+
+        if (!missing.isEmpty()) {
+            bodyCacheMisses.increment(missing.size());
+            for (RecommendationBody body : recommendationBodyRepository.findAllById(missing)) {
+                bodyCache.put(body.getId(), body);
+                found.put(body.getId(), body);
+            }
+        }
+
+        List<Recommendation> resolved = new ArrayList<>(recommendations.size());
+        for (Recommendation rec : recommendations) {
+            RecommendationBody body = rec.getBodyId() == null ? null : found.get(rec.getBodyId());
+            if (body == null && rec.getBodyId() != null && rec.getRecommendation() == null) {
+                log.warn("{} Body {} missing for recommendation id={}", SERVICE_NAME, rec.getBodyId(), rec.getId());
+            }
+            resolved.add(body == null ? rec : withBody(rec, body));
+        }
+        return resolved;
+    }
+
+    private void storeBody(RecommendationBody body) {
+        LocalDateTime now = LocalDateTime.now();
+        RecommendationBody cached = bodyCache.get(body.getId());
+        if (cached != null && cached.getReferencedAt() != null
+                && cached.getReferencedAt().isAfter(now.minus(bodyRefreshAfter))) {
+            bodiesDeduplicated.increment();
+            return;
+        }
+        // Content-addressed: inserting the same body twice is a no-op apart from marking it as used
+        Update update = new Update()
+                .setOnInsert("recommendation", body.getRecommendation())
+                .setOnInsert("improvements", body.getImprovements())
+                .setOnInsert("suggestions", body.getSuggestions())
+                .setOnInsert("safety", body.getSafety())
+                .set("referencedAt", now);
+        long matched = mongoTemplate.upsert(Query.query(Criteria.where("_id").is(body.getId())), update,
+                RecommendationBody.class).getMatchedCount();
+        if (matched > 0) {
+            bodiesDeduplicated.increment();
+        }
+        body.setReferencedAt(now);
+        bodyCache.put(body.getId(), body);
+    }
+
+    private Recommendation withBody(Recommendation recommendation, RecommendationBody body) {
+        return recommendation.toBuilder()
+                .recommendation(body.getRecommendation())
+                .improvements(body.getImprovements())
+                .suggestions(body.getSuggestions())
+                .safety(body.getSafety())
+                .build();
+    }
+
+    static String hash(Recommendation recommendation) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, recommendation.getRecommendation());
+            for (List<String> section : List.of(
+                    nullToEmpty(recommendation.getImprovements()),
+                    nullToEmpty(recommendation.getSuggestions()),
+                    nullToEmpty(recommendation.getSafety()))) {
+                // Section separator, so moving an item between lists changes the hash
+                digest.update((byte) 0x1E);
+                for (String item : section) {
+                    update(digest, item);
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0x1F);
+    }
+
+    private static List<String> nullToEmpty(List<String> list) {
+        return list == null ? List.of() : list;
+    }
+}
@@ -0,0 +1,174 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.config.GeminiSchedulerProperties;
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.GeminiUsage;
+import com.fitness.aiservice.model.PendingRecommendation;
+import com.fitness.aiservice.model.Recommendation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Quotas and queue recovery against a real Mongo; one worker, everything queued before start()
+@DataMongoTest(properties = {
+		"spring.data.mongodb.auto-index-creation=true",
+		"spring.cloud.config.enabled=false"
+})
+@Testcontainers(disabledWithoutDocker = true)
+class GeminiRequestSchedulerMongoTest {
+
+	@Container
+	@ServiceConnection
+	static MongoDBContainer mongo = new MongoDBContainer("mongo:7.0");
+
+	@Autowired
+	private MongoTemplate mongoTemplate;
+
+	private final GeminiSchedulerProperties properties = new GeminiSchedulerProperties();
+	private final List<String> gemini = Collections.synchronizedList(new ArrayList<>());
+	private final List<String> fallback = Collections.synchronizedList(new ArrayList<>());
+	private final List<GeminiRequestScheduler> schedulers = new ArrayList<>();
+	private CountDownLatch done;
+
+	@BeforeEach
+	void setUp() {
+		mongoTemplate.remove(new Query(), PendingRecommendation.class);
+		mongoTemplate.remove(new Query(), GeminiUsage.class);
+		properties.setEnabled(true);
+		properties.setWorkers(1);
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		for (GeminiRequestScheduler scheduler : schedulers) {
+			scheduler.stop();
+		}
+	}
+
+	@Test
+	void perUserQuotaSendsTheRestToFallback() throws InterruptedException {
+		properties.setPerUserDailyQuota(2);
+		GeminiRequestScheduler scheduler = scheduler();
+		submit(scheduler, "a", 3);
+		submit(scheduler, "b", 1);
+
+		run(scheduler, 4);
+
+		assertThat(gemini).containsExactly("a1", "b1", "a2");
+		assertThat(fallback).containsExactly("a3");
+	}
+
+	@Test
+	void globalQuotaSendsEveryoneToFallback() throws InterruptedException {
+		properties.setGlobalDailyQuota(3);
+		properties.setSoftLimitRatio(1.0);
+		GeminiRequestScheduler scheduler = scheduler();
+		submit(scheduler, "a", 2);
+		submit(scheduler, "b", 2);
+
+		run(scheduler, 4);
+
+		assertThat(gemini).containsExactly("a1", "b1", "a2");
+		assertThat(fallback).containsExactly("b2");
+	}
+
+	@Test
+	void pastSoftLimitOnlyUsersAboveFairShareAreDegraded() throws InterruptedException {
+		// Soft limit at 6 of 12; with four users the fair share is 3
+		properties.setGlobalDailyQuota(12);
+		properties.setSoftLimitRatio(0.5);
+		GeminiRequestScheduler scheduler = scheduler();
+		submit(scheduler, "heavy", 8);
+		submit(scheduler, "light", 3);
+		submit(scheduler, "x", 1);
+		submit(scheduler, "y", 1);
+
+		run(scheduler, 13);
+
+		assertThat(gemini).containsExactly("heavy1", "light1", "x1", "y1", "heavy2", "light2", "heavy3", "light3");
+		assertThat(fallback).containsExactly("heavy4", "heavy5", "heavy6", "heavy7", "heavy8");
+	}
+
+	@Test
+	void quotaIsSharedBetweenInstances() throws InterruptedException {
+		properties.setPerUserDailyQuota(2);
+		GeminiRequestScheduler first = scheduler();
+		submit(first, "a", 2);
+		run(first, 2);
+
+		GeminiRequestScheduler second = scheduler();
+		submit(second, "a", 1);
+		run(second, 1);
+
+		assertThat(gemini).containsExactly("a1", "a2");
+		assertThat(fallback).hasSize(1);
+	}
+
+	@Test
+	void activitiesQueuedOnAStoppedInstanceAreRecovered() throws InterruptedException {
+		GeminiRequestScheduler stopped = scheduler();
+		submit(stopped, "a", 2);
+		submit(stopped, "b", 1);
+		stopped.stop();
+		assertThat(mongoTemplate.count(new Query(), PendingRecommendation.class)).isEqualTo(3);
+
+		GeminiRequestScheduler recovering = scheduler();
+		done = new CountDownLatch(3);
+		recovering.start();
+		recovering.recover();
+
+		assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(gemini).containsExactlyInAnyOrder("a1", "a2", "b1");
+		assertThat(mongoTemplate.count(new Query(), PendingRecommendation.class)).isZero();
+	}
+
+	private GeminiRequestScheduler scheduler() {
+		ActivityAIService activityAIService = mock(ActivityAIService.class);
+		when(activityAIService.generateRecommendation(any())).thenAnswer(invocation -> answer(invocation.getArgument(0), gemini));
+		when(activityAIService.generateFallbackRecommendation(any())).thenAnswer(invocation -> answer(invocation.getArgument(0), fallback));
+		GeminiRequestScheduler scheduler = new GeminiRequestScheduler(properties, activityAIService,
+				mock(RecommendationStore.class), mock(RecommendationMetrics.class), new SimpleMeterRegistry(), mongoTemplate);
+		schedulers.add(scheduler);
+		return scheduler;
+	}
+
+	private void submit(GeminiRequestScheduler scheduler, String userId, int count) {
+		for (int i = 1; i <= count; i++) {
+			scheduler.submit(Activity.builder().id(userId + i).userId(userId).build());
+		}
+	}
+
+	private void run(GeminiRequestScheduler scheduler, int expected) throws InterruptedException {
+		done = new CountDownLatch(expected);
+		scheduler.start();
+		assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	private Recommendation answer(Activity activity, List<String> served) {
+		served.add(activity.getId());
+		if (done != null) {
+			done.countDown();
+		}
+		return Recommendation.builder().activityId(activity.getId()).userId(activity.getUserId()).build();
+	}
+}
@@ -0,0 +1,142 @@
+package com.fitness.aiservice.service;
+
+import com.fitness.aiservice.config.GeminiSchedulerProperties;
+import com.fitness.aiservice.model.Activity;
+import com.fitness.aiservice.model.GeminiUsage;
+import com.fitness.aiservice.model.PendingRecommendation;
+import com.fitness.aiservice.model.Recommendation;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Everything is queued before start(), and a single worker drains it, so the serving order is deterministic.
+// Mongo is a stub that always has quota left; see GeminiRequestSchedulerMongoTest for quotas and recovery.
+class GeminiRequestSchedulerTest {
+
+	private final GeminiSchedulerProperties properties = new GeminiSchedulerProperties();
+	private final List<String> gemini = Collections.synchronizedList(new ArrayList<>());
+	private final List<String> fallback = Collections.synchronizedList(new ArrayList<>());
+	private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+	private CountDownLatch done;
+	private GeminiRequestScheduler scheduler;
+
+	@BeforeEach
+	void setUp() {
+		properties.setEnabled(true);
+		properties.setWorkers(1);
+		ActivityAIService activityAIService = mock(ActivityAIService.class);
+		when(activityAIService.generateRecommendation(any())).thenAnswer(invocation -> answer(invocation.getArgument(0), gemini));
+		when(activityAIService.generateFallbackRecommendation(any())).thenAnswer(invocation -> answer(invocation.getArgument(0), fallback));
+		when(mongoTemplate.exists(any(Query.class), eq(PendingRecommendation.class))).thenReturn(true);
+		when(mongoTemplate.upsert(any(Query.class), any(), eq(GeminiUsage.class)))
+				.thenReturn(UpdateResult.acknowledged(1, 1L, null));
+		when(mongoTemplate.updateMulti(any(Query.class), any(), eq(PendingRecommendation.class)))
+				.thenReturn(UpdateResult.acknowledged(0, 0L, null));
+		scheduler = new GeminiRequestScheduler(properties, activityAIService, mock(RecommendationStore.class),
+				mock(RecommendationMetrics.class), new SimpleMeterRegistry(), mongoTemplate);
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		scheduler.stop();
+	}
+
+	@Test
+	void usersAreServedRoundRobinByWeight() throws InterruptedException {
+		properties.getWeights().put("c", 2);
+		submit("a", 6);
+		submit("b", 2);
+		submit("c", 4);
+
+		run(12);
+
+		// c has weight 2, so it gets two requests per round; a's backlog only runs alone once the others are done
+		assertThat(gemini).containsExactly("a1", "b1", "c1", "c2", "a2", "b2", "c3", "c4", "a3", "a4", "a5", "a6");
+	}
+
+	@Test
+	void fullUserQueueDegradesToFallbackRightAway() {
+		properties.setPerUserQueueCapacity(2);
+
+		submit("a", 3);
+
+		// Answered on the submitting thread; no worker is running yet
+		assertThat(fallback).containsExactly("a3");
+		assertThat(scheduler.getQueuedCount()).isEqualTo(2);
+	}
+
+	@Test
+	void queuedActivityIsPersistedBeforeSubmitReturns() {
+		submit("a", 1);
+
+		ArgumentCaptor<PendingRecommendation> saved = ArgumentCaptor.forClass(PendingRecommendation.class);
+		verify(mongoTemplate).save(saved.capture());
+		assertThat(saved.getValue().getActivityId()).isEqualTo("a1");
+		assertThat(saved.getValue().isScheduled()).isTrue();
+		assertThat(saved.getValue().getClaimedBy()).isNotNull();
+		assertThat(saved.getValue().getActivity().getUserId()).isEqualTo("a");
+	}
+
+	@Test
+	void overflowIsNotPersisted() {
+		properties.setPerUserQueueCapacity(1);
+
+		submit("a", 2);
+
+		verify(mongoTemplate, times(1)).save(any(PendingRecommendation.class));
+	}
+
+	@Test
+	void activityNoLongerQueuedHereIsSkipped() throws InterruptedException {
+		when(mongoTemplate.exists(any(Query.class), eq(PendingRecommendation.class))).thenReturn(false, true);
+		submit("a", 2);
+
+		run(1);
+
+		// a1 was served on demand meanwhile; its marker is gone
+		assertThat(gemini).containsExactly("a2");
+		verify(mongoTemplate, timeout(1000).times(1)).remove(any(Query.class), eq(PendingRecommendation.class));
+		verify(mongoTemplate, never()).updateFirst(any(Query.class), any(), eq(PendingRecommendation.class));
+	}
+
+	private void submit(String userId, int count) {
+		for (int i = 1; i <= count; i++) {
+			scheduler.submit(Activity.builder().id(userId + i).userId(userId).build());
+		}
+	}
+
+	private void run(int expected) throws InterruptedException {
+		done = new CountDownLatch(expected);
+		scheduler.start();
+		assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	private Recommendation answer(Activity activity, List<String> served) {
+		served.add(activity.getId());
+		if (done != null) {
+			done.countDown();
+		}
+		return Recommendation.builder().activityId(activity.getId()).userId(activity.getUserId()).build();
+	}
+}